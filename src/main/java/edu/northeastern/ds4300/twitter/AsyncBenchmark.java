@@ -0,0 +1,132 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * This class compares the timeline throughput of the blocking TwitterDatabaseAPI with the asynchronous TwitterDatabaseAsyncAPI,
+ * both in total and per thread used.
+ */
+public class AsyncBenchmark {
+
+    private static final String MYSQL_URL = "jdbc:mysql://localhost:3306/twittertweets?serverTimezone=EST5EDT";
+
+    /**
+     * Note: the database should already be populated (TwitterRedisSetup and a "post" run of TwitterRedis for Redis).
+     *
+     * @param args the arguments required for the main() method
+     *             args[0] : "redis" or "mysql"
+     *             args[1] : number of timelines to retrieve in each mode
+     *             args[2] : number of blocking threads (each with its own connection)
+     *             args[3] : maximum number of asynchronous requests in flight
+     *             args[4], args[5] : database username and password (MySQL only)
+     *             key=value options : warmupIterations=0 trials=1 json=... csv=... (see BenchmarkRunner.measure())
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Error: usage: <redis|mysql> <timelines> <blocking threads> <async in-flight> [user password] [key=value ...]");
+            return;
+        }
+        boolean mysql = args[0].equals("mysql");
+        int timelines = Integer.parseInt(args[1]);
+        int threads = Integer.parseInt(args[2]);
+        int inFlight = Integer.parseInt(args[3]);
+        String user = args.length > 4 && !args[4].contains("=") ? args[4] : null;
+        String password = args.length > 5 && !args[5].contains("=") ? args[5] : null;
+        String url = mysql ? MYSQL_URL : null;
+        Map<String, String> options = WorkloadRunner.parseOptions(Arrays.copyOfRange(args, 4, args.length));
+        options.putIfAbsent("warmupIterations", "0");
+        options.putIfAbsent("trials", "1");
+
+        Supplier<TwitterDatabaseAPI> blockingFactory = () -> {
+            TwitterDatabaseAPI api = mysql ? new TwitterDatabaseMysql() : new TwitterDatabaseRedis();
+            api.authenticate(url, user, password);
+            return api;
+        };
+
+        TwitterDatabaseAPI usersApi = blockingFactory.get();
+        int[] users = usersApi.getUserIDs();
+        usersApi.closeConnection();
+        if (users.length == 0) {
+            System.out.println("Error: insufficient user-following data");
+            return;
+        }
+
+        // the asynchronous mode uses the caller thread plus the implementation's own threads
+        int asyncThreads = mysql ? 1 + threads : 3;
+        TwitterDatabaseAsyncAPI async = mysql ? new TwitterDatabaseMysqlAsync(threads) : new TwitterDatabaseRedisAsync();
+        async.authenticate(url, user, password);
+        try {
+            BenchmarkRunner.measure(async.getClass().getName(), "async", options, (seed, warmup) -> {
+                Map<String, Object> trial = new LinkedHashMap<>();
+                double blocking = runBlocking(blockingFactory, users, timelines, threads, seed);
+                System.out.printf("blocking: %d threads, %.1f timelines/s, %.1f timelines/s per thread%n", threads, blocking, blocking / threads);
+                double asynchronous = runAsync(async, users, timelines, inFlight, seed);
+                System.out.printf("async: %d threads, %d in flight, %.1f timelines/s, %.1f timelines/s per thread%n",
+                        asyncThreads, inFlight, asynchronous, asynchronous / asyncThreads);
+                trial.put("blocking_throughput", blocking);
+                trial.put("blocking_thread_throughput", blocking / threads);
+                trial.put("async_throughput", asynchronous);
+                trial.put("async_thread_throughput", asynchronous / asyncThreads);
+                return trial;
+            });
+        } finally {
+            async.closeConnection();
+        }
+    }
+
+    /**
+     * Retrieves timelines of random users from several threads, each blocking on its own connection.
+     * @return timelines per second
+     */
+    private static double runBlocking(Supplier<TwitterDatabaseAPI> factory, int[] users, int timelines, int threads, long seed) {
+        AtomicInteger remaining = new AtomicInteger(timelines);
+        List<Thread> workers = new ArrayList<>();
+        long pre_timestamp = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            TwitterDatabaseAPI api = factory.get();
+            long workerSeed = seed + i;
+            Thread worker = new Thread(() -> {
+                Random rd = new Random(workerSeed);
+                while (remaining.getAndDecrement() > 0) {
+                    api.getTimeline(users[rd.nextInt(users.length)]);
+                }
+                api.closeConnection();
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return timelines / ((System.nanoTime() - pre_timestamp) / 1e9);
+    }
+
+    /**
+     * Retrieves timelines of random users from a single caller thread, keeping up to inFlight requests outstanding.
+     * @return timelines per second
+     */
+    private static double runAsync(TwitterDatabaseAsyncAPI api, int[] users, int timelines, int inFlight, long seed) {
+        Semaphore permits = new Semaphore(inFlight);
+        Random rd = new Random(seed);
+        long pre_timestamp = System.nanoTime();
+        for (int i = 0; i < timelines; i++) {
+            permits.acquireUninterruptibly();
+            api.getTimelineAsync(users[rd.nextInt(users.length)]).whenComplete((tweets, e) -> permits.release());
+        }
+        // wait for the last requests to finish
+        permits.acquireUninterruptibly(inFlight);
+        return timelines / ((System.nanoTime() - pre_timestamp) / 1e9);
+    }
+}
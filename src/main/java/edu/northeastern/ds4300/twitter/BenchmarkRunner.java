@@ -0,0 +1,547 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.HostAndPort;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * This class is a single benchmark harness for every TwitterDatabaseAPI implementation. It selects the implementation by name
+ * (or through ServiceLoader), runs warmup iterations to let the JIT compile the hot paths, repeats the measured trials, and
+ * writes the results with environment metadata as JSON and/or CSV. A compare command flags throughput or latency regressions
+ * between two JSON result files. The options specific to an implementation are applied by the Configurator registered for
+ * its class, and the dedicated benchmarks (FanoutBenchmark, AsyncBenchmark, ...) report through measure().
+ */
+public class BenchmarkRunner {
+
+    private static final String MYSQL_URL = "jdbc:mysql://localhost:3306/twittertweets?serverTimezone=EST5EDT";
+
+    /**
+     * Applies the run options of one implementation class to a connected instance.
+     * @param <T> implementation class
+     */
+    public interface Configurator<T extends TwitterDatabaseAPI> {
+
+        /**
+         * Applies the options to the implementation.
+         * @param api connected implementation
+         * @param options run options
+         * @return cleanup to run after the implementation is closed, or null
+         */
+        Runnable configure(T api, Map<String, String> options);
+    }
+
+    /**
+     * One warmup iteration or measured trial of a benchmark.
+     */
+    public interface Trial {
+
+        /**
+         * Runs the trial.
+         * @param seed seed of the trial
+         * @param warmup whether the results are discarded
+         * @return metrics of the trial (Double values, "throughput" and "_ms" metrics are compared)
+         * @throws Exception if the trial fails
+         */
+        Map<String, Object> run(long seed, boolean warmup) throws Exception;
+    }
+
+    // looked up from the class of the implementation up through its superclasses
+    private static final Map<Class<?>, Configurator<?>> CONFIGURATORS = new HashMap<>();
+    private static final Map<Class<?>, String> DEFAULT_URLS = new HashMap<>();
+
+    static {
+        DEFAULT_URLS.put(TwitterDatabaseMysql.class, MYSQL_URL);
+        DEFAULT_URLS.put(TwitterDatabaseHybrid.class, MYSQL_URL);
+        register(TwitterDatabaseRedis.class, (api, options) -> {
+            api.setPackedAdjacency(Boolean.parseBoolean(options.getOrDefault("packed", "false")));
+            api.setTweetCompression(Boolean.parseBoolean(options.getOrDefault("compressed", "false")));
+            api.setBucketedTweets(Boolean.parseBoolean(options.getOrDefault("bucketed", "false")));
+            if (options.containsKey("inline")) api.setInlineTimelines(Integer.parseInt(options.get("inline")));
+            return configureReplicas(options, api::setReplicas, api::setReadYourWrites);
+        });
+        register(TwitterDatabaseRedisOptional.class, (api, options) -> {
+            api.setPackedAdjacency(Boolean.parseBoolean(options.getOrDefault("packed", "false")));
+            api.setTweetCompression(Boolean.parseBoolean(options.getOrDefault("compressed", "false")));
+            api.setBucketedTweets(Boolean.parseBoolean(options.getOrDefault("bucketed", "false")));
+            if (options.containsKey("materializedTTL")) {
+                api.setMaterializedTimelineTTL(Integer.parseInt(options.get("materializedTTL")));
+            }
+            return configureReplicas(options, api::setReplicas, api::setReadYourWrites);
+        });
+        register(TwitterDatabaseLocal.class, (api, options) -> {
+            if (options.containsKey("fsync")) {
+                api.setFsyncPolicy(TweetLog.FsyncPolicy.valueOf(options.get("fsync").toUpperCase()),
+                        Long.parseLong(options.getOrDefault("fsyncInterval", "100")));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Note: the database should be set up first (TwitterRedisSetup / TwitterRedisShardedSetup for Redis).
+     *
+     * <p> Commands: </p>
+     * <p> - "list" : list the available implementations </p>
+     * <p> - "run IMPLEMENTATION BENCHMARK [key=value ...]" : run a benchmark, where BENCHMARK is "retrieve" (timeline reads),
+     *      "post" (tweet inserts from a CSV file) or "mixed" (reads and posts from WorkloadGenerator) </p>
+     * <p> - "compare BASELINE.json CANDIDATE.json [threshold=0.05]" : compare two result files </p>
+     *
+     * <p> Options of the run command: </p>
+     * <p> url=..., user=..., password=... : connection settings (MySQL and the hybrid implementation default to the local
+     *      twittertweets database; the Redis push and pull implementations take their "host:port" server as the url, by default
+     *      localhost:6379, the sharded Redis implementation its "host:port,host:port" list, the snapshot implementation its file path,
+     *      and the local implementation its data directory) </p>
+     * <p> warmup=1000 warmupIterations=2 : operations per warmup iteration and number of warmup iterations </p>
+     * <p> ops=10000 trials=5 : operations per measured trial and number of trials </p>
+     * <p> tweets=res/tweets.csv batch=1 : CSV file of the post benchmark and number of tweets per API call </p>
+     * <p> packed=true : read packed adjacency (Redis push and pull implementations) </p>
+     * <p> compressed=true : compress tweet bodies with the stored dictionaries (Redis push and pull implementations) </p>
+     * <p> bucketed=true : store tweet bodies in "tweets:&lt;bucket&gt;" hashes (Redis push and pull implementations) </p>
+     * <p> replicas=host:port,host:port : spread the reads over these replicas of the url server (Redis
+     *      push and pull implementations), taking out those more than maxLag=1048576 bytes behind it in checks every
+     *      replicaCheck=1000 milliseconds; readYourWrites=1000 reads from the primary for that many milliseconds after each
+     *      write </p>
+     * <p> inline=100 : store encoded tweets in timelines of up to 100 entries instead of tweet IDs (Redis push implementation) </p>
+     * <p> materializedTTL=30 : keep materialized timelines for 30 seconds after they are built (Redis pull implementation;
+     *      by default every timeline is recomputed) </p>
+     * <p> fsync=always fsyncInterval=100 : when writes are forced to disk, "always", "interval" (every fsyncInterval
+     *      milliseconds) or "never" (local implementation) </p>
+     * <p> json=results.json csv=results.csv : output files (the JSON result is printed if neither is given) </p>
+     * <p> dist, skew, hot, reads, think, seed : workload options described in WorkloadRunner.run() </p>
+     *
+     * <p> Example: "run redis retrieve ops=100000 dist=zipf skew=1.1 json=redis-zipf.json" </p>
+     * @param args the arguments required for the main() function
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Error: should provide a command; either list, run or compare.");
+            return;
+        }
+        if (args[0].equals("list")) {
+            for (TwitterDatabaseAPI api : ServiceLoader.load(TwitterDatabaseAPI.class)) {
+                System.out.println(api.getClass().getName());
+            }
+        } else if (args[0].equals("run")) {
+            if (args.length < 3) {
+                System.out.println("Error: Must provide implementation and benchmark.");
+                return;
+            }
+            run(args[1], args[2], WorkloadRunner.parseOptions(Arrays.copyOfRange(args, 3, args.length)));
+        } else if (args[0].equals("compare")) {
+            if (args.length < 3) {
+                System.out.println("Error: Must provide baseline and candidate result files.");
+                return;
+            }
+            Map<String, String> options = WorkloadRunner.parseOptions(Arrays.copyOfRange(args, 3, args.length));
+            boolean regressed = compare(new File(args[1]), new File(args[2]), Double.parseDouble(options.getOrDefault("threshold", "0.05")));
+            if (regressed) System.exit(1);
+        } else {
+            System.out.println("Error: 1st argument must be either 'list', 'run' or 'compare'");
+        }
+    }
+
+    /**
+     * Finds a TwitterDatabaseAPI implementation by short name ("redis", "redis-optional", "redis-sharded", "mysql",
+     * "snapshot", "local", "hybrid"), by class name among the implementations registered with ServiceLoader, or by fully
+     * qualified class name.
+     * @param name implementation name
+     * @return new, unconnected implementation instance
+     */
+    public static TwitterDatabaseAPI createImplementation(String name) {
+        switch (name) {
+            case "redis": return new TwitterDatabaseRedis();
+            case "redis-optional": return new TwitterDatabaseRedisOptional();
+            case "redis-sharded": return new TwitterDatabaseRedisSharded();
+            case "mysql": return new TwitterDatabaseMysql();
+            case "snapshot": return new TwitterDatabaseSnapshot();
+            case "local": return new TwitterDatabaseLocal();
+            case "hybrid": return new TwitterDatabaseHybrid();
+            default:
+                break;
+        }
+        for (TwitterDatabaseAPI api : ServiceLoader.load(TwitterDatabaseAPI.class)) {
+            if (api.getClass().getSimpleName().equalsIgnoreCase(name) || api.getClass().getName().equals(name)) {
+                return api;
+            }
+        }
+        try {
+            return (TwitterDatabaseAPI) Class.forName(name).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("unknown TwitterDatabaseAPI implementation: " + name, e);
+        }
+    }
+
+    /**
+     * Registers the configurator of an implementation class (and of its subclasses without their own), replacing any
+     * previous one.
+     * @param type implementation class
+     * @param configurator configurator of the class
+     * @param <T> implementation class
+     */
+    public static <T extends TwitterDatabaseAPI> void register(Class<T> type, Configurator<? super T> configurator) {
+        synchronized (CONFIGURATORS) {
+            CONFIGURATORS.put(type, configurator);
+        }
+    }
+
+    /**
+     * Connects an implementation with the url, user and password options (MySQL and the hybrid implementation default to
+     * the local twittertweets database), then applies the other options with the configurator of its class.
+     * @param api new implementation
+     * @param options run options
+     * @return cleanup to run after the implementation is closed (never null)
+     */
+    @SuppressWarnings("unchecked")
+    public static Runnable connect(TwitterDatabaseAPI api, Map<String, String> options) {
+        Configurator<TwitterDatabaseAPI> configurator = null;
+        String url = options.get("url");
+        synchronized (CONFIGURATORS) {
+            for (Class<?> type = api.getClass(); type != null; type = type.getSuperclass()) {
+                if (configurator == null) configurator = (Configurator<TwitterDatabaseAPI>) CONFIGURATORS.get(type);
+                if (url == null) url = DEFAULT_URLS.get(type);
+            }
+        }
+        api.authenticate(url, options.get("user"), options.get("password"));
+        Runnable cleanup = configurator == null ? null : configurator.configure(api, options);
+        return cleanup == null ? () -> { } : cleanup;
+    }
+
+    /**
+     * Spreads the reads of a Redis implementation over the replicas option, if given.
+     * @return cleanup closing the replica set, or null
+     */
+    private static Runnable configureReplicas(Map<String, String> options, Consumer<RedisReplicaSet> setReplicas,
+                                              LongConsumer setReadYourWrites) {
+        if (!options.containsKey("replicas")) return null;
+        HostAndPort primary = RedisReplicaSet.parseAddress(options.get("url"));
+        RedisReplicaSet replicas = new RedisReplicaSet(primary.getHost(), primary.getPort(), options.get("replicas"), 8,
+                Long.parseLong(options.getOrDefault("maxLag", "1048576")));
+        replicas.start(Long.parseLong(options.getOrDefault("replicaCheck", "1000")));
+        setReplicas.accept(replicas);
+        setReadYourWrites.accept(Long.parseLong(options.getOrDefault("readYourWrites", "0")));
+        return () -> {
+            System.out.println("replicas: " + replicas.getReplicas());
+            replicas.close();
+        };
+    }
+
+    /**
+     * Runs the warmup iterations and measured trials of a benchmark and writes the results.
+     * @param implementation implementation name
+     * @param benchmark "retrieve", "post" or "mixed"
+     * @param options run options
+     */
+    public static void run(String implementation, String benchmark, Map<String, String> options) {
+        TwitterDatabaseAPI api;
+        try {
+            api = createImplementation(implementation);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return;
+        }
+        if (!benchmark.equals("retrieve") && !benchmark.equals("post") && !benchmark.equals("mixed")) {
+            System.out.println("Error: benchmark must be either 'retrieve', 'post' or 'mixed'");
+            return;
+        }
+
+        Runnable cleanup = connect(api, options);
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "1000"));
+        int ops = Integer.parseInt(options.getOrDefault("ops", "10000"));
+        try {
+            List<Tweet> tweets = benchmark.equals("post") ? readTweets(options) : null;
+            // the warmup iterations run the same kind of operations as the trials, and their results are discarded
+            measure(api.getClass().getName(), benchmark, options, (seed, warmupIteration) -> {
+                int operations = warmupIteration ? warmup : ops;
+                WorkloadRunner.Result result = runTrial(api, benchmark, options, tweets, operations, seed);
+                return toMap(result, benchmark.equals("post") ? operations : result.reads.count() + result.writes.count());
+            });
+        } catch (FileNotFoundException e) {
+            System.out.println("Could not find provided file.");
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        } finally {
+            api.closeConnection();
+            cleanup.run();
+        }
+    }
+
+    /**
+     * Runs warmupIterations=2 warmup iterations and trials=5 measured trials of a benchmark (with the seeds before and
+     * after seed=42), then writes the report of the trials with the json and csv options.
+     * @param implementation implementation name reported
+     * @param benchmark benchmark name reported
+     * @param options run options
+     * @param trial warmup iteration or measured trial
+     * @return report, or null if a trial failed
+     */
+    public static Map<String, Object> measure(String implementation, String benchmark, Map<String, String> options, Trial trial) {
+        int warmupIterations = Integer.parseInt(options.getOrDefault("warmupIterations", "2"));
+        int trials = Integer.parseInt(options.getOrDefault("trials", "5"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        List<Map<String, Object>> trialResults = new ArrayList<>();
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                trial.run(seed - 1 - i, true);
+                System.out.println("warmup iteration " + (i + 1) + " of " + warmupIterations + " done");
+            }
+            for (int i = 0; i < trials; i++) {
+                Map<String, Object> trialResult = trial.run(seed + i, false);
+                trialResults.add(trialResult);
+                if (trialResult.get("throughput") instanceof Double) {
+                    System.out.printf("trial %d: %.1f operations per second%n", i + 1, (Double) trialResult.get("throughput"));
+                } else {
+                    System.out.println("trial " + (i + 1) + " of " + trials + " done");
+                }
+            }
+        } catch (FileNotFoundException e) {
+            System.out.println("Could not find provided file.");
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+            return null;
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return null;
+        } catch (Exception e) {
+            System.out.println("ERROR: " + benchmark + " benchmark failed: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("implementation", implementation);
+        report.put("benchmark", benchmark);
+        report.put("parameters", new LinkedHashMap<>(options));
+        report.put("environment", environment());
+        report.put("trials", trialResults);
+        report.put("summary", summarize(trialResults));
+        writeReport(report, options);
+        return report;
+    }
+
+    /**
+     * Runs one warmup iteration or measured trial.
+     */
+    private static WorkloadRunner.Result runTrial(TwitterDatabaseAPI api, String benchmark, Map<String, String> options,
+                                                  List<Tweet> tweets, int ops, long seed) throws FileNotFoundException {
+        if (benchmark.equals("post")) {
+            return postTweets(api, tweets, ops, Integer.parseInt(options.getOrDefault("batch", "1")));
+        }
+        Map<String, String> workloadOptions = new LinkedHashMap<>(options);
+        workloadOptions.put("seed", Long.toString(seed));
+        workloadOptions.remove("replay");
+        if (benchmark.equals("retrieve")) workloadOptions.put("reads", "1.0");
+        Iterator<WorkloadOperation> workload = WorkloadRunner.createWorkload(api, ops, workloadOptions);
+        return WorkloadRunner.execute(api, workload, null, false);
+    }
+
+    /**
+     * Posts the given number of tweets (cycling through the CSV tweets), in API calls of the given batch size.
+     */
+    private static WorkloadRunner.Result postTweets(TwitterDatabaseAPI api, List<Tweet> tweets, int ops, int batch) {
+        WorkloadRunner.Result result = new WorkloadRunner.Result();
+        long pre_timestamp = System.nanoTime();
+        int next = 0;
+        for (int posted = 0; posted < ops; posted += batch) {
+            List<Tweet> tweetBatch = new ArrayList<>(batch);
+            for (int i = 0; i < Math.min(batch, ops - posted); i++) {
+                Tweet tweet = tweets.get(next++ % tweets.size());
+                tweetBatch.add(new Tweet(tweet.getUserID(), tweet.getTweetText()));
+            }
+            long start = System.nanoTime();
+            if (tweetBatch.size() == 1) api.postTweet(tweetBatch.get(0));
+            else api.postTweets(tweetBatch);
+            result.writes.add(System.nanoTime() - start);
+        }
+        result.seconds = (System.nanoTime() - pre_timestamp) / 1e9;
+        return result;
+    }
+
+    private static List<Tweet> readTweets(Map<String, String> options) throws FileNotFoundException {
+        if (!options.containsKey("tweets")) {
+            throw new IllegalArgumentException("the post benchmark requires tweets=<csv file>");
+        }
+        List<Tweet> tweets = new ArrayList<>();
+        Scanner sc = new Scanner(new File(options.get("tweets")));
+        if (sc.hasNextLine()) sc.nextLine(); // ignores the columns headers
+        while (sc.hasNextLine()) {
+            String[] tweet = sc.nextLine().split(",");
+            tweets.add(new Tweet(Integer.parseInt(tweet[0]), tweet.length > 1 ? tweet[1] : ""));
+        }
+        sc.close();
+        if (tweets.isEmpty()) throw new IllegalArgumentException("no tweets in " + options.get("tweets"));
+        return tweets;
+    }
+
+    private static Map<String, Object> toMap(WorkloadRunner.Result result, int operations) {
+        Map<String, Object> trial = new LinkedHashMap<>();
+        trial.put("operations", (double) operations);
+        trial.put("seconds", result.seconds);
+        trial.put("throughput", operations / result.seconds);
+        putLatencies(trial, "read", result.reads);
+        putLatencies(trial, "write", result.writes);
+        return trial;
+    }
+
+    /**
+     * Adds the count, mean, percentiles and maximum of a set of latencies to the metrics of a trial.
+     * @param trial metrics of the trial
+     * @param name prefix of the metrics
+     * @param latencies latencies of the trial
+     */
+    public static void putLatencies(Map<String, Object> trial, String name, LatencyRecorder latencies) {
+        if (latencies.count() == 0) return;
+        trial.put(name + "_count", (double) latencies.count());
+        trial.put(name + "_mean_ms", latencies.meanMillis());
+        trial.put(name + "_p50_ms", latencies.percentileMillis(0.50));
+        trial.put(name + "_p95_ms", latencies.percentileMillis(0.95));
+        trial.put(name + "_p99_ms", latencies.percentileMillis(0.99));
+        trial.put(name + "_max_ms", latencies.maxMillis());
+    }
+
+    /**
+     * Summarizes the trials with the median of every metric and the standard deviation of every throughput. A metric that
+     * only some trials report (e.g. the latencies of an operation a short trial never ran) is summarized over those trials.
+     */
+    static Map<String, Object> summarize(List<Map<String, Object>> trials) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        Set<String> metrics = new LinkedHashSet<>();
+        for (Map<String, Object> trial : trials) {
+            metrics.addAll(trial.keySet());
+        }
+        for (String metric : metrics) {
+            double[] values = new double[trials.size()];
+            int n = 0;
+            for (Map<String, Object> trial : trials) {
+                Object value = trial.get(metric);
+                if (value instanceof Number) values[n++] = ((Number) value).doubleValue();
+            }
+            if (n == 0) continue;
+            values = Arrays.copyOf(values, n);
+            Arrays.sort(values);
+            summary.put(metric, n % 2 == 1 ? values[n / 2] : (values[n / 2 - 1] + values[n / 2]) / 2);
+            if (metric.endsWith("throughput")) {
+                double mean = 0;
+                for (double v : values) mean += v / n;
+                double variance = 0;
+                for (double v : values) variance += (v - mean) * (v - mean) / n;
+                summary.put(metric + "_stddev", Math.sqrt(variance));
+            }
+        }
+        return summary;
+    }
+
+    private static Map<String, Object> environment() {
+        Runtime runtime = Runtime.getRuntime();
+        Map<String, Object> env = new LinkedHashMap<>();
+        env.put("timestamp", Instant.now().toString());
+        env.put("java_version", System.getProperty("java.version"));
+        env.put("java_vendor", System.getProperty("java.vendor"));
+        env.put("jvm", System.getProperty("java.vm.name"));
+        env.put("jvm_arguments", new ArrayList<Object>(ManagementFactory.getRuntimeMXBean().getInputArguments()));
+        env.put("os", System.getProperty("os.name") + " " + System.getProperty("os.version"));
+        env.put("arch", System.getProperty("os.arch"));
+        env.put("processors", (double) runtime.availableProcessors());
+        env.put("max_heap_mb", (double) (runtime.maxMemory() / (1024 * 1024)));
+        return env;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeReport(Map<String, Object> report, Map<String, String> options) {
+        String json = options.get("json");
+        String csv = options.get("csv");
+        try {
+            if (json != null) {
+                Files.write(new File(json).toPath(), SimpleJson.write(report).getBytes(StandardCharsets.UTF_8));
+                System.out.println("Results written to " + json);
+            }
+            if (csv != null) {
+                List<Map<String, Object>> trials = (List<Map<String, Object>>) report.get("trials");
+                PrintWriter out = new PrintWriter(csv);
+                if (!trials.isEmpty()) {
+                    out.println("implementation,benchmark,trial," + String.join(",", trials.get(0).keySet()));
+                    for (int i = 0; i < trials.size(); i++) {
+                        StringBuilder row = new StringBuilder(report.get("implementation") + "," + report.get("benchmark") + "," + (i + 1));
+                        for (String metric : trials.get(0).keySet()) {
+                            row.append(',').append(trials.get(i).get(metric));
+                        }
+                        out.println(row);
+                    }
+                }
+                out.close();
+                System.out.println("Results written to " + csv);
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR: could not write results: " + e.getMessage());
+        }
+        if (json == null && csv == null) {
+            System.out.println(SimpleJson.write(report));
+        }
+    }
+
+    /**
+     * Compares the summaries of two JSON result files. Throughputs ("throughput" metrics) are flagged as regressions if the candidate is lower than
+     * the baseline by more than the threshold, and latencies ("_ms" metrics) if the candidate is higher by more than the threshold.
+     * @param baselineFile baseline result file
+     * @param candidateFile candidate result file
+     * @param threshold relative change tolerated (e.g. 0.05 for 5%)
+     * @return true if any metric regressed
+     */
+    @SuppressWarnings("unchecked")
+    public static boolean compare(File baselineFile, File candidateFile, double threshold) {
+        Map<String, Object> baseline, candidate;
+        try {
+            baseline = (Map<String, Object>) ((Map<String, Object>) SimpleJson.parse(new String(Files.readAllBytes(baselineFile.toPath()), StandardCharsets.UTF_8))).get("summary");
+            candidate = (Map<String, Object>) ((Map<String, Object>) SimpleJson.parse(new String(Files.readAllBytes(candidateFile.toPath()), StandardCharsets.UTF_8))).get("summary");
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("ERROR: could not read result files: " + e.getMessage());
+            return true;
+        }
+
+        boolean regressed = false;
+        System.out.printf("%-32s %14s %14s %9s%n", "metric", "baseline", "candidate", "change");
+        for (Map.Entry<String, Object> metric : baseline.entrySet()) {
+            String name = metric.getKey();
+            boolean higherIsBetter = name.endsWith("throughput");
+            boolean lowerIsBetter = name.endsWith("_ms");
+            if ((!higherIsBetter && !lowerIsBetter) || !(candidate.get(name) instanceof Double) || !(metric.getValue() instanceof Double)) {
+                continue;
+            }
+            double before = (Double) metric.getValue();
+            double after = (Double) candidate.get(name);
+            double change = before == 0 ? 0 : (after - before) / before;
+            String verdict = "";
+            if ((higherIsBetter && change < -threshold) || (lowerIsBetter && change > threshold)) {
+                verdict = "REGRESSION";
+                regressed = true;
+            } else if ((higherIsBetter && change > threshold) || (lowerIsBetter && change < -threshold)) {
+                verdict = "improved";
+            }
+            System.out.printf("%-32s %14.3f %14.3f %+8.1f%% %s%n", name, before, after, change * 100, verdict);
+        }
+        System.out.println(regressed ? "Regressions found (threshold " + threshold * 100 + "%)" : "No regressions (threshold " + threshold * 100 + "%)");
+        return regressed;
+    }
+}
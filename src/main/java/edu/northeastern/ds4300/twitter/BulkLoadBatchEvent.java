@@ -0,0 +1,89 @@
+package edu.northeastern.ds4300.twitter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class is the Java Flight Recorder event emitted by the bulk loaders (TwitterRedisSetup and the CSV drivers) for
+ * every batch of records they load: BATCH_SIZE records, or one pipeline for loaders that flush pipelines of their own
+ * size. Its duration is the time the batch took.
+ *
+ * <p> A loader begins the first batch, calls record() once per record (which commits the batch and begins the next one
+ * when it is full), and calls finish() at the end for the partial last batch. </p>
+ */
+@Name("edu.northeastern.ds4300.twitter.BulkLoadBatch")
+@Label("Bulk Load Batch")
+@Category({"Twitter", "Bulk Load"})
+@Description("A batch of records loaded by a bulk loader")
+@StackTrace(false)
+public class BulkLoadBatchEvent extends jdk.jfr.Event {
+
+    public static final int BATCH_SIZE = 1000;
+
+    @Label("Loader")
+    public String loader;
+
+    @Label("Kind")
+    @Description("What the records are, e.g. follows or tweets")
+    public String kind;
+
+    @Label("Records")
+    public int records;
+
+    /**
+     * Creates and begins a batch.
+     * @param loader name of the bulk loader
+     * @param kind what the records are, e.g. "follows" or "tweets"
+     * @return begun batch
+     */
+    public static BulkLoadBatchEvent begin(String loader, String kind) {
+        BulkLoadBatchEvent event = new BulkLoadBatchEvent();
+        event.loader = loader;
+        event.kind = kind;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Counts one loaded record; a full batch is committed and the next one begun.
+     * @return batch the following records count towards
+     */
+    public BulkLoadBatchEvent record() {
+        return record(1);
+    }
+
+    /**
+     * Counts several loaded records (e.g. the tweets of one postTweets() call); a full batch is committed and the next
+     * one begun.
+     * @param count number of records
+     * @return batch the following records count towards
+     */
+    public BulkLoadBatchEvent record(int count) {
+        records += count;
+        if (records < BATCH_SIZE) return this;
+        commit();
+        return begin(loader, kind);
+    }
+
+    /**
+     * Counts several loaded records that were flushed together (e.g. a whole pipeline), then commits the batch and begins
+     * the next one regardless of its size.
+     * @param count number of records
+     * @return next batch
+     */
+    public BulkLoadBatchEvent recordAll(int count) {
+        records += count;
+        commit();
+        return begin(loader, kind);
+    }
+
+    /**
+     * Commits the last batch if it holds any records.
+     */
+    public void finish() {
+        if (records > 0) commit();
+    }
+}
@@ -0,0 +1,132 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * This class trains a tweet compression dictionary (see TweetCompressor) on a sample of a tweets CSV file and reports the
+ * memory saved on the stored tweet values against the extra time needed to decode them. The dictionary can then be stored
+ * in the Redis database, after which the Redis implementations compress new tweets when compression is enabled.
+ */
+public class CompressionBenchmark {
+
+    /**
+     * @param args the arguments required for the main() function
+     *             <p> args[0] : tweets CSV filename </p>
+     *             <p> args[1..] : key=value options: sample=10000 (tweets used for training), dictionary=4096 (dictionary size
+     *                in bytes), minLength=24, passes=5 (timed decoding passes), seed=42, install=false (store the dictionary in
+     *                Redis), host=localhost, port=6379 </p>
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Error: Must provide tweets CSV filename.");
+            return;
+        }
+        Map<String, String> options = WorkloadRunner.parseOptions(Arrays.copyOfRange(args, 1, args.length));
+        int sampleSize = Integer.parseInt(options.getOrDefault("sample", "10000"));
+        int dictionarySize = Integer.parseInt(options.getOrDefault("dictionary", "4096"));
+        int minLength = Integer.parseInt(options.getOrDefault("minLength", "24"));
+        int passes = Integer.parseInt(options.getOrDefault("passes", "5"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        List<String> tweetStrings = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        try {
+            Scanner sc = new Scanner(new File(args[0]));
+            if (sc.hasNextLine()) sc.nextLine(); // ignores the columns headers
+            Date now = new Date(System.currentTimeMillis());
+            while (sc.hasNextLine()) {
+                String[] tweet = sc.nextLine().split(",");
+                String tweetText = tweet.length > 1 ? tweet[1] : "";
+                texts.add(tweetText);
+                tweetStrings.add(TweetCodec.encode(new Tweet(Integer.parseInt(tweet[0]), tweetText), now));
+            }
+            sc.close();
+        } catch (FileNotFoundException e) {
+            System.out.println("Could not find provided csv file.");
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+        if (tweetStrings.isEmpty()) {
+            System.out.println("Error: no tweets in " + args[0]);
+            return;
+        }
+
+        // train on a random sample of the texts
+        Collections.shuffle(texts, new Random(seed));
+        long pre_timestamp = System.currentTimeMillis();
+        byte[] dictionary = TweetCompressor.train(texts.subList(0, Math.min(sampleSize, texts.size())), dictionarySize);
+        System.out.println("Trained a " + dictionary.length + " byte dictionary on " + Math.min(sampleSize, texts.size())
+                + " tweets in " + (System.currentTimeMillis() - pre_timestamp) / 1000.0 + " seconds");
+
+        TweetCompressor compressor = new TweetCompressor(Collections.singletonMap(1, dictionary));
+        compressor.setMinLength(minLength);
+        TweetCompressor plainCompressor = new TweetCompressor(Collections.emptyMap());
+
+        long plainBytes = 0;
+        long storedBytes = 0;
+        int compressedCount = 0;
+        List<byte[]> plainValues = new ArrayList<>(tweetStrings.size());
+        List<byte[]> storedValues = new ArrayList<>(tweetStrings.size());
+        for (String tweetString : tweetStrings) {
+            byte[] plain = TweetCompressor.bytes(tweetString);
+            byte[] stored = compressor.compress(tweetString);
+            if (!compressor.decompress(stored).equals(tweetString)) {
+                System.out.println("ERROR: compressed tweet does not decompress to the original: " + tweetString);
+                return;
+            }
+            plainBytes += plain.length;
+            storedBytes += stored.length;
+            if (stored.length < plain.length) compressedCount++;
+            plainValues.add(plain);
+            storedValues.add(stored);
+        }
+
+        // the first pass warms up the JIT and is not reported
+        double plainNanos = 0;
+        double storedNanos = 0;
+        for (int pass = 0; pass <= passes; pass++) {
+            long plainTime = decodeAll(plainCompressor, plainValues);
+            long storedTime = decodeAll(compressor, storedValues);
+            if (pass > 0) {
+                plainNanos += (double) plainTime / plainValues.size() / passes;
+                storedNanos += (double) storedTime / storedValues.size() / passes;
+            }
+        }
+
+        int n = tweetStrings.size();
+        System.out.println(n + " tweets, " + compressedCount + " compressed (" + (100.0 * compressedCount / n) + "%)");
+        System.out.printf("Stored value bytes: %d plain, %d compressed (%.1f%% saved, %.1f bytes per tweet)%n",
+                plainBytes, storedBytes, 100.0 * (plainBytes - storedBytes) / plainBytes, (double) (plainBytes - storedBytes) / n);
+        System.out.printf("Decode time per tweet: %.0f ns plain, %.0f ns compressed (+%.0f ns, +%.1f us per 10-tweet timeline)%n",
+                plainNanos, storedNanos, storedNanos - plainNanos, (storedNanos - plainNanos) * 10 / 1000.0);
+
+        if (Boolean.parseBoolean(options.getOrDefault("install", "false"))) {
+            Jedis jedis = new Jedis(options.getOrDefault("host", "localhost"), Integer.parseInt(options.getOrDefault("port", "6379")));
+            try {
+                System.out.println("Stored dictionary " + TweetCompressor.install(jedis, dictionary) + " in \"" + TweetCompressor.DICTIONARIES_KEY + "\"");
+            } finally {
+                jedis.close();
+            }
+        }
+    }
+
+    private static long decodeAll(TweetCompressor compressor, List<byte[]> values) {
+        long pre_timestamp = System.nanoTime();
+        for (int i = 0; i < values.size(); i++) {
+            if (TweetCodec.decode(i, compressor.decompress(values.get(i))) == null) throw new IllegalStateException();
+        }
+        return System.nanoTime() - pre_timestamp;
+    }
+}
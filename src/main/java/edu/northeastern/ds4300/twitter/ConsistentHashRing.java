@@ -0,0 +1,108 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class represents a consistent hash ring that maps keys to nodes (e.g. "host:port" strings of Redis servers).
+ * Each node is placed on the ring at several virtual points so that keys are spread evenly. When a node is added,
+ * only the keys that fall between the new node's points and their predecessors move to the new node (about 1/N of all keys);
+ * every other key keeps its owner.
+ */
+public class ConsistentHashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int virtualNodes;
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final List<String> nodes = new ArrayList<>();
+
+    public ConsistentHashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * Creates a copy of this ring with the same nodes and number of virtual nodes.
+     * @return copy of this ring
+     */
+    public ConsistentHashRing copy() {
+        ConsistentHashRing copy = new ConsistentHashRing(virtualNodes);
+        for (String node : nodes) {
+            copy.addNode(node);
+        }
+        return copy;
+    }
+
+    /**
+     * Adds a node to the ring (at each of its virtual points).
+     * @param node node name
+     */
+    public void addNode(String node) {
+        if (nodes.contains(node)) return;
+        nodes.add(node);
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hash(node + "#" + i), node);
+        }
+    }
+
+    /**
+     * Removes a node (and all of its virtual points) from the ring.
+     * @param node node name
+     */
+    public void removeNode(String node) {
+        if (!nodes.remove(node)) return;
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.remove(hash(node + "#" + i));
+        }
+    }
+
+    /**
+     * Gets the node that owns the given key, which is the first node point clockwise from the key's hash.
+     * @param key key
+     * @return node owning the key
+     */
+    public String getNode(String key) {
+        if (ring.isEmpty()) {
+            throw new IllegalStateException("hash ring has no nodes");
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        // wrap around to the first point of the ring
+        if (entry == null) entry = ring.firstEntry();
+        return entry.getValue();
+    }
+
+    /**
+     * Gets the nodes of the ring in the order they were added.
+     * @return list of nodes
+     */
+    public List<String> getNodes() {
+        return new ArrayList<>(nodes);
+    }
+
+    /**
+     * Hashes a string onto the ring using the first 8 bytes of its MD5 digest.
+     * @param s string to hash
+     * @return ring position
+     */
+    private static long hash(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(s.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xFF);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
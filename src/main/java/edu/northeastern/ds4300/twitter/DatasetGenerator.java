@@ -0,0 +1,273 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class generates synthetic "follows" and "tweets" CSV files (in the same formats as res/follows.csv and
+ * res/tweets_sample.csv) at a configurable scale.
+ *
+ * Every user follows a geometrically distributed number of other users. Followees are drawn from a Zipf distribution over
+ * a popularity ranking of the users, so the number of followers per user follows a power law whose celebrity tail is tuned by
+ * the Zipf exponent. A followed user follows back with the reciprocity probability (so a pair may rarely appear twice if both
+ * users also pick each other independently). Tweet authors are drawn from a second Zipf distribution (a few users post most
+ * tweets), and tweet lengths follow a fixed, uniform or log-normal distribution.
+ *
+ * The work is split into a fixed number of partitions, each generated with its own seeded random generator and streamed to a
+ * part file; the part files are then concatenated in order. The output is therefore identical for a given seed no matter how
+ * many threads generate it, and the heap only holds one user's followees per thread.
+ */
+public class DatasetGenerator {
+
+    private static final String[] WORDS = {
+            "the", "a", "to", "and", "of", "in", "is", "for", "on", "my", "this", "with", "that", "it", "at", "you", "be",
+            "today", "game", "new", "love", "great", "time", "day", "good", "happy", "go", "team", "win", "class", "exam",
+            "coffee", "weekend", "boston", "music", "data", "redis", "mysql", "tweet", "night", "work", "home", "best",
+            "just", "now", "so", "more", "what", "like", "get", "see", "why", "all", "from", "check", "out", "big", "news"};
+
+    /**
+     * @param args key=value options:
+     *             <p> users=100000 : number of users </p>
+     *             <p> following=20 : mean number of users each user follows </p>
+     *             <p> exponent=1.0 : Zipf exponent of user popularity (larger means a heavier celebrity tail) </p>
+     *             <p> reciprocity=0.1 : probability that a followed user follows back </p>
+     *             <p> tweets=1000000 : number of tweets </p>
+     *             <p> activity=0.8 : Zipf exponent of how tweets are spread over the users </p>
+     *             <p> length=lognormal:60:0.5 : tweet length distribution, one of fixed:N, uniform:MIN:MAX, lognormal:MEDIAN:SIGMA </p>
+     *             <p> hashtags=0.2 : probability that a tweet carries a hashtag </p>
+     *             <p> seed=42 partitions=64 threads=(processors) out=res/generated </p>
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = WorkloadRunner.parseOptions(args);
+        int users = Integer.parseInt(options.getOrDefault("users", "100000"));
+        double following = Double.parseDouble(options.getOrDefault("following", "20"));
+        double exponent = Double.parseDouble(options.getOrDefault("exponent", "1.0"));
+        double reciprocity = Double.parseDouble(options.getOrDefault("reciprocity", "0.1"));
+        long tweets = Long.parseLong(options.getOrDefault("tweets", "1000000"));
+        double activity = Double.parseDouble(options.getOrDefault("activity", "0.8"));
+        String length = options.getOrDefault("length", "lognormal:60:0.5");
+        double hashtags = Double.parseDouble(options.getOrDefault("hashtags", "0.2"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        int partitions = Integer.parseInt(options.getOrDefault("partitions", "64"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        File out = new File(options.getOrDefault("out", "res/generated"));
+
+        if (!out.isDirectory() && !out.mkdirs()) {
+            System.out.println("ERROR: could not create output directory: " + out);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long pre_timestamp = System.currentTimeMillis();
+            long edges = generate(executor, new File(out, "follows.csv"), "USER_ID,FOLLOWS_ID", partitions, users,
+                    (partition, writer) -> writeFollows(writer, partition, partitions, users, following, exponent, reciprocity, seed));
+            System.out.println(edges + " follows written in " + (System.currentTimeMillis() - pre_timestamp) / 1000.0 + " seconds");
+
+            pre_timestamp = System.currentTimeMillis();
+            long posted = generate(executor, new File(out, "tweets.csv"), "USER_ID,TWEET_TEXT", partitions, tweets,
+                    (partition, writer) -> writeTweets(writer, partition, partitions, users, tweets, activity, length, hashtags, seed));
+            System.out.println(posted + " tweets written in " + (System.currentTimeMillis() - pre_timestamp) / 1000.0 + " seconds");
+        } catch (IOException | ExecutionException e) {
+            System.out.println("ERROR: could not generate dataset: " + e.getMessage());
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Writes one partition of a CSV file and returns the number of rows written.
+     */
+    private interface PartitionWriter {
+        long write(int partition, Writer writer) throws IOException;
+    }
+
+    /**
+     * Generates the partitions of a CSV file in parallel into part files and concatenates them in partition order.
+     * @return total number of rows written
+     */
+    private static long generate(ExecutorService executor, File csv, String header, int partitions, long total, PartitionWriter partitionWriter)
+            throws IOException, InterruptedException, ExecutionException {
+        List<Future<Long>> parts = new ArrayList<>();
+        AtomicLong done = new AtomicLong();
+        for (int i = 0; i < partitions; i++) {
+            int partition = i;
+            parts.add(executor.submit(() -> {
+                File part = partFile(csv, partition);
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(part), StandardCharsets.UTF_8), 1 << 16)) {
+                    long rows = partitionWriter.write(partition, writer);
+                    System.out.println(csv.getName() + ": " + done.incrementAndGet() + " of " + partitions + " partitions generated");
+                    return rows;
+                }
+            }));
+        }
+        long rows = 0;
+        for (Future<Long> part : parts) {
+            rows += part.get();
+        }
+
+        // concatenate the part files in order
+        try (FileOutputStream target = new FileOutputStream(csv)) {
+            target.write((header + "\n").getBytes(StandardCharsets.UTF_8));
+            FileChannel targetChannel = target.getChannel();
+            for (int i = 0; i < partitions; i++) {
+                File part = partFile(csv, i);
+                try (FileInputStream in = new FileInputStream(part)) {
+                    FileChannel channel = in.getChannel();
+                    long position = 0;
+                    long size = channel.size();
+                    while (position < size) {
+                        position += channel.transferTo(position, size - position, targetChannel);
+                    }
+                }
+                if (!part.delete()) System.out.println("WARNING: could not delete " + part);
+            }
+        }
+        return rows;
+    }
+
+    private static File partFile(File csv, int partition) {
+        return new File(csv.getParentFile(), csv.getName() + ".part" + partition);
+    }
+
+    /**
+     * Writes the follows of the users in one partition (users are numbered 1..users).
+     */
+    private static long writeFollows(Writer writer, int partition, int partitions, int users, double following,
+                                     double exponent, double reciprocity, long seed) throws IOException {
+        Random random = new Random(seed * 1000003L + partition);
+        ZipfSampler popularity = new ZipfSampler(users, exponent);
+        long multiplier = coprimeMultiplier(users, seed);
+        long offset = rankOffset(users, seed);
+        double geometricP = 1.0 / (1.0 + following);
+        long rows = 0;
+
+        int from = (int) ((long) users * partition / partitions) + 1;
+        int to = (int) ((long) users * (partition + 1) / partitions);
+        for (int userID = from; userID <= to; userID++) {
+            // geometric number of followees with the requested mean
+            int degree = (int) Math.min(users - 1, Math.floor(Math.log(1.0 - random.nextDouble()) / Math.log(1.0 - geometricP)));
+            int[] followees = new int[degree];
+            for (int i = 0; i < degree; i++) {
+                followees[i] = userAtRank(popularity.sample(random), users, multiplier, offset);
+            }
+
+            // drop duplicates and self-follows
+            Arrays.sort(followees);
+            int previous = 0;
+            for (int followee : followees) {
+                if (followee == previous || followee == userID) continue;
+                previous = followee;
+                writer.write(userID + "," + followee + "\n");
+                rows++;
+                if (reciprocity > 0 && random.nextDouble() < reciprocity) {
+                    writer.write(followee + "," + userID + "\n");
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Writes one partition of the tweets.
+     */
+    private static long writeTweets(Writer writer, int partition, int partitions, int users, long tweets, double activity,
+                                    String length, double hashtags, long seed) throws IOException {
+        Random random = new Random(seed * 2000003L + partition);
+        ZipfSampler authors = new ZipfSampler(users, activity);
+        ZipfSampler tags = new ZipfSampler(1000, 1.1);
+        // authors use a different popularity ranking from the follow graph
+        long multiplier = coprimeMultiplier(users, seed + 1);
+        long offset = rankOffset(users, seed + 1);
+        String[] lengthSpec = length.split(":");
+
+        long from = tweets * partition / partitions;
+        long to = tweets * (partition + 1) / partitions;
+        StringBuilder text = new StringBuilder(300);
+        for (long i = from; i < to; i++) {
+            int userID = userAtRank(authors.sample(random), users, multiplier, offset);
+            int targetLength = tweetLength(lengthSpec, random);
+
+            text.setLength(0);
+            while (text.length() < targetLength) {
+                if (text.length() > 0) text.append(' ');
+                text.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            if (text.length() > targetLength) text.setLength(Math.max(1, targetLength));
+            if (random.nextDouble() < hashtags) {
+                text.append(" #tag").append(tags.sample(random));
+            }
+            writer.write(userID + ",\"" + text + "\"\n");
+        }
+        return to - from;
+    }
+
+    private static int tweetLength(String[] spec, Random random) {
+        double value;
+        switch (spec[0]) {
+            case "fixed":
+                value = Double.parseDouble(spec[1]);
+                break;
+            case "uniform":
+                double min = Double.parseDouble(spec[1]);
+                value = min + random.nextDouble() * (Double.parseDouble(spec[2]) - min);
+                break;
+            case "lognormal":
+                value = Double.parseDouble(spec[1]) * Math.exp(Double.parseDouble(spec[2]) * random.nextGaussian());
+                break;
+            default:
+                throw new IllegalArgumentException("unknown tweet length distribution: " + spec[0]);
+        }
+        return (int) Math.max(1, Math.min(280, value));
+    }
+
+    /**
+     * Maps a popularity rank (1..users) to a user ID with a seeded affine permutation, so the most popular users are spread
+     * over the ID range without keeping a permutation table in memory. The multiplier and offset of the permutation are
+     * computed once per partition with coprimeMultiplier() and rankOffset().
+     */
+    private static int userAtRank(long rank, int users, long multiplier, long offset) {
+        return (int) ((((rank - 1) * multiplier) % users + offset) % users) + 1;
+    }
+
+    private static long rankOffset(int users, long seed) {
+        return Math.floorMod(seed * 0x9E3779B97F4A7C15L, users);
+    }
+
+    private static long coprimeMultiplier(int users, long seed) {
+        long multiplier = Math.floorMod(seed * 2654435761L + 1, users);
+        if (multiplier == 0) multiplier = 1;
+        while (gcd(multiplier, users) != 1) multiplier++;
+        return multiplier;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,102 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class benchmarks the fan-out time of a single tweet against the author's follower count, comparing the inline
+ * (single pipeline) fan-out with the parallel chunked fan-out of TwitterDatabaseRedis.
+ */
+public class FanoutBenchmark {
+
+    // synthetic authors and followers use IDs far outside the range of the CSV datasets
+    private static final int AUTHOR_ID = -4300;
+    private static final int FOLLOWER_ID_OFFSET = 1000000000;
+
+    /**
+     * Note: the benchmark writes synthetic "followers", "timeline" and "tweet" key-values into the local Redis database and
+     * removes the synthetic followers and timelines when it finishes.
+     *
+     * @param args the arguments required for the main() method
+     *             args[0] : (optional) comma-separated follower counts (defaults to 1000,10000,100000,500000)
+     *             args[1] : (optional) number of tweets posted per follower count and mode (defaults to 5)
+     *             args[2] : (optional) chunk size (defaults to 5000)
+     *             args[3] : (optional) parallelism (defaults to 4)
+     *             key=value options : warmupIterations=0 trials=1 json=... csv=... (see BenchmarkRunner.measure())
+     */
+    public static void main(String[] args) {
+        String[] counts = (args.length > 0 && !args[0].contains("=") ? args[0] : "1000,10000,100000,500000").split(",");
+        int repetitions = args.length > 1 && !args[1].contains("=") ? Integer.parseInt(args[1]) : 5;
+        int chunkSize = args.length > 2 && !args[2].contains("=") ? Integer.parseInt(args[2]) : 5000;
+        int parallelism = args.length > 3 && !args[3].contains("=") ? Integer.parseInt(args[3]) : 4;
+        Map<String, String> options = WorkloadRunner.parseOptions(args);
+        options.putIfAbsent("warmupIterations", "0");
+        options.putIfAbsent("trials", "1");
+
+        TwitterDatabaseRedis api = new TwitterDatabaseRedis();
+        api.setFanoutChunkSize(chunkSize);
+        api.setFanoutParallelism(parallelism);
+        api.authenticate(null, null, null);
+        Jedis jedis = new Jedis();
+
+        try {
+            BenchmarkRunner.measure(api.getClass().getName(), "fanout", options, (seed, warmup) -> {
+                Map<String, Object> trial = new LinkedHashMap<>();
+                System.out.println("followers\tinline ms/tweet\tparallel ms/tweet\tspeedup");
+                for (String count : counts) {
+                    int followers = Integer.parseInt(count.trim());
+                    createFollowers(jedis, followers);
+
+                    api.setFanoutThreshold(Integer.MAX_VALUE);
+                    double inline = timePosts(api, repetitions);
+                    api.setFanoutThreshold(0);
+                    double parallel = timePosts(api, repetitions);
+
+                    System.out.printf("%d\t%.2f\t%.2f\t%.2fx%n", followers, inline, parallel, inline / parallel);
+                    trial.put("followers_" + followers + "_inline_ms", inline);
+                    trial.put("followers_" + followers + "_parallel_ms", parallel);
+                    deleteFollowers(jedis, followers);
+                }
+                return trial;
+            });
+        } finally {
+            jedis.close();
+            api.closeConnection();
+        }
+    }
+
+    /**
+     * Posts the given number of tweets from the synthetic author and returns the average time per tweet.
+     * @param api Redis API
+     * @param repetitions number of tweets to post
+     * @return average milliseconds per tweet
+     */
+    private static double timePosts(TwitterDatabaseAPI api, int repetitions) {
+        long pre_timestamp = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) {
+            api.postTweet(new Tweet(AUTHOR_ID, "fan-out benchmark tweet " + i));
+        }
+        return (System.nanoTime() - pre_timestamp) / 1000000.0 / repetitions;
+    }
+
+    private static void createFollowers(Jedis jedis, int followers) {
+        jedis.del("followers:" + AUTHOR_ID);
+        Pipeline p = jedis.pipelined();
+        for (int i = 0; i < followers; i++) {
+            p.rpush("followers:" + AUTHOR_ID, Integer.toString(FOLLOWER_ID_OFFSET + i));
+        }
+        p.sync();
+    }
+
+    private static void deleteFollowers(Jedis jedis, int followers) {
+        Pipeline p = jedis.pipelined();
+        for (int i = 0; i < followers; i++) {
+            p.del("timeline:" + (FOLLOWER_ID_OFFSET + i));
+        }
+        p.del("followers:" + AUTHOR_ID);
+        p.sync();
+    }
+}
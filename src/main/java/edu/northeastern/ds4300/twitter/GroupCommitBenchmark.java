@@ -0,0 +1,156 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * This class compares the post throughput and latency of concurrent writers that each own a connection with writers that
+ * share a write-behind group commit stage (see TwitterDatabaseGroupCommit).
+ */
+public class GroupCommitBenchmark {
+
+    private static final String MYSQL_URL = "jdbc:mysql://localhost:3306/twittertweets?serverTimezone=EST5EDT";
+
+    /**
+     * Note: the database should already be set up (TwitterRedisSetup for Redis); both modes insert the tweets.
+     *
+     * @param args the arguments required for the main() method
+     *             args[0] : implementation name (see BenchmarkRunner.createImplementation())
+     *             args[1] : tweets CSV file
+     *             args[2] : number of writer threads
+     *             args[3] : number of posts in each mode
+     *             key=value options : maxGroup=64 maxDelay=1000 (microseconds) url=... user=... password=...
+     *                warmupIterations=0 trials=1 json=... csv=... (see BenchmarkRunner.measure())
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.out.println("Error: usage: <implementation> <tweets.csv> <threads> <posts> [maxGroup=64 maxDelay=1000 url= user= password=]");
+            return;
+        }
+        String implementation = args[0];
+        int threads = Integer.parseInt(args[2]);
+        int posts = Integer.parseInt(args[3]);
+        Map<String, String> options = WorkloadRunner.parseOptions(Arrays.copyOfRange(args, 4, args.length));
+        options.putIfAbsent("warmupIterations", "0");
+        options.putIfAbsent("trials", "1");
+        int maxGroup = Integer.parseInt(options.getOrDefault("maxGroup", "64"));
+        long maxDelay = Long.parseLong(options.getOrDefault("maxDelay", "1000"));
+        // both insert a group with a single INSERT statement, so a failed group wrote nothing
+        boolean mysql = implementation.equals("mysql") || implementation.equals("hybrid");
+        String url = options.getOrDefault("url", mysql ? MYSQL_URL : null);
+        String user = options.get("user");
+        String password = options.get("password");
+
+        List<Tweet> tweets;
+        try {
+            tweets = readTweets(new File(args[1]));
+        } catch (FileNotFoundException e) {
+            System.out.println("Could not find provided file.");
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+        if (tweets.isEmpty()) {
+            System.out.println("Error: no tweets in " + args[1]);
+            return;
+        }
+
+        Supplier<TwitterDatabaseAPI> factory = () -> BenchmarkRunner.createImplementation(implementation);
+
+        String name = factory.get().getClass().getName();
+        BenchmarkRunner.measure(name, "groupcommit", options, (seed, warmup) -> {
+            Map<String, Object> trial = new LinkedHashMap<>();
+
+            // direct mode: every writer thread posts through its own connection
+            List<TwitterDatabaseAPI> connections = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                TwitterDatabaseAPI api = factory.get();
+                api.authenticate(url, user, password);
+                connections.add(api);
+            }
+            report("direct", run(connections, tweets, posts), trial);
+            for (TwitterDatabaseAPI api : connections) {
+                api.closeConnection();
+            }
+
+            // group commit mode: every writer thread posts through the shared stage
+            TwitterDatabaseGroupCommit shared = new TwitterDatabaseGroupCommit(factory, maxGroup, maxDelay, mysql);
+            shared.authenticate(url, user, password);
+            report("group", run(Collections.nCopies(threads, shared), tweets, posts), trial);
+            shared.closeConnection();
+            return trial;
+        });
+    }
+
+    /**
+     * Posts tweets from one thread per API instance until the given number of posts is reached.
+     * @return {elapsed nanoseconds, latencies}
+     */
+    private static Object[] run(List<TwitterDatabaseAPI> apis, List<Tweet> tweets, int posts) {
+        AtomicInteger next = new AtomicInteger();
+        List<LatencyRecorder> recorders = new ArrayList<>();
+        List<Thread> workers = new ArrayList<>();
+        long pre_timestamp = System.nanoTime();
+        for (TwitterDatabaseAPI api : apis) {
+            LatencyRecorder recorder = new LatencyRecorder();
+            recorders.add(recorder);
+            Thread worker = new Thread(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < posts) {
+                    long start = System.nanoTime();
+                    api.postTweet(tweets.get(i % tweets.size()));
+                    recorder.add(System.nanoTime() - start);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long elapsed = System.nanoTime() - pre_timestamp;
+        LatencyRecorder latencies = new LatencyRecorder();
+        for (LatencyRecorder recorder : recorders) {
+            latencies.addAll(recorder);
+        }
+        return new Object[]{elapsed, latencies};
+    }
+
+    /**
+     * Prints the results of a mode and adds them to the metrics of the trial, prefixed with the mode.
+     */
+    private static void report(String mode, Object[] result, Map<String, Object> trial) {
+        LatencyRecorder latencies = (LatencyRecorder) result[1];
+        double throughput = latencies.count() / ((Long) result[0] / 1e9);
+        System.out.printf("%s: %.1f posts/s, latency mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", mode,
+                throughput, latencies.meanMillis(), latencies.percentileMillis(0.5),
+                latencies.percentileMillis(0.99), latencies.maxMillis());
+        trial.put(mode + "_throughput", throughput);
+        BenchmarkRunner.putLatencies(trial, mode + "_write", latencies);
+    }
+
+    private static List<Tweet> readTweets(File csv) throws FileNotFoundException {
+        List<Tweet> tweets = new ArrayList<>();
+        Scanner sc = new Scanner(csv);
+        if (sc.hasNextLine()) sc.nextLine(); // ignores the columns headers
+        while (sc.hasNextLine()) {
+            String[] tweet = sc.nextLine().split(",");
+            tweets.add(new Tweet(Integer.parseInt(tweet[0]), tweet.length > 1 ? tweet[1] : ""));
+        }
+        sc.close();
+        return tweets;
+    }
+}
@@ -0,0 +1,132 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.params.ZRangeParams;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class extracts the hashtags of tweets and maintains the hashtag index that getHashtagTimeline() reads. Hashtags are
+ * matched case-insensitively: "#NEU" and "#neu" are the same tag, "neu".
+ *
+ * <p> The Redis implementations keep the tweet IDs of every tag in a sorted set, "hashtag:&lt;tag&gt;", scored by tweet ID
+ * (tweet IDs are assigned in posting order, so the set is in time order). The entries are added in the same pipeline as
+ * the post, and each set is trimmed to its CAPACITY most recent tweet IDs. A page of a hashtag timeline is a single
+ * ZRANGE BYSCORE REV below the cursor. </p>
+ *
+ * <p> The MySQL implementations keep the index in the `hashtag` table, read by a range scan of its primary key:
+ * <pre>
+ * CREATE TABLE hashtag (tag VARCHAR(140) NOT NULL, tweet_id INT NOT NULL, PRIMARY KEY (tag, tweet_id));
+ * </pre></p>
+ */
+public class HashtagIndex {
+
+    public static final String KEY_PREFIX = "hashtag:";
+    public static final int CAPACITY = 1000;
+
+    // word characters only, so that tags are safe in Redis keys and SQL literals
+    private static final Pattern HASHTAG = Pattern.compile("#(\\w+)");
+    private static final Pattern WORD = Pattern.compile("\\w+");
+
+    private HashtagIndex() {
+    }
+
+    /**
+     * Extracts the distinct hashtags of a tweet.
+     * @param tweetText tweet text
+     * @return tags in order of first appearance, lower-cased and without the '#'
+     */
+    public static List<String> extract(String tweetText) {
+        Set<String> tags = new LinkedHashSet<>();
+        if (tweetText == null) return new ArrayList<>(tags);
+        Matcher matcher = HASHTAG.matcher(tweetText);
+        while (matcher.find()) {
+            tags.add(matcher.group(1).toLowerCase(Locale.ROOT));
+        }
+        return new ArrayList<>(tags);
+    }
+
+    /**
+     * Normalizes a tag given to getHashtagTimeline() the way extract() does.
+     * @param tag tag, with or without the '#'
+     * @return lower-cased tag without the '#'
+     * @throws IllegalArgumentException if the tag is not a single word
+     */
+    public static String normalize(String tag) {
+        String word = tag.startsWith("#") ? tag.substring(1) : tag;
+        if (!WORD.matcher(word).matches()) throw new IllegalArgumentException("not a hashtag: " + tag);
+        return word.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Groups the index entries of a list of consecutively numbered tweets by Redis key.
+     * @param tweets list of Tweet objects
+     * @param firstTweetID tweet ID of the first tweet of the list
+     * @return map of hashtag key to the tweet IDs added to it, with their scores
+     */
+    public static Map<String, Map<String, Double>> entries(List<Tweet> tweets, long firstTweetID) {
+        Map<String, Map<String, Double>> entries = new HashMap<>();
+        for (int i = 0; i < tweets.size(); i++) {
+            long tweetID = firstTweetID + i;
+            for (String tag : extract(tweets.get(i).getTweetText())) {
+                entries.computeIfAbsent(KEY_PREFIX + tag, key -> new HashMap<>()).put(Long.toString(tweetID), (double) tweetID);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Adds index entries to a pipeline, trimming every set it adds to.
+     * @param p pipeline the entries are sent with
+     * @param entries map of hashtag key to tweet IDs and scores, as returned by entries()
+     */
+    public static void index(Pipeline p, Map<String, Map<String, Double>> entries) {
+        for (Map.Entry<String, Map<String, Double>> entry : entries.entrySet()) {
+            p.zadd(entry.getKey(), entry.getValue());
+            p.zremrangeByRank(entry.getKey(), 0, -CAPACITY - 1);
+        }
+    }
+
+    /**
+     * Reads a page of tweet IDs from a hashtag set with a single ZRANGE BYSCORE REV.
+     * @param jedis connection to the server holding the set
+     * @param tag normalized tag
+     * @param cursor only tweet IDs below the cursor are read (0 reads from the most recent)
+     * @param limit maximum number of tweet IDs
+     * @return tweet IDs, newest first
+     */
+    public static List<String> range(Jedis jedis, String tag, int cursor, int limit) {
+        String max = cursor > 0 ? "(" + cursor : "+inf";
+        // with REV, the start of the range is the upper bound
+        return jedis.zrange(KEY_PREFIX + tag, new ZRangeParams(Protocol.Keyword.BYSCORE, max, "-inf").rev().limit(0, limit));
+    }
+
+    /**
+     * Builds the INSERT statement adding a list of tweets to the `hashtag` table.
+     * @param tweets list of Tweet objects
+     * @param tweetIDs SQL expressions of the tweets' IDs, in list order
+     * @return INSERT statement, or null if none of the tweets has a hashtag
+     */
+    public static String insertStatement(List<Tweet> tweets, String[] tweetIDs) {
+        StringBuilder statement = new StringBuilder("INSERT IGNORE INTO hashtag (tag, tweet_id) VALUES ");
+        boolean first = true;
+        for (int i = 0; i < tweets.size(); i++) {
+            for (String tag : extract(tweets.get(i).getTweetText())) {
+                if (!first) statement.append(", ");
+                statement.append("('").append(tag).append("', ").append(tweetIDs[i]).append(')');
+                first = false;
+            }
+        }
+        return first ? null : statement.toString();
+    }
+}
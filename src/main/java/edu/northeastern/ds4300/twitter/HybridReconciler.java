@@ -0,0 +1,54 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * This class runs the reconciliation job of the hybrid implementation (see TwitterDatabaseHybrid.reconcile()): it compares
+ * the cached timeline of every user who follows someone with the timeline computed by MySQL, in batches, and replaces the
+ * cached timelines that have diverged.
+ */
+public class HybridReconciler {
+
+    private static final String MYSQL_URL = "jdbc:mysql://localhost:3306/twittertweets?serverTimezone=EST5EDT";
+
+    /**
+     * @param args the arguments required for the main() method
+     *             args[0], args[1] : MySQL username and password
+     *             key=value options:
+     *             <p> url=jdbc:mysql://... : MySQL connector URL (the local twittertweets database by default) </p>
+     *             <p> host=localhost port=6379 : Redis server </p>
+     *             <p> batch=100 : users compared per MySQL query </p>
+     *             <p> interval=0 : seconds between passes (0 runs a single pass) </p>
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Error: Must provide username and password to connect to database.");
+            return;
+        }
+        Map<String, String> options = WorkloadRunner.parseOptions(Arrays.copyOfRange(args, 2, args.length));
+        int batch = Integer.parseInt(options.getOrDefault("batch", "100"));
+        long interval = Long.parseLong(options.getOrDefault("interval", "0"));
+
+        TwitterDatabaseHybrid api = new TwitterDatabaseHybrid();
+        api.setRedis(options.getOrDefault("host", "localhost"), Integer.parseInt(options.getOrDefault("port", "6379")));
+        api.authenticate(options.getOrDefault("url", MYSQL_URL), args[0], args[1]);
+        try {
+            do {
+                long pre_timestamp = System.currentTimeMillis();
+                int[] users = api.getUserIDs();
+                int repaired = 0;
+                for (int start = 0; start < users.length; start += batch) {
+                    repaired += api.reconcile(Arrays.copyOfRange(users, start, Math.min(users.length, start + batch)));
+                }
+                System.out.println(users.length + " timelines compared, " + repaired + " repaired in "
+                        + (System.currentTimeMillis() - pre_timestamp) / 1000.0 + " seconds");
+                if (interval > 0) Thread.sleep(interval * 1000);
+            } while (interval > 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            api.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class compares the two timeline modes of TwitterDatabaseRedis: timelines of tweet IDs, read with an LRANGE followed
+ * by an MGET of the tweet bodies, and inline timelines of encoded tweets, read with a single LRANGE. The same synthetic
+ * tweets are posted in both modes, then the timeline read latency and the memory of the timeline lists are measured, and a
+ * cost model relates the memory spent to the read time saved.
+ */
+public class InlineTimelineBenchmark {
+
+    // synthetic users use IDs far outside the range of the CSV datasets
+    private static final int USER_ID_OFFSET = 1000000000;
+
+    /**
+     * Note: the benchmark writes synthetic "followers", "timeline", "itimeline", "usertweet" and "tweet" key-values into the
+     * local Redis database and removes them after every trial.
+     *
+     * @param args the arguments required for the main() function
+     *             <p> args[0..] : key=value options: users=2000, follows=50 (followees per user), tweets=20000,
+     *                depth=100 (inline timeline length), length=80 (characters per tweet text), reads=20000 (timed
+     *                getTimeline() calls per mode), seed=42, and warmupIterations=0 trials=1 json=... csv=... (see
+     *                BenchmarkRunner.measure()) </p>
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = WorkloadRunner.parseOptions(args);
+        int users = Integer.parseInt(options.getOrDefault("users", "2000"));
+        int follows = Integer.parseInt(options.getOrDefault("follows", "50"));
+        int tweets = Integer.parseInt(options.getOrDefault("tweets", "20000"));
+        int depth = Integer.parseInt(options.getOrDefault("depth", "100"));
+        int length = Integer.parseInt(options.getOrDefault("length", "80"));
+        int reads = Integer.parseInt(options.getOrDefault("reads", "20000"));
+        options.putIfAbsent("warmupIterations", "0");
+        options.putIfAbsent("trials", "1");
+
+        TwitterDatabaseRedis ids = new TwitterDatabaseRedis();
+        ids.authenticate(null, null, null);
+        TwitterDatabaseRedis inline = new TwitterDatabaseRedis();
+        inline.setInlineTimelines(depth);
+        inline.authenticate(null, null, null);
+        Jedis jedis = new Jedis();
+
+        try {
+            BenchmarkRunner.measure(inline.getClass().getName(), "inline", options, (trialSeed, warmup) -> {
+                try {
+                    Random random = new Random(trialSeed);
+                    createFollowers(jedis, users, follows, random);
+
+                    // the same tweets are posted in both modes, so both sets of timelines see the same workload
+                    char[] filler = new char[Math.max(0, length - 12)];
+                    Arrays.fill(filler, 'x');
+                    long pre_timestamp = System.nanoTime();
+                    for (int i = 0; i < tweets; i++) {
+                        Tweet t = new Tweet(USER_ID_OFFSET + random.nextInt(users), "tweet " + i + " " + new String(filler));
+                        ids.postTweet(t);
+                        inline.postTweet(t);
+                    }
+                    System.out.printf("Posted %d tweets to %d users (%d followees each) in both modes in %.3f seconds%n",
+                            tweets, users, follows, (System.nanoTime() - pre_timestamp) / 1e9);
+
+                    LatencyRecorder idLatencies = timeReads(ids, users, reads, new Random(trialSeed));
+                    LatencyRecorder inlineLatencies = timeReads(inline, users, reads, new Random(trialSeed));
+
+                    long idBytes = 0;
+                    long inlineBytes = 0;
+                    long idEntries = 0;
+                    long inlineEntries = 0;
+                    for (int u = 0; u < users; u++) {
+                        idBytes += memoryUsage(jedis, "timeline:" + (USER_ID_OFFSET + u));
+                        inlineBytes += memoryUsage(jedis, "itimeline:" + (USER_ID_OFFSET + u));
+                        idEntries += jedis.llen("timeline:" + (USER_ID_OFFSET + u));
+                        inlineEntries += jedis.llen("itimeline:" + (USER_ID_OFFSET + u));
+                    }
+
+                    System.out.println("mode\tmean us\tp50 us\tp99 us\ttimeline entries\ttimeline bytes");
+                    System.out.printf("ids\t%.1f\t%.1f\t%.1f\t%d\t%d%n", idLatencies.meanMillis() * 1000,
+                            idLatencies.percentileMillis(0.5) * 1000, idLatencies.percentileMillis(0.99) * 1000, idEntries, idBytes);
+                    System.out.printf("inline\t%.1f\t%.1f\t%.1f\t%d\t%d%n", inlineLatencies.meanMillis() * 1000,
+                            inlineLatencies.percentileMillis(0.5) * 1000, inlineLatencies.percentileMillis(0.99) * 1000,
+                            inlineEntries, inlineBytes);
+
+                    // cost model: every inline entry holds the encoded tweet instead of its ID, and the lists are capped at depth
+                    // entries, so the extra memory is about min(users * depth, tweets * follows) * (entry bytes - ID bytes), while
+                    // each read saves the MGET of its (up to) 10 tweet bodies
+                    double idEntryBytes = idEntries == 0 ? 0 : idBytes / (double) idEntries;
+                    double inlineEntryBytes = inlineEntries == 0 ? 0 : inlineBytes / (double) inlineEntries;
+                    long cappedEntries = Math.min((long) users * depth, (long) tweets * follows);
+                    double extraBytes = cappedEntries * (inlineEntryBytes - idEntryBytes);
+                    double savedMicros = (idLatencies.meanMillis() - inlineLatencies.meanMillis()) * 1000;
+                    System.out.printf("Bytes per timeline entry: %.1f (ids), %.1f (inline)%n", idEntryBytes, inlineEntryBytes);
+                    System.out.printf("Cost model: min(%d users x %d, %d tweets x %d followers) x %.1f bytes = %.1f MB extra "
+                                    + "(measured: %.1f MB, plus %.1f MB the ID timelines would grow beyond the cap)%n",
+                            users, depth, tweets, follows, inlineEntryBytes - idEntryBytes, extraBytes / 1e6,
+                            (inlineBytes - idBytes) / 1e6, Math.max(0, idEntries - inlineEntries) * idEntryBytes / 1e6);
+                    System.out.printf("Read time saved: %.1f us per timeline (%.0f%%), %.3f us per KB of timeline memory per user%n",
+                            savedMicros, 100 * savedMicros / Math.max(1e-9, idLatencies.meanMillis() * 1000),
+                            savedMicros / Math.max(1e-9, (inlineBytes - idBytes) / 1024.0 / users));
+
+                    Map<String, Object> trial = new LinkedHashMap<>();
+                    BenchmarkRunner.putLatencies(trial, "ids_read", idLatencies);
+                    BenchmarkRunner.putLatencies(trial, "inline_read", inlineLatencies);
+                    trial.put("ids_timeline_entries", (double) idEntries);
+                    trial.put("inline_timeline_entries", (double) inlineEntries);
+                    trial.put("ids_timeline_bytes", (double) idBytes);
+                    trial.put("inline_timeline_bytes", (double) inlineBytes);
+                    return trial;
+                } finally {
+                    deleteUsers(jedis, users);
+                }
+            });
+        } finally {
+            jedis.close();
+            ids.closeConnection();
+            inline.closeConnection();
+        }
+    }
+
+    /**
+     * Reads the timelines of random users, after as many warmup reads.
+     * @param api Redis API
+     * @param users number of synthetic users
+     * @param reads number of timed reads
+     * @param random source of the user IDs
+     * @return latencies of the timed reads
+     */
+    private static LatencyRecorder timeReads(TwitterDatabaseAPI api, int users, int reads, Random random) {
+        for (int i = 0; i < reads; i++) {
+            api.getTimeline(USER_ID_OFFSET + random.nextInt(users));
+        }
+        LatencyRecorder latencies = new LatencyRecorder();
+        for (int i = 0; i < reads; i++) {
+            int userID = USER_ID_OFFSET + random.nextInt(users);
+            long pre_timestamp = System.nanoTime();
+            api.getTimeline(userID);
+            latencies.add(System.nanoTime() - pre_timestamp);
+        }
+        return latencies;
+    }
+
+    private static long memoryUsage(Jedis jedis, String key) {
+        Long bytes = jedis.memoryUsage(key);
+        return bytes == null ? 0 : bytes;
+    }
+
+    private static void createFollowers(Jedis jedis, int users, int follows, Random random) {
+        Pipeline p = jedis.pipelined();
+        for (int u = 0; u < users; u++) {
+            p.del("followers:" + (USER_ID_OFFSET + u));
+        }
+        for (int u = 0; u < users; u++) {
+            for (int i = 0; i < follows; i++) {
+                p.rpush("followers:" + (USER_ID_OFFSET + random.nextInt(users)), Integer.toString(USER_ID_OFFSET + u));
+            }
+        }
+        p.sync();
+    }
+
+    private static void deleteUsers(Jedis jedis, int users) {
+        for (int u = 0; u < users; u++) {
+            int userID = USER_ID_OFFSET + u;
+            List<String> tweetIDs = jedis.lrange("usertweet:" + userID, 0, -1);
+            Pipeline p = jedis.pipelined();
+            for (String tweetID : tweetIDs) {
+                p.del("tweet:" + tweetID);
+            }
+            p.del("followers:" + userID, "timeline:" + userID, "itimeline:" + userID, "usertweet:" + userID);
+            p.sync();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * This class represents a growable list of primitive ints, used to collect user and tweet IDs without boxing them into Integers.
+ */
+public class IntList {
+
+    private int[] values;
+    private int size;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int initialCapacity) {
+        this.values = new int[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * Appends a value to the end of the list.
+     * @param value value to append
+     */
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Gets the value at the given index.
+     * @param index index
+     * @return value
+     */
+    public int get(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        return values[index];
+    }
+
+    /**
+     * Checks whether the list contains a value.
+     * @param value value to look for
+     * @return true if the value is in the list
+     */
+    public boolean contains(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the first occurrence of a value, keeping the order of the other values.
+     * @param value value to remove
+     * @return true if the value was in the list
+     */
+    public boolean remove(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                System.arraycopy(values, i + 1, values, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of values in the list.
+     * @return number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies the values into an array of exactly the list's size.
+     * @return array of values
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Parses a collection of integer strings (e.g. user IDs read from Redis) into an int array.
+     * @param values integer strings
+     * @return array of parsed ints, in the collection's iteration order
+     */
+    public static int[] parse(Collection<String> values) {
+        int[] parsed = new int[values.size()];
+        int i = 0;
+        for (String value : values) {
+            parsed[i++] = Integer.parseInt(value);
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,72 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.util.Arrays;
+
+/**
+ * This class records operation latencies (in nanoseconds) and computes their mean and percentiles.
+ */
+public class LatencyRecorder {
+
+    private long[] latencies = new long[1024];
+    private int size;
+    private long[] sorted;
+
+    /**
+     * Records one latency.
+     * @param nanos latency in nanoseconds
+     */
+    public void add(long nanos) {
+        if (size == latencies.length) latencies = Arrays.copyOf(latencies, size * 2);
+        latencies[size++] = nanos;
+        sorted = null;
+    }
+
+    /**
+     * Records every latency of another recorder (e.g. to combine the recorders of several threads).
+     * @param other recorder to copy from
+     */
+    public void addAll(LatencyRecorder other) {
+        for (int i = 0; i < other.size; i++) add(other.latencies[i]);
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     * @return number of latencies
+     */
+    public int count() {
+        return size;
+    }
+
+    /**
+     * Gets the mean latency.
+     * @return mean latency in milliseconds (0 if nothing was recorded)
+     */
+    public double meanMillis() {
+        if (size == 0) return 0;
+        long total = 0;
+        for (int i = 0; i < size; i++) total += latencies[i];
+        return total / 1e6 / size;
+    }
+
+    /**
+     * Gets a latency percentile.
+     * @param p percentile between 0 and 1 (e.g. 0.99)
+     * @return latency in milliseconds (0 if nothing was recorded)
+     */
+    public double percentileMillis(double p) {
+        if (size == 0) return 0;
+        if (sorted == null) {
+            sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+        }
+        return sorted[Math.min(size - 1, (int) (p * size))] / 1e6;
+    }
+
+    /**
+     * Gets the maximum latency.
+     * @return maximum latency in milliseconds (0 if nothing was recorded)
+     */
+    public double maxMillis() {
+        return percentileMillis(1.0);
+    }
+}
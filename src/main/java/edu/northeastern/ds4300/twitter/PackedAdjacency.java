@@ -0,0 +1,328 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class stores follower/following lists ("adjacency") in Redis as compact binary segments instead of lists of
+ * decimal strings. Each list is kept under a "packedfollowers:&lt;id&gt;" or "packedfollowing:&lt;id&gt;" key as a Redis list of
+ * segments; a segment holds up to SEGMENT_CAPACITY sorted user IDs encoded as a varint count, the first ID, and the
+ * varint deltas between consecutive IDs. Reading a list decodes the segments straight into an int array.
+ *
+ * <p> Segments are not ordered among themselves (follows are added to the last segment), so every list has a bounds list,
+ * "packedfollowersbounds:&lt;id&gt;" or "packedfollowingbounds:&lt;id&gt;", holding the lowest and highest ID of each segment at
+ * the same index. A follow or unfollow reads the bounds and then only the segments that can hold the ID, instead of
+ * decoding the whole list. </p>
+ */
+public class PackedAdjacency {
+
+    public static final String FOLLOWERS_PREFIX = "packedfollowers:";
+    public static final String FOLLOWING_PREFIX = "packedfollowing:";
+    public static final int SEGMENT_CAPACITY = 1024;
+
+    // bounds of a segment emptied by a removal, until the segment and its bounds are dropped
+    private static final byte[] EMPTY_BOUNDS = new byte[0];
+
+    private PackedAdjacency() {
+    }
+
+    /**
+     * Reads and decodes every segment of a packed list.
+     * @param jedis Redis connection
+     * @param key packed list key
+     * @return user IDs (sorted within each segment); empty if the key does not exist
+     */
+    public static int[] read(Jedis jedis, String key) {
+        return decode(jedis.lrange(bytes(key), 0, -1));
+    }
+
+    /**
+     * Queues the read of every segment of a packed list on a pipeline.
+     * @param p Redis pipeline
+     * @param key packed list key
+     * @return segments, to decode() once the pipeline is synced
+     */
+    public static Response<List<byte[]>> read(Pipeline p, String key) {
+        return p.lrange(bytes(key), 0, -1);
+    }
+
+    /**
+     * Decodes a list of segments into one int array.
+     * @param segments encoded segments
+     * @return user IDs
+     */
+    public static int[] decode(List<byte[]> segments) {
+        int total = 0;
+        for (byte[] segment : segments) {
+            total += count(segment);
+        }
+        int[] ids = new int[total];
+        int offset = 0;
+        for (byte[] segment : segments) {
+            offset = decodeSegment(segment, ids, offset);
+        }
+        return ids;
+    }
+
+    /**
+     * Replaces a packed list and its bounds with the given user IDs (queued on a pipeline, e.g. during bulk setup).
+     * @param p Redis pipeline
+     * @param key packed list key
+     * @param ids user IDs (in any order; the array is sorted in place)
+     */
+    public static void write(Pipeline p, String key, int[] ids) {
+        Arrays.sort(ids);
+        p.del(key, boundsKey(key));
+        for (int start = 0; start < ids.length; start += SEGMENT_CAPACITY) {
+            int end = Math.min(start + SEGMENT_CAPACITY, ids.length);
+            p.rpush(bytes(key), encodeSegment(ids, start, end));
+            p.rpush(bytes(boundsKey(key)), encodeBounds(ids, start, end));
+        }
+    }
+
+    /**
+     * Adds or removes a follow relationship in both packed lists ("packedfollowing:&lt;userID&gt;" and
+     * "packedfollowers:&lt;followeeID&gt;"). The bounds of both lists are read first, then only the segments whose bounds
+     * cover the ID (and the last segment, which receives an added ID), in two pipelines; the lists and their bounds are
+     * watched and rewritten in one transaction, which is retried if either changes concurrently. Only the segment holding
+     * (or receiving) the ID is rewritten; segments emptied by a removal are dropped. A list whose bounds are missing or do
+     * not match its segments (e.g. written before bounds were kept) is read whole once and its bounds are rebuilt.
+     * @param jedis Redis connection
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the followee
+     * @param add true to add the relationship (no effect if it exists), false to remove it
+     */
+    public static void updateEdge(Jedis jedis, int userID, int followeeID, boolean add) {
+        EdgeUpdate following = new EdgeUpdate(FOLLOWING_PREFIX + userID, followeeID, add);
+        EdgeUpdate followers = new EdgeUpdate(FOLLOWERS_PREFIX + followeeID, userID, add);
+        while (true) {
+            jedis.watch(following.key, following.boundsKey, followers.key, followers.boundsKey);
+            Pipeline p = jedis.pipelined();
+            following.readBounds(p);
+            followers.readBounds(p);
+            p.sync();
+            p = jedis.pipelined();
+            following.readSegments(p);
+            followers.readSegments(p);
+            p.sync();
+
+            Transaction t = jedis.multi();
+            following.update(t);
+            followers.update(t);
+            if (t.exec() != null) return;
+        }
+    }
+
+    /**
+     * Gets the key of the bounds of a packed list, e.g. "packedfollowingbounds:42" for "packedfollowing:42".
+     * @param key packed list key
+     * @return bounds list key
+     */
+    public static String boundsKey(String key) {
+        int colon = key.indexOf(':');
+        return key.substring(0, colon) + "bounds" + key.substring(colon);
+    }
+
+    /**
+     * Encodes the bounds of a segment: its lowest and highest user ID (8 bytes).
+     * @param sortedIDs sorted user IDs
+     * @param from first index of the segment (inclusive)
+     * @param to last index of the segment (exclusive, greater than from)
+     * @return encoded bounds
+     */
+    public static byte[] encodeBounds(int[] sortedIDs, int from, int to) {
+        return ByteBuffer.allocate(8).putInt(sortedIDs[from]).putInt(sortedIDs[to - 1]).array();
+    }
+
+    /**
+     * The update of one packed list by updateEdge(), read in two pipelined steps.
+     */
+    private static class EdgeUpdate {
+        private final byte[] key;
+        private final byte[] boundsKey;
+        private final int id;
+        private final boolean add;
+        private Response<List<byte[]>> bounds;
+        private Response<Long> length;
+        // segments read by index: those whose bounds cover the ID and the last one, or all of them to rebuild the bounds
+        private final Map<Integer, Response<byte[]>> segments = new TreeMap<>();
+        private Response<List<byte[]>> allSegments;
+
+        private EdgeUpdate(String key, int id, boolean add) {
+            this.key = bytes(key);
+            this.boundsKey = bytes(boundsKey(key));
+            this.id = id;
+            this.add = add;
+        }
+
+        private void readBounds(Pipeline p) {
+            segments.clear();
+            allSegments = null;
+            bounds = p.lrange(boundsKey, 0, -1);
+            length = p.llen(key);
+        }
+
+        private void readSegments(Pipeline p) {
+            List<byte[]> ranges = bounds.get();
+            if (ranges.size() != length.get()) {
+                allSegments = p.lrange(key, 0, -1);
+                return;
+            }
+            for (int i = 0; i < ranges.size(); i++) {
+                ByteBuffer range = ByteBuffer.wrap(ranges.get(i));
+                if (range.getInt(0) <= id && id <= range.getInt(4)) segments.put(i, p.lindex(key, i));
+            }
+            if (add && !ranges.isEmpty() && !segments.containsKey(ranges.size() - 1)) {
+                segments.put(ranges.size() - 1, p.lindex(key, ranges.size() - 1));
+            }
+        }
+
+        /**
+         * Queues the rewrite of the segment that holds (or receives) the ID, and of its bounds.
+         */
+        private void update(Transaction t) {
+            Map<Integer, byte[]> read = new TreeMap<>();
+            int segmentCount;
+            if (allSegments != null) {
+                List<byte[]> all = allSegments.get();
+                segmentCount = all.size();
+                t.del(boundsKey);
+                for (int i = 0; i < all.size(); i++) {
+                    read.put(i, all.get(i));
+                    int[] ids = new int[count(all.get(i))];
+                    decodeSegment(all.get(i), ids, 0);
+                    t.rpush(boundsKey, ids.length == 0 ? EMPTY_BOUNDS : encodeBounds(ids, 0, ids.length));
+                }
+            } else {
+                segmentCount = bounds.get().size();
+                for (Map.Entry<Integer, Response<byte[]>> segment : segments.entrySet()) {
+                    read.put(segment.getKey(), segment.getValue().get());
+                }
+            }
+
+            for (Map.Entry<Integer, byte[]> segment : read.entrySet()) {
+                int[] ids = new int[count(segment.getValue())];
+                decodeSegment(segment.getValue(), ids, 0);
+                if (Arrays.binarySearch(ids, id) < 0) continue;
+                if (add) return; // already in the list
+                int[] remaining = new int[ids.length - 1];
+                int k = 0;
+                for (int other : ids) {
+                    if (other != id) remaining[k++] = other;
+                }
+                int index = segment.getKey();
+                if (remaining.length > 0) {
+                    t.lset(key, index, encodeSegment(remaining, 0, remaining.length));
+                    t.lset(boundsKey, index, encodeBounds(remaining, 0, remaining.length));
+                } else {
+                    byte[] empty = encodeSegment(remaining, 0, 0);
+                    t.lset(key, index, empty);
+                    t.lrem(key, 0, empty);
+                    t.lset(boundsKey, index, EMPTY_BOUNDS);
+                    t.lrem(boundsKey, 0, EMPTY_BOUNDS);
+                }
+                return;
+            }
+            if (!add) return; // not in the list
+
+            byte[] last = segmentCount == 0 ? null : read.get(segmentCount - 1);
+            if (last != null && count(last) < SEGMENT_CAPACITY) {
+                int[] ids = new int[count(last) + 1];
+                decodeSegment(last, ids, 0);
+                ids[ids.length - 1] = id;
+                Arrays.sort(ids);
+                t.lset(key, -1, encodeSegment(ids, 0, ids.length));
+                t.lset(boundsKey, -1, encodeBounds(ids, 0, ids.length));
+            } else {
+                int[] ids = {id};
+                t.rpush(key, encodeSegment(ids, 0, 1));
+                t.rpush(boundsKey, encodeBounds(ids, 0, 1));
+            }
+        }
+    }
+
+    /**
+     * Encodes a range of sorted user IDs as one segment.
+     * @param sortedIDs sorted user IDs
+     * @param from first index (inclusive)
+     * @param to last index (exclusive)
+     * @return encoded segment
+     */
+    public static byte[] encodeSegment(int[] sortedIDs, int from, int to) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((to - from) * 2 + 10);
+        writeVarint(out, to - from);
+        if (to > from) {
+            // the first ID is zig-zag encoded so that negative IDs stay short; the deltas are never negative
+            int first = sortedIDs[from];
+            writeVarint(out, (first << 1) ^ (first >> 31));
+            for (int i = from + 1; i < to; i++) {
+                writeVarint(out, sortedIDs[i] - sortedIDs[i - 1]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes one segment into an int array.
+     * @param segment encoded segment
+     * @param out destination array
+     * @param offset position in the destination array of the first decoded ID
+     * @return position in the destination array after the last decoded ID
+     */
+    public static int decodeSegment(byte[] segment, int[] out, int offset) {
+        int[] pos = {0};
+        int count = readVarint(segment, pos);
+        if (count == 0) return offset;
+        int zigzag = readVarint(segment, pos);
+        int value = (zigzag >>> 1) ^ -(zigzag & 1);
+        out[offset++] = value;
+        for (int i = 1; i < count; i++) {
+            value += readVarint(segment, pos);
+            out[offset++] = value;
+        }
+        return offset;
+    }
+
+    /**
+     * Gets the number of user IDs in a segment without decoding it.
+     * @param segment encoded segment
+     * @return number of IDs
+     */
+    public static int count(byte[] segment) {
+        return readVarint(segment, new int[]{0});
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] in, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static byte[] bytes(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,254 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * This class measures how much memory each family of keys ("tweet:*", "tweets:*", "timeline:*", "itimeline:*",
+ * "usertweet:*", "following:*", "followers:*", "users", ...) uses in a live Redis database, and projects the memory needed
+ * by the push (timeline) and pull (usertweet) strategies for a target number of users and tweet rate.
+ *
+ * The whole keyspace is walked with SCAN to count the keys of every family, while a fixed-size random sample of each family
+ * (reservoir sampling) is measured with MEMORY USAGE, OBJECT ENCODING, and the number of elements of the key.
+ */
+public class RedisMemoryProfiler {
+
+    /**
+     * Memory statistics of one key family.
+     */
+    public static class FamilyStats {
+        public final String family;
+        public long keys = 0; // keys of the family in the database
+        public final List<String> sample = new ArrayList<>();
+        public long sampledBytes = 0;
+        public long sampledElements = 0;
+        public long maxSampledElements = 0;
+        public final Map<String, Integer> encodings = new TreeMap<>();
+
+        FamilyStats(String family) {
+            this.family = family;
+        }
+
+        public double bytesPerKey() {
+            return sample.isEmpty() ? 0 : (double) sampledBytes / sample.size();
+        }
+
+        public double elementsPerKey() {
+            return sample.isEmpty() ? 0 : (double) sampledElements / sample.size();
+        }
+
+        public double bytesPerElement() {
+            return sampledElements == 0 ? 0 : (double) sampledBytes / sampledElements;
+        }
+
+        public double totalBytes() {
+            return keys * bytesPerKey();
+        }
+
+        public double totalElements() {
+            return keys * elementsPerKey();
+        }
+    }
+
+    /**
+     * @param args key=value options:
+     *             <p> host=localhost port=6379 : Redis instance to profile </p>
+     *             <p> samples=1000 : keys measured per family </p>
+     *             <p> seed=42 : seed of the key sampling </p>
+     *             <p> users=(current) tweetsPerDay=(current tweets) days=1 following=(current average) : projection target </p>
+     *             <p> inline=(longest sampled inline timeline) : length of the inline timelines projected </p>
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = WorkloadRunner.parseOptions(args);
+        String host = options.getOrDefault("host", "localhost");
+        int port = Integer.parseInt(options.getOrDefault("port", "6379"));
+        int samples = Integer.parseInt(options.getOrDefault("samples", "1000"));
+        Random random = new Random(Long.parseLong(options.getOrDefault("seed", "42")));
+
+        Jedis jedis = new Jedis(host, port);
+        try {
+            Map<String, FamilyStats> families = profile(jedis, samples, random);
+            printFamilies(families);
+            System.out.println();
+            System.out.println("used_memory: " + usedMemory(jedis) + " bytes");
+            System.out.println();
+            printProjection(families, options);
+        } finally {
+            jedis.close();
+        }
+    }
+
+    /**
+     * Counts the keys of every family and measures a random sample of each.
+     * @param jedis Redis connection
+     * @param samples maximum keys measured per family
+     * @param random random generator of the reservoir sampling
+     * @return statistics by family name
+     */
+    public static Map<String, FamilyStats> profile(Jedis jedis, int samples, Random random) {
+        Map<String, FamilyStats> families = new TreeMap<>();
+        String cursor = ScanParams.SCAN_POINTER_START;
+        ScanParams params = new ScanParams().count(1000);
+        do {
+            ScanResult<String> scan = jedis.scan(cursor, params);
+            for (String key : scan.getResult()) {
+                FamilyStats stats = families.computeIfAbsent(family(key), FamilyStats::new);
+                stats.keys++;
+                // reservoir sampling keeps a uniform sample of each family in a single pass
+                if (stats.sample.size() < samples) {
+                    stats.sample.add(key);
+                } else {
+                    long slot = (long) (random.nextDouble() * stats.keys);
+                    if (slot < samples) stats.sample.set((int) slot, key);
+                }
+            }
+            cursor = scan.getCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+
+        for (FamilyStats stats : families.values()) {
+            List<String> measured = new ArrayList<>();
+            for (String key : stats.sample) {
+                Long bytes = jedis.memoryUsage(key);
+                if (bytes == null) continue; // deleted since the scan
+                measured.add(key);
+                stats.sampledBytes += bytes;
+                long elements = elements(jedis, stats.family, key);
+                stats.sampledElements += elements;
+                stats.maxSampledElements = Math.max(stats.maxSampledElements, elements);
+                stats.encodings.merge(jedis.objectEncoding(key), 1, Integer::sum);
+            }
+            stats.sample.retainAll(measured);
+        }
+        return families;
+    }
+
+    /**
+     * Gets the family of a key: its prefix up to the first ":" (e.g. "tweet" for "tweet:42"), or the key itself.
+     */
+    private static String family(String key) {
+        int colon = key.indexOf(':');
+        return colon < 0 ? key : key.substring(0, colon);
+    }
+
+    /**
+     * Gets the number of logical elements of a key: user IDs for packed adjacency lists, list/set members, and 1 otherwise.
+     */
+    private static long elements(Jedis jedis, String family, String key) {
+        if ((family + ":").equals(PackedAdjacency.FOLLOWERS_PREFIX) || (family + ":").equals(PackedAdjacency.FOLLOWING_PREFIX)) {
+            return PackedAdjacency.read(jedis, key).length;
+        }
+        switch (jedis.type(key)) {
+            case "list":
+                return jedis.llen(key);
+            case "set":
+                return jedis.scard(key);
+            case "hash":
+                return jedis.hlen(key);
+            case "zset":
+                return jedis.zcard(key);
+            default:
+                return 1;
+        }
+    }
+
+    private static String usedMemory(Jedis jedis) {
+        for (String line : jedis.info("memory").split("\r?\n")) {
+            if (line.startsWith("used_memory:")) return line.substring("used_memory:".length()).trim();
+        }
+        return "unknown";
+    }
+
+    private static void printFamilies(Map<String, FamilyStats> families) {
+        System.out.println(String.format("%-16s %12s %8s %14s %14s %12s %16s  %s",
+                "family", "keys", "sampled", "bytes/key", "elements/key", "bytes/elem", "est. total MB", "encodings"));
+        for (FamilyStats stats : families.values()) {
+            System.out.println(String.format("%-16s %12d %8d %14.1f %14.1f %12.1f %16.1f  %s",
+                    stats.family, stats.keys, stats.sample.size(), stats.bytesPerKey(), stats.elementsPerKey(),
+                    stats.bytesPerElement(), stats.totalBytes() / (1 << 20), stats.encodings));
+        }
+    }
+
+    /**
+     * Prints the per-tweet, per-timeline-entry and per-edge costs and projects them onto the target workload.
+     * Timelines are not trimmed, so the push strategy stores one timeline entry per tweet per follower of its author,
+     * while the pull strategy stores one usertweet entry per tweet. The tweet bodies are counted in both layouts (a
+     * "tweet:&lt;id&gt;" key or a field of a "tweets:&lt;bucket&gt;" hash), and inline timelines, which hold encoded tweets
+     * and are capped at a fixed length, are projected separately.
+     */
+    private static void printProjection(Map<String, FamilyStats> families, Map<String, String> options) {
+        FamilyStats tweetKeys = families.getOrDefault("tweet", new FamilyStats("tweet"));
+        FamilyStats tweetBuckets = families.getOrDefault("tweets", new FamilyStats("tweets"));
+        FamilyStats timelines = families.getOrDefault("timeline", new FamilyStats("timeline"));
+        FamilyStats inlineTimelines = families.getOrDefault("itimeline", new FamilyStats("itimeline"));
+        FamilyStats userTweets = families.getOrDefault("usertweet", new FamilyStats("usertweet"));
+        FamilyStats users = families.getOrDefault("users", new FamilyStats("users"));
+
+        // edges are stored twice (following and followers), either as decimal lists or as packed segments with their bounds
+        double edgeBytes = 0;
+        double edges = 0;
+        for (String family : new String[]{"following", "followers", "packedfollowing", "packedfollowers",
+                "packedfollowingbounds", "packedfollowersbounds"}) {
+            FamilyStats stats = families.get(family);
+            if (stats == null) continue;
+            edgeBytes += stats.totalBytes();
+            if (family.endsWith("following")) edges += stats.totalElements();
+        }
+        double bytesPerEdge = edges == 0 ? 0 : edgeBytes / edges;
+        double currentUsers = users.totalElements();
+
+        // every field of a bucket is one tweet
+        double currentTweets = tweetKeys.keys + tweetBuckets.totalElements();
+        double bytesPerTweet = currentTweets == 0 ? 0 : (tweetKeys.totalBytes() + tweetBuckets.totalBytes()) / currentTweets;
+        double inlineEntry = inlineTimelines.bytesPerElement();
+        // the longest sampled inline timeline is usually at the length cap
+        double inlineDepth = Double.parseDouble(options.getOrDefault("inline", Long.toString(inlineTimelines.maxSampledElements)));
+
+        // a strategy that was not run borrows the per-entry cost of the other one (both are lists of tweet IDs)
+        double timelineEntry = timelines.bytesPerElement() > 0 ? timelines.bytesPerElement() : userTweets.bytesPerElement();
+        double userTweetEntry = userTweets.bytesPerElement() > 0 ? userTweets.bytesPerElement() : timelineEntry;
+
+        System.out.println(String.format("bytes per tweet:           %.1f%s", bytesPerTweet,
+                tweetBuckets.keys == 0 ? "" : " (" + tweetBuckets.keys + " buckets, " + tweetKeys.keys + " keys)"));
+        System.out.println(String.format("bytes per timeline entry:  %.1f%s", timelineEntry, timelines.keys == 0 ? " (estimated from usertweet)" : ""));
+        System.out.println(String.format("bytes per usertweet entry: %.1f%s", userTweetEntry, userTweets.keys == 0 ? " (estimated from timeline)" : ""));
+        if (inlineTimelines.keys > 0) {
+            System.out.println(String.format("bytes per inline entry:    %.1f", inlineEntry));
+        }
+        System.out.println(String.format("bytes per edge:            %.1f (both directions)", bytesPerEdge));
+        System.out.println(String.format("bytes per user:            %.1f", users.bytesPerElement()));
+
+        double targetUsers = Double.parseDouble(options.getOrDefault("users", Double.toString(currentUsers)));
+        double tweetsPerDay = Double.parseDouble(options.getOrDefault("tweetsPerDay", Double.toString(currentTweets)));
+        double days = Double.parseDouble(options.getOrDefault("days", "1"));
+        double following = Double.parseDouble(options.getOrDefault("following",
+                Double.toString(currentUsers == 0 ? 0 : edges / currentUsers)));
+        double totalTweets = tweetsPerDay * days;
+
+        double tweetMemory = totalTweets * bytesPerTweet;
+        double graphMemory = targetUsers * following * bytesPerEdge + targetUsers * users.bytesPerElement();
+        // on average every tweet reaches as many followers as a user follows
+        double pushMemory = tweetMemory + graphMemory + totalTweets * following * timelineEntry;
+        double pullMemory = tweetMemory + graphMemory + totalTweets * userTweetEntry;
+        // inline timelines hold at most inlineDepth entries per user
+        double inlineMemory = tweetMemory + graphMemory + Math.min(targetUsers * inlineDepth, totalTweets * following) * inlineEntry;
+
+        System.out.println();
+        System.out.println(String.format("projection: %.0f users following %.1f users each, %.0f tweets per day for %.1f days",
+                targetUsers, following, tweetsPerDay, days));
+        System.out.println(String.format("  tweets:           %12.1f MB", tweetMemory / (1 << 20)));
+        System.out.println(String.format("  social graph:     %12.1f MB", graphMemory / (1 << 20)));
+        System.out.println(String.format("  push (timeline):  %12.1f MB total", pushMemory / (1 << 20)));
+        System.out.println(String.format("  pull (usertweet): %12.1f MB total", pullMemory / (1 << 20)));
+        if (inlineTimelines.keys > 0) {
+            System.out.println(String.format("  push (itimeline): %12.1f MB total (%.0f entries per timeline)",
+                    inlineMemory / (1 << 20), inlineDepth));
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * This class multiplexes requests from many threads onto a single Redis connection. Callers submit a function that queues
+ * Redis commands on a pipeline and returns a supplier of the result; a dedicated I/O thread drains every request waiting in
+ * the queue, sends all of their commands as one pipeline, and completes the callers' futures once the replies arrive.
+ * Requests submitted while a pipeline is in flight share the next round trip, so no caller thread ever blocks on the network.
+ *
+ * <p> A request is in flight from its submission until its future is completed and the stages depending on it have run on
+ * the completion executor. Those stages may submit the next step of a multi-step operation, so close() keeps accepting
+ * requests until none is in flight, and an operation is never cut off between two of its steps. </p>
+ */
+public class RedisPipelineDispatcher {
+
+    private final String host;
+    private final int port;
+    private final int maxBatch;
+    private final Executor completionExecutor;
+    private final BlockingQueue<Call<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread ioThread;
+    // makes the running check and the enqueue of submit() atomic with respect to close(), and guards inFlight
+    private final Object lock = new Object();
+    private volatile boolean running = true;
+    private int inFlight = 0;
+    private Jedis jedis;
+
+    /**
+     * Creates a dispatcher and starts its I/O thread.
+     * @param host Redis host
+     * @param port Redis port
+     * @param maxBatch maximum number of requests sent in one pipeline
+     * @param completionExecutor executor that completes the callers' futures (and so runs their dependent stages)
+     */
+    public RedisPipelineDispatcher(String host, int port, int maxBatch, Executor completionExecutor) {
+        this.host = host;
+        this.port = port;
+        this.maxBatch = maxBatch;
+        this.completionExecutor = completionExecutor;
+        this.jedis = new Jedis(host, port);
+        this.ioThread = new Thread(this::run, "redis-pipeline-dispatcher");
+        this.ioThread.setDaemon(true);
+        this.ioThread.start();
+    }
+
+    /**
+     * Submits a request. The function is called on the I/O thread to queue the request's commands on the shared pipeline,
+     * and the supplier it returns is called after the pipeline is synced to build the result (e.g. from Response objects).
+     * @param commands function queuing the commands and returning a supplier of the result
+     * @return future of the result
+     */
+    public <T> CompletableFuture<T> submit(Function<Pipeline, Supplier<T>> commands) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        synchronized (lock) {
+            if (running) {
+                inFlight++;
+                queue.add(new Call<>(commands, future, this::finished));
+                return future;
+            }
+        }
+        future.completeExceptionally(new IllegalStateException("dispatcher is closed"));
+        return future;
+    }
+
+    /**
+     * Waits until no request is in flight (so that the steps chained by the completion stages of earlier requests are still
+     * accepted), then stops accepting requests, waits for the queued requests to be sent, and closes the connection.
+     * Requests the I/O thread did not send (e.g. because it was interrupted) are failed.
+     */
+    public void close() {
+        synchronized (lock) {
+            while (inFlight > 0 && ioThread.isAlive()) {
+                try {
+                    lock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            running = false;
+        }
+        try {
+            ioThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Call<?>> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        for (Call<?> call : leftover) {
+            call.fail(new IllegalStateException("dispatcher is closed"), completionExecutor);
+        }
+        jedis.close();
+    }
+
+    /**
+     * Called once a request's future is completed and its dependent stages have run.
+     */
+    private void finished() {
+        synchronized (lock) {
+            if (--inFlight == 0) lock.notifyAll();
+        }
+    }
+
+    private void run() {
+        List<Call<?>> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Call<?> first = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Sends the commands of a batch of requests as one pipeline and completes their futures.
+     * @param batch requests to send
+     */
+    private void send(List<Call<?>> batch) {
+        Pipeline p = jedis.pipelined();
+        List<Supplier<?>> results = new ArrayList<>(batch.size());
+        for (Call<?> call : batch) {
+            try {
+                results.add(call.commands.apply(p));
+            } catch (RuntimeException e) {
+                results.add(null);
+                call.fail(e, completionExecutor);
+            }
+        }
+
+        try {
+            p.sync();
+        } catch (JedisConnectionException e) {
+            // the whole round trip is lost; fail every request of the batch (that has not failed already) and reconnect
+            for (int i = 0; i < batch.size(); i++) {
+                if (results.get(i) != null) batch.get(i).fail(e, completionExecutor);
+            }
+            jedis.close();
+            jedis = new Jedis(host, port);
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (results.get(i) != null) {
+                batch.get(i).complete(results.get(i), completionExecutor);
+            }
+        }
+    }
+
+    /**
+     * A submitted request: the function queuing its commands, the caller's future, and the callback run once the future
+     * (and so the stages depending on it) has completed.
+     */
+    private static class Call<T> {
+        private final Function<Pipeline, Supplier<T>> commands;
+        private final CompletableFuture<T> future;
+        private final Runnable finished;
+
+        private Call(Function<Pipeline, Supplier<T>> commands, CompletableFuture<T> future, Runnable finished) {
+            this.commands = commands;
+            this.future = future;
+            this.finished = finished;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void complete(Supplier<?> result, Executor executor) {
+            try {
+                // Response.get() throws if Redis replied with an error to one of this request's commands
+                T value = (T) result.get();
+                executor.execute(() -> {
+                    try {
+                        future.complete(value);
+                    } finally {
+                        finished.run();
+                    }
+                });
+            } catch (RuntimeException e) {
+                fail(e, executor);
+            }
+        }
+
+        private void fail(Throwable e, Executor executor) {
+            executor.execute(() -> {
+                try {
+                    future.completeExceptionally(e);
+                } finally {
+                    finished.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * This class spreads the reads of the Redis implementations over a set of replicas of their primary server. Reads go to the
+ * healthy replicas in round-robin order, each through a small connection pool; a replica is healthy while its link to the
+ * primary is up and it is no more than maxLagBytes of the replication stream behind the primary. The health of every
+ * replica is checked periodically with INFO replication, on a background thread started by start(); a replica that
+ * refuses a connection is taken out of the rotation at once, and its read is sent to the primary instead (as is a read
+ * the replica answers with any other error, e.g. -LOADING). When no replica is healthy, every read goes to the primary.
+ *
+ * <p> The set is meant to be shared by all the instances of a JVM (e.g. one per worker thread), so the implementations
+ * neither start nor close it. Each instance routes its reads through its own Router, which keeps the read-your-writes
+ * window of that instance. </p>
+ */
+public class RedisReplicaSet {
+
+    /**
+     * A replica server and the connections to it.
+     */
+    @SuppressWarnings("deprecation") // JedisPool, since the reads are given a Jedis connection (RedisClient cannot lend one)
+    public static class Replica {
+
+        private final String address;
+        private final JedisPool pool;
+        private volatile boolean healthy = true;
+        private volatile long lagBytes = 0;
+
+        private Replica(String address, int poolSize) {
+            this.address = address;
+            JedisPoolConfig config = new JedisPoolConfig();
+            config.setMaxTotal(poolSize);
+            config.setMaxIdle(poolSize);
+            String[] hostPort = address.split(":");
+            this.pool = new JedisPool(config, hostPort[0], Integer.parseInt(hostPort[1]));
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        /**
+         * Gets the replication lag measured by the last health check.
+         * @return bytes of the replication stream the replica was behind the primary
+         */
+        public long getLagBytes() {
+            return lagBytes;
+        }
+
+        @Override
+        public String toString() {
+            return address + (healthy ? " (healthy, " + lagBytes + " bytes behind)" : " (down)");
+        }
+    }
+
+    /**
+     * Routes the reads of one implementation instance: to the replica set if one is set, except for the reads that follow
+     * a write of the instance closely enough to need its result, which go to the primary connection.
+     */
+    public static class Router {
+
+        // replicas the reads are spread over, or null to read from the primary connection
+        private RedisReplicaSet replicas = null;
+        // reads go to the primary until primaryReadsUntil (System.nanoTime()), readYourWritesNanos after every write
+        private long readYourWritesNanos = 0;
+        private long primaryReadsUntil = System.nanoTime();
+
+        /**
+         * Runs a read on a replica, or on the primary connection if there are no replicas or a write is recent enough for
+         * the read to require its result.
+         * @param operation read, given the connection to run on
+         * @param primary connection to the primary server
+         * @return result of the read
+         */
+        public <T> T read(Function<Jedis, T> operation, Jedis primary) {
+            if (replicas == null || System.nanoTime() - primaryReadsUntil < 0) return operation.apply(primary);
+            return replicas.read(operation, primary);
+        }
+
+        /**
+         * Starts the read-your-writes window. Called once a write has completed (or failed), so that the window covers
+         * the replication of the whole write however long it took.
+         */
+        public void markWrite() {
+            if (readYourWritesNanos > 0) primaryReadsUntil = System.nanoTime() + readYourWritesNanos;
+        }
+
+        /**
+         * Sets the replicas the reads are spread over; writes keep going to the primary connection.
+         * @param replicas replica set, or null to read from the primary
+         */
+        public void setReplicas(RedisReplicaSet replicas) {
+            this.replicas = replicas;
+        }
+
+        /**
+         * Sets how long the reads go to the primary after each write, so that e.g. a user reading right after posting
+         * sees the post even if the replicas have not caught up yet.
+         * @param windowMillis milliseconds after a write during which reads go to the primary, or 0 to always read from
+         *                     the replicas (the default)
+         */
+        public void setReadYourWrites(long windowMillis) {
+            if (windowMillis < 0) throw new IllegalArgumentException("read-your-writes window must not be negative");
+            this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        }
+    }
+
+    private final String primaryHost;
+    private final int primaryPort;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagBytes;
+    private final AtomicInteger next = new AtomicInteger();
+    private ScheduledExecutorService checker;
+
+    /**
+     * @param primaryHost host of the primary server
+     * @param primaryPort port of the primary server
+     * @param replicas comma-separated list of "host:port" replica servers
+     * @param poolSize maximum connections per replica
+     * @param maxLagBytes replicas further behind the primary are not read from
+     */
+    public RedisReplicaSet(String primaryHost, int primaryPort, String replicas, int poolSize, long maxLagBytes) {
+        this.primaryHost = primaryHost;
+        this.primaryPort = primaryPort;
+        this.maxLagBytes = maxLagBytes;
+        for (String address : TwitterDatabaseRedisSharded.parseNodes(replicas)) {
+            this.replicas.add(new Replica(address, poolSize));
+        }
+        if (this.replicas.isEmpty()) throw new IllegalArgumentException("no replicas in: " + replicas);
+    }
+
+    /**
+     * Runs a read on the next healthy replica, or on the primary connection if there is none. A replica whose connection
+     * fails is marked down and the read is run again on the primary; a read the replica fails otherwise (e.g. -LOADING
+     * while it loads its dataset) is also run again on the primary, and the next health check decides whether the replica
+     * stays in the rotation.
+     * @param operation read, given the connection to run on
+     * @param primary connection to the primary server
+     * @return result of the read
+     */
+    public <T> T read(Function<Jedis, T> operation, Jedis primary) {
+        Replica replica = nextHealthy();
+        if (replica == null) return operation.apply(primary);
+        try (Jedis connection = replica.pool.getResource()) {
+            return operation.apply(connection);
+        } catch (JedisConnectionException e) {
+            replica.healthy = false;
+            System.out.println("WARNING: replica " + replica.address + " is down, reading from the primary: " + e.getMessage());
+            return operation.apply(primary);
+        } catch (JedisException e) {
+            System.out.println("WARNING: replica " + replica.address + " failed a read, reading from the primary: " + e.getMessage());
+            return operation.apply(primary);
+        }
+    }
+
+    /**
+     * Picks the next healthy replica in round-robin order.
+     * @return replica, or null if none is healthy
+     */
+    private Replica nextHealthy() {
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.healthy) return replica;
+        }
+        return null;
+    }
+
+    /**
+     * Checks the health of every replica: its link to the primary must be up, and its replication offset no more than
+     * maxLagBytes behind the primary's.
+     */
+    public void check() {
+        long primaryOffset = -1;
+        try (Jedis primary = new Jedis(primaryHost, primaryPort)) {
+            primaryOffset = Long.parseLong(infoField(primary.info("replication"), "master_repl_offset", "-1"));
+        } catch (JedisException | NumberFormatException e) {
+            System.out.println("WARNING: could not read the replication offset of the primary: " + e.getMessage());
+        }
+        for (Replica replica : replicas) {
+            try (Jedis connection = replica.pool.getResource()) {
+                String info = connection.info("replication");
+                boolean linked = infoField(info, "role", "").equals("slave") && infoField(info, "master_link_status", "").equals("up");
+                long offset = Long.parseLong(infoField(info, "slave_repl_offset", "-1"));
+                // an unknown primary offset does not take the replicas out of the rotation
+                replica.lagBytes = primaryOffset < 0 || offset < 0 ? 0 : Math.max(0, primaryOffset - offset);
+                replica.healthy = linked && replica.lagBytes <= maxLagBytes;
+            } catch (JedisException | NumberFormatException e) {
+                replica.healthy = false;
+            }
+        }
+    }
+
+    /**
+     * Starts the periodic health checks on a background thread. The first check runs at once.
+     * @param intervalMillis milliseconds between checks
+     */
+    public void start(long intervalMillis) {
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-replica-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::check, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the health checks and closes the connections to the replicas.
+     */
+    public void close() {
+        if (checker != null) checker.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    /**
+     * Gets the replicas with the result of their last health check.
+     * @return unmodifiable list of replicas
+     */
+    public List<Replica> getReplicas() {
+        return Collections.unmodifiableList(replicas);
+    }
+
+    /**
+     * Parses the address of a Redis server, as given in the url of the Redis implementations.
+     * @param address "host:port", or "host" for port 6379, or null for localhost:6379
+     * @return host and port of the server
+     */
+    public static HostAndPort parseAddress(String address) {
+        if (address == null) return new HostAndPort("localhost", 6379);
+        String[] hostPort = TwitterDatabaseRedisSharded.parseNodes(address).get(0).split(":");
+        return new HostAndPort(hostPort[0], Integer.parseInt(hostPort[1]));
+    }
+
+    private static String infoField(String info, String field, String missing) {
+        for (String line : info.split("\r?\n")) {
+            if (line.startsWith(field + ":")) return line.substring(field.length() + 1).trim();
+        }
+        return missing;
+    }
+}
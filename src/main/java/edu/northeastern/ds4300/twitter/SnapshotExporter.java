@@ -0,0 +1,235 @@
+package edu.northeastern.ds4300.twitter;
+
+import edu.northeastern.database.DBUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class exports the social graph and the tweets of a Redis database, a MySQL database, or a pair of follows/tweets CSV
+ * files into a binary snapshot (see TwitterSnapshot), and reports the time needed to open and validate a snapshot.
+ */
+public class SnapshotExporter {
+
+    private static final String MYSQL_URL = "jdbc:mysql://localhost:3306/twittertweets?serverTimezone=EST5EDT";
+
+    /**
+     * <p> Examples of possible commands: </p>
+     * <p> - "csv res/follows.csv res/tweets_sample.csv twitter.snap" : export a pair of CSV files </p>
+     * <p> - "redis twitter.snap host=localhost port=6379 packed=false" : export a Redis database (push or pull strategy) </p>
+     * <p> - "mysql twitter.snap user password" : export the MySQL database </p>
+     * <p> - "info twitter.snap" : open a snapshot, validate its checksums, and print its contents and load time </p>
+     * @param args the arguments required for the main() function
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Error: should provide a command; either csv, redis, mysql or info, followed by the snapshot file.");
+            return;
+        }
+        long pre_timestamp = System.currentTimeMillis();
+        try {
+            switch (args[0]) {
+                case "csv":
+                    if (args.length < 4) {
+                        System.out.println("Error: Must provide follows CSV, tweets CSV and snapshot filenames.");
+                        return;
+                    }
+                    try (SnapshotWriter writer = new SnapshotWriter(tempDirectory(args[3]))) {
+                        exportCSV(writer, new File(args[1]), new File(args[2]));
+                        writer.write(new File(args[3]));
+                    }
+                    break;
+                case "redis":
+                    Map<String, String> options = WorkloadRunner.parseOptions(Arrays.copyOfRange(args, 2, args.length));
+                    Jedis jedis = new Jedis(options.getOrDefault("host", "localhost"), Integer.parseInt(options.getOrDefault("port", "6379")));
+                    try (SnapshotWriter writer = new SnapshotWriter(tempDirectory(args[1]))) {
+                        exportRedis(writer, jedis, Boolean.parseBoolean(options.getOrDefault("packed", "false")));
+                        writer.write(new File(args[1]));
+                    } finally {
+                        jedis.close();
+                    }
+                    break;
+                case "mysql":
+                    if (args.length < 4) {
+                        System.out.println("Error: Must provide username and password to connect to database.");
+                        return;
+                    }
+                    DBUtils dbu = new DBUtils(MYSQL_URL, args[2], args[3]);
+                    try (SnapshotWriter writer = new SnapshotWriter(tempDirectory(args[1]))) {
+                        exportMysql(writer, dbu);
+                        writer.write(new File(args[1]));
+                    } finally {
+                        dbu.closeConnection();
+                    }
+                    break;
+                case "info":
+                    try (TwitterSnapshot snapshot = new TwitterSnapshot(new File(args[1]), true)) {
+                        System.out.println("Opened and validated in " + (System.currentTimeMillis() - pre_timestamp) / 1000.0 + " seconds");
+                        System.out.println(snapshot.getUserCount() + " users, " + snapshot.getEdgeCount() + " follows, "
+                                + snapshot.getTweetCount() + " tweets, created " + new java.util.Date(snapshot.getCreatedMillis()));
+                    }
+                    return;
+                default:
+                    System.out.println("Error: first argument must be either 'csv', 'redis', 'mysql' or 'info'");
+                    return;
+            }
+        } catch (IOException | SQLException e) {
+            System.out.println("ERROR: could not export the snapshot: " + e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+        System.out.println("Snapshot written in " + (System.currentTimeMillis() - pre_timestamp) / 1000.0 + " seconds");
+    }
+
+    /**
+     * Adds the relationships and tweets of a follows CSV file and a tweets CSV file. Tweets are numbered from 1 in file
+     * order and all get the export time as their timestamp.
+     * @param writer snapshot writer
+     * @param followsCSV follows CSV file ("USER_ID,FOLLOWS_ID")
+     * @param tweetsCSV tweets CSV file ("USER_ID,TWEET_TEXT")
+     */
+    public static void exportCSV(SnapshotWriter writer, File followsCSV, File tweetsCSV) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(followsCSV), StandardCharsets.UTF_8), 1 << 16)) {
+            in.readLine(); // ignores the columns headers
+            String line;
+            while ((line = in.readLine()) != null) {
+                int comma = line.indexOf(',');
+                if (comma < 0) continue;
+                writer.addFollow(Integer.parseInt(line.substring(0, comma).trim()), Integer.parseInt(line.substring(comma + 1).trim()));
+            }
+        }
+        long timestamp = System.currentTimeMillis();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(tweetsCSV), StandardCharsets.UTF_8), 1 << 16)) {
+            in.readLine(); // ignores the columns headers
+            String line;
+            int tweetID = 0;
+            while ((line = in.readLine()) != null) {
+                String[] tweet = line.split(",");
+                writer.addTweet(++tweetID, Integer.parseInt(tweet[0]), timestamp, tweet.length > 1 ? tweet[1] : "");
+            }
+        }
+    }
+
+    /**
+     * Adds the relationships (from the "following" lists of the members of the "users" set) and the tweets (from the
+     * "tweet" key-values or the "tweets" buckets, compressed or not) of a Redis database.
+     * @param writer snapshot writer
+     * @param jedis Redis connection
+     * @param packed true to read packed adjacency
+     */
+    public static void exportRedis(SnapshotWriter writer, Jedis jedis, boolean packed) throws IOException {
+        ScanParams params = new ScanParams().count(1000);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> scan = jedis.sscan("users", cursor, params);
+            int[] users = IntList.parse(scan.getResult());
+            Pipeline p = jedis.pipelined();
+            List<Response<List<String>>> following = new ArrayList<>();
+            List<Response<List<byte[]>>> packedFollowing = new ArrayList<>();
+            for (int userID : users) {
+                if (packed) {
+                    packedFollowing.add(p.lrange((PackedAdjacency.FOLLOWING_PREFIX + userID).getBytes(StandardCharsets.UTF_8), 0, -1));
+                } else {
+                    following.add(p.lrange("following:" + userID, 0, -1));
+                }
+            }
+            p.sync();
+            for (int i = 0; i < users.length; i++) {
+                int[] followees = packed ? PackedAdjacency.decode(packedFollowing.get(i).get()) : IntList.parse(following.get(i).get());
+                for (int followeeID : followees) {
+                    writer.addFollow(users[i], followeeID);
+                }
+            }
+            cursor = scan.getCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+
+        TweetCompressor compressor = TweetCompressor.load(jedis);
+        params = new ScanParams().match("tweet:*").count(1000);
+        cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> scan = jedis.scan(cursor, params);
+            List<String> keys = scan.getResult();
+            if (!keys.isEmpty()) {
+                byte[][] rawKeys = new byte[keys.size()][];
+                for (int i = 0; i < rawKeys.length; i++) {
+                    rawKeys[i] = TweetCompressor.bytes(keys.get(i));
+                }
+                List<String> bodies = compressor.decompress(jedis.mget(rawKeys));
+                for (int i = 0; i < rawKeys.length; i++) {
+                    Tweet tweet = TweetCodec.decode(Integer.parseInt(keys.get(i).substring("tweet:".length())), bodies.get(i));
+                    if (tweet == null) continue;
+                    writer.addTweet(tweet.getTweetID(), tweet.getUserID(), tweet.getTweetTimestamp().getTime(), tweet.getTweetText());
+                }
+            }
+            cursor = scan.getCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+
+        // tweets stored in the bucketed layout (see TweetBuckets)
+        params = new ScanParams().match(TweetBuckets.KEY_PREFIX + "*").count(100);
+        cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> scan = jedis.scan(cursor, params);
+            for (String bucketKey : scan.getResult()) {
+                long firstTweetID = Long.parseLong(bucketKey.substring(TweetBuckets.KEY_PREFIX.length())) * TweetBuckets.BUCKET_SIZE;
+                for (Map.Entry<byte[], byte[]> field : jedis.hgetAll(bucketKey.getBytes(StandardCharsets.UTF_8)).entrySet()) {
+                    int tweetID = (int) (firstTweetID + Integer.parseInt(new String(field.getKey(), StandardCharsets.UTF_8)));
+                    Tweet tweet = TweetCodec.decode(tweetID, compressor.decompress(field.getValue()));
+                    if (tweet == null) continue;
+                    writer.addTweet(tweet.getTweetID(), tweet.getUserID(), tweet.getTweetTimestamp().getTime(), tweet.getTweetText());
+                }
+            }
+            cursor = scan.getCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+    }
+
+    /**
+     * Adds the relationships and tweets of the MySQL database, streaming both tables.
+     * @param writer snapshot writer
+     * @param dbu MySQL connection
+     */
+    public static void exportMysql(SnapshotWriter writer, DBUtils dbu) throws IOException, SQLException {
+        Connection con = dbu.getConnection();
+        try (Statement stmt = streamingStatement(con); ResultSet rs = stmt.executeQuery("SELECT user_id, follows_id FROM follows")) {
+            while (rs.next()) {
+                writer.addFollow(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        try (Statement stmt = streamingStatement(con);
+             ResultSet rs = stmt.executeQuery("SELECT tweet_id, user_id, tweet_ts, tweet_text FROM tweet")) {
+            while (rs.next()) {
+                writer.addTweet(rs.getInt(1), rs.getInt(2), rs.getTimestamp(3).getTime(), rs.getString(4));
+            }
+        }
+    }
+
+    /**
+     * Creates a statement whose results are streamed row by row instead of being loaded into memory at once.
+     */
+    private static Statement streamingStatement(Connection con) throws SQLException {
+        Statement stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(Integer.MIN_VALUE);
+        return stmt;
+    }
+
+    private static File tempDirectory(String snapshot) {
+        File parent = new File(snapshot).getAbsoluteFile().getParentFile();
+        return parent != null ? parent : new File(".");
+    }
+}
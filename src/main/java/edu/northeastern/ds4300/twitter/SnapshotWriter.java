@@ -0,0 +1,296 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * This class writes a binary snapshot (see TwitterSnapshot for the file layout). Follow relationships and tweets are added
+ * one at a time in any order: relationships are kept as packed primitive longs, and tweet records are streamed to a
+ * temporary data file as they are added, so the heap holds no per-tweet objects. write() then sorts the relationships
+ * and the tweet index, and writes every section with its checksum.
+ */
+public class SnapshotWriter implements AutoCloseable {
+
+    private long[] edges = new long[1024]; // follower in the high 32 bits, followee in the low 32 bits (see pack())
+    private int edgeCount = 0;
+    private long[] tweetKeys = new long[1024]; // tweet ID in the high 32 bits, record number in the low 32 bits
+    private long[] recordOffsets = new long[1024];
+    private int[] recordAuthors = new int[1024];
+    private int tweetCount = 0;
+
+    private final File dataFile;
+    private final DataOutputStream data;
+    private long dataLength = 0;
+
+    /**
+     * @param tempDirectory directory of the temporary tweet data file
+     * @throws IOException if the temporary file cannot be created
+     */
+    public SnapshotWriter(File tempDirectory) throws IOException {
+        this.dataFile = File.createTempFile("snapshot", ".data", tempDirectory);
+        this.dataFile.deleteOnExit();
+        this.data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile), 1 << 16));
+    }
+
+    /**
+     * Adds a follow relationship (duplicates are removed when the snapshot is written).
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the followee
+     */
+    public void addFollow(int userID, int followeeID) {
+        if (edgeCount == edges.length) edges = Arrays.copyOf(edges, edgeCount * 2);
+        edges[edgeCount++] = pack(userID, followeeID);
+    }
+
+    /**
+     * Adds a tweet.
+     * @param tweetID tweet ID
+     * @param userID user ID of the author
+     * @param timestamp tweet timestamp in epoch milliseconds
+     * @param text tweet text
+     * @throws IOException if the tweet record cannot be written to the temporary data file
+     */
+    public void addTweet(int tweetID, int userID, long timestamp, String text) throws IOException {
+        if (tweetCount == tweetKeys.length) {
+            tweetKeys = Arrays.copyOf(tweetKeys, tweetCount * 2);
+            recordOffsets = Arrays.copyOf(recordOffsets, tweetCount * 2);
+            recordAuthors = Arrays.copyOf(recordAuthors, tweetCount * 2);
+        }
+        tweetKeys[tweetCount] = ((long) tweetID << 32) | tweetCount;
+        recordOffsets[tweetCount] = dataLength;
+        recordAuthors[tweetCount] = userID;
+        tweetCount++;
+
+        // records are padded to 8 bytes so that the timestamp of every record is aligned
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int padded = (16 + bytes.length + 7) & ~7;
+        ByteBuffer record = ByteBuffer.allocate(padded).order(ByteOrder.LITTLE_ENDIAN);
+        record.putLong(timestamp).putInt(userID).putInt(bytes.length).put(bytes);
+        data.write(record.array());
+        dataLength += padded;
+    }
+
+    /**
+     * Writes the snapshot file.
+     * @param snapshot output file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File snapshot) throws IOException {
+        data.flush();
+
+        // followees grouped by follower, and followers grouped by followee
+        long[] following = distinct(Arrays.copyOf(edges, edgeCount));
+        long[] followers = new long[following.length];
+        for (int i = 0; i < following.length; i++) {
+            followers[i] = pack(target(following[i]), source(following[i]));
+        }
+        Arrays.parallelSort(followers);
+
+        // every user that follows, is followed, or has tweeted
+        IntList userList = new IntList();
+        for (long edge : following) {
+            userList.add(source(edge));
+            userList.add(target(edge));
+        }
+        for (int i = 0; i < tweetCount; i++) {
+            userList.add(recordAuthors[i]);
+        }
+        int[] users = distinct(userList.toArray());
+
+        // tweet index sorted by tweet ID
+        long[] sortedTweets = Arrays.copyOf(tweetKeys, tweetCount);
+        Arrays.parallelSort(sortedTweets);
+
+        // each author's tweets as positions in the tweet index, newest (highest position) first
+        long[] authored = new long[tweetCount];
+        for (int position = 0; position < tweetCount; position++) {
+            int record = (int) sortedTweets[position];
+            authored[position] = ((long) Arrays.binarySearch(users, recordAuthors[record]) << 32) | (~position & 0xFFFFFFFFL);
+        }
+        Arrays.parallelSort(authored);
+
+        try (RandomAccessFile out = new RandomAccessFile(snapshot, "rw")) {
+            out.setLength(0);
+            FileChannel channel = out.getChannel();
+            long[][] table = new long[TwitterSnapshot.SECTION_COUNT][];
+            channel.position(align(TwitterSnapshot.HEADER_SIZE));
+
+            SectionOutput section = new SectionOutput(channel);
+            for (int user : users) section.putInt(user);
+            table[TwitterSnapshot.USERS] = section.finish();
+
+            writeAdjacency(channel, users, following, table, TwitterSnapshot.FOLLOWING_OFFSETS, TwitterSnapshot.FOLLOWING);
+            writeAdjacency(channel, users, followers, table, TwitterSnapshot.FOLLOWERS_OFFSETS, TwitterSnapshot.FOLLOWERS);
+
+            section = new SectionOutput(channel);
+            for (long key : sortedTweets) section.putInt((int) (key >> 32));
+            table[TwitterSnapshot.TWEET_IDS] = section.finish();
+            section = new SectionOutput(channel);
+            for (long key : sortedTweets) section.putLong(recordOffsets[(int) key]);
+            table[TwitterSnapshot.TWEET_OFFSETS] = section.finish();
+
+            section = new SectionOutput(channel);
+            int next = 0;
+            for (int u = 0; u <= users.length; u++) {
+                while (next < authored.length && (int) (authored[next] >>> 32) < u) next++;
+                section.putLong(next);
+            }
+            table[TwitterSnapshot.AUTHORED_OFFSETS] = section.finish();
+            section = new SectionOutput(channel);
+            for (long entry : authored) section.putInt(~(int) entry);
+            table[TwitterSnapshot.AUTHORED] = section.finish();
+
+            section = new SectionOutput(channel);
+            try (FileChannel in = new RandomAccessFile(dataFile, "r").getChannel()) {
+                section.copy(in, dataLength);
+            }
+            table[TwitterSnapshot.TWEET_DATA] = section.finish();
+
+            ByteBuffer header = ByteBuffer.allocate(TwitterSnapshot.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(TwitterSnapshot.MAGIC).putInt(TwitterSnapshot.VERSION).putInt(TwitterSnapshot.SECTION_COUNT);
+            header.putInt(users.length).putLong(following.length).putInt(tweetCount).putLong(System.currentTimeMillis());
+            for (long[] entry : table) {
+                header.putLong(entry[0]).putLong(entry[1]).putLong(entry[2]);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 0, TwitterSnapshot.HEADER_SIZE - 4);
+            header.putInt((int) crc.getValue());
+            header.flip();
+            channel.position(0);
+            while (header.hasRemaining()) channel.write(header);
+        }
+    }
+
+    /**
+     * Closes and deletes the temporary data file.
+     */
+    @Override
+    public void close() throws IOException {
+        data.close();
+        if (!dataFile.delete()) dataFile.deleteOnExit();
+    }
+
+    /**
+     * Writes one direction of the adjacency as CSR offsets and IDs.
+     */
+    private static void writeAdjacency(FileChannel channel, int[] users, long[] edges, long[][] table, int offsetsSection, int idsSection)
+            throws IOException {
+        SectionOutput section = new SectionOutput(channel);
+        int next = 0;
+        for (int user : users) {
+            while (next < edges.length && source(edges[next]) < user) next++;
+            section.putLong(next);
+        }
+        section.putLong(edges.length);
+        table[offsetsSection] = section.finish();
+
+        section = new SectionOutput(channel);
+        for (long edge : edges) section.putInt(target(edge));
+        table[idsSection] = section.finish();
+    }
+
+    /**
+     * Packs a relationship into a long that sorts by source user, then target user (the sign bit of the target is flipped
+     * so that negative IDs sort first).
+     */
+    private static long pack(int userID, int followeeID) {
+        return ((long) userID << 32) | ((followeeID ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    private static int source(long edge) {
+        return (int) (edge >> 32);
+    }
+
+    private static int target(long edge) {
+        return (int) edge ^ Integer.MIN_VALUE;
+    }
+
+    private static long[] distinct(long[] values) {
+        Arrays.parallelSort(values);
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) values[n++] = values[i];
+        }
+        return Arrays.copyOf(values, n);
+    }
+
+    private static int[] distinct(int[] values) {
+        Arrays.parallelSort(values);
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0 || values[i] != values[i - 1]) values[n++] = values[i];
+        }
+        return Arrays.copyOf(values, n);
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * Buffered writer of one section that records its offset, length and CRC32, and pads the file to 8 bytes after it.
+     */
+    private static class SectionOutput {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private final CRC32 crc = new CRC32();
+        private final long offset;
+        private long length = 0;
+
+        SectionOutput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.offset = channel.position();
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) flush();
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            if (buffer.remaining() < 8) flush();
+            buffer.putLong(value);
+        }
+
+        void copy(FileChannel in, long count) throws IOException {
+            flush();
+            in.position(0);
+            long copied = 0;
+            while (copied < count) {
+                buffer.clear();
+                if (buffer.remaining() > count - copied) buffer.limit((int) (count - copied));
+                int n = in.read(buffer);
+                if (n < 0) throw new IOException("temporary snapshot data file is truncated");
+                copied += n;
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.array(), 0, buffer.limit());
+            length += buffer.limit();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * @return {offset, length, CRC32}
+         */
+        long[] finish() throws IOException {
+            flush();
+            channel.position(align(offset + length));
+            return new long[]{offset, length, crc.getValue()};
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package edu.northeastern.ds4300.twitter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * This class is the Java Flight Recorder event emitted by the TwitterDatabaseAPI implementations for every getTimeline(),
+ * getTimelines() or getHashtagTimeline() call. The event's own duration covers the whole call; decodeDuration is the part of it spent turning
+ * stored tweets back into Tweet objects.
+ *
+ * <p> Callers begin() the event before doing any work and only measure the decoding if isEnabled() returns true, so an
+ * instrumented call costs one small allocation when no recording is running. </p>
+ */
+@Name("edu.northeastern.ds4300.twitter.TimelineRead")
+@Label("Timeline Read")
+@Category({"Twitter", "API"})
+@Description("A getTimeline(), getTimelines() or getHashtagTimeline() call of a TwitterDatabaseAPI implementation")
+@StackTrace(false)
+public class TimelineReadEvent extends jdk.jfr.Event {
+
+    @Label("Implementation")
+    public String implementation;
+
+    @Label("User ID")
+    @Description("User whose timeline was read, or -1 for several timelines")
+    public int userID = -1;
+
+    @Label("Hashtag")
+    @Description("Hashtag whose timeline was read, or null for home timelines")
+    public String hashtag;
+
+    @Label("Users")
+    public int users;
+
+    @Label("Round Trips")
+    @Description("Number of requests sent to the database (a pipeline or MULTI counts as one)")
+    public int roundTrips;
+
+    @Label("Tweet IDs")
+    @Description("Number of tweet IDs fetched from the timelines")
+    public int tweetIDs;
+
+    @Label("Decode Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long decodeDuration;
+
+    /**
+     * Creates and begins an event.
+     * @param implementation name of the TwitterDatabaseAPI implementation
+     * @param users number of timelines read by the call (1 for a hashtag timeline)
+     * @return begun event
+     */
+    public static TimelineReadEvent begin(String implementation, int users) {
+        TimelineReadEvent event = new TimelineReadEvent();
+        event.implementation = implementation;
+        event.users = users;
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,445 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class recomputes the pre-computed timelines ("timeline:&lt;id&gt;") of the push strategy from the users' lists of
+ * tweets ("usertweet:&lt;id&gt;") and followees, e.g. after changing the timeline depth or after losing timeline keys.
+ *
+ * The users of the "users" set are processed in ascending user ID order, in batches. For every batch the followee lists
+ * and the latest tweet IDs of every distinct followee are read with pipelines, each user's top-N timeline is computed with a
+ * k-way merge of its followees' tweet lists on a fork/join pool, and the timelines of the whole batch are written back in
+ * one transaction. Several batches are in flight at once, and a rate limit keeps the rebuild from starving live traffic.
+ *
+ * Live posts keep pushing to the timelines during a rebuild: tweets newer than the tweet ID snapshot taken before a batch
+ * is read are kept from the current timeline rather than taken from the rebuilt one, and the timelines of a batch are
+ * watched so that a concurrent push makes the batch retry. A user whose timeline keeps changing through every retry is
+ * skipped, keeping its current timeline, and reported at the end.
+ *
+ * Progress is checkpointed in the "timelinerebuild" hash as the highest user ID below which every batch is done, together
+ * with the timeline depth, so a restarted rebuild with the same depth continues from there.
+ */
+// JedisPool is deprecated in Jedis 8, but its replacement, RedisClient, has no getResource(): the batches need a Jedis of
+// their own to WATCH the timelines they rewrite
+@SuppressWarnings("deprecation")
+public class TimelineRebuilder {
+
+    public static final String CHECKPOINT_KEY = "timelinerebuild";
+
+    private final JedisPool pool;
+    private final ForkJoinPool mergePool;
+    private int depth = 10;
+    private int batchSize = 500;
+    private int workers = 2;
+    private int retries = 3;
+    private double rate = 0; // users per second, 0 for no limit
+    private boolean packedAdjacency = false;
+
+    // rate limiter state: time at which the next batch may start
+    private long nextStartNanos = 0;
+
+    /**
+     * @param pool connections to the Redis database
+     * @param mergePool fork/join pool used to merge the timelines
+     */
+    public TimelineRebuilder(JedisPool pool, ForkJoinPool mergePool) {
+        this.pool = pool;
+        this.mergePool = mergePool;
+    }
+
+    /**
+     * @param args key=value options:
+     *             <p> host=localhost port=6379 : Redis server </p>
+     *             <p> depth=10 : number of tweet IDs kept in every rebuilt timeline </p>
+     *             <p> batch=500 : users per batch </p>
+     *             <p> workers=2 : batches in flight </p>
+     *             <p> threads=(processors) : fork/join parallelism of the merges </p>
+     *             <p> rate=0 : maximum users rebuilt per second (0 for no limit) </p>
+     *             <p> packed=false : read packed adjacency </p>
+     *             <p> resume=true : continue from the checkpoint of an interrupted rebuild </p>
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = WorkloadRunner.parseOptions(args);
+        int workers = Integer.parseInt(options.getOrDefault("workers", "2"));
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(workers + 1);
+        JedisPool pool = new JedisPool(config, options.getOrDefault("host", "localhost"), Integer.parseInt(options.getOrDefault("port", "6379")));
+        ForkJoinPool mergePool = new ForkJoinPool(Integer.parseInt(options.getOrDefault("threads",
+                Integer.toString(Runtime.getRuntime().availableProcessors()))));
+
+        TimelineRebuilder rebuilder = new TimelineRebuilder(pool, mergePool);
+        rebuilder.setDepth(Integer.parseInt(options.getOrDefault("depth", "10")));
+        rebuilder.setBatchSize(Integer.parseInt(options.getOrDefault("batch", "500")));
+        rebuilder.setWorkers(workers);
+        rebuilder.setRate(Double.parseDouble(options.getOrDefault("rate", "0")));
+        rebuilder.setPackedAdjacency(Boolean.parseBoolean(options.getOrDefault("packed", "false")));
+        try {
+            long rebuilt = rebuilder.rebuild(Boolean.parseBoolean(options.getOrDefault("resume", "true")));
+            System.out.println(rebuilt + " timelines rebuilt");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("ERROR: timeline rebuild failed (restart to resume from the checkpoint): " + e.getCause().getMessage());
+            e.getCause().printStackTrace();
+        } finally {
+            mergePool.shutdown();
+            pool.close();
+        }
+    }
+
+    /**
+     * Rebuilds the timelines of every user in the "users" set.
+     * @param resume true to skip the users below the checkpoint of an interrupted rebuild
+     * @return number of timelines rebuilt
+     */
+    public long rebuild(boolean resume) throws InterruptedException, ExecutionException {
+        int[] users;
+        int startAfter = Integer.MIN_VALUE;
+        try (Jedis jedis = pool.getResource()) {
+            users = scanUsers(jedis);
+            String checkpoint = jedis.hget(CHECKPOINT_KEY, "lastUserID");
+            String checkpointDepth = jedis.hget(CHECKPOINT_KEY, "depth");
+            if (resume && checkpoint != null && !Integer.toString(depth).equals(checkpointDepth)) {
+                // the timelines below the checkpoint were rebuilt with another depth
+                System.out.println("WARNING: the checkpoint was written with depth " + checkpointDepth + ", not " + depth
+                        + "; rebuilding every timeline");
+            }
+            if (resume && checkpoint != null && Integer.toString(depth).equals(checkpointDepth)) {
+                startAfter = Integer.parseInt(checkpoint);
+                System.out.println("Resuming after user " + startAfter);
+            } else {
+                jedis.del(CHECKPOINT_KEY);
+            }
+            jedis.hset(CHECKPOINT_KEY, "depth", Integer.toString(depth));
+        }
+        Arrays.sort(users);
+        int first = 0;
+        while (first < users.length && users[first] <= startAfter) first++;
+
+        List<int[]> batches = new ArrayList<>();
+        for (int start = first; start < users.length; start += batchSize) {
+            batches.add(Arrays.copyOfRange(users, start, Math.min(start + batchSize, users.length)));
+        }
+        int total = users.length - first;
+        System.out.println(total + " timelines to rebuild in " + batches.size() + " batches");
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        AtomicLong done = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        long pre_timestamp = System.currentTimeMillis();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int[] batch : batches) {
+                futures.add(executor.submit(() -> {
+                    throttle(batch.length);
+                    skipped.addAndGet(batch.length - rebuildBatch(batch));
+                    long rebuilt = done.addAndGet(batch.length);
+                    double sec = (System.currentTimeMillis() - pre_timestamp) / 1000.0;
+                    double perSecond = rebuilt / Math.max(sec, 0.001);
+                    System.out.printf("%d of %d timelines rebuilt at %.1f seconds: %.0f timelines per second, ETA %.0f seconds%n",
+                            rebuilt, total, sec, perSecond, (total - rebuilt) / perSecond);
+                    return null;
+                }));
+            }
+
+            // advance the checkpoint over the prefix of completed batches
+            for (int i = 0; i < futures.size(); i++) {
+                futures.get(i).get();
+                int[] batch = batches.get(i);
+                try (Jedis jedis = pool.getResource()) {
+                    jedis.hset(CHECKPOINT_KEY, "lastUserID", Integer.toString(batch[batch.length - 1]));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        try (Jedis jedis = pool.getResource()) {
+            jedis.del(CHECKPOINT_KEY);
+        }
+        if (skipped.get() > 0) {
+            System.out.println("WARNING: " + skipped.get() + " timelines were skipped because live posts kept changing them");
+        }
+        return done.get() - skipped.get();
+    }
+
+    /**
+     * Rebuilds the timelines of one batch of users.
+     * @param users user IDs of the batch
+     * @return number of timelines rebuilt (the others were skipped, see write())
+     */
+    public int rebuildBatch(int[] users) throws InterruptedException {
+        try (Jedis jedis = pool.getResource()) {
+            // tweets up to this ID are taken from the lists of tweets; newer ones are being pushed by live posts
+            String current = jedis.get("currTweetID");
+            long snapshot = current == null ? 0 : Long.parseLong(current);
+
+            // followees of every user
+            Pipeline p = jedis.pipelined();
+            List<Response<List<String>>> followees = new ArrayList<>();
+            List<Response<List<byte[]>>> packedFollowees = new ArrayList<>();
+            for (int userID : users) {
+                if (packedAdjacency) {
+                    packedFollowees.add(p.lrange((PackedAdjacency.FOLLOWING_PREFIX + userID).getBytes(StandardCharsets.UTF_8), 0, -1));
+                } else {
+                    followees.add(p.lrange("following:" + userID, 0, -1));
+                }
+            }
+            p.sync();
+            int[][] followeeIDs = new int[users.length][];
+            Map<Integer, Response<List<String>>> userTweets = new HashMap<>();
+            p = jedis.pipelined();
+            for (int i = 0; i < users.length; i++) {
+                followeeIDs[i] = packedAdjacency ? PackedAdjacency.decode(packedFollowees.get(i).get()) : IntList.parse(followees.get(i).get());
+                for (int followeeID : followeeIDs[i]) {
+                    if (!userTweets.containsKey(followeeID)) {
+                        userTweets.put(followeeID, p.lrange("usertweet:" + followeeID, 0, depth - 1));
+                    }
+                }
+            }
+            p.sync();
+
+            // latest tweet IDs of every distinct followee, newest first, without tweets after the snapshot
+            Map<Integer, int[]> tweetIDs = new HashMap<>();
+            for (Map.Entry<Integer, Response<List<String>>> entry : userTweets.entrySet()) {
+                IntList ids = new IntList(depth);
+                for (String tweetID : entry.getValue().get()) {
+                    int id = Integer.parseInt(tweetID);
+                    if (id <= snapshot) ids.add(id);
+                }
+                tweetIDs.put(entry.getKey(), ids.toArray());
+            }
+
+            int[][] timelines = new int[users.length][];
+            mergePool.invoke(new MergeTask(followeeIDs, tweetIDs, timelines, 0, users.length, depth));
+
+            return users.length - write(jedis, users, timelines, snapshot);
+        }
+    }
+
+    /**
+     * Writes the rebuilt timelines of a batch in one transaction, keeping the tweets pushed after the snapshot. If a live
+     * push changes one of the timelines in between, the batch is retried, and after the given number of retries the
+     * users are written one by one, each retried as many times with a growing pause. A user whose timeline still changes
+     * is skipped.
+     * @return number of users skipped
+     */
+    private int write(Jedis jedis, int[] users, int[][] timelines, long snapshot) throws InterruptedException {
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            if (writeTransaction(jedis, users, timelines, snapshot, 0, users.length)) return 0;
+        }
+        int skipped = 0;
+        for (int i = 0; i < users.length; i++) {
+            boolean written = false;
+            for (int attempt = 0; attempt <= retries && !written; attempt++) {
+                if (attempt > 0) Thread.sleep(1L << Math.min(attempt, 10));
+                written = writeTransaction(jedis, users, timelines, snapshot, i, i + 1);
+            }
+            if (!written) {
+                System.out.println("WARNING: skipped the timeline of user " + users[i] + ", changed by live posts through "
+                        + (retries + 1) + " attempts");
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+
+    private boolean writeTransaction(Jedis jedis, int[] users, int[][] timelines, long snapshot, int from, int to) {
+        String[] keys = new String[to - from];
+        for (int i = from; i < to; i++) {
+            keys[i - from] = "timeline:" + users[i];
+        }
+        jedis.watch(keys);
+        Pipeline p = jedis.pipelined();
+        List<Response<List<String>>> heads = new ArrayList<>();
+        for (String key : keys) {
+            heads.add(p.lrange(key, 0, depth - 1));
+        }
+        p.sync();
+
+        Transaction t = jedis.multi();
+        for (int i = from; i < to; i++) {
+            // tweets pushed after the snapshot are at the head of the current timeline
+            List<String> timeline = new ArrayList<>();
+            for (String tweetID : heads.get(i - from).get()) {
+                if (Long.parseLong(tweetID) > snapshot) timeline.add(tweetID);
+            }
+            for (int id : timelines[i]) {
+                if (timeline.size() == depth) break;
+                timeline.add(Integer.toString(id));
+            }
+            t.del(keys[i - from]);
+            if (!timeline.isEmpty()) t.rpush(keys[i - from], timeline.toArray(new String[0]));
+        }
+        return t.exec() != null;
+    }
+
+    /**
+     * Merges the newest-first tweet ID lists of a user's followees into the user's newest-first top-N timeline.
+     * @param lists tweet ID lists, each sorted from newest to oldest
+     * @param n maximum timeline length
+     * @return timeline tweet IDs, newest first
+     */
+    public static int[] mergeTopN(List<int[]> lists, int n) {
+        // heap entries are {list index, position}, ordered by the tweet ID at that position, newest first
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, lists.size()),
+                (a, b) -> Integer.compare(lists.get(b[0])[b[1]], lists.get(a[0])[a[1]]));
+        for (int i = 0; i < lists.size(); i++) {
+            if (lists.get(i).length > 0) heap.add(new int[]{i, 0});
+        }
+        IntList merged = new IntList(n);
+        int previous = Integer.MAX_VALUE;
+        while (!heap.isEmpty() && merged.size() < n) {
+            int[] top = heap.poll();
+            int[] list = lists.get(top[0]);
+            int id = list[top[1]];
+            if (id != previous) merged.add(id);
+            previous = id;
+            if (++top[1] < list.length) heap.add(top);
+        }
+        return merged.toArray();
+    }
+
+    /**
+     * Splits the merges of a batch over the fork/join pool.
+     */
+    private static class MergeTask extends RecursiveAction {
+        private static final int THRESHOLD = 32;
+        private final int[][] followeeIDs;
+        private final Map<Integer, int[]> tweetIDs;
+        private final int[][] timelines;
+        private final int from;
+        private final int to;
+        private final int depth;
+
+        MergeTask(int[][] followeeIDs, Map<Integer, int[]> tweetIDs, int[][] timelines, int from, int to, int depth) {
+            this.followeeIDs = followeeIDs;
+            this.tweetIDs = tweetIDs;
+            this.timelines = timelines;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new MergeTask(followeeIDs, tweetIDs, timelines, from, middle, depth),
+                        new MergeTask(followeeIDs, tweetIDs, timelines, middle, to, depth));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                List<int[]> lists = new ArrayList<>(followeeIDs[i].length);
+                for (int followeeID : followeeIDs[i]) {
+                    lists.add(tweetIDs.get(followeeID));
+                }
+                timelines[i] = mergeTopN(lists, depth);
+            }
+        }
+    }
+
+    /**
+     * Waits until the rate limit allows the given number of users to be rebuilt.
+     */
+    private void throttle(int users) throws InterruptedException {
+        if (rate <= 0) return;
+        long start;
+        synchronized (this) {
+            long now = System.nanoTime();
+            start = Math.max(now, nextStartNanos);
+            nextStartNanos = start + (long) (users / rate * 1e9);
+        }
+        long wait = start - System.nanoTime();
+        if (wait > 0) Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+    }
+
+    private static int[] scanUsers(Jedis jedis) {
+        IntList users = new IntList();
+        String cursor = ScanParams.SCAN_POINTER_START;
+        ScanParams params = new ScanParams().count(10000);
+        do {
+            ScanResult<String> scan = jedis.sscan("users", cursor, params);
+            for (String userID : scan.getResult()) {
+                users.add(Integer.parseInt(userID));
+            }
+            cursor = scan.getCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        return users.toArray();
+    }
+
+    /**
+     * Sets the number of tweet IDs kept in every rebuilt timeline.
+     * @param depth timeline depth
+     */
+    public void setDepth(int depth) {
+        if (depth < 1) throw new IllegalArgumentException("depth must be positive");
+        this.depth = depth;
+    }
+
+    /**
+     * Sets the number of users read, merged and written together.
+     * @param batchSize users per batch
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batch size must be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the number of batches in flight (each uses one pooled connection).
+     * @param workers batches in flight
+     */
+    public void setWorkers(int workers) {
+        if (workers < 1) throw new IllegalArgumentException("workers must be positive");
+        this.workers = workers;
+    }
+
+    /**
+     * Sets the maximum number of users rebuilt per second.
+     * @param rate users per second (0 for no limit)
+     */
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * Sets the number of times a batch transaction is retried before its users are written one by one, and the number of
+     * times each of those users is retried before it is skipped.
+     * @param retries number of retries
+     */
+    public void setRetries(int retries) {
+        this.retries = retries;
+    }
+
+    /**
+     * Sets whether followee lists are read from packed binary segments (see PackedAdjacency).
+     * @param packedAdjacency true to use packed adjacency
+     */
+    public void setPackedAdjacency(boolean packedAdjacency) {
+        this.packedAdjacency = packedAdjacency;
+    }
+}
@@ -0,0 +1,104 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Transaction;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class repairs a pre-computed ("timeline:&lt;id&gt;") timeline of the push strategy after a follow or unfollow, using
+ * only the recent tweets of the followed/unfollowed user (kept in "usertweet:&lt;id&gt;") instead of rebuilding the timeline.
+ * The timeline entries are tweet IDs, or inline entries that start with the tweet ID (see TweetCodec.encodeEntry()); they
+ * are ordered by that tweet ID either way.
+ */
+public class TimelineRepair {
+
+    // number of timeline entries read by getTimeline(); tweets older than this window are not backfilled
+    public static final int WINDOW = 10;
+    // number of the followee's most recent tweets used for a repair
+    public static final int RECENT_TWEETS = 100;
+
+    private TimelineRepair() {
+    }
+
+    /**
+     * Merges entries into the head of a timeline. The head window is read under WATCH, merged with the entries that are
+     * newer than its oldest entry (or with all of them if the timeline is shorter than the window), and written back in
+     * tweet ID order in one transaction. A tweet pushed concurrently by a post aborts the transaction, which is then retried
+     * on the new head, so concurrent posts are neither lost nor duplicated.
+     * @param jedis Redis connection
+     * @param timelineKey timeline key
+     * @param entries entries to merge in
+     */
+    public static void backfill(Jedis jedis, String timelineKey, List<String> entries) {
+        if (entries.isEmpty()) return;
+        while (true) {
+            jedis.watch(timelineKey);
+            List<String> head = jedis.lrange(timelineKey, 0, WINDOW - 1);
+            long oldest = head.size() < WINDOW ? Long.MIN_VALUE : tweetID(head.get(head.size() - 1));
+
+            TreeMap<Long, String> merged = new TreeMap<>();
+            for (String entry : head) {
+                merged.put(tweetID(entry), entry);
+            }
+            for (String entry : entries) {
+                long id = tweetID(entry);
+                if (id > oldest) merged.putIfAbsent(id, entry);
+            }
+            if (merged.size() == head.size()) {
+                // nothing new in the window
+                jedis.unwatch();
+                return;
+            }
+
+            // LPUSH of the ascending entries leaves the newest tweet at the head
+            String[] ascending = new String[merged.size()];
+            int i = 0;
+            for (Map.Entry<Long, String> entry : merged.entrySet()) {
+                ascending[i++] = entry.getValue();
+            }
+            Transaction t = jedis.multi();
+            t.ltrim(timelineKey, head.size(), -1);
+            t.lpush(timelineKey, ascending);
+            if (t.exec() != null) return;
+        }
+    }
+
+    /**
+     * Removes entries from a timeline in one transaction. LREM removes the entries wherever they are, so entries pushed
+     * concurrently by other posts are not affected.
+     * @param jedis Redis connection
+     * @param timelineKey timeline key
+     * @param entries entries to remove
+     */
+    public static void filter(Jedis jedis, String timelineKey, List<String> entries) {
+        if (entries.isEmpty()) return;
+        Transaction t = jedis.multi();
+        for (String entry : entries) {
+            t.lrem(timelineKey, 0, entry);
+        }
+        t.exec();
+    }
+
+    /**
+     * Reads the tweet ID of a timeline entry.
+     * @param entry tweet ID, or inline entry starting with the tweet ID
+     * @return tweet ID
+     */
+    public static long tweetID(String entry) {
+        int separator = entry.indexOf('|');
+        return Long.parseLong(separator < 0 ? entry : entry.substring(0, separator));
+    }
+
+    /**
+     * Reads the most recent tweet IDs of a user.
+     * @param jedis Redis connection
+     * @param userID user ID
+     * @return tweet IDs, newest first
+     */
+    public static List<String> recentTweets(Jedis jedis, int userID) {
+        return jedis.lrange("usertweet:" + userID, 0, RECENT_TWEETS - 1);
+    }
+}
@@ -0,0 +1,177 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * This class runs the background sweeper of the Redis implementations, which delete tweets lazily: deleteTweet() only
+ * records a tombstone in the "tombstones" hash (tweet ID to author ID, or to the tweet body for the tweets copied into
+ * inline timelines) and deletes the tweet body, and the timeline reads
+ * skip the tweet IDs whose bodies are gone. The sweeper purges the tweet IDs of the tombstones from the timelines and the
+ * authors' lists of tweets, a batch at a time, and only while the Redis server is idle (serving fewer than maxOps
+ * operations per second), so the LREMs never compete with live traffic.
+ */
+public class TombstoneSweeper implements Runnable {
+
+    public static final String TOMBSTONES_KEY = "tombstones";
+
+    /**
+     * Implemented by the TwitterDatabaseAPI implementations that delete tweets lazily.
+     */
+    public interface Sweepable {
+
+        /**
+         * Purges the tweet IDs of up to limit tombstones from the lists that may hold them, then removes the tombstones.
+         * The tombstones are scanned from where the previous call stopped, so a call can purge none while others remain.
+         * @param limit maximum number of tombstones purged
+         * @return number of tombstones purged
+         */
+        int sweepTombstones(int limit);
+
+        /**
+         * Gets the number of tombstones left to sweep.
+         * @return number of tombstones
+         */
+        long getTombstoneCount();
+
+        /**
+         * Gets the load of the database, used to sweep only while it is idle.
+         * @return operations per second the database is currently serving
+         */
+        long getOpsPerSecond();
+    }
+
+    private final Sweepable database;
+    private final int batchSize;
+    private final long maxOpsPerSecond;
+    private final long intervalMillis;
+    private volatile boolean running = true;
+    private long swept = 0;
+
+    /**
+     * @param database implementation to sweep
+     * @param batchSize tombstones purged per batch
+     * @param maxOpsPerSecond the database counts as idle below this many operations per second
+     * @param intervalMillis pause when the database is busy or there is nothing to sweep, in milliseconds
+     */
+    public TombstoneSweeper(Sweepable database, int batchSize, long maxOpsPerSecond, long intervalMillis) {
+        this.database = database;
+        this.batchSize = batchSize;
+        this.maxOpsPerSecond = maxOpsPerSecond;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * @param args the arguments required for the main() method
+     *             args[0]: implementation name ("redis", "redis-optional" or "redis-sharded")
+     *             key=value options:
+     *             <p> url=... : Redis server as host:port (the shard list of redis-sharded) </p>
+     *             <p> batch=100 : tombstones purged per batch </p>
+     *             <p> maxOps=1000 : sweep only while the server serves fewer operations per second </p>
+     *             <p> interval=1000 : milliseconds to wait while the server is busy or there is nothing to sweep </p>
+     *             <p> once=false : sweep every tombstone once and exit instead of running until stopped </p>
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("ERROR: must provide the implementation name");
+            return;
+        }
+        Map<String, String> options = WorkloadRunner.parseOptions(Arrays.copyOfRange(args, 1, args.length));
+        TwitterDatabaseAPI api;
+        try {
+            api = BenchmarkRunner.createImplementation(args[0]);
+        } catch (IllegalArgumentException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            return;
+        }
+        if (!(api instanceof Sweepable)) {
+            System.out.println("ERROR: " + args[0] + " does not delete tweets lazily");
+            return;
+        }
+        api.authenticate(options.get("url"), options.get("user"), options.get("password"));
+        TombstoneSweeper sweeper = new TombstoneSweeper((Sweepable) api,
+                Integer.parseInt(options.getOrDefault("batch", "100")),
+                Long.parseLong(options.getOrDefault("maxOps", "1000")),
+                Long.parseLong(options.getOrDefault("interval", "1000")));
+        try {
+            if (Boolean.parseBoolean(options.getOrDefault("once", "false"))) {
+                long pre_timestamp = System.currentTimeMillis();
+                sweeper.sweepAll();
+                System.out.println(sweeper.getSwept() + " tombstones swept in " + (System.currentTimeMillis() - pre_timestamp) / 1000.0 + " seconds");
+            } else {
+                sweeper.run();
+            }
+        } finally {
+            api.closeConnection();
+        }
+    }
+
+    /**
+     * Sweeps batches while the database is idle until stop() is called.
+     */
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                boolean idle = database.getOpsPerSecond() < maxOpsPerSecond;
+                int purged = idle ? database.sweepTombstones(batchSize) : 0;
+                // a scan step can come back empty while tombstones remain further on
+                if (purged == 0 && (!idle || database.getTombstoneCount() == 0)) Thread.sleep(intervalMillis);
+                swept += purged;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sweeps every tombstone without waiting for the database to be idle, until none is left.
+     */
+    public void sweepAll() {
+        while (database.getTombstoneCount() > 0) {
+            swept += database.sweepTombstones(batchSize);
+        }
+    }
+
+    /**
+     * Makes run() return after its current batch.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Gets the number of tombstones swept so far.
+     * @return number of tombstones
+     */
+    public long getSwept() {
+        return swept;
+    }
+
+    /**
+     * Gets the author ID recorded in a tombstone, which is either the author ID alone or, for the tweets copied into inline
+     * timelines, the tweet body (which starts with "&lt;author ID&gt;|").
+     * @param tombstone value of the tombstone
+     * @return author ID
+     */
+    public static String authorID(String tombstone) {
+        int separator = tombstone.indexOf('|');
+        return separator < 0 ? tombstone : tombstone.substring(0, separator);
+    }
+
+    /**
+     * Reads the current load of a Redis server from INFO stats.
+     * @param jedis connection to the server
+     * @return operations per second the server is serving
+     */
+    public static long opsPerSecond(Jedis jedis) {
+        for (String line : jedis.info("stats").split("\r?\n")) {
+            if (line.startsWith("instantaneous_ops_per_sec:")) {
+                return Long.parseLong(line.substring("instantaneous_ops_per_sec:".length()).trim());
+            }
+        }
+        return 0;
+    }
+}
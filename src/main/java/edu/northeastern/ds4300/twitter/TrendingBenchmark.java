@@ -0,0 +1,154 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * This class measures the accuracy and speed of TrendingHashtags on a generated stream of tweets. Each tweet carries one
+ * hashtag drawn from a Zipf distribution, and the tweets are spread evenly over a simulated period of several windows; with
+ * shift=true the popularity ranking is rotated halfway through, so the detector must forget the tags that were trending
+ * before. Several threads post the stream concurrently, and the trending hashtags at the end are compared with the exact
+ * counts over the same window.
+ */
+public class TrendingBenchmark {
+
+    /**
+     * @param args the arguments required for the main() function
+     *             <p> args[0..] : key=value options: tags=100000 (distinct hashtags), tweets=2000000, skew=1.1 (Zipf
+     *                exponent), k=10 (trending hashtags compared), threads=(cores), windows=2 (length of the stream in
+     *                windows), shift=true, buckets=12, bucketMillis=300000, width=2048, depth=4, candidates=100,
+     *                lookups=100000 (timed getTrending() calls), seed=42, and warmupIterations=0 trials=1 json=... csv=...
+     *                (see BenchmarkRunner.measure()) </p>
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = WorkloadRunner.parseOptions(args);
+        int tagCount = Integer.parseInt(options.getOrDefault("tags", "100000"));
+        int tweetCount = Integer.parseInt(options.getOrDefault("tweets", "2000000"));
+        double skew = Double.parseDouble(options.getOrDefault("skew", "1.1"));
+        int k = Integer.parseInt(options.getOrDefault("k", "10"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        double windows = Double.parseDouble(options.getOrDefault("windows", "2"));
+        boolean shift = Boolean.parseBoolean(options.getOrDefault("shift", "true"));
+        int buckets = Integer.parseInt(options.getOrDefault("buckets", "12"));
+        long bucketMillis = Long.parseLong(options.getOrDefault("bucketMillis", "300000"));
+        int width = Integer.parseInt(options.getOrDefault("width", "2048"));
+        int depth = Integer.parseInt(options.getOrDefault("depth", "4"));
+        int candidates = Integer.parseInt(options.getOrDefault("candidates", "100"));
+        int lookups = Integer.parseInt(options.getOrDefault("lookups", "100000"));
+        options.putIfAbsent("warmupIterations", "0");
+        options.putIfAbsent("trials", "1");
+
+        BenchmarkRunner.measure(TrendingHashtags.class.getName(), "trending", options, (trialSeed, warmup) -> {
+            // generate the stream: the hashtag and posting time of every tweet
+            ZipfSampler sampler = new ZipfSampler(tagCount, skew);
+            Random random = new Random(trialSeed);
+            int[] tagOf = new int[tweetCount];
+            for (int i = 0; i < tweetCount; i++) {
+                long rank = sampler.sample(random) - 1;
+                long offset = shift && i >= tweetCount / 2 ? tagCount / 2 : 0;
+                tagOf[i] = (int) ((rank + offset) % tagCount);
+            }
+            long start = buckets * bucketMillis;
+            long span = (long) (windows * buckets * bucketMillis);
+            long[] timeOf = new long[tweetCount];
+            for (int i = 0; i < tweetCount; i++) {
+                timeOf[i] = start + i * span / tweetCount;
+            }
+
+            // post the stream from several threads, each taking every threads-th tweet in order
+            TrendingHashtags trending = new TrendingHashtags(buckets, bucketMillis, width, depth, candidates, threads);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                workers.add(new Thread(() -> {
+                    for (int i = first; i < tweetCount; i += threads) {
+                        trending.observe("Go NEU #tag" + tagOf[i], timeOf[i]);
+                    }
+                }, "poster-" + t));
+            }
+            long pre_timestamp = System.nanoTime();
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            try {
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+            double postSeconds = (System.nanoTime() - pre_timestamp) / 1e9;
+            System.out.printf("Observed %d tweets with %d threads in %.3f seconds (%.0f tweets/s)%n",
+                    tweetCount, threads, postSeconds, tweetCount / postSeconds);
+
+            long end = timeOf[tweetCount - 1];
+            pre_timestamp = System.nanoTime();
+            trending.refresh(end);
+            double refreshMillis = (System.nanoTime() - pre_timestamp) / 1e6;
+            System.out.printf("Refreshed the ranking in %.3f ms%n", refreshMillis);
+
+            pre_timestamp = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < lookups; i++) {
+                found += trending.getTrending(k).size();
+            }
+            double trendingMillis = (System.nanoTime() - pre_timestamp) / 1e6 / Math.max(1, lookups);
+            System.out.printf("getTrending(%d): %.3f microseconds per call (%d results)%n",
+                    k, trendingMillis * 1000, found / Math.max(1, lookups));
+
+            // exact counts over the same window
+            long oldest = end / bucketMillis - buckets + 1;
+            long[] exact = new long[tagCount];
+            int distinct = 0;
+            long windowTweets = 0;
+            for (int i = 0; i < tweetCount; i++) {
+                if (timeOf[i] / bucketMillis < oldest) continue;
+                if (exact[tagOf[i]]++ == 0) distinct++;
+                windowTweets++;
+            }
+            Integer[] byCount = new Integer[tagCount];
+            for (int i = 0; i < tagCount; i++) {
+                byCount[i] = i;
+            }
+            Arrays.sort(byCount, (a, b) -> Long.compare(exact[b], exact[a]));
+            Set<String> exactTop = new HashSet<>();
+            for (int i = 0; i < Math.min(k, tagCount); i++) {
+                exactTop.add("tag" + byCount[i]);
+            }
+
+            List<TrendingHashtags.Trend> reported = trending.getTrending(k);
+            int hits = 0;
+            double relativeError = 0;
+            for (TrendingHashtags.Trend trend : reported) {
+                if (exactTop.contains(trend.getTag())) hits++;
+                long count = exact[Integer.parseInt(trend.getTag().substring("tag".length()))];
+                relativeError += count == 0 ? 1 : (trend.getCount() - count) / (double) count;
+            }
+            System.out.println("Window: " + windowTweets + " tweets, " + distinct + " distinct hashtags");
+            System.out.printf("Precision@%d: %.3f, mean relative overcount: %.4f%n",
+                    k, hits / (double) Math.max(1, reported.size()), relativeError / Math.max(1, reported.size()));
+            System.out.printf("Sketch memory: %.1f KB (exact counts would keep %d tags)%n", trending.getSketchBytes() / 1024.0, distinct);
+            System.out.println("Rank  Reported                 Exact");
+            for (int i = 0; i < Math.min(k, tagCount); i++) {
+                String estimate = i < reported.size() ? reported.get(i).toString() : "-";
+                System.out.printf("%4d  %-24s #tag%d=%d%n", i + 1, estimate, byCount[i], exact[byCount[i]]);
+            }
+
+            Map<String, Object> trial = new LinkedHashMap<>();
+            trial.put("observe_throughput", tweetCount / postSeconds);
+            trial.put("refresh_ms", refreshMillis);
+            trial.put("get_trending_ms", trendingMillis);
+            trial.put("precision", hits / (double) Math.max(1, reported.size()));
+            trial.put("relative_overcount", relativeError / Math.max(1, reported.size()));
+            trial.put("sketch_bytes", (double) trending.getSketchBytes());
+            return trial;
+        });
+    }
+}
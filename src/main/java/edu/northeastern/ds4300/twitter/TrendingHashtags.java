@@ -0,0 +1,425 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class detects trending hashtags in the stream of posted tweets with bounded memory. Hashtags are counted over a
+ * sliding window of windowBuckets time buckets of bucketMillis each. Every bucket is a count-min sketch (depth rows of
+ * width counters), so the memory does not grow with the number of distinct tags, plus a small set of candidate tags (the
+ * ones with the highest estimated counts in the bucket) that remembers which tags may be heavy hitters. The count of a tag
+ * over the window is the sum of its estimates in the buckets; like every count-min estimate, it never undercounts.
+ *
+ * <p> observe() runs on the post path, so it must be cheap and must not serialize the posting threads: the state is split
+ * into shards (one per core by default), and a thread always updates the same shard. refresh() merges the shards into a
+ * ranking of the candidates, and getTrending() only reads the last ranking, so it answers in microseconds without taking
+ * any lock. start() refreshes the ranking in the background. </p>
+ *
+ * <p> Sketches of the same dimensions are merged by adding their counters, so several JVMs can combine their counts
+ * through Redis: when setRedis() has been called, refresh() publishes the JVM's buckets to the "trending:&lt;bucket&gt;"
+ * hashes (one field per node ID, expiring with the window) and adds the buckets published by the other nodes. </p>
+ */
+public class TrendingHashtags implements AutoCloseable {
+
+    public static final String KEY_PREFIX = "trending:";
+
+    // seeds of the row hash functions; they must be the same in every JVM sharing sketches
+    private static final int[] SEEDS = {0x9E3779B9, 0x7F4A7C15, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F, 0x165667B1, 0xD3A2646C, 0xFD7046C5};
+
+    private final int windowBuckets;
+    private final long bucketMillis;
+    private final int width;
+    private final int depth;
+    private final int candidates;
+    private final Shard[] shards;
+    private volatile List<Trend> ranking = Collections.emptyList();
+    private Jedis jedis;
+    private String nodeID;
+    private ScheduledExecutorService refresher;
+
+    /**
+     * A hashtag and its estimated count over the window.
+     */
+    public static class Trend {
+        private final String tag;
+        private final long count;
+
+        public Trend(String tag, long count) {
+            this.tag = tag;
+            this.count = count;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + tag + "=" + count;
+        }
+    }
+
+    /**
+     * Creates a detector over the last hour, in 12 buckets of 5 minutes, with 4 x 2048 sketches, 100 candidates per bucket
+     * and one shard per core.
+     */
+    public TrendingHashtags() {
+        this(12, TimeUnit.MINUTES.toMillis(5), 2048, 4, 100, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param windowBuckets number of buckets in the sliding window
+     * @param bucketMillis length of a bucket, in milliseconds
+     * @param width counters per sketch row (the overcount of an estimate is about 2.7 / width of the bucket's tags)
+     * @param depth sketch rows (the overcount exceeds that bound with probability 1 / e^depth), at most 8
+     * @param candidates candidate tags kept per bucket and shard, and length of the ranking
+     * @param shards number of shards
+     */
+    public TrendingHashtags(int windowBuckets, long bucketMillis, int width, int depth, int candidates, int shards) {
+        if (windowBuckets < 1 || bucketMillis < 1) throw new IllegalArgumentException("window must not be empty");
+        if (depth < 1 || depth > SEEDS.length) throw new IllegalArgumentException("depth must be between 1 and " + SEEDS.length);
+        if (width < 1 || candidates < 1 || shards < 1) throw new IllegalArgumentException("width, candidates and shards must be positive");
+        this.windowBuckets = windowBuckets;
+        this.bucketMillis = bucketMillis;
+        this.width = width;
+        this.depth = depth;
+        this.candidates = candidates;
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(windowBuckets, depth * width);
+        }
+    }
+
+    /**
+     * Shares the sketches with the other JVMs through a Redis server; must be called before the first refresh().
+     * @param host Redis host
+     * @param port Redis port
+     * @param nodeID name of this JVM, unique among the JVMs sharing the server
+     */
+    public void setRedis(String host, int port, String nodeID) {
+        this.jedis = new Jedis(host, port);
+        this.nodeID = nodeID;
+    }
+
+    /**
+     * Refreshes the ranking in a background thread.
+     * @param refreshMillis milliseconds between refreshes
+     */
+    public void start(long refreshMillis) {
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "trending-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh(System.currentTimeMillis());
+            } catch (JedisException e) {
+                System.out.println("WARNING: could not share the trending sketches through Redis: " + e.getMessage());
+            }
+        }, 0, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Counts the hashtags of a posted tweet at the current time.
+     * @param tweetText tweet text
+     */
+    public void observe(String tweetText) {
+        observe(tweetText, System.currentTimeMillis());
+    }
+
+    /**
+     * Counts the hashtags of a tweet posted at the given time. Tweets older than the bucket their shard is now filling
+     * for the same slot of the window are ignored.
+     * @param tweetText tweet text
+     * @param timeMillis posting time, in milliseconds since the epoch
+     */
+    public void observe(String tweetText, long timeMillis) {
+        List<String> tags = HashtagIndex.extract(tweetText);
+        if (tags.isEmpty()) return;
+        long bucket = timeMillis / bucketMillis;
+        int slot = (int) (bucket % windowBuckets);
+        Shard shard = shards[(int) (Thread.currentThread().getId() % shards.length)];
+        int[] columns = new int[depth];
+        synchronized (shard) {
+            if (shard.bucketIDs[slot] > bucket) return;
+            if (shard.bucketIDs[slot] < bucket) shard.reset(slot, bucket);
+            int[] sketch = shard.sketches[slot];
+            for (String tag : tags) {
+                columns(tag, columns);
+                int estimate = Integer.MAX_VALUE;
+                for (int row = 0; row < depth; row++) {
+                    estimate = Math.min(estimate, ++sketch[row * width + columns[row]]);
+                }
+                shard.offer(slot, tag, estimate, candidates);
+            }
+        }
+    }
+
+    /**
+     * Gets the trending hashtags as of the last refresh.
+     * @param k number of hashtags
+     * @return up to k hashtags with their estimated counts over the window, highest first
+     */
+    public List<Trend> getTrending(int k) {
+        List<Trend> trends = ranking;
+        return trends.subList(0, Math.min(k, trends.size()));
+    }
+
+    /**
+     * Merges the shards (and, with Redis, the other nodes' sketches) into a new ranking of the candidates.
+     * @param nowMillis current time, which decides the buckets in the window
+     */
+    public synchronized void refresh(long nowMillis) {
+        long current = nowMillis / bucketMillis;
+        long oldest = current - windowBuckets + 1;
+        int[][] merged = new int[windowBuckets][depth * width];
+        Set<String> tags = new HashSet<>();
+        boolean[] observed = new boolean[windowBuckets];
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (int slot = 0; slot < windowBuckets; slot++) {
+                    if (shard.bucketIDs[slot] < oldest || shard.bucketIDs[slot] > current) continue;
+                    add(merged[slot], shard.sketches[slot]);
+                    tags.addAll(shard.candidates.get(slot).keySet());
+                    observed[slot] = true;
+                }
+            }
+        }
+        if (jedis != null) exchange(merged, tags, observed, oldest, current);
+
+        int[] columns = new int[depth];
+        List<Trend> trends = new ArrayList<>(tags.size());
+        for (String tag : tags) {
+            columns(tag, columns);
+            long count = 0;
+            for (int[] sketch : merged) {
+                int estimate = Integer.MAX_VALUE;
+                for (int row = 0; row < depth; row++) {
+                    estimate = Math.min(estimate, sketch[row * width + columns[row]]);
+                }
+                count += estimate;
+            }
+            trends.add(new Trend(tag, count));
+        }
+        trends.sort((a, b) -> Long.compare(b.count, a.count));
+        ranking = Collections.unmodifiableList(new ArrayList<>(trends.subList(0, Math.min(candidates, trends.size()))));
+    }
+
+    /**
+     * Gets the memory held by the sketches.
+     * @return bytes of counters
+     */
+    public long getSketchBytes() {
+        return (long) shards.length * windowBuckets * depth * width * 4;
+    }
+
+    /**
+     * Stops the background refresh and closes the Redis connection.
+     */
+    @Override
+    public void close() {
+        if (refresher != null) refresher.shutdownNow();
+        if (jedis != null) jedis.close();
+    }
+
+    /**
+     * Publishes this node's buckets with one pipeline, then reads and adds the other nodes' buckets with another.
+     */
+    private void exchange(int[][] merged, Set<String> tags, boolean[] observed, long oldest, long current) {
+        int expireSeconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(bucketMillis * (windowBuckets + 1)));
+        byte[] field = nodeID.getBytes(StandardCharsets.UTF_8);
+        Pipeline p = jedis.pipelined();
+        for (long bucket = oldest; bucket <= current; bucket++) {
+            int slot = (int) (bucket % windowBuckets);
+            if (!observed[slot]) continue;
+            byte[] key = (KEY_PREFIX + bucket).getBytes(StandardCharsets.UTF_8);
+            p.hset(key, field, encode(merged[slot], tags));
+            p.expire(key, expireSeconds);
+        }
+        Map<Long, Response<Map<byte[], byte[]>>> published = new HashMap<>();
+        for (long bucket = oldest; bucket <= current; bucket++) {
+            published.put(bucket, p.hgetAll((KEY_PREFIX + bucket).getBytes(StandardCharsets.UTF_8)));
+        }
+        p.sync();
+        for (Map.Entry<Long, Response<Map<byte[], byte[]>>> bucket : published.entrySet()) {
+            int slot = (int) (bucket.getKey() % windowBuckets);
+            for (Map.Entry<byte[], byte[]> node : bucket.getValue().get().entrySet()) {
+                if (Arrays.equals(node.getKey(), field)) continue;
+                if (!decode(node.getValue(), merged[slot], tags)) {
+                    System.out.println("WARNING: ignoring the trending sketch of node " + new String(node.getKey(), StandardCharsets.UTF_8)
+                            + ", whose dimensions differ");
+                }
+            }
+        }
+    }
+
+    /**
+     * Serializes a bucket as its dimensions, its counters and the candidate tags.
+     */
+    private byte[] encode(int[] sketch, Set<String> tags) {
+        List<byte[]> encodedTags = new ArrayList<>(tags.size());
+        int size = 12 + sketch.length * 4;
+        for (String tag : tags) {
+            byte[] bytes = tag.getBytes(StandardCharsets.UTF_8);
+            encodedTags.add(bytes);
+            size += 2 + bytes.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(depth).putInt(width).putInt(encodedTags.size());
+        for (int counter : sketch) {
+            buffer.putInt(counter);
+        }
+        for (byte[] bytes : encodedTags) {
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Adds a serialized bucket to a sketch and its tags to the candidates.
+     * @return false if the bucket has other dimensions (nothing is added)
+     */
+    private boolean decode(byte[] bytes, int[] sketch, Set<String> tags) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt() != depth || buffer.getInt() != width) return false;
+        int tagCount = buffer.getInt();
+        for (int i = 0; i < sketch.length; i++) {
+            sketch[i] += buffer.getInt();
+        }
+        for (int i = 0; i < tagCount; i++) {
+            byte[] tag = new byte[buffer.getShort()];
+            buffer.get(tag);
+            tags.add(new String(tag, StandardCharsets.UTF_8));
+        }
+        return true;
+    }
+
+    /**
+     * Computes the counter of a tag in every row. Each row hashes the tag's UTF-8 bytes with its own seed, so that two tags
+     * sharing a counter in one row are unlikely to share one in the others.
+     */
+    private void columns(String tag, int[] columns) {
+        byte[] bytes = tag.getBytes(StandardCharsets.UTF_8);
+        for (int row = 0; row < depth; row++) {
+            columns[row] = (murmur3(bytes, SEEDS[row]) >>> 1) % width;
+        }
+    }
+
+    /**
+     * Computes the 32-bit MurmurHash3 (x86) of a byte array.
+     */
+    static int murmur3(byte[] bytes, int seed) {
+        int h = seed;
+        int blocks = bytes.length & ~3;
+        for (int i = 0; i < blocks; i += 4) {
+            int k = (bytes[i] & 0xFF) | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF) << 16 | bytes[i + 3] << 24;
+            h ^= mixK(k);
+            h = Integer.rotateLeft(h, 13) * 5 + 0xE6546B64;
+        }
+        // tail: the last 1 to 3 bytes, little-endian
+        int tail = bytes.length & 3;
+        if (tail > 0) {
+            int k = bytes[blocks] & 0xFF;
+            if (tail > 1) k |= (bytes[blocks + 1] & 0xFF) << 8;
+            if (tail > 2) k |= (bytes[blocks + 2] & 0xFF) << 16;
+            h ^= mixK(k);
+        }
+        h ^= bytes.length;
+        // finalizer
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int mixK(int k) {
+        k *= 0xCC9E2D51;
+        k = Integer.rotateLeft(k, 15);
+        return k * 0x1B873593;
+    }
+
+    private static void add(int[] into, int[] sketch) {
+        for (int i = 0; i < into.length; i++) {
+            into[i] += sketch[i];
+        }
+    }
+
+    /**
+     * The buckets of the window updated by some of the posting threads.
+     */
+    private static class Shard {
+        private final long[] bucketIDs; // bucket held by each slot of the window
+        private final int[][] sketches;
+        private final List<Map<String, Integer>> candidates = new ArrayList<>(); // tag to estimate, by slot
+        private final int[] smallestCandidate; // by slot; may be below the actual smallest estimate, never above
+
+        private Shard(int windowBuckets, int counters) {
+            bucketIDs = new long[windowBuckets];
+            Arrays.fill(bucketIDs, -1);
+            sketches = new int[windowBuckets][counters];
+            smallestCandidate = new int[windowBuckets];
+            for (int slot = 0; slot < windowBuckets; slot++) {
+                candidates.add(new HashMap<>());
+            }
+        }
+
+        private void reset(int slot, long bucket) {
+            bucketIDs[slot] = bucket;
+            Arrays.fill(sketches[slot], 0);
+            candidates.get(slot).clear();
+            smallestCandidate[slot] = 0;
+        }
+
+        /**
+         * Keeps a tag among the candidates of a bucket if its estimate is among the highest.
+         */
+        private void offer(int slot, String tag, int estimate, int capacity) {
+            Map<String, Integer> bucketCandidates = candidates.get(slot);
+            if (bucketCandidates.size() < capacity || bucketCandidates.containsKey(tag)) {
+                bucketCandidates.put(tag, estimate);
+                return;
+            }
+            if (estimate <= smallestCandidate[slot]) return;
+            String smallest = null;
+            int smallestEstimate = Integer.MAX_VALUE;
+            for (Map.Entry<String, Integer> candidate : bucketCandidates.entrySet()) {
+                if (candidate.getValue() < smallestEstimate) {
+                    smallest = candidate.getKey();
+                    smallestEstimate = candidate.getValue();
+                }
+            }
+            if (estimate > smallestEstimate) {
+                bucketCandidates.remove(smallest);
+                bucketCandidates.put(tag, estimate);
+                smallestEstimate = estimate;
+                for (int value : bucketCandidates.values()) {
+                    smallestEstimate = Math.min(smallestEstimate, value);
+                }
+            }
+            smallestCandidate[slot] = smallestEstimate;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class converts the tweet bodies of a Redis database between the two layouts of the Redis implementations: one
+ * "tweet:&lt;id&gt;" key-value per tweet, and the "tweets:&lt;bucket&gt;" hashes of TweetBuckets. The keys are scanned a
+ * batch at a time; the values of a batch are read with one pipeline and written to the other layout with another, which
+ * also deletes the old keys. Values are copied as stored, so compressed tweets stay compressed.
+ *
+ * Every tweet is written to its new location before its old key is deleted, and writing it again is harmless, so an
+ * interrupted migration can simply be run again. Tweets posted in the old layout while the migration runs may be missed by
+ * the scan: the clients should be switched to the new layout first (their reads of tweets that have not been moved yet
+ * come back empty until the migration reaches them), or the migration run again after switching them.
+ */
+public class TweetBucketMigrator {
+
+    /**
+     * @param args key=value options:
+     *             <p> host=localhost port=6379 : Redis instance to convert </p>
+     *             <p> batch=1000 : keys scanned per batch </p>
+     *             <p> reverse=false : convert the buckets back to one key-value per tweet </p>
+     *             <p> configure=true : raise the server's listpack value limit (see TweetBuckets.configure()) </p>
+     */
+    public static void main(String[] args) {
+        Map<String, String> options = WorkloadRunner.parseOptions(args);
+        int batch = Integer.parseInt(options.getOrDefault("batch", "1000"));
+        boolean reverse = Boolean.parseBoolean(options.getOrDefault("reverse", "false"));
+
+        Jedis jedis = new Jedis(options.getOrDefault("host", "localhost"), Integer.parseInt(options.getOrDefault("port", "6379")));
+        try {
+            if (!reverse && Boolean.parseBoolean(options.getOrDefault("configure", "true"))) TweetBuckets.configure(jedis);
+            long usedBefore = usedMemory(jedis);
+            long pre_timestamp = System.currentTimeMillis();
+            long moved = reverse ? toKeys(jedis, batch) : toBuckets(jedis, batch);
+            double seconds = (System.currentTimeMillis() - pre_timestamp) / 1000.0;
+            long usedAfter = usedMemory(jedis);
+            System.out.println("Moved " + moved + " tweets " + (reverse ? "to key-values" : "to buckets") + " in " + seconds + " seconds");
+            System.out.printf("used_memory: %d -> %d bytes (%+.1f bytes per tweet)%n",
+                    usedBefore, usedAfter, moved == 0 ? 0 : (usedAfter - usedBefore) / (double) moved);
+        } catch (Exception e) {
+            System.out.println("ERROR: could not migrate the tweets");
+            e.printStackTrace();
+        } finally {
+            jedis.close();
+        }
+    }
+
+    /**
+     * Moves every "tweet:&lt;id&gt;" key-value into its bucket.
+     * @param jedis Redis connection
+     * @param batch keys scanned per batch
+     * @return number of tweets moved
+     */
+    public static long toBuckets(Jedis jedis, int batch) {
+        long moved = 0;
+        ScanParams params = new ScanParams().match("tweet:*").count(batch);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> scan = jedis.scan(cursor, params);
+            List<String> keys = scan.getResult();
+            if (!keys.isEmpty()) {
+                Pipeline p = jedis.pipelined();
+                List<Response<byte[]>> values = new ArrayList<>(keys.size());
+                for (String key : keys) {
+                    values.add(p.get(key.getBytes(StandardCharsets.UTF_8)));
+                }
+                p.sync();
+                for (int i = 0; i < keys.size(); i++) {
+                    byte[] value = values.get(i).get();
+                    if (value == null) continue; // deleted since the scan
+                    long tweetID = TweetBuckets.tweetID(keys.get(i));
+                    p.hset(bytes(TweetBuckets.bucketKey(tweetID)), bytes(TweetBuckets.field(tweetID)), value);
+                    p.del(keys.get(i));
+                    moved++;
+                }
+                p.sync();
+            }
+            cursor = scan.getCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        return moved;
+    }
+
+    /**
+     * Moves every tweet of the "tweets:&lt;bucket&gt;" hashes back into its own key-value. A tweet posted to a bucket during
+     * the migration may be left in its bucket, so clients that still use the bucketed layout should be stopped first.
+     * @param jedis Redis connection
+     * @param batch keys scanned per batch
+     * @return number of tweets moved
+     */
+    public static long toKeys(Jedis jedis, int batch) {
+        long moved = 0;
+        // a bucket holds up to BUCKET_SIZE tweets, so fewer buckets are scanned per batch
+        ScanParams params = new ScanParams().match(TweetBuckets.KEY_PREFIX + "*").count(Math.max(1, batch / TweetBuckets.BUCKET_SIZE));
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> scan = jedis.scan(cursor, params);
+            List<String> keys = scan.getResult();
+            if (!keys.isEmpty()) {
+                Pipeline p = jedis.pipelined();
+                List<Response<Map<byte[], byte[]>>> buckets = new ArrayList<>(keys.size());
+                for (String key : keys) {
+                    buckets.add(p.hgetAll(bytes(key)));
+                }
+                p.sync();
+                for (int i = 0; i < keys.size(); i++) {
+                    long firstTweetID = Long.parseLong(keys.get(i).substring(TweetBuckets.KEY_PREFIX.length())) * TweetBuckets.BUCKET_SIZE;
+                    Map<byte[], byte[]> fields = buckets.get(i).get();
+                    if (fields.isEmpty()) continue;
+                    for (Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+                        long tweetID = firstTweetID + Long.parseLong(new String(field.getKey(), StandardCharsets.UTF_8));
+                        p.set(bytes("tweet:" + tweetID), field.getValue());
+                        moved++;
+                    }
+                    // only the moved fields are removed, so a tweet written to the bucket meanwhile is kept (and the
+                    // bucket is deleted with its last field)
+                    p.hdel(bytes(keys.get(i)), fields.keySet().toArray(new byte[0][]));
+                }
+                p.sync();
+            }
+            cursor = scan.getCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        return moved;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long usedMemory(Jedis jedis) {
+        for (String line : jedis.info("memory").split("\r?\n")) {
+            if (line.startsWith("used_memory:")) return Long.parseLong(line.substring("used_memory:".length()).trim());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,180 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class implements the bucketed layout of the tweet bodies in Redis. By default every tweet is its own top-level key,
+ * "tweet:&lt;id&gt;", and pays the per-key overhead of the Redis keyspace (dictionary entry, key object and value object);
+ * in the bucketed layout the tweets are fields of hashes instead, "tweets:&lt;id / BUCKET_SIZE&gt;" with the field
+ * "&lt;id % BUCKET_SIZE&gt;". Tweet IDs are assigned consecutively, so a bucket fills up with the tweets posted at about
+ * the same time and a timeline read usually touches only a few buckets, each read with one HMGET.
+ *
+ * <p> A bucket only saves memory while Redis keeps it in the compact listpack (ziplist before Redis 7) encoding, i.e.
+ * while it has at most hash-max-listpack-entries fields (128 by default) of at most hash-max-listpack-value bytes (64 by
+ * default, shorter than most tweets). BUCKET_SIZE stays below the first limit, and configure() raises the second one to
+ * MAX_VALUE_BYTES whenever a Redis implementation enables the layout; the setting is not persisted, so a restarted server
+ * falls back to the limit of its configuration file until a client enables the layout again. TweetBucketMigrator converts an existing database
+ * between the two layouts. </p>
+ *
+ * <p> Like the plain key-values, the field values are serialized tweets, compressed when tweet compression is enabled. </p>
+ */
+public class TweetBuckets {
+
+    public static final String KEY_PREFIX = "tweets:";
+    public static final int BUCKET_SIZE = 100;
+    public static final int MAX_VALUE_BYTES = 512;
+
+    // decodes the plain UTF-8 values when tweet compression is disabled
+    private static final TweetCompressor PLAIN = new TweetCompressor(Collections.emptyMap());
+
+    private TweetBuckets() {
+    }
+
+    /**
+     * Gets the key of the bucket holding a tweet.
+     * @param tweetID tweet ID
+     * @return bucket key
+     */
+    public static String bucketKey(long tweetID) {
+        return KEY_PREFIX + tweetID / BUCKET_SIZE;
+    }
+
+    /**
+     * Gets the field of a tweet in its bucket.
+     * @param tweetID tweet ID
+     * @return bucket field
+     */
+    public static String field(long tweetID) {
+        return Long.toString(tweetID % BUCKET_SIZE);
+    }
+
+    /**
+     * Gets the tweet ID of a plain tweet key.
+     * @param tweetKey key "tweet:&lt;id&gt;"
+     * @return tweet ID
+     */
+    public static long tweetID(String tweetKey) {
+        return Long.parseLong(tweetKey.substring(tweetKey.indexOf(':') + 1));
+    }
+
+    /**
+     * Stores a tweet in its bucket.
+     * @param p pipeline the write is sent with
+     * @param tweetID tweet ID
+     * @param tweetString serialized tweet
+     * @param compressor tweet compressor, or null to store the plain tweet
+     */
+    public static void write(Pipeline p, long tweetID, String tweetString, TweetCompressor compressor) {
+        p.hset(TweetCompressor.bytes(bucketKey(tweetID)), TweetCompressor.bytes(field(tweetID)), encode(tweetString, compressor));
+    }
+
+    /**
+     * Stores a tweet in its bucket.
+     * @param jedis connection to the Redis server
+     * @param tweetID tweet ID
+     * @param tweetString serialized tweet
+     * @param compressor tweet compressor, or null to store the plain tweet
+     */
+    public static void write(Jedis jedis, long tweetID, String tweetString, TweetCompressor compressor) {
+        jedis.hset(TweetCompressor.bytes(bucketKey(tweetID)), TweetCompressor.bytes(field(tweetID)), encode(tweetString, compressor));
+    }
+
+    /**
+     * Deletes a tweet from its bucket.
+     * @param transaction transaction the delete is sent with
+     * @param tweetID tweet ID
+     */
+    public static void delete(Transaction transaction, long tweetID) {
+        transaction.hdel(bucketKey(tweetID), field(tweetID));
+    }
+
+    /**
+     * Reads a tweet from its bucket.
+     * @param jedis connection to the Redis server
+     * @param tweetKey plain key of the tweet, "tweet:&lt;id&gt;"
+     * @param compressor tweet compressor, or null if tweet compression is disabled
+     * @return serialized tweet, or null if the tweet does not exist
+     */
+    public static String read(Jedis jedis, String tweetKey, TweetCompressor compressor) {
+        long tweetID = tweetID(tweetKey);
+        byte[] value = jedis.hget(TweetCompressor.bytes(bucketKey(tweetID)), TweetCompressor.bytes(field(tweetID)));
+        return (compressor == null ? PLAIN : compressor).decompress(value);
+    }
+
+    /**
+     * Reads several tweets with one HMGET per bucket, pipelined when the tweets span several buckets.
+     * @param jedis connection to the Redis server
+     * @param tweetKeys plain keys of the tweets, "tweet:&lt;id&gt;"
+     * @param compressor tweet compressor, or null if tweet compression is disabled
+     * @return serialized tweets, in the order of the keys (null where the tweet does not exist)
+     */
+    public static List<String> read(Jedis jedis, String[] tweetKeys, TweetCompressor compressor) {
+        // positions of the keys, grouped by bucket
+        Map<String, List<Integer>> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < tweetKeys.length; i++) {
+            buckets.computeIfAbsent(bucketKey(tweetID(tweetKeys[i])), key -> new ArrayList<>()).add(i);
+        }
+        List<byte[]> values = new ArrayList<>(Collections.nCopies(tweetKeys.length, (byte[]) null));
+        if (buckets.size() == 1) {
+            Map.Entry<String, List<Integer>> bucket = buckets.entrySet().iterator().next();
+            scatter(jedis.hmget(TweetCompressor.bytes(bucket.getKey()), fields(tweetKeys, bucket.getValue())), bucket.getValue(), values);
+        } else if (!buckets.isEmpty()) {
+            Pipeline p = jedis.pipelined();
+            List<Response<List<byte[]>>> responses = new ArrayList<>(buckets.size());
+            for (Map.Entry<String, List<Integer>> bucket : buckets.entrySet()) {
+                responses.add(p.hmget(TweetCompressor.bytes(bucket.getKey()), fields(tweetKeys, bucket.getValue())));
+            }
+            p.sync();
+            int b = 0;
+            for (List<Integer> positions : buckets.values()) {
+                scatter(responses.get(b++).get(), positions, values);
+            }
+        }
+        return (compressor == null ? PLAIN : compressor).decompress(values);
+    }
+
+    /**
+     * Raises the listpack value limit of the Redis server to MAX_VALUE_BYTES, so that buckets of tweets keep the compact
+     * encoding. The setting is not persisted to the server's configuration file. A server that refuses CONFIG SET (e.g.
+     * a managed server, or one with CONFIG renamed) is left as it is, with a warning: the buckets then still work, but
+     * those holding a tweet longer than its limit fall back to the hashtable encoding.
+     * @param jedis connection to the Redis server
+     */
+    public static void configure(Jedis jedis) {
+        try {
+            // the ziplist names are accepted as aliases by Redis 7, and are the only names known to earlier versions
+            jedis.configSet("hash-max-ziplist-value", Integer.toString(MAX_VALUE_BYTES));
+        } catch (JedisDataException e) {
+            System.out.println("WARNING: could not raise hash-max-ziplist-value to " + MAX_VALUE_BYTES + " (" + e.getMessage()
+                    + "); buckets with longer tweets will use the hashtable encoding");
+        }
+    }
+
+    private static byte[] encode(String tweetString, TweetCompressor compressor) {
+        return compressor == null ? TweetCompressor.bytes(tweetString) : compressor.compress(tweetString);
+    }
+
+    private static byte[][] fields(String[] tweetKeys, List<Integer> positions) {
+        byte[][] fields = new byte[positions.size()][];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = TweetCompressor.bytes(field(tweetID(tweetKeys[positions.get(i)])));
+        }
+        return fields;
+    }
+
+    private static void scatter(List<byte[]> bucketValues, List<Integer> positions, List<byte[]> values) {
+        for (int i = 0; i < positions.size(); i++) {
+            values.set(positions.get(i), bucketValues.get(i));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * This class serializes Tweet objects into the pipe-delimited string format stored in the "tweet" key-values of the
+ * Redis databases ("userID|timestamp|text"), and parses those strings back into Tweet objects. Inline timeline entries
+ * (see TwitterDatabaseRedis.setInlineTimelines()) prefix the same string with the tweet ID ("tweetID|userID|timestamp|text").
+ */
+public class TweetCodec {
+
+    // SimpleDateFormat is not thread-safe, so every thread gets its own formatter
+    private static final ThreadLocal<SimpleDateFormat> FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
+
+    private TweetCodec() {
+    }
+
+    /**
+     * Serializes a Tweet into a string using pipes to separate the user ID, timestamp, and tweet text.
+     * @param t Tweet object to serialize
+     * @param tweetTimestamp timestamp of the tweet
+     * @return serialized tweet string
+     */
+    public static String encode(Tweet t, Date tweetTimestamp) {
+        return t.getUserID() + "|" + FORMAT.get().format(tweetTimestamp) + "|" + t.getTweetText();
+    }
+
+    /**
+     * Builds an inline timeline entry from a serialized tweet.
+     * @param tweetID tweet ID
+     * @param tweetString serialized tweet string ("userID|timestamp|text")
+     * @return timeline entry ("tweetID|userID|timestamp|text")
+     */
+    public static String encodeEntry(String tweetID, String tweetString) {
+        return tweetID + "|" + tweetString;
+    }
+
+    /**
+     * Parses an inline timeline entry into a Tweet object.
+     * @param entry timeline entry ("tweetID|userID|timestamp|text")
+     * @return Tweet object
+     */
+    public static Tweet decodeEntry(String entry) {
+        int separator = entry.indexOf('|');
+        return decode(Integer.parseInt(entry.substring(0, separator)), entry.substring(separator + 1));
+    }
+
+    /**
+     * Parses a serialized tweet string into a Tweet object.
+     * @param tweetID tweet ID of the serialized tweet
+     * @param tweetString serialized tweet string ("userID|timestamp|text")
+     * @return Tweet object, or null if the tweet string is null (e.g. the tweet key-value does not exist)
+     */
+    public static Tweet decode(int tweetID, String tweetString) {
+        if (tweetString == null) return null;
+
+        // parse tweet data by splitting by delimiter "|"
+        // note: split() limits to 3 splits to avoid splitting on potential tweet text (if it contains "|")
+        String[] tweetSplit = tweetString.split("\\|", 3);
+
+        int tweetUserID = Integer.parseInt(tweetSplit[0]);
+        Date tweetTimestamp = null;
+        try {
+            tweetTimestamp = FORMAT.get().parse(tweetSplit[1]);
+        } catch (ParseException e) {
+            System.out.println("ERROR: could not parse the tweet timestamp: " + tweetSplit[1]);
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+        }
+        String tweetText = tweetSplit.length > 2 ? tweetSplit[2] : "";
+
+        return new Tweet(tweetID, tweetUserID, tweetTimestamp, tweetText);
+    }
+}
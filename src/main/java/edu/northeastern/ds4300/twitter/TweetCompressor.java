@@ -0,0 +1,225 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class compresses serialized tweets ("userID|timestamp|text") with DEFLATE against a preset dictionary trained on a
+ * sample of the tweet corpus. Short social text has too little redundancy of its own to compress, but most of its words and
+ * phrases are found in a dictionary of frequent corpus fragments.
+ *
+ * A compressed value starts with a 0 byte (serialized tweets always start with a digit or "-") followed by the varint ID of
+ * its dictionary and the raw DEFLATE data, so values written with different dictionaries, or not compressed at all, can be
+ * read side by side. Dictionaries are kept in the Redis hash "tweetdicts" (dictionary ID to dictionary) and new tweets are
+ * compressed with the dictionary of the highest ID. Texts shorter than the minimum length, or that would not get smaller,
+ * are stored as plain UTF-8.
+ */
+public class TweetCompressor {
+
+    public static final String DICTIONARIES_KEY = "tweetdicts";
+    private static final byte COMPRESSED = 0;
+
+    // Deflater and Inflater hold native buffers, so every thread reuses its own
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    private final Map<Integer, byte[]> dictionaries;
+    private final int currentID;
+    private int minLength = 24;
+
+    /**
+     * @param dictionaries dictionaries by ID; new values are compressed with the highest ID (none: values are stored plain)
+     */
+    public TweetCompressor(Map<Integer, byte[]> dictionaries) {
+        this.dictionaries = new HashMap<>(dictionaries);
+        this.currentID = dictionaries.isEmpty() ? 0 : new TreeMap<>(dictionaries).lastKey();
+    }
+
+    /**
+     * Loads every dictionary stored in the Redis database.
+     * @param jedis Redis connection
+     * @return compressor using the stored dictionaries
+     */
+    public static TweetCompressor load(Jedis jedis) {
+        Map<Integer, byte[]> dictionaries = new HashMap<>();
+        for (Map.Entry<byte[], byte[]> entry : jedis.hgetAll(bytes(DICTIONARIES_KEY)).entrySet()) {
+            dictionaries.put(Integer.parseInt(new String(entry.getKey(), StandardCharsets.UTF_8)), entry.getValue());
+        }
+        return new TweetCompressor(dictionaries);
+    }
+
+    /**
+     * Stores a new dictionary in the Redis database under the next free dictionary ID. Existing dictionaries are kept, since
+     * tweets compressed with them are still stored.
+     * @param jedis Redis connection
+     * @param dictionary dictionary
+     * @return ID of the new dictionary
+     */
+    public static int install(Jedis jedis, byte[] dictionary) {
+        int id = Math.toIntExact(jedis.hlen(DICTIONARIES_KEY)) + 1;
+        while (jedis.hsetnx(bytes(DICTIONARIES_KEY), bytes(Integer.toString(id)), dictionary) == 0) {
+            id++;
+        }
+        return id;
+    }
+
+    /**
+     * Trains a dictionary from a sample of tweet texts. Words and word pairs are scored by the bytes they would save
+     * (occurrences times length) and the best are concatenated up to the dictionary size, the best last since DEFLATE
+     * encodes nearer matches more cheaply.
+     * @param samples sample of tweet texts
+     * @param size maximum dictionary size in bytes (DEFLATE uses at most 32 KB)
+     * @return dictionary
+     */
+    public static byte[] train(Collection<String> samples, int size) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String sample : samples) {
+            String[] words = sample.split(" ");
+            for (int i = 0; i < words.length; i++) {
+                if (words[i].length() > 1) counts.merge(words[i] + " ", 1, Integer::sum);
+                if (i + 1 < words.length) counts.merge(words[i] + " " + words[i + 1] + " ", 1, Integer::sum);
+            }
+        }
+
+        List<Map.Entry<String, Integer>> fragments = new ArrayList<>(counts.entrySet());
+        fragments.removeIf(fragment -> fragment.getValue() < 2);
+        fragments.sort((a, b) -> Long.compare((long) b.getValue() * b.getKey().length(), (long) a.getValue() * a.getKey().length()));
+
+        List<byte[]> chosen = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<String, Integer> fragment : fragments) {
+            byte[] encoded = bytes(fragment.getKey());
+            if (total + encoded.length > size) continue;
+            chosen.add(encoded);
+            total += encoded.length;
+        }
+
+        // most valuable fragments at the end of the dictionary
+        ByteArrayOutputStream out = new ByteArrayOutputStream(total);
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            out.write(chosen.get(i), 0, chosen.get(i).length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Sets the minimum length (in characters) of a serialized tweet to be compressed; shorter ones are stored plain.
+     * @param minLength minimum length
+     */
+    public void setMinLength(int minLength) {
+        this.minLength = minLength;
+    }
+
+    /**
+     * Compresses a serialized tweet with the current dictionary.
+     * @param tweetString serialized tweet
+     * @return stored value (compressed, or plain UTF-8 if compression does not pay off)
+     */
+    public byte[] compress(String tweetString) {
+        byte[] plain = bytes(tweetString);
+        if (currentID == 0 || tweetString.length() < minLength) return plain;
+
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setDictionary(dictionaries.get(currentID));
+        deflater.setInput(plain);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(plain.length);
+        out.write(COMPRESSED);
+        writeVarint(out, currentID);
+        byte[] buffer = BUFFER.get();
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.size() < plain.length ? out.toByteArray() : plain;
+    }
+
+    /**
+     * Decompresses a stored value into a serialized tweet.
+     * @param value stored value (compressed or plain UTF-8)
+     * @return serialized tweet, or null if the value is null (e.g. the tweet key-value does not exist)
+     */
+    public String decompress(byte[] value) {
+        if (value == null) return null;
+        if (value.length == 0 || value[0] != COMPRESSED) return new String(value, StandardCharsets.UTF_8);
+
+        int[] pos = {1};
+        int id = readVarint(value, pos);
+        byte[] dictionary = dictionaries.get(id);
+        if (dictionary == null) throw new IllegalStateException("unknown tweet dictionary: " + id);
+
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setDictionary(dictionary);
+        inflater.setInput(value, pos[0], value.length - pos[0]);
+        byte[] buffer = BUFFER.get();
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    BUFFER.set(buffer);
+                }
+                int n = inflater.inflate(buffer, length, buffer.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("truncated compressed tweet");
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupt compressed tweet", e);
+        }
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decompresses several stored values (e.g. the result of an MGET).
+     * @param values stored values
+     * @return serialized tweets (null where the value is null)
+     */
+    public List<String> decompress(List<byte[]> values) {
+        List<String> tweetStrings = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            tweetStrings.add(decompress(value));
+        }
+        return tweetStrings;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] in, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,432 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * This class is an append-only log of records stored in memory-mapped segment files ("segment-000000.log", ...) of a
+ * directory. New segments are preallocated to the segment size and filled through their mapping, so an append is a memory
+ * copy and a read is served from the page cache. A record is identified by its location, (segment number &lt;&lt; 32) | offset,
+ * which grows with the append order.
+ *
+ * <p> Record layout (little-endian): length (int, type byte included), CRC32 of the type and payload (int), type (byte),
+ * payload. Opening a log replays every valid record; the tail of the last segment after the first missing or corrupt record
+ * (a write interrupted by a crash) is discarded, and a last segment whose header was never written (a crash while it was
+ * created) is created again. </p>
+ *
+ * <p> Appends are serialized by the log. Reads, rewrites and installs may run concurrently with appends, but the caller
+ * must not read a location of a segment while it installs a rewrite of that segment. </p>
+ */
+public class TweetLog implements AutoCloseable {
+
+    public static final byte TWEET = 1;
+    public static final byte FOLLOW = 2;
+    public static final byte UNFOLLOW = 3;
+    public static final byte DELETE = 4;
+
+    public static final long MAGIC = 0x0000474F4C575754L; // "TWTWLOG\0" read as a little-endian long
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16; // magic, version, segment number
+    public static final int RECORD_HEADER_SIZE = 9; // length, CRC32, type
+    public static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+    /**
+     * When appended records are forced to disk: before every write call returns (group-committed between concurrent
+     * writers), periodically in the background, or only when a segment is full and when the log is closed.
+     */
+    public enum FsyncPolicy { ALWAYS, INTERVAL, NEVER }
+
+    /**
+     * Receives the records of a segment during recovery or a rewrite.
+     */
+    public interface RecordVisitor {
+        /**
+         * @param location record location
+         * @param type record type
+         * @param payload record payload (little-endian, positioned at its start)
+         */
+        void visit(long location, byte type, ByteBuffer payload);
+    }
+
+    /**
+     * Decides which records of a segment a rewrite keeps.
+     */
+    public interface RecordFilter {
+        boolean keep(byte type, ByteBuffer payload);
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private volatile Segment[] segments;
+    private final Object commitLock = new Object();
+    private volatile long durable; // every record before this location is on disk
+
+    /**
+     * Opens (or creates) the log of a directory and replays its records.
+     * @param directory log directory
+     * @param segmentSize size of new segments in bytes (at most 1 GB)
+     * @param recovery receives every valid record in log order
+     * @throws IOException if the directory or a segment cannot be read
+     */
+    public TweetLog(File directory, int segmentSize, RecordVisitor recovery) throws IOException {
+        if (segmentSize <= HEADER_SIZE || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segment size must be between " + (HEADER_SIZE + 1) + " and " + MAX_SEGMENT_SIZE);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("cannot create log directory " + directory);
+
+        // a rewrite that was not installed before a crash is discarded; the original segment is still complete
+        File[] leftovers = directory.listFiles((dir, name) -> name.startsWith("segment-") && name.endsWith(".compact"));
+        if (leftovers != null) {
+            for (File leftover : leftovers) Files.deleteIfExists(leftover.toPath());
+        }
+
+        List<Segment> opened = new ArrayList<>();
+        for (int number = 0; segmentFile(number).exists(); number++) {
+            File file = segmentFile(number);
+            Segment segment;
+            if (!segmentFile(number + 1).exists() && Segment.headerless(file)) {
+                // a crash while the last segment was created, before its header was forced: it holds no records
+                segment = Segment.create(file, number, segmentSize);
+            } else {
+                segment = Segment.map(file, number);
+                segment.end = scan(segment, recovery);
+            }
+            opened.add(segment);
+        }
+        if (opened.isEmpty()) {
+            opened.add(Segment.create(segmentFile(0), 0, segmentSize));
+        } else {
+            // zeroes the torn record (if any) after the valid records, so that it cannot be mistaken for one later
+            Segment last = opened.get(opened.size() - 1);
+            int capacity = last.buffer.capacity();
+            boolean torn = false;
+            for (int position = last.end; position < capacity && !torn; position++) {
+                torn = last.buffer.get(position) != 0;
+            }
+            if (torn) {
+                for (int position = last.end; position < capacity; position++) last.buffer.put(position, (byte) 0);
+                last.buffer.force();
+            }
+        }
+        this.segments = opened.toArray(new Segment[0]);
+        this.durable = position();
+    }
+
+    /**
+     * Appends a record. The record is visible to read() once this returns, but is only durable after commit() or force().
+     * @param type record type
+     * @param payload record payload
+     * @return record location
+     * @throws IOException if a new segment cannot be created
+     */
+    public synchronized long append(byte type, byte[] payload) throws IOException {
+        int size = RECORD_HEADER_SIZE + payload.length;
+        if (size > segmentSize - HEADER_SIZE) throw new IllegalArgumentException("record of " + size + " bytes exceeds the segment size");
+        Segment active = segments[segments.length - 1];
+        if (active.end + size > active.buffer.capacity()) {
+            // the full segment is forced before the next one is used, so durable records never follow a lost one
+            active.buffer.force();
+            active = Segment.create(segmentFile(active.number + 1), active.number + 1, segmentSize);
+            Segment[] rolled = Arrays.copyOf(segments, segments.length + 1);
+            rolled[rolled.length - 1] = active;
+            segments = rolled;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        int offset = active.end;
+        ByteBuffer out = active.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        out.position(offset);
+        out.putInt(1 + payload.length).putInt((int) crc.getValue()).put(type).put(payload);
+        active.end = offset + size;
+        return location(active.number, offset);
+    }
+
+    /**
+     * Reads the payload of a record.
+     * @param location record location returned by append() or passed to a visitor
+     * @return payload (little-endian, positioned at its start)
+     */
+    public ByteBuffer read(long location) {
+        Segment segment = segments[(int) (location >>> 32)];
+        return payload(segment.buffer, (int) location);
+    }
+
+    /**
+     * Makes a record and every record appended before it durable. Concurrent callers share a single force: a caller that
+     * waits for the lock usually finds its record already covered by the force of the caller before it (group commit).
+     * @param location record location
+     * @throws IOException if the segment cannot be forced
+     */
+    public void commit(long location) throws IOException {
+        if (durable > location) return;
+        synchronized (commitLock) {
+            if (durable > location) return;
+            force();
+        }
+    }
+
+    /**
+     * Forces every appended record to disk.
+     */
+    public void force() throws IOException {
+        synchronized (commitLock) {
+            Segment active;
+            long end;
+            synchronized (this) {
+                active = segments[segments.length - 1];
+                end = location(active.number, active.end);
+            }
+            active.buffer.force(); // earlier segments were forced when they were filled
+            durable = end;
+        }
+    }
+
+    /**
+     * Gets the location the next record will be appended at.
+     * @return end of the log
+     */
+    public synchronized long position() {
+        Segment active = segments[segments.length - 1];
+        return location(active.number, active.end);
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Gets the number of the segment records are appended to; every segment before it is full and never changes again
+     * except through rewrite() and install().
+     * @return active segment number
+     */
+    public int getActiveSegment() {
+        return segments.length - 1;
+    }
+
+    /**
+     * Gets the number of bytes used by the records of a segment.
+     * @param number segment number
+     * @return bytes used by the records
+     */
+    public long getSegmentBytes(int number) {
+        return segments[number].end - HEADER_SIZE;
+    }
+
+    /**
+     * Counts the bytes of the records of a full segment that a rewrite with the given filter would drop.
+     * @param number segment number (before the active segment)
+     * @param filter record filter
+     * @return bytes of the dropped records
+     */
+    public long deadBytes(int number, RecordFilter filter) {
+        long[] dead = new long[1];
+        scan(segments[number], (location, type, payload) -> {
+            if (!filter.keep(type, payload)) dead[0] += RECORD_HEADER_SIZE + payload.remaining();
+        });
+        return dead[0];
+    }
+
+    /**
+     * Copies the records of a full segment that the filter keeps into a new file next to it. The copy is forced to disk,
+     * but the segment itself is only replaced by install().
+     * @param number segment number (before the active segment)
+     * @param filter record filter
+     * @return rewrite, holding the new location of every kept record in log order
+     * @throws IOException if the new file cannot be written
+     */
+    public Rewrite rewrite(int number, RecordFilter filter) throws IOException {
+        if (number >= getActiveSegment()) throw new IllegalArgumentException("the active segment cannot be rewritten");
+        Segment segment = segments[number];
+        File file = new File(directory, segmentFile(number).getName() + ".compact");
+        List<long[]> kept = new ArrayList<>(); // {old location, new location}
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC).putInt(VERSION).putInt(number).flip();
+            while (header.hasRemaining()) out.write(header);
+            long[] written = {HEADER_SIZE};
+            IOException[] failure = new IOException[1];
+            scan(segment, (location, type, payload) -> {
+                if (failure[0] != null || !filter.keep(type, payload)) return;
+                ByteBuffer record = segment.buffer.duplicate();
+                record.limit((int) location + RECORD_HEADER_SIZE + payload.remaining()).position((int) location);
+                kept.add(new long[]{location, location(number, (int) written[0])});
+                try {
+                    while (record.hasRemaining()) written[0] += out.write(record);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+            out.force(true);
+        }
+        long[] locations = new long[kept.size()];
+        for (int i = 0; i < locations.length; i++) locations[i] = kept.get(i)[1];
+        return new Rewrite(number, file, locations);
+    }
+
+    /**
+     * Atomically replaces a full segment with its rewrite. The old mapping stays valid until it is garbage collected, but
+     * the locations of the segment's records change to the ones held by the rewrite.
+     * @param rewrite rewrite returned by rewrite()
+     * @throws IOException if the segment cannot be replaced
+     */
+    public void install(Rewrite rewrite) throws IOException {
+        File target = segmentFile(rewrite.segment);
+        Files.move(rewrite.file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel dir = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            dir.force(true); // persists the rename where the platform allows it
+        } catch (IOException e) {
+            // directories cannot be opened on every platform; the rename is still atomic
+        }
+        Segment replacement = Segment.map(target, rewrite.segment);
+        replacement.end = replacement.buffer.capacity();
+        synchronized (this) {
+            Segment[] updated = segments.clone();
+            updated[rewrite.segment] = replacement;
+            segments = updated;
+        }
+    }
+
+    /**
+     * Forces the appended records to disk. The mappings stay valid until their buffers are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+    }
+
+    public static long location(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private File segmentFile(int number) {
+        return new File(directory, String.format("segment-%06d.log", number));
+    }
+
+    /**
+     * Visits the valid records of a segment in order.
+     * @return offset after the last valid record
+     */
+    private static int scan(Segment segment, RecordVisitor visitor) {
+        MappedByteBuffer buffer = segment.buffer;
+        int limit = segment.end >= 0 ? segment.end : buffer.capacity();
+        int position = HEADER_SIZE;
+        byte[] body = new byte[256];
+        while (position + RECORD_HEADER_SIZE <= limit) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > limit - position - 8) break;
+            if (body.length < length) body = new byte[Math.max(length, body.length * 2)];
+            ByteBuffer record = buffer.duplicate();
+            record.position(position + 8);
+            record.get(body, 0, length);
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) break;
+            visitor.visit(location(segment.number, position), body[0], payload(buffer, position));
+            position += 8 + length;
+        }
+        return position;
+    }
+
+    private static ByteBuffer payload(MappedByteBuffer buffer, int offset) {
+        int length = buffer.getInt(offset);
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(offset + 8 + length).position(offset + RECORD_HEADER_SIZE);
+        return payload.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Segment rewritten by rewrite() but not installed yet.
+     */
+    public static class Rewrite {
+        private final int segment;
+        private final File file;
+        private final long[] locations;
+
+        private Rewrite(int segment, File file, long[] locations) {
+            this.segment = segment;
+            this.file = file;
+            this.locations = locations;
+        }
+
+        public int getSegment() {
+            return segment;
+        }
+
+        /**
+         * @return new location of every kept record, in log order
+         */
+        public long[] getLocations() {
+            return locations;
+        }
+    }
+
+    /**
+     * One mapped segment file; the buffer is little-endian for the record headers, and end is the offset after its last record.
+     */
+    private static class Segment {
+        final int number;
+        final MappedByteBuffer buffer;
+        int end = -1;
+
+        private Segment(int number, MappedByteBuffer buffer) {
+            this.number = number;
+            this.buffer = buffer;
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        static Segment map(File file, int number) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                if (raf.length() < HEADER_SIZE || raf.length() > MAX_SEGMENT_SIZE) throw new IOException("invalid log segment " + file);
+                Segment segment = new Segment(number, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length()));
+                if (segment.buffer.getLong(0) != MAGIC || segment.buffer.getInt(12) != number) throw new IOException("invalid log segment " + file);
+                if (segment.buffer.getInt(8) != VERSION) throw new IOException("unsupported log version " + segment.buffer.getInt(8));
+                return segment;
+            }
+        }
+
+        /**
+         * Checks whether a segment file is missing its header, i.e. is shorter than the header or has only zeroes there.
+         * No record is appended to a segment before create() has forced its header.
+         */
+        static boolean headerless(File file) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                if (raf.length() < HEADER_SIZE) return true;
+                byte[] header = new byte[HEADER_SIZE];
+                raf.readFully(header);
+                for (byte b : header) {
+                    if (b != 0) return false;
+                }
+                return true;
+            }
+        }
+
+        static Segment create(File file, int number, int size) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(size);
+                Segment segment = new Segment(number, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+                segment.buffer.putLong(0, MAGIC).putInt(8, VERSION).putInt(12, number);
+                segment.buffer.force();
+                segment.end = HEADER_SIZE;
+                return segment;
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package edu.northeastern.ds4300.twitter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * This class is the Java Flight Recorder event emitted by the TwitterDatabaseAPI implementations for every postTweet() or
+ * postTweets() call. The event's own duration covers the whole call; fanoutDuration is the part of it spent delivering
+ * the tweets to the followers' timelines (zero for implementations that build timelines on read).
+ *
+ * <p> Callers begin() the event before doing any work and only measure the fan-out if isEnabled() returns true, so an
+ * instrumented call costs one small allocation when no recording is running. </p>
+ */
+@Name("edu.northeastern.ds4300.twitter.TweetPost")
+@Label("Tweet Post")
+@Category({"Twitter", "API"})
+@Description("A postTweet() or postTweets() call of a TwitterDatabaseAPI implementation")
+@StackTrace(false)
+public class TweetPostEvent extends jdk.jfr.Event {
+
+    @Label("Implementation")
+    public String implementation;
+
+    @Label("User ID")
+    @Description("Author of the tweet, or -1 for a batch of tweets")
+    public int userID = -1;
+
+    @Label("Tweets")
+    public int tweets;
+
+    @Label("Follower Count")
+    @Description("Number of timelines the tweets were delivered to")
+    public int followerCount;
+
+    @Label("Fan-out Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long fanoutDuration;
+
+    /**
+     * Creates and begins an event.
+     * @param implementation name of the TwitterDatabaseAPI implementation
+     * @param tweets number of tweets posted by the call
+     * @return begun event
+     */
+    public static TweetPostEvent begin(String implementation, int tweets) {
+        TweetPostEvent event = new TweetPostEvent();
+        event.implementation = implementation;
+        event.tweets = tweets;
+        event.begin();
+        return event;
+    }
+}
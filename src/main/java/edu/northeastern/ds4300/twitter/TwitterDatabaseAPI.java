@@ -1,6 +1,9 @@
 package edu.northeastern.ds4300.twitter;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * This interface represents an API that provides functionality to insert Tweet objects into a database or retrieve a given user's home timeline.
@@ -27,25 +30,93 @@ public interface TwitterDatabaseAPI {
      */
     public List<Tweet> getTimeline(Integer userID);
 
+    /**
+     * Retrieves the home timelines of several users at once, sharing the database round trips between the users.
+     * Tweets that appear in several of the timelines are decoded only once, so the returned lists may share Tweet objects.
+     * @param userIDs user IDs of the users
+     * @return map of user ID to the list of Tweet objects representing that user's home timeline
+     */
+    public Map<Integer, List<Tweet>> getTimelines(int[] userIDs);
+
     /**
      * Get a list of all unique user IDs that follow at least one other user.
      * @return list of user IDs
      */
-    public List<Integer> getUsers();
+    public default List<Integer> getUsers() {
+        return Arrays.stream(getUserIDs()).boxed().collect(Collectors.toList());
+    }
 
     /**
      * Get a list of user IDs that follow the given user ID
      * @param userID given user ID
      * @return list of user IDs that follow the given user ID
      */
-    public List<Integer> getFollowers(Integer userID);
+    public default List<Integer> getFollowers(Integer userID) {
+        return Arrays.stream(getFollowerIDs(userID)).boxed().collect(Collectors.toList());
+    }
 
     /**
      * Get a list of user IDs that the given user ID follows
      * @param userID given user ID
      * @return list of user IDs that the given user ID follows
      */
-    public List<Integer> getFollowees(Integer userID);
+    public default List<Integer> getFollowees(Integer userID) {
+        return Arrays.stream(getFolloweeIDs(userID)).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * Get an array of all unique user IDs that follow at least one other user, without boxing them into Integers.
+     * @return array of user IDs
+     */
+    public int[] getUserIDs();
+
+    /**
+     * Get an array of user IDs that follow the given user ID, without boxing them into Integers.
+     * @param userID given user ID
+     * @return array of user IDs that follow the given user ID
+     */
+    public int[] getFollowerIDs(int userID);
+
+    /**
+     * Get an array of user IDs that the given user ID follows, without boxing them into Integers.
+     * @param userID given user ID
+     * @return array of user IDs that the given user ID follows
+     */
+    public int[] getFolloweeIDs(int userID);
+
+    /**
+     * Makes a user follow another user. Both directions of the relationship are updated together, and the follower's home
+     * timeline is updated to include the followee's recent tweets. Following a user that is already followed has no effect.
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to follow
+     */
+    public void follow(int userID, int followeeID);
+
+    /**
+     * Makes a user stop following another user. Both directions of the relationship are updated together, and the followee's
+     * tweets are removed from the follower's home timeline.
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to stop following
+     */
+    public void unfollow(int userID, int followeeID);
+
+    /**
+     * Deletes a tweet. The tweet disappears from every home timeline that contains it, and the timelines are still filled
+     * with their 10 most recent remaining tweets. Deleting a tweet that does not exist has no effect.
+     * @param tweetID tweet ID of the tweet
+     */
+    public void deleteTweet(int tweetID);
+
+    /**
+     * Retrieves a page of the tweets carrying a hashtag, most recent first. The next page is read by passing the tweet ID of
+     * the last tweet of this page as the cursor. Deleted tweets are left out, and so are tweets that have dropped out of an
+     * index that only keeps the most recent tweets of each hashtag.
+     * @param tag hashtag, with or without the '#' (hashtags are matched case-insensitively)
+     * @param cursor only tweets with a lower tweet ID are returned; 0 starts from the most recent tweet
+     * @param limit maximum number of tweets
+     * @return list of Tweet objects, most recent first
+     */
+    public List<Tweet> getHashtagTimeline(String tag, int cursor, int limit);
 
     /**
      * Set connection settings
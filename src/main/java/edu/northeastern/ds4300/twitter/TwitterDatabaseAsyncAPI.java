@@ -0,0 +1,40 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This interface represents an asynchronous companion to TwitterDatabaseAPI. Its methods return immediately with a
+ * CompletableFuture instead of blocking the caller thread for the database round trips, so a few threads can keep many
+ * requests in flight.
+ */
+public interface TwitterDatabaseAsyncAPI {
+
+    /**
+     * Inserts a single Tweet object into the database asynchronously.
+     * @param t Tweet object to be inserted
+     * @return future that completes when the tweet has been stored (and fanned out, if the strategy pre-computes timelines)
+     */
+    public CompletableFuture<Void> postTweetAsync(Tweet t);
+
+    /**
+     * Retrieves the home timeline of a given user asynchronously. The user's home timeline consists of the 10 most recent tweets
+     * from users/followees that the given user follows.
+     * @param userID user ID of the user
+     * @return future of the list of Tweet objects representing the user home timeline
+     */
+    public CompletableFuture<List<Tweet>> getTimelineAsync(Integer userID);
+
+    /**
+     * Set connection settings
+     * @param url database connector URL
+     * @param user database username
+     * @param password database password
+     */
+    public void authenticate(String url, String user, String password);
+
+    /**
+     * Close the connection when application finishes (after waiting for the requests already submitted).
+     */
+    public void closeConnection();
+}
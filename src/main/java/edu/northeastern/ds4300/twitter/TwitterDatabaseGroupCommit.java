@@ -0,0 +1,311 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * This class puts a write-behind group commit stage in front of another TwitterDatabaseAPI implementation, so that many
+ * threads can share one instance. Tweets posted concurrently are queued, and a dedicated writer thread collects them into
+ * groups that it flushes with a single postTweets() call of the wrapped implementation (one pipeline for Redis, one
+ * batched INSERT for MySQL). Each caller still blocks until the group holding its tweets has been flushed, and receives
+ * that flush's outcome.
+ *
+ * <p> A group is flushed as soon as it holds maxGroup tweets, or maxDelay microseconds after its first tweet was posted,
+ * whichever comes first; while a group is being flushed, the next one keeps filling up. The latency added to a post is
+ * therefore at most maxDelay plus the flush time of the group in flight. </p>
+ *
+ * <p> The other methods are forwarded to a second instance of the wrapped implementation, one call at a time. </p>
+ */
+public class TwitterDatabaseGroupCommit implements TwitterDatabaseAPI {
+
+    private final Supplier<TwitterDatabaseAPI> factory;
+    private final int maxGroup;
+    private final long maxDelayNanos;
+    private final boolean isolateFailures;
+    private final BlockingQueue<Post> queue = new LinkedBlockingQueue<>();
+    private TwitterDatabaseAPI writer;
+    private TwitterDatabaseAPI reader;
+    private Thread writerThread;
+    // makes the running check and the enqueue of submit() atomic with respect to closeConnection()
+    private final Object lock = new Object();
+    private volatile boolean running;
+
+    /**
+     * @param factory creates the (unconnected) instances of the wrapped implementation
+     * @param maxGroup maximum number of tweets flushed together
+     * @param maxDelayMicros maximum time a group waits for more tweets after its first one, in microseconds
+     * @param isolateFailures true if a failed flush wrote none of its tweets (e.g. a single INSERT statement), in which case
+     *                        the posts of a failed group are retried one by one so that a bad tweet only fails its own caller;
+     *                        false if a flush may have been partially applied, in which case every caller of the group
+     *                        receives the failure
+     */
+    public TwitterDatabaseGroupCommit(Supplier<TwitterDatabaseAPI> factory, int maxGroup, long maxDelayMicros, boolean isolateFailures) {
+        if (maxGroup < 1) throw new IllegalArgumentException("maximum group size must be positive");
+        this.factory = factory;
+        this.maxGroup = maxGroup;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.isolateFailures = isolateFailures;
+    }
+
+    /**
+     * Queues a tweet for the next group and waits until that group has been flushed.
+     * @param t Tweet object to be inserted
+     */
+    @Override
+    public void postTweet(Tweet t) {
+        await(submit(Collections.singletonList(t)));
+    }
+
+    /**
+     * Queues a list of tweets for the next group (the list is never split between groups, and may exceed maxGroup on its
+     * own) and waits until that group has been flushed.
+     * @param tweets list of Tweet objects
+     */
+    @Override
+    public void postTweets(List<Tweet> tweets) {
+        if (tweets.isEmpty()) return;
+        await(submit(tweets));
+    }
+
+    /**
+     * Queues tweets for the next group without waiting.
+     * @param tweets list of Tweet objects
+     * @return future that completes when the group holding the tweets has been flushed
+     */
+    public CompletableFuture<Void> submit(List<Tweet> tweets) {
+        Post post = new Post(tweets);
+        synchronized (lock) {
+            if (running) {
+                queue.add(post);
+                return post.future;
+            }
+        }
+        post.future.completeExceptionally(new IllegalStateException("group commit stage is closed"));
+        return post.future;
+    }
+
+    @Override
+    public synchronized List<Tweet> getTimeline(Integer userID) {
+        return reader.getTimeline(userID);
+    }
+
+    @Override
+    public synchronized Map<Integer, List<Tweet>> getTimelines(int[] userIDs) {
+        return reader.getTimelines(userIDs);
+    }
+
+    @Override
+    public synchronized int[] getUserIDs() {
+        return reader.getUserIDs();
+    }
+
+    @Override
+    public synchronized int[] getFollowerIDs(int userID) {
+        return reader.getFollowerIDs(userID);
+    }
+
+    @Override
+    public synchronized int[] getFolloweeIDs(int userID) {
+        return reader.getFolloweeIDs(userID);
+    }
+
+    @Override
+    public synchronized void follow(int userID, int followeeID) {
+        reader.follow(userID, followeeID);
+    }
+
+    @Override
+    public synchronized void unfollow(int userID, int followeeID) {
+        reader.unfollow(userID, followeeID);
+    }
+
+    @Override
+    public synchronized void deleteTweet(int tweetID) {
+        reader.deleteTweet(tweetID);
+    }
+
+    @Override
+    public synchronized List<Tweet> getHashtagTimeline(String tag, int cursor, int limit) {
+        return reader.getHashtagTimeline(tag, cursor, limit);
+    }
+
+    /**
+     * Connects both instances of the wrapped implementation and starts the writer thread.
+     * @param url database connector URL
+     * @param user database username
+     * @param password database password
+     */
+    @Override
+    public void authenticate(String url, String user, String password) {
+        writer = factory.get();
+        writer.authenticate(url, user, password);
+        reader = factory.get();
+        reader.authenticate(url, user, password);
+        running = true;
+        writerThread = new Thread(this::run, "group-commit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Stops accepting posts, waits for the queued posts to be flushed, and closes both connections. Posts the writer thread
+     * did not flush (e.g. because it was interrupted) are failed.
+     */
+    @Override
+    public void closeConnection() {
+        synchronized (lock) {
+            running = false;
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failQueued();
+        writer.closeConnection();
+        reader.closeConnection();
+    }
+
+    /**
+     * Gets the wrapped instance that flushes the groups, e.g. to configure it after authenticate().
+     * @return wrapped writer instance
+     */
+    public TwitterDatabaseAPI getWriter() {
+        return writer;
+    }
+
+    /**
+     * Gets the wrapped instance that serves the other methods, e.g. to configure it after authenticate().
+     * @return wrapped reader instance
+     */
+    public TwitterDatabaseAPI getReader() {
+        return reader;
+    }
+
+    private void run() {
+        List<Post> group = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Post first = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                group.add(first);
+                int size = first.tweets.size();
+                // the deadline counts from the first post, so that no post waits longer than maxDelay for its group
+                long deadline = first.queuedNanos + maxDelayNanos;
+                while (size < maxGroup) {
+                    Post next = queue.peek();
+                    if (next == null) {
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0 || !running) break;
+                        next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                    } else if (size + next.tweets.size() > maxGroup) {
+                        break;
+                    } else {
+                        queue.poll();
+                    }
+                    group.add(next);
+                    size += next.tweets.size();
+                }
+                flush(group, size);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Post post : group) {
+                    post.future.completeExceptionally(new IllegalStateException("group commit writer was interrupted", e));
+                }
+                failQueued();
+                return;
+            } catch (Throwable e) {
+                // fail whichever posts of the group the flush did not complete, and keep the writer thread alive
+                System.out.println("ERROR: group commit flush failed");
+                e.printStackTrace();
+                for (Post post : group) {
+                    post.future.completeExceptionally(e);
+                }
+            } finally {
+                group.clear();
+            }
+        }
+        failQueued();
+    }
+
+    /**
+     * Fails the posts left in the queue once the writer thread has stopped.
+     */
+    private void failQueued() {
+        List<Post> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        for (Post post : leftover) {
+            post.future.completeExceptionally(new IllegalStateException("group commit stage is closed"));
+        }
+    }
+
+    /**
+     * Flushes a group with one postTweets() call and completes the callers' futures with its outcome.
+     */
+    private void flush(List<Post> group, int size) {
+        List<Tweet> tweets = new ArrayList<>(size);
+        for (Post post : group) {
+            tweets.addAll(post.tweets);
+        }
+        try {
+            writer.postTweets(tweets);
+        } catch (RuntimeException e) {
+            if (!isolateFailures || group.size() == 1) {
+                for (Post post : group) {
+                    post.future.completeExceptionally(e);
+                }
+                return;
+            }
+            // nothing of the group was written; each post is retried alone to find the ones that fail
+            for (Post post : group) {
+                try {
+                    writer.postTweets(post.tweets);
+                    post.future.complete(null);
+                } catch (RuntimeException postFailure) {
+                    post.future.completeExceptionally(postFailure);
+                }
+            }
+            return;
+        }
+        for (Post post : group) {
+            post.future.complete(null);
+        }
+    }
+
+    /**
+     * Waits for a post's group to be flushed, rethrowing the flush's exception in the caller thread.
+     */
+    private static void await(CompletableFuture<Void> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the group commit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("group commit failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Tweets posted by one call, with the time they were queued and the caller's future.
+     */
+    private static class Post {
+        private final List<Tweet> tweets;
+        private final long queuedNanos = System.nanoTime();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Post(List<Tweet> tweets) {
+            this.tweets = tweets;
+        }
+    }
+}
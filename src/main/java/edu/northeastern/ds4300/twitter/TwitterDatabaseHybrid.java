@@ -0,0 +1,642 @@
+package edu.northeastern.ds4300.twitter;
+
+import edu.northeastern.database.DBUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.SetParams;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class represents an API that keeps MySQL as the durable source of truth and serves the home timelines from Redis.
+ * Tweets are inserted into MySQL first (one batched INSERT per call), then written through to Redis: the tweet bodies are
+ * cached in "htweet:&lt;id&gt;" key-values and the tweet IDs are pushed to the cached timelines ("htimeline:&lt;id&gt;") of the
+ * author's followers. A timeline that is not cached is computed with the MySQL join query and cached on the first read.
+ *
+ * <p> The Redis keys use their own prefixes because the tweet IDs come from MySQL, not from the "currTweetID" counter of the
+ * Redis implementations. A cached timeline holds at most timelineDepth tweet IDs, newest first; an empty timeline is cached
+ * as the single entry "0" so that it is not recomputed on every read. Cached timelines expire after cacheTTL seconds, and
+ * reconcile() repairs the ones that have diverged from MySQL (e.g. after a failed write-through) before then. </p>
+ *
+ * <p> A timeline is cached without losing the write-throughs that happen while MySQL computes it: the marker "-1" is first
+ * appended to it (creating it if needed, so that LPUSHX pushes to it), the key is then WATCHed, and the computed timeline
+ * replaces it only if no write-through changed it after the MySQL query began. A cached timeline that still holds the
+ * marker is being (or failed to be) computed, and reads treat it as not cached. A write-through that reaches a timeline
+ * after it was cached (or replaced by reconcile()) with a result that already holds the new tweet pushes its ID a second
+ * time; reads skip the repeated ID, and reconcile() replaces such a timeline. </p>
+ *
+ * <p> A deleted tweet is deleted from MySQL and its cached body replaced by a tombstone, "htombstone:&lt;id&gt;", that lives
+ * as long as a cached timeline can still hold the tweet ID. Reads skip tombstoned tweets instead of looking them up in
+ * MySQL; a cached timeline left short by deleted tweets is read further, or recomputed by MySQL once it runs out. </p>
+ */
+public class TwitterDatabaseHybrid implements TwitterDatabaseAPI {
+
+    private static final String EMPTY = "0";
+    private static final String PENDING = "-1";
+
+    private TwitterDatabaseMysql mysql;
+    private DBUtils dbu;
+    private Jedis jedis;
+    private String redisHost = "localhost";
+    private int redisPort = 6379;
+    private int timelineDepth = 50;
+    private int cacheTTL = 3600;
+
+    /**
+     * Sets the Redis server; must be called before authenticate().
+     * @param host Redis host
+     * @param port Redis port
+     */
+    public void setRedis(String host, int port) {
+        this.redisHost = host;
+        this.redisPort = port;
+    }
+
+    /**
+     * Sets the size and lifetime of the cached timelines and tweet bodies.
+     * @param depth maximum number of tweet IDs kept in a cached timeline (50 by default)
+     * @param ttlSeconds seconds a cached timeline or tweet body is kept (3600 by default)
+     */
+    public void setTimelineCache(int depth, int ttlSeconds) {
+        if (depth < 10) throw new IllegalArgumentException("timeline depth must be at least 10");
+        this.timelineDepth = depth;
+        this.cacheTTL = ttlSeconds;
+    }
+
+    /**
+     * Inserts a single Tweet object into MySQL and writes it through to Redis.
+     * @param t Tweet object to be inserted
+     */
+    @Override
+    public void postTweet(Tweet t) {
+        List<Tweet> tweets = new ArrayList<>(1);
+        tweets.add(t);
+        postTweets(tweets);
+    }
+
+    /**
+     * Inserts multiple Tweet objects from a list into the `tweet` table with one batched INSERT, then writes them through to
+     * Redis with one pipeline: every tweet body is cached, and every tweet ID is pushed to the cached timelines of the author's
+     * followers (timelines that are not cached are left to be computed on their next read). The tweets are durable once the
+     * INSERT succeeds, so a failed write-through is only reported; the divergence is repaired by reconcile() or by the
+     * expiry of the cached timelines.
+     * @param tweets list of Tweet objects
+     */
+    @Override
+    public void postTweets(List<Tweet> tweets) {
+        if (tweets.isEmpty()) return;
+        TweetPostEvent event = TweetPostEvent.begin("hybrid", tweets.size());
+        if (tweets.size() == 1) event.userID = tweets.get(0).getUserID();
+        // MySQL stores the timestamp to the second, the same precision as the cached tweet bodies
+        Timestamp tweetTimestamp = new Timestamp(System.currentTimeMillis() / 1000 * 1000);
+        int[] tweetIDs = insertTweets(tweets, tweetTimestamp);
+        long fanoutStart = event.isEnabled() ? System.nanoTime() : 0;
+        try {
+            event.followerCount = writeThrough(tweets, tweetIDs, tweetTimestamp);
+        } catch (JedisException e) {
+            System.out.println("WARNING: write-through of " + tweets.size() + " tweets to Redis failed, timelines will be reconciled: "
+                    + e.getMessage());
+        }
+        if (event.isEnabled()) event.fanoutDuration = System.nanoTime() - fanoutStart;
+        event.commit();
+    }
+
+    /**
+     * Retrieves the home timeline of a given user. The user's home timeline consists of the 10 most recent tweets
+     * from users that the given user follows.
+     * <p>In this implementation, the tweet IDs are read from the cached timeline and the tweets from the cached tweet bodies
+     * (tweets whose bodies have expired are read from MySQL and cached again). If the timeline is not cached, it is computed
+     * with the MySQL join query and cached. Deleted tweets and repeated tweet IDs are skipped, and the next tweet IDs of the
+     * cached timeline are read in their place; if the cached timeline runs out first, it is computed and cached again.</p>
+     * @param userID user ID of the user
+     * @return list of Tweet objects representing the user home timeline
+     */
+    @Override
+    public List<Tweet> getTimeline(Integer userID) {
+        TimelineReadEvent event = TimelineReadEvent.begin("hybrid", 1);
+        event.userID = userID;
+        List<Tweet> tweets = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        boolean deleted = false;
+        int start = 0;
+        while (true) {
+            int wanted = 10 - tweets.size();
+            List<String> cached = jedis.lrange("htimeline:" + userID, start, start + wanted - 1);
+            event.roundTrips++;
+            if (start == 0 && cached.isEmpty()) break;
+            if (cached.contains(PENDING)) {
+                // the timeline is being computed by another read
+                tweets.clear();
+                start = 0;
+                break;
+            }
+            List<String> distinct = new ArrayList<>(cached.size());
+            for (String tweetID : cached) {
+                if (seen.add(tweetID)) distinct.add(tweetID);
+            }
+            List<Tweet> read = readTweets(distinct, event);
+            deleted |= read.size() < distinct.size() - (distinct.contains(EMPTY) ? 1 : 0);
+            tweets.addAll(read);
+            start += cached.size();
+            if (tweets.size() == 10) break;
+            if (cached.size() < wanted) {
+                if (!deleted) break;
+                // deleted tweets left the cached timeline short: recompute it
+                tweets.clear();
+                start = 0;
+                break;
+            }
+        }
+        if (start == 0) {
+            // the MySQL query emits its own event; here it counts as one round trip, and caching the result as three more
+            tweets = computeTimelines(new int[]{userID}).get(userID);
+            event.roundTrips += 4;
+        }
+        event.tweetIDs = tweets.size();
+        event.commit();
+        return tweets;
+    }
+
+    /**
+     * Retrieves the home timelines of several users: the cached timelines are read with one pipeline and their tweets with
+     * one MGET, and the timelines that are not cached (or that deleted tweets left short) are computed together with the
+     * MySQL window query.
+     * @param userIDs user IDs of the users
+     * @return map of user ID to the list of Tweet objects representing that user's home timeline
+     */
+    @Override
+    public Map<Integer, List<Tweet>> getTimelines(int[] userIDs) {
+        TimelineReadEvent event = TimelineReadEvent.begin("hybrid", userIDs.length);
+        event.roundTrips = 1;
+        Pipeline p = jedis.pipelined();
+        List<Response<List<String>>> responses = new ArrayList<>(userIDs.length);
+        for (int userID : userIDs) {
+            responses.add(p.lrange("htimeline:" + userID, 0, 9));
+        }
+        p.sync();
+
+        Map<Integer, List<Tweet>> result = new HashMap<>();
+        IntList missing = new IntList();
+        Set<String> tweetIDs = new LinkedHashSet<>();
+        for (int i = 0; i < userIDs.length; i++) {
+            List<String> cached = responses.get(i).get();
+            if (cached.isEmpty() || cached.contains(PENDING)) missing.add(userIDs[i]);
+            else tweetIDs.addAll(cached);
+        }
+
+        Map<String, Tweet> tweets = new HashMap<>();
+        List<String> ids = new ArrayList<>(tweetIDs);
+        List<Tweet> read = readTweets(ids, event);
+        for (Tweet tweet : read) {
+            tweets.put(Integer.toString(tweet.getTweetID()), tweet);
+        }
+        for (int i = 0; i < userIDs.length; i++) {
+            List<String> cached = responses.get(i).get();
+            if (cached.isEmpty() || cached.contains(PENDING)) continue;
+            Set<String> distinct = new LinkedHashSet<>(cached);
+            List<Tweet> timeline = new ArrayList<>(distinct.size());
+            boolean deleted = false;
+            for (String tweetID : distinct) {
+                Tweet tweet = tweets.get(tweetID);
+                if (tweet != null) timeline.add(tweet);
+                else if (!tweetID.equals(EMPTY)) deleted = true;
+            }
+            // deleted or repeated tweet IDs can leave the first 10 entries short
+            if ((deleted || distinct.size() < cached.size()) && timeline.size() < 10) missing.add(userIDs[i]);
+            else result.put(userIDs[i], timeline);
+        }
+
+        if (missing.size() > 0) {
+            result.putAll(computeTimelines(missing.toArray()));
+            event.roundTrips += 4;
+        }
+        event.tweetIDs = ids.size();
+        event.commit();
+        return result;
+    }
+
+    @Override
+    public int[] getUserIDs() {
+        return mysql.getUserIDs();
+    }
+
+    @Override
+    public int[] getFollowerIDs(int userID) {
+        return mysql.getFollowerIDs(userID);
+    }
+
+    @Override
+    public int[] getFolloweeIDs(int userID) {
+        return mysql.getFolloweeIDs(userID);
+    }
+
+    /**
+     * Makes a user follow another user in MySQL, and drops the user's cached timeline so that its next read recomputes it.
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to follow
+     */
+    @Override
+    public void follow(int userID, int followeeID) {
+        mysql.follow(userID, followeeID);
+        jedis.del("htimeline:" + userID);
+    }
+
+    /**
+     * Makes a user stop following another user in MySQL, and drops the user's cached timeline so that its next read
+     * recomputes it.
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to stop following
+     */
+    @Override
+    public void unfollow(int userID, int followeeID) {
+        mysql.unfollow(userID, followeeID);
+        jedis.del("htimeline:" + userID);
+    }
+
+    /**
+     * Retrieves a page of the tweets carrying a hashtag from the `hashtag` table in MySQL. Hashtag timelines are not cached:
+     * the cached timelines are only kept consistent for the followers of each author, and a hashtag page is already a single
+     * range query.
+     * @param tag hashtag, with or without the '#'
+     * @param cursor only tweets with a lower tweet ID are returned; 0 starts from the most recent tweet
+     * @param limit maximum number of tweets
+     * @return list of Tweet objects, most recent first
+     */
+    @Override
+    public List<Tweet> getHashtagTimeline(String tag, int cursor, int limit) {
+        return mysql.getHashtagTimeline(tag, cursor, limit);
+    }
+
+    /**
+     * Deletes a tweet from MySQL, then replaces its cached body with a tombstone in one transaction. The tweet ID is left
+     * in the cached timelines, where reads skip it, until they expire or reconcile() replaces them. A failed Redis update is
+     * only reported: reads then look the tweet up in MySQL, which no longer has it.
+     * @param tweetID tweet ID of the tweet
+     */
+    @Override
+    public void deleteTweet(int tweetID) {
+        mysql.deleteTweet(tweetID);
+        try {
+            Transaction t = jedis.multi();
+            t.set("htombstone:" + tweetID, "1", SetParams.setParams().ex(cacheTTL));
+            t.del("htweet:" + tweetID);
+            t.exec();
+        } catch (JedisException e) {
+            System.out.println("WARNING: could not record the deletion of tweet " + tweetID + " in Redis: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compares the cached timelines of the given users with the timelines computed by MySQL, and replaces the ones that
+     * differ. The cached timelines are WATCHed while they are compared, so a timeline that receives a write-through in the
+     * meantime is left alone (it is compared again on the next pass). Timelines that are not cached, or are being computed,
+     * are skipped.
+     * @param userIDs user IDs
+     * @return number of timelines replaced
+     */
+    public int reconcile(int[] userIDs) {
+        if (userIDs.length == 0) return 0;
+        String[] keys = new String[userIDs.length];
+        for (int i = 0; i < userIDs.length; i++) {
+            keys[i] = "htimeline:" + userIDs[i];
+        }
+        jedis.watch(keys);
+        List<List<String>> cached = new ArrayList<>(userIDs.length);
+        for (String key : keys) {
+            cached.add(jedis.lrange(key, 0, 9));
+        }
+        Map<Integer, List<Tweet>> truth = mysql.getTimelines(userIDs);
+
+        List<Integer> diverged = new ArrayList<>();
+        for (int i = 0; i < userIDs.length; i++) {
+            if (cached.get(i).isEmpty() || cached.get(i).contains(PENDING)) continue;
+            List<String> expected = new ArrayList<>();
+            for (Tweet tweet : truth.get(userIDs[i])) {
+                expected.add(Integer.toString(tweet.getTweetID()));
+            }
+            List<String> actual = new ArrayList<>(cached.get(i));
+            actual.remove(EMPTY);
+            if (!actual.equals(expected)) diverged.add(i);
+        }
+        if (diverged.isEmpty()) {
+            jedis.unwatch();
+            return 0;
+        }
+
+        Transaction t = jedis.multi();
+        for (int i : diverged) {
+            writeTimeline(t, keys[i], truth.get(userIDs[i]));
+        }
+        return t.exec() == null ? 0 : diverged.size();
+    }
+
+    /**
+     * Connects to MySQL (with the given settings) and to Redis.
+     * @param url database connector URL
+     * @param user database username
+     * @param password database password
+     */
+    @Override
+    public void authenticate(String url, String user, String password) {
+        mysql = new TwitterDatabaseMysql();
+        mysql.authenticate(url, user, password);
+        dbu = new DBUtils(url, user, password);
+        jedis = new Jedis(redisHost, redisPort);
+    }
+
+    /**
+     * Close the connections when application finishes
+     */
+    @Override
+    public void closeConnection() {
+        mysql.closeConnection();
+        dbu.closeConnection();
+        jedis.close();
+    }
+
+    /**
+     * Inserts tweets with one multi-row INSERT, and their hashtags, in a single transaction, so that either both are stored
+     * or neither is.
+     * @return generated tweet IDs, in list order
+     * @throws IllegalStateException if an INSERT fails (the transaction is rolled back)
+     */
+    private int[] insertTweets(List<Tweet> tweets, Timestamp tweetTimestamp) {
+        StringBuilder statement = new StringBuilder("INSERT INTO tweet (user_id, tweet_ts, tweet_text) VALUES ");
+        for (int i = 0; i < tweets.size(); i++) {
+            statement.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+        }
+        Connection con = dbu.getConnection();
+        try {
+            con.setAutoCommit(false);
+            try (PreparedStatement stmt = con.prepareStatement(statement.toString(), Statement.RETURN_GENERATED_KEYS)) {
+                int parameter = 1;
+                for (Tweet t : tweets) {
+                    stmt.setInt(parameter++, t.getUserID());
+                    stmt.setTimestamp(parameter++, tweetTimestamp);
+                    stmt.setString(parameter++, t.getTweetText());
+                }
+                stmt.executeUpdate();
+                int[] tweetIDs = new int[tweets.size()];
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    for (int i = 0; i < tweetIDs.length && keys.next(); i++) {
+                        tweetIDs[i] = keys.getInt(1);
+                    }
+                }
+                indexHashtags(con, tweets, tweetIDs);
+                con.commit();
+                return tweetIDs;
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("could not insert " + tweets.size() + " tweets: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Inserts the tweets' hashtags into the `hashtag` table, read by getHashtagTimeline().
+     */
+    private void indexHashtags(Connection con, List<Tweet> tweets, int[] tweetIDs) throws SQLException {
+        String[] ids = new String[tweetIDs.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Integer.toString(tweetIDs[i]);
+        }
+        String statement = HashtagIndex.insertStatement(tweets, ids);
+        if (statement == null) return;
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate(statement);
+        }
+    }
+
+    /**
+     * Caches the tweet bodies and pushes the tweet IDs to the cached timelines of the authors' followers, in one pipeline.
+     * @return number of timelines the tweets were pushed to (whether cached or not)
+     */
+    private int writeThrough(List<Tweet> tweets, int[] tweetIDs, Timestamp tweetTimestamp) {
+        Map<Integer, IntList> followers = queryFollowers(tweets);
+        Set<Integer> touched = new LinkedHashSet<>();
+        int pushes = 0;
+        Pipeline p = jedis.pipelined();
+        for (int i = 0; i < tweets.size(); i++) {
+            String tweetID = Integer.toString(tweetIDs[i]);
+            p.set("htweet:" + tweetID, TweetCodec.encode(tweets.get(i), tweetTimestamp), SetParams.setParams().ex(cacheTTL));
+            IntList followerIDs = followers.get(tweets.get(i).getUserID());
+            if (followerIDs == null) continue;
+            for (int f = 0; f < followerIDs.size(); f++) {
+                // LPUSHX only pushes to timelines that are cached; a partial timeline is never created
+                p.lpushx("htimeline:" + followerIDs.get(f), tweetID);
+                touched.add(followerIDs.get(f));
+            }
+            pushes += followerIDs.size();
+        }
+        for (int followerID : touched) {
+            p.ltrim("htimeline:" + followerID, 0, timelineDepth - 1);
+        }
+        p.sync();
+        return pushes;
+    }
+
+    /**
+     * Reads the followers of the tweets' authors with one query.
+     * @return map of author ID to follower IDs
+     */
+    private Map<Integer, IntList> queryFollowers(List<Tweet> tweets) {
+        Set<Integer> authors = new LinkedHashSet<>();
+        for (Tweet t : tweets) {
+            authors.add(t.getUserID());
+        }
+        StringBuilder ids = new StringBuilder();
+        for (int author : authors) {
+            if (ids.length() > 0) ids.append(", ");
+            ids.append(author);
+        }
+        String statement = "SELECT follows_id, user_id FROM `follows` WHERE follows_id IN (" + ids + ")";
+        Map<Integer, IntList> followers = new HashMap<>();
+        try {
+            Connection con = dbu.getConnection();
+            try (Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery(statement)) {
+                while (rs.next()) {
+                    followers.computeIfAbsent(rs.getInt(1), k -> new IntList()).add(rs.getInt(2));
+                }
+            }
+        } catch (SQLException e) {
+            // the tweets are already stored; their followers' timelines are repaired by reconcile()
+            System.out.println("ERROR: Could not execute query: " + statement);
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+        }
+        return followers;
+    }
+
+    /**
+     * Reads tweets from the cached tweet bodies, falling back to MySQL (and caching them again) for expired ones. Tweets
+     * that have been deleted are left out; the tombstones are only read when some bodies are missing.
+     * @param tweetIDs tweet IDs, in timeline order (the empty timeline marker is skipped)
+     * @param event timeline read event the round trips and decode time are added to
+     * @return list of Tweet objects in the same order
+     */
+    private List<Tweet> readTweets(List<String> tweetIDs, TimelineReadEvent event) {
+        List<String> ids = new ArrayList<>(tweetIDs);
+        ids.remove(EMPTY);
+        ids.remove(PENDING);
+        List<Tweet> tweets = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) return tweets;
+
+        String[] keys = new String[ids.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "htweet:" + ids.get(i);
+        }
+        List<String> bodies = jedis.mget(keys);
+        event.roundTrips++;
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (bodies.get(i) == null) missing.add(ids.get(i));
+        }
+        Map<Integer, Tweet> expired = new HashMap<>();
+        if (!missing.isEmpty()) {
+            String[] tombstoneKeys = new String[missing.size()];
+            for (int i = 0; i < tombstoneKeys.length; i++) {
+                tombstoneKeys[i] = "htombstone:" + missing.get(i);
+            }
+            List<String> tombstones = jedis.mget(tombstoneKeys);
+            event.roundTrips++;
+            List<String> live = new ArrayList<>();
+            for (int i = 0; i < tombstoneKeys.length; i++) {
+                if (tombstones.get(i) == null) live.add(missing.get(i));
+            }
+            if (!live.isEmpty()) {
+                expired = queryTweets(live);
+                event.roundTrips += 2; // the MySQL query and the pipeline caching its tweets
+            }
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            if (bodies.get(i) == null) {
+                tweets.add(expired.get(Integer.parseInt(ids.get(i))));
+            } else {
+                long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
+                tweets.add(TweetCodec.decode(Integer.parseInt(ids.get(i)), bodies.get(i)));
+                if (event.isEnabled()) event.decodeDuration += System.nanoTime() - decodeStart;
+            }
+        }
+        tweets.removeIf(t -> t == null);
+        return tweets;
+    }
+
+    /**
+     * Reads the tweets whose cached bodies are missing from MySQL and caches them again.
+     */
+    private Map<Integer, Tweet> queryTweets(List<String> ids) {
+        StringBuilder missing = new StringBuilder();
+        for (String id : ids) {
+            if (missing.length() > 0) missing.append(", ");
+            missing.append(Integer.parseInt(id));
+        }
+        String statement = "SELECT tweet_id, user_id, tweet_ts, tweet_text FROM tweet WHERE tweet_id IN (" + missing + ")";
+        Map<Integer, Tweet> tweets = new HashMap<>();
+        try {
+            Connection con = dbu.getConnection();
+            try (Statement stmt = con.createStatement(); ResultSet rs = stmt.executeQuery(statement)) {
+                while (rs.next()) {
+                    Tweet tweet = new Tweet(rs.getInt(1), rs.getInt(2), rs.getTimestamp(3), rs.getString(4));
+                    tweets.put(tweet.getTweetID(), tweet);
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("ERROR: Could not execute query: " + statement);
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+        }
+        Pipeline p = jedis.pipelined();
+        for (Tweet tweet : tweets.values()) {
+            p.set("htweet:" + tweet.getTweetID(), TweetCodec.encode(tweet, tweet.getTweetTimestamp()), SetParams.setParams().ex(cacheTTL));
+        }
+        p.sync();
+        return tweets;
+    }
+
+    /**
+     * Computes timelines with MySQL and caches them. The keys are marked pending and WATCHed before the MySQL query, so a
+     * write-through made while MySQL computes them is either part of the result or aborts the caching.
+     * @param userIDs user IDs of the users
+     * @return map of user ID to the list of Tweet objects representing that user's home timeline
+     */
+    private Map<Integer, List<Tweet>> computeTimelines(int[] userIDs) {
+        String[] keys = new String[userIDs.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "htimeline:" + userIDs[i];
+        }
+        markPending(keys);
+        jedis.watch(keys);
+        Map<Integer, List<Tweet>> computed;
+        try {
+            computed = userIDs.length == 1 ? Collections.singletonMap(userIDs[0], mysql.getTimeline(userIDs[0]))
+                    : mysql.getTimelines(userIDs);
+        } catch (RuntimeException e) {
+            jedis.unwatch();
+            throw e;
+        }
+        cacheTimelines(computed);
+        return computed;
+    }
+
+    /**
+     * Appends the pending marker to timelines that are about to be computed by MySQL, creating them if they are not cached,
+     * so that the write-throughs made while MySQL computes them are pushed to them.
+     */
+    private void markPending(String... keys) {
+        Pipeline p = jedis.pipelined();
+        for (String key : keys) {
+            p.rpush(key, PENDING);
+            p.expire(key, cacheTTL);
+        }
+        p.sync();
+    }
+
+    /**
+     * Caches timelines computed by MySQL, with their tweet bodies, in one transaction. If a write-through changed one of
+     * the WATCHed keys since the MySQL query began, nothing is cached, and the next read computes the timelines again.
+     */
+    private void cacheTimelines(Map<Integer, List<Tweet>> timelines) {
+        Transaction t = jedis.multi();
+        for (Map.Entry<Integer, List<Tweet>> timeline : timelines.entrySet()) {
+            writeTimeline(t, "htimeline:" + timeline.getKey(), timeline.getValue());
+            for (Tweet tweet : timeline.getValue()) {
+                t.set("htweet:" + tweet.getTweetID(), TweetCodec.encode(tweet, tweet.getTweetTimestamp()), SetParams.setParams().ex(cacheTTL));
+            }
+        }
+        t.exec();
+    }
+
+    private void writeTimeline(Transaction t, String key, List<Tweet> tweets) {
+        t.del(key);
+        if (tweets.isEmpty()) {
+            t.rpush(key, EMPTY);
+        } else {
+            String[] tweetIDs = new String[tweets.size()];
+            for (int i = 0; i < tweetIDs.length; i++) {
+                tweetIDs[i] = Integer.toString(tweets.get(i).getTweetID());
+            }
+            t.rpush(key, tweetIDs);
+        }
+        t.expire(key, cacheTTL);
+    }
+}
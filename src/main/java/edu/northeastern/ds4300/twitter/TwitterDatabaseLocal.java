@@ -0,0 +1,574 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class represents a persistent API that keeps its data in a local directory instead of a database server. Every
+ * tweet, follow and unfollow is appended to a memory-mapped log (see TweetLog), and the indexes are kept in memory: the log
+ * location of every tweet (by tweet ID), each user's tweet IDs, the tweet IDs of every hashtag, and both directions of the
+ * follow relationships. A home
+ * timeline is merged from the followees' tweet lists when it is read, so it never needs repairing after a follow or unfollow.
+ * A deleted tweet loses its log location at once, reads skip it, and it is purged from its author's tweet list in the
+ * background.
+ *
+ * <p> Writes are forced to disk according to the fsync policy (group-committed for ALWAYS), the indexes are rebuilt by
+ * replaying the log when the directory is opened, and full log segments whose follow records have been cancelled by
+ * unfollows (or whose tweets have been deleted) are compacted in the background. </p>
+ */
+public class TwitterDatabaseLocal implements TwitterDatabaseAPI {
+
+    private static final int FOLLOW_RECORD_SIZE = TweetLog.RECORD_HEADER_SIZE + 8;
+
+    private TweetLog log;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, IntList> following = new HashMap<>();
+    private final Map<Integer, IntList> followers = new HashMap<>();
+    private final Map<Integer, IntList> userTweets = new HashMap<>(); // tweet IDs in ascending order
+    private final Map<String, IntList> hashtags = new HashMap<>(); // tweet IDs in ascending order, by tag
+    private long[] tweetLocations = new long[1024]; // by tweet ID, 0 for a deleted tweet
+    private IntList unpurged = new IntList(); // (tweet ID, author ID) pairs of deleted tweets still in userTweets
+    private int lastTweetID = 0;
+    private final AtomicLong cancelledBytes = new AtomicLong(); // bytes of records cancelled since the last compaction
+
+    private TweetLog.FsyncPolicy fsyncPolicy = TweetLog.FsyncPolicy.ALWAYS;
+    private long fsyncIntervalMillis = 100;
+    private int segmentSize = 64 << 20;
+    private long compactionIntervalSeconds = 60;
+    private int compactionThreshold = 30;
+    private ScheduledExecutorService background;
+    private ScheduledFuture<?> flusher;
+
+    /**
+     * Sets when writes are forced to disk. ALWAYS (the default) makes every write call durable before it returns, INTERVAL
+     * forces the log every given number of milliseconds, and NEVER leaves it to the operating system.
+     * @param policy fsync policy
+     * @param intervalMillis milliseconds between forces of the INTERVAL policy
+     */
+    public void setFsyncPolicy(TweetLog.FsyncPolicy policy, long intervalMillis) {
+        this.fsyncPolicy = policy;
+        this.fsyncIntervalMillis = intervalMillis;
+        if (background != null) scheduleFlusher();
+    }
+
+    /**
+     * Sets the size of new log segments; must be called before authenticate().
+     * @param segmentSize segment size in bytes (64 MB by default)
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Sets how often full segments are checked for compaction, and the share of cancelled records that triggers the
+     * compaction of a segment; must be called before authenticate().
+     * @param intervalSeconds seconds between checks (60 by default)
+     * @param thresholdPercent percentage of a segment's bytes that must be cancelled (30 by default)
+     */
+    public void setCompaction(long intervalSeconds, int thresholdPercent) {
+        this.compactionIntervalSeconds = intervalSeconds;
+        this.compactionThreshold = thresholdPercent;
+    }
+
+    /**
+     * Inserts a single Tweet object by appending it to the log.
+     * <p>The tweet ID is the next ID after the last tweet, and the timestamp is the current time.</p>
+     * @param t Tweet object to be inserted
+     */
+    @Override
+    public void postTweet(Tweet t) {
+        // timelines are built on read, so the event has no fan-out
+        TweetPostEvent event = TweetPostEvent.begin("local", 1);
+        event.userID = t.getUserID();
+        long location;
+        lock.writeLock().lock();
+        try {
+            location = appendTweet(t);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        commit(location);
+        event.commit();
+    }
+
+    /**
+     * Inserts multiple Tweet objects from a list by appending them to the log, with a single commit for the whole list.
+     * @param tweets list of Tweet objects
+     */
+    @Override
+    public void postTweets(List<Tweet> tweets) {
+        if (tweets.isEmpty()) return;
+        TweetPostEvent event = TweetPostEvent.begin("local", tweets.size());
+        long location;
+        lock.writeLock().lock();
+        try {
+            location = -1;
+            for (Tweet t : tweets) {
+                location = appendTweet(t);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        commit(location);
+        event.commit();
+    }
+
+    /**
+     * Retrieves the home timeline of a given user. The user's home timeline consists of the 10 most recent tweets
+     * from users that the given user follows.
+     * <p>In this implementation, the followees' tweet lists (in ascending tweet ID order) are merged from their ends
+     * until 10 tweets are found, and the tweets are read from the log.</p>
+     * @param userID user ID of the user
+     * @return list of Tweet objects representing the user home timeline
+     */
+    @Override
+    public List<Tweet> getTimeline(Integer userID) {
+        TimelineReadEvent event = TimelineReadEvent.begin("local", 1);
+        event.userID = userID;
+        List<Tweet> tweets;
+        lock.readLock().lock();
+        try {
+            tweets = timeline(userID, event);
+        } finally {
+            lock.readLock().unlock();
+        }
+        event.commit();
+        return tweets;
+    }
+
+    @Override
+    public Map<Integer, List<Tweet>> getTimelines(int[] userIDs) {
+        TimelineReadEvent event = TimelineReadEvent.begin("local", userIDs.length);
+        Map<Integer, List<Tweet>> result = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (int userID : userIDs) {
+                result.put(userID, timeline(userID, event));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        event.commit();
+        return result;
+    }
+
+    /**
+     * Retrieves a page of the tweets carrying a hashtag, most recent first. The hashtag's tweet IDs are kept in memory in
+     * ascending order, so the page is read backwards from the cursor (found by binary search); deleted tweets are skipped.
+     * The index is not capped, since it holds no more than the log itself.
+     * @param tag hashtag, with or without the '#'
+     * @param cursor only tweets with a lower tweet ID are returned; 0 starts from the most recent tweet
+     * @param limit maximum number of tweets
+     * @return list of Tweet objects, most recent first
+     */
+    @Override
+    public List<Tweet> getHashtagTimeline(String tag, int cursor, int limit) {
+        TimelineReadEvent event = TimelineReadEvent.begin("local", 1);
+        event.hashtag = HashtagIndex.normalize(tag);
+        List<Tweet> tweets = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            IntList tagged = hashtags.get(event.hashtag);
+            int end = tagged == null ? 0 : tagged.size();
+            if (cursor > 0) {
+                // first index whose tweet ID is not below the cursor
+                int low = 0;
+                while (low < end) {
+                    int middle = (low + end) >>> 1;
+                    if (tagged.get(middle) < cursor) low = middle + 1;
+                    else end = middle;
+                }
+            }
+            for (int i = end - 1; i >= 0 && tweets.size() < limit; i--) {
+                int tweetID = tagged.get(i);
+                event.tweetIDs++;
+                if (tweetLocations[tweetID] == 0) continue; // deleted
+                long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
+                tweets.add(readTweet(tweetID));
+                if (event.isEnabled()) event.decodeDuration += System.nanoTime() - decodeStart;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        event.commit();
+        return tweets;
+    }
+
+    @Override
+    public int[] getUserIDs() {
+        lock.readLock().lock();
+        try {
+            IntList users = new IntList(following.size());
+            for (Map.Entry<Integer, IntList> entry : following.entrySet()) {
+                if (entry.getValue().size() > 0) users.add(entry.getKey());
+            }
+            return users.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] getFollowerIDs(int userID) {
+        return ids(followers, userID);
+    }
+
+    @Override
+    public int[] getFolloweeIDs(int userID) {
+        return ids(following, userID);
+    }
+
+    /**
+     * Makes a user follow another user by appending a follow record to the log; following a user that is already followed
+     * writes nothing.
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to follow
+     */
+    @Override
+    public void follow(int userID, int followeeID) {
+        long location;
+        lock.writeLock().lock();
+        try {
+            if (isFollowing(userID, followeeID)) return;
+            location = log.append(TweetLog.FOLLOW, pairPayload(userID, followeeID));
+            applyFollow(userID, followeeID);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        commit(location);
+    }
+
+    /**
+     * Makes a user stop following another user by appending an unfollow record to the log.
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to stop following
+     */
+    @Override
+    public void unfollow(int userID, int followeeID) {
+        long location;
+        lock.writeLock().lock();
+        try {
+            if (!isFollowing(userID, followeeID)) return;
+            location = log.append(TweetLog.UNFOLLOW, pairPayload(userID, followeeID));
+            applyUnfollow(userID, followeeID);
+            cancelledBytes.addAndGet(FOLLOW_RECORD_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        commit(location);
+    }
+
+    /**
+     * Deletes a tweet by appending a delete record to the log. The tweet's location is dropped at once, so reads skip it;
+     * its ID is purged from the author's tweet list, and its record from the log, by the background compactor.
+     * @param tweetID tweet ID of the tweet
+     */
+    @Override
+    public void deleteTweet(int tweetID) {
+        long location;
+        lock.writeLock().lock();
+        try {
+            if (tweetID <= 0 || tweetID > lastTweetID || tweetLocations[tweetID] == 0) return;
+            ByteBuffer tweet = log.read(tweetLocations[tweetID]);
+            location = log.append(TweetLog.DELETE, pairPayload(tweetID, tweet.getInt(4)));
+            applyDelete(tweetID, tweet.getInt(4));
+            cancelledBytes.addAndGet(TweetLog.RECORD_HEADER_SIZE + tweet.remaining());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        commit(location);
+    }
+
+    /**
+     * Opens the data directory, replays its log to rebuild the indexes, and starts the background flusher and compactor.
+     * @param url path of the data directory (created if it does not exist)
+     * @param user unused
+     * @param password unused
+     */
+    @Override
+    public void authenticate(String url, String user, String password) {
+        lock.writeLock().lock();
+        try {
+            log = new TweetLog(new File(url), segmentSize, this::replay);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not open the log in " + url, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // two threads, so that a long compaction does not delay the interval flushes
+        background = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "local-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleFlusher();
+        background.scheduleWithFixedDelay(this::compact, compactionIntervalSeconds, compactionIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the background tasks and forces the log to disk when application finishes
+     */
+    @Override
+    public void closeConnection() {
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES);
+            log.close();
+        } catch (IOException e) {
+            System.out.println("ERROR: could not force the log to disk");
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long appendTweet(Tweet t) {
+        int tweetID = lastTweetID + 1;
+        long timestamp = System.currentTimeMillis();
+        byte[] text = t.getTweetText().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(16 + text.length).order(ByteOrder.LITTLE_ENDIAN);
+        payload.putInt(tweetID).putInt(t.getUserID()).putLong(timestamp).put(text);
+        try {
+            long location = log.append(TweetLog.TWEET, payload.array());
+            applyTweet(tweetID, t.getUserID(), location);
+            applyHashtags(tweetID, t.getTweetText());
+            return location;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void commit(long location) {
+        if (fsyncPolicy != TweetLog.FsyncPolicy.ALWAYS) return;
+        try {
+            log.commit(location);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Applies a record of the log to the indexes while the log is opened.
+     */
+    private void replay(long location, byte type, ByteBuffer payload) {
+        switch (type) {
+            case TweetLog.TWEET:
+                applyTweet(payload.getInt(0), payload.getInt(4), location);
+                ByteBuffer text = payload.duplicate();
+                text.position(16);
+                applyHashtags(payload.getInt(0), StandardCharsets.UTF_8.decode(text).toString());
+                break;
+            case TweetLog.FOLLOW:
+                if (!isFollowing(payload.getInt(0), payload.getInt(4))) applyFollow(payload.getInt(0), payload.getInt(4));
+                break;
+            case TweetLog.UNFOLLOW:
+                if (isFollowing(payload.getInt(0), payload.getInt(4))) applyUnfollow(payload.getInt(0), payload.getInt(4));
+                break;
+            case TweetLog.DELETE:
+                applyDelete(payload.getInt(0), payload.getInt(4));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void applyTweet(int tweetID, int userID, long location) {
+        if (tweetID >= tweetLocations.length) tweetLocations = Arrays.copyOf(tweetLocations, Math.max(tweetID + 1, tweetLocations.length * 2));
+        tweetLocations[tweetID] = location;
+        lastTweetID = Math.max(lastTweetID, tweetID);
+        userTweets.computeIfAbsent(userID, k -> new IntList()).add(tweetID);
+    }
+
+    private void applyHashtags(int tweetID, String tweetText) {
+        for (String tag : HashtagIndex.extract(tweetText)) {
+            hashtags.computeIfAbsent(tag, k -> new IntList()).add(tweetID);
+        }
+    }
+
+    /**
+     * Drops the location of a deleted tweet; its tweet record may already be gone if the log was compacted.
+     */
+    private void applyDelete(int tweetID, int userID) {
+        if (tweetID >= tweetLocations.length) tweetLocations = Arrays.copyOf(tweetLocations, Math.max(tweetID + 1, tweetLocations.length * 2));
+        tweetLocations[tweetID] = 0;
+        lastTweetID = Math.max(lastTweetID, tweetID);
+        unpurged.add(tweetID);
+        unpurged.add(userID);
+    }
+
+    private void applyFollow(int userID, int followeeID) {
+        following.computeIfAbsent(userID, k -> new IntList()).add(followeeID);
+        followers.computeIfAbsent(followeeID, k -> new IntList()).add(userID);
+    }
+
+    private void applyUnfollow(int userID, int followeeID) {
+        following.get(userID).remove(followeeID);
+        followers.get(followeeID).remove(userID);
+    }
+
+    private boolean isFollowing(int userID, int followeeID) {
+        IntList followees = following.get(userID);
+        return followees != null && followees.contains(followeeID);
+    }
+
+    private static byte[] pairPayload(int userID, int followeeID) {
+        return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putInt(userID).putInt(followeeID).array();
+    }
+
+    private int[] ids(Map<Integer, IntList> adjacency, int userID) {
+        lock.readLock().lock();
+        try {
+            IntList ids = adjacency.get(userID);
+            return ids == null ? new int[0] : ids.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Merges the followees' tweet lists and adds the tweets read from the log to the event (there are no round trips);
+     * the caller holds the read lock.
+     */
+    private List<Tweet> timeline(int userID, TimelineReadEvent event) {
+        List<Tweet> tweets = new ArrayList<>(10);
+        IntList followees = following.get(userID);
+        if (followees == null) return tweets;
+
+        // heap entries are {tweet ID, index in the followee's list, followee}
+        PriorityQueue<int[]> heap = new PriorityQueue<>((a, b) -> Integer.compare(b[0], a[0]));
+        for (int i = 0; i < followees.size(); i++) {
+            IntList authored = userTweets.get(followees.get(i));
+            if (authored != null && authored.size() > 0) {
+                heap.add(new int[]{authored.get(authored.size() - 1), authored.size() - 1, followees.get(i)});
+            }
+        }
+        while (!heap.isEmpty() && tweets.size() < 10) {
+            int[] top = heap.poll();
+            event.tweetIDs++;
+            if (tweetLocations[top[0]] != 0) { // deleted tweets are skipped until they are purged
+                long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
+                tweets.add(readTweet(top[0]));
+                if (event.isEnabled()) event.decodeDuration += System.nanoTime() - decodeStart;
+            }
+            if (--top[1] >= 0) {
+                top[0] = userTweets.get(top[2]).get(top[1]);
+                heap.add(top);
+            }
+        }
+        return tweets;
+    }
+
+    private Tweet readTweet(int tweetID) {
+        ByteBuffer payload = log.read(tweetLocations[tweetID]);
+        byte[] text = new byte[payload.remaining() - 16];
+        payload.position(16);
+        payload.get(text);
+        return new Tweet(tweetID, payload.getInt(4), new Date(payload.getLong(8)), new String(text, StandardCharsets.UTF_8));
+    }
+
+    private void scheduleFlusher() {
+        if (flusher != null) flusher.cancel(false);
+        flusher = null;
+        if (fsyncPolicy != TweetLog.FsyncPolicy.INTERVAL) return;
+        flusher = background.scheduleWithFixedDelay(() -> {
+            try {
+                log.force();
+            } catch (IOException e) {
+                System.out.println("ERROR: could not force the log to disk");
+                e.printStackTrace();
+            }
+        }, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Removes the deleted tweets from their authors' tweet lists.
+     */
+    private void purgeDeletedTweets() {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < unpurged.size(); i += 2) {
+                IntList authored = userTweets.get(unpurged.get(i + 1));
+                if (authored != null) authored.remove(unpurged.get(i));
+            }
+            unpurged = new IntList();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Purges deleted tweets from their authors' tweet lists, then rewrites the full segments whose share of cancelled
+     * records exceeds the threshold. A follow record is kept only while the relationship exists and an unfollow record
+     * only while it does not, so the last record of every relationship (which decides its state when the log is replayed)
+     * is always kept; a tweet record is kept only while the tweet is not deleted, and delete records are always kept (they
+     * are small, and keep deleted tweet IDs from being reused). The segments are rewritten under the read lock (per record)
+     * and only the swap of a segment and its tweet locations takes the write lock.
+     */
+    private void compact() {
+        purgeDeletedTweets();
+        if (cancelledBytes.get() * 100 < (long) segmentSize * compactionThreshold) return;
+        cancelledBytes.set(0);
+        try {
+            for (int segment = 0; segment < log.getActiveSegment(); segment++) {
+                long bytes = log.getSegmentBytes(segment);
+                if (bytes == 0 || log.deadBytes(segment, this::keep) * 100 < bytes * compactionThreshold) continue;
+
+                IntList keptTweets = new IntList(); // tweet ID of every kept record, or 0 for a relationship
+                TweetLog.Rewrite rewrite = log.rewrite(segment, (type, payload) -> {
+                    boolean keep = keep(type, payload);
+                    if (keep) keptTweets.add(type == TweetLog.TWEET ? payload.getInt(0) : 0);
+                    return keep;
+                });
+                lock.writeLock().lock();
+                try {
+                    log.install(rewrite);
+                    long[] locations = rewrite.getLocations();
+                    for (int i = 0; i < locations.length; i++) {
+                        // a tweet deleted during the rewrite keeps its dropped location
+                        if (keptTweets.get(i) != 0 && tweetLocations[keptTweets.get(i)] != 0) tweetLocations[keptTweets.get(i)] = locations[i];
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR: log compaction failed");
+            e.printStackTrace();
+        }
+    }
+
+    private boolean keep(byte type, ByteBuffer payload) {
+        if (type == TweetLog.DELETE) return true;
+        lock.readLock().lock();
+        try {
+            if (type == TweetLog.TWEET) return tweetLocations[payload.getInt(0)] != 0;
+            boolean live = isFollowing(payload.getInt(0), payload.getInt(4));
+            return type == TweetLog.FOLLOW ? live : !live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
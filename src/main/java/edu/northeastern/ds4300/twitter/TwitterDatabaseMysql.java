@@ -16,24 +16,31 @@ public class TwitterDatabaseMysql implements TwitterDatabaseAPI {
     /**
      * Inserts a single Tweet object into the `tweet` table in the MySQL database.
      * <p>Creates and executes a MySQL INSERT statement to insert the single Tweet object. When inserting
-     * records into the database, the database handles the tweet IDs (auto-incremented) and the tweet timestamp values.</p>
+     * records into the database, the database handles the tweet IDs (auto-incremented) and the tweet timestamp values.
+     * The tweet's hashtags are inserted into the `hashtag` table in the same batch, with the tweet ID LAST_INSERT_ID().</p>
      * @param t Tweet object to be inserted
      */
     @Override
     public void postTweet(Tweet t) {
+        // timelines are built on read, so the event has no fan-out
+        TweetPostEvent event = TweetPostEvent.begin("mysql", 1);
+        event.userID = t.getUserID();
         String statement = "INSERT INTO tweet (user_id, tweet_ts, tweet_text) VALUES (" + t.getUserID() + ", NOW(), '" + t.getTweetText() + "')";
-        dbu.executeUpdate(statement);
+        executeWithHashtags(statement, Collections.singletonList(t));
+        event.commit();
     }
 
     /**
      * Inserts multiple Tweet objects from a list into the `tweet` table in the MySQL database.
      * <p> Creates and executes a MySQL INSERT statement containing the Tweet objects from the list of tweets. When inserting
-     * records into the database, the database handles the tweet IDs (auto-incremented) and the tweet timestamp values. </p>
+     * records into the database, the database handles the tweet IDs (auto-incremented) and the tweet timestamp values. The
+     * tweets' hashtags are inserted into the `hashtag` table in the same batch. </p>
      * @param tweets list of Tweet objects
      */
     @Override
     public void postTweets(List<Tweet> tweets) {
         if (tweets.isEmpty()) return;
+        TweetPostEvent event = TweetPostEvent.begin("mysql", tweets.size());
         String statement = "INSERT INTO tweet (user_id, tweet_ts, tweet_text) VALUES";
         Tweet firstTweet = tweets.get(0); // separating first tweet to account for comma placements in the SQL statement
         statement += (" (" + firstTweet.getUserID() + ", NOW(), '" + firstTweet.getTweetText() + "')");
@@ -45,8 +52,45 @@ public class TwitterDatabaseMysql implements TwitterDatabaseAPI {
             statement += (", (" + tweet.getUserID() + ", NOW(), '" + tweet.getTweetText() + "')");
             index++;
         }
-        dbu.executeUpdate(statement);
+        executeWithHashtags(statement, tweets);
+        event.commit();
+    }
 
+    /**
+     * Executes a tweet INSERT and the INSERT of the tweets' hashtags as one JDBC batch in a single transaction, so that
+     * either both are stored or neither is. A multi-row INSERT numbers its rows consecutively from LAST_INSERT_ID() (the
+     * same assumption the driver makes for getGeneratedKeys()).
+     * @param statement INSERT statement of the tweets
+     * @param tweets inserted tweets, in statement order
+     * @throws IllegalStateException if the batch fails (it is rolled back)
+     */
+    private void executeWithHashtags(String statement, List<Tweet> tweets) {
+        String[] tweetIDs = new String[tweets.size()];
+        for (int i = 0; i < tweetIDs.length; i++) {
+            tweetIDs[i] = i == 0 ? "LAST_INSERT_ID()" : "LAST_INSERT_ID() + " + i;
+        }
+        String hashtags = HashtagIndex.insertStatement(tweets, tweetIDs);
+        if (hashtags == null) {
+            dbu.executeUpdate(statement);
+            return;
+        }
+        Connection con = dbu.getConnection();
+        try {
+            con.setAutoCommit(false);
+            try (Statement stmt = con.createStatement()) {
+                stmt.addBatch(statement);
+                stmt.addBatch(hashtags);
+                stmt.executeBatch();
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("could not insert " + tweets.size() + " tweets: " + e.getMessage(), e);
+        }
     }
 
     /**
@@ -60,14 +104,18 @@ public class TwitterDatabaseMysql implements TwitterDatabaseAPI {
      */
     @Override
     public List<Tweet> getTimeline(Integer userID) {
+        TimelineReadEvent event = TimelineReadEvent.begin("mysql", 1);
+        event.userID = userID;
+        event.roundTrips = 1;
         String statement = "SELECT tweet_id, user_id, tweet_ts, tweet_text FROM (SELECT follows_id FROM `follows` WHERE user_id = "
                 + userID + ") followees JOIN tweet ON (followees.follows_id = tweet.user_id) "
-                + "ORDER BY tweet_ts DESC LIMIT 10";
+                + "ORDER BY tweet_ts DESC, tweet_id DESC LIMIT 10";
         List<Tweet> tweets = new ArrayList<>();
         try {
             Connection con = dbu.getConnection();
             Statement stmt = con.createStatement();
             ResultSet rs = stmt.executeQuery(statement);
+            long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
             while (rs.next()) {
                 // read in query result table and create Tweet objects from the extracted field data of each row
                 int tweetID = rs.getInt(1);
@@ -76,6 +124,99 @@ public class TwitterDatabaseMysql implements TwitterDatabaseAPI {
                 String tweetText = rs.getString(4);
                 tweets.add(new Tweet(tweetID, tweetUserID, tweetTimestamp, tweetText)); // create Tweet object and add it to timeline list
             }
+            if (event.isEnabled()) event.decodeDuration = System.nanoTime() - decodeStart;
+            rs.close();
+            stmt.close();
+        } catch (SQLException e) {
+            System.out.println("ERROR: Could not execute query: " + statement);
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+        }
+        event.tweetIDs = tweets.size();
+        event.commit();
+        return tweets;
+    }
+
+    /**
+     * Retrieves the home timelines of several users at once with a single set-based query. The query joins the users'
+     * followees with the `tweet` table and ranks each user's candidate tweets with ROW_NUMBER() (MySQL 8), keeping the
+     * 10 most recent per user. Tweets shared by several timelines are created once.
+     * @param userIDs user IDs of the users
+     * @return map of user ID to the list of Tweet objects representing that user's home timeline
+     */
+    @Override
+    public Map<Integer, List<Tweet>> getTimelines(int[] userIDs) {
+        Map<Integer, List<Tweet>> result = new HashMap<>();
+        if (userIDs.length == 0) return result;
+        TimelineReadEvent event = TimelineReadEvent.begin("mysql", userIDs.length);
+        event.roundTrips = 1;
+        StringBuilder users = new StringBuilder();
+        for (int userID : userIDs) {
+            if (users.length() > 0) users.append(", ");
+            users.append(userID);
+            result.put(userID, new ArrayList<>());
+        }
+        String statement = "SELECT reader_id, tweet_id, user_id, tweet_ts, tweet_text FROM ("
+                + "SELECT f.user_id AS reader_id, t.tweet_id, t.user_id, t.tweet_ts, t.tweet_text, "
+                + "ROW_NUMBER() OVER (PARTITION BY f.user_id ORDER BY t.tweet_ts DESC, t.tweet_id DESC) AS rn "
+                + "FROM `follows` f JOIN tweet t ON (f.follows_id = t.user_id) WHERE f.user_id IN (" + users + ")) ranked "
+                + "WHERE rn <= 10 ORDER BY reader_id, rn";
+        Map<Integer, Tweet> decoded = new HashMap<>();
+        try {
+            Connection con = dbu.getConnection();
+            Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery(statement);
+            long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
+            while (rs.next()) {
+                event.tweetIDs++;
+                // read in query result table and create each distinct Tweet object once
+                int readerID = rs.getInt(1);
+                int tweetID = rs.getInt(2);
+                Tweet tweet = decoded.get(tweetID);
+                if (tweet == null) {
+                    tweet = new Tweet(tweetID, rs.getInt(3), rs.getTimestamp(4), rs.getString(5));
+                    decoded.put(tweetID, tweet);
+                }
+                result.get(readerID).add(tweet);
+            }
+            if (event.isEnabled()) event.decodeDuration = System.nanoTime() - decodeStart;
+            rs.close();
+            stmt.close();
+        } catch (SQLException e) {
+            System.out.println("ERROR: Could not execute query: " + statement);
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+        }
+        event.commit();
+        return result;
+    }
+
+    /**
+     * Retrieves a page of the tweets carrying a hashtag, most recent first, with a single query: a range scan of the
+     * `hashtag` table's primary key below the cursor, joined with the `tweet` table. Deleted tweets drop out of the join.
+     * @param tag hashtag, with or without the '#'
+     * @param cursor only tweets with a lower tweet ID are returned; 0 starts from the most recent tweet
+     * @param limit maximum number of tweets
+     * @return list of Tweet objects, most recent first
+     */
+    @Override
+    public List<Tweet> getHashtagTimeline(String tag, int cursor, int limit) {
+        TimelineReadEvent event = TimelineReadEvent.begin("mysql", 1);
+        event.hashtag = HashtagIndex.normalize(tag);
+        event.roundTrips = 1;
+        String statement = "SELECT t.tweet_id, t.user_id, t.tweet_ts, t.tweet_text FROM hashtag h JOIN tweet t ON (h.tweet_id = t.tweet_id) "
+                + "WHERE h.tag = '" + event.hashtag + "'" + (cursor > 0 ? " AND h.tweet_id < " + cursor : "")
+                + " ORDER BY h.tweet_id DESC LIMIT " + limit;
+        List<Tweet> tweets = new ArrayList<>();
+        try {
+            Connection con = dbu.getConnection();
+            Statement stmt = con.createStatement();
+            ResultSet rs = stmt.executeQuery(statement);
+            long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
+            while (rs.next()) {
+                tweets.add(new Tweet(rs.getInt(1), rs.getInt(2), rs.getTimestamp(3), rs.getString(4)));
+            }
+            if (event.isEnabled()) event.decodeDuration = System.nanoTime() - decodeStart;
             rs.close();
             stmt.close();
         } catch (SQLException e) {
@@ -83,24 +224,54 @@ public class TwitterDatabaseMysql implements TwitterDatabaseAPI {
             System.out.println(e.getMessage());
             e.printStackTrace();
         }
+        event.tweetIDs = tweets.size();
+        event.commit();
         return tweets;
     }
 
     /**
-     * Get a list of all unique user IDs that follow at least one other user in the `follows` table in the MySQL database.
-     * @return list of user IDs
+     * Get an array of all unique user IDs that follow at least one other user in the `follows` table in the MySQL database.
+     * @return array of user IDs
+     */
+    @Override
+    public int[] getUserIDs() {
+        return queryIDs("SELECT DISTINCT user_id FROM `follows`");
+    }
+
+    /**
+     * Get an array of user IDs that follow the given user ID in the `follows` table in the MySQL database.
+     * @param userID given user ID
+     * @return array of user IDs that follow the given user ID
+     */
+    @Override
+    public int[] getFollowerIDs(int userID) {
+        return queryIDs("SELECT user_id FROM `follows` WHERE follows_id = " + userID);
+    }
+
+    /**
+     * Get an array of user IDs that the given user ID follows in the `follows` table in the MySQL database.
+     * @param userID given user ID
+     * @return array of user IDs that the given user ID follows
      */
     @Override
-    public List<Integer> getUsers() {
-        String statement = "SELECT DISTINCT user_id FROM `follows`";
-        List<Integer> users = new ArrayList<>();
+    public int[] getFolloweeIDs(int userID) {
+        return queryIDs("SELECT follows_id FROM `follows` WHERE user_id = " + userID);
+    }
+
+    /**
+     * Executes a query whose first column is a user ID and reads the IDs into an int array.
+     * @param statement MySQL query
+     * @return array of user IDs
+     */
+    private int[] queryIDs(String statement) {
+        IntList ids = new IntList();
         try {
             Connection con = dbu.getConnection();
             Statement stmt = con.createStatement();
             ResultSet rs = stmt.executeQuery(statement);
             while (rs.next()) {
-                // read in query result table and add each user ID into the user list
-                users.add(rs.getInt(1));
+                // read in query result table and add each user ID into the ID list
+                ids.add(rs.getInt(1));
             }
             rs.close();
             stmt.close();
@@ -109,19 +280,44 @@ public class TwitterDatabaseMysql implements TwitterDatabaseAPI {
             System.out.println(e.getMessage());
             e.printStackTrace();
         }
-        return users;
+        return ids.toArray();
     }
 
+
+    /**
+     * Makes a user follow another user by inserting a row into the `follows` table (a single row holds both directions of
+     * the relationship). Timelines are queried on the fly, so no timeline needs to be updated.
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to follow
+     */
     @Override
-    public List<Integer> getFollowers(Integer userID) {
-        return null;
+    public void follow(int userID, int followeeID) {
+        String statement = "INSERT INTO follows (user_id, follows_id) SELECT " + userID + ", " + followeeID + " FROM DUAL "
+                + "WHERE NOT EXISTS (SELECT 1 FROM follows WHERE user_id = " + userID + " AND follows_id = " + followeeID + ")";
+        dbu.executeUpdate(statement);
     }
 
+    /**
+     * Makes a user stop following another user by deleting the row from the `follows` table.
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to stop following
+     */
     @Override
-    public List<Integer> getFollowees(Integer userID) {
-        return null;
+    public void unfollow(int userID, int followeeID) {
+        String statement = "DELETE FROM follows WHERE user_id = " + userID + " AND follows_id = " + followeeID;
+        dbu.executeUpdate(statement);
     }
 
+    /**
+     * Deletes a tweet by deleting its row from the `tweet` table. Timelines are computed by the join query when they are
+     * read, so there is nothing else to update.
+     * @param tweetID tweet ID of the tweet
+     */
+    @Override
+    public void deleteTweet(int tweetID) {
+        String statement = "DELETE FROM tweet WHERE tweet_id = " + tweetID;
+        dbu.executeUpdate(statement);
+    }
 
     /**
      * Set connection settings
@@ -0,0 +1,85 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class represents an asynchronous API backed by the MySQL implementation. JDBC calls are blocking, so each request runs
+ * on a small executor whose threads each own a separate TwitterDatabaseMysql connection; the caller thread only receives a future.
+ */
+public class TwitterDatabaseMysqlAsync implements TwitterDatabaseAsyncAPI {
+
+    private final int threads;
+    private ExecutorService executor;
+    private ThreadLocal<TwitterDatabaseMysql> connection;
+    private final Queue<TwitterDatabaseMysql> connections = new ConcurrentLinkedQueue<>();
+
+    public TwitterDatabaseMysqlAsync() {
+        this(4);
+    }
+
+    /**
+     * @param threads number of executor threads (and MySQL connections)
+     */
+    public TwitterDatabaseMysqlAsync(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Inserts a single Tweet object into the `tweet` table asynchronously.
+     * @param t Tweet object to be inserted
+     * @return future that completes when the tweet has been inserted
+     */
+    @Override
+    public CompletableFuture<Void> postTweetAsync(Tweet t) {
+        return CompletableFuture.runAsync(() -> connection.get().postTweet(t), executor);
+    }
+
+    /**
+     * Retrieves the home timeline of a given user asynchronously with the MySQL join query.
+     * @param userID user ID of the user
+     * @return future of the list of Tweet objects representing the user home timeline
+     */
+    @Override
+    public CompletableFuture<List<Tweet>> getTimelineAsync(Integer userID) {
+        return CompletableFuture.supplyAsync(() -> connection.get().getTimeline(userID), executor);
+    }
+
+    /**
+     * Set connection settings; every executor thread opens its own connection with them on first use.
+     * @param url database connector URL
+     * @param user database username
+     * @param password database password
+     */
+    @Override
+    public void authenticate(String url, String user, String password) {
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.connection = ThreadLocal.withInitial(() -> {
+            TwitterDatabaseMysql api = new TwitterDatabaseMysql();
+            api.authenticate(url, user, password);
+            connections.add(api);
+            return api;
+        });
+    }
+
+    /**
+     * Close the connections after the submitted requests have finished.
+     */
+    @Override
+    public void closeConnection() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (TwitterDatabaseMysql api : connections) {
+            api.closeConnection();
+        }
+    }
+}
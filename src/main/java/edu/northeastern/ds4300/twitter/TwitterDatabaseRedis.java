@@ -1,63 +1,267 @@
 package edu.northeastern.ds4300.twitter;
 
 import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 /**
  * This class represents an API that connects to a Redis database and provides functionality to insert Tweet objects or
  * retrieve a given user's home timeline.
+ *
+ * <p> By default the pre-computed timelines ("timeline:&lt;id&gt;") hold tweet IDs, and a read looks up every tweet body
+ * ("tweet:&lt;id&gt;"). With setInlineTimelines(), the timelines ("itimeline:&lt;id&gt;") hold the encoded tweets
+ * themselves (see TweetCodec.encodeEntry()), capped at a fixed length, so that a read is a single LRANGE; the price is a
+ * copy of every tweet in each follower's timeline, and deletes that remove those copies eagerly. </p>
+ *
+ * <p> With setReplicas(), the timeline, hashtag, user and follower reads go to the replicas of a RedisReplicaSet, and
+ * only the writes (and the reads they make) go to the primary connection. Replicas lag slightly behind the primary;
+ * setReadYourWrites() sends the reads that follow a write of the same instance to the primary for a while. </p>
  */
-public class TwitterDatabaseRedis implements TwitterDatabaseAPI {
+public class TwitterDatabaseRedis implements TwitterDatabaseAPI, TombstoneSweeper.Sweepable {
 
     private Jedis jedis;
 
+    // pooled connections and worker threads used to fan out tweets of authors with many followers (JedisPool is deprecated
+    // in Jedis 8, but RedisClient does not lend out the Jedis connections that the fan-out chunks share with the main path)
+    @SuppressWarnings("deprecation")
+    private JedisPool pool;
+    private ExecutorService fanoutExecutor;
+
+    // authors with fewer followers than the threshold are fanned out inline on the main connection
+    private int fanoutThreshold = 10000;
+    private int fanoutChunkSize = 5000;
+    private int fanoutParallelism = 4;
+    private int fanoutRetries = 3;
+
+    // whether follower/following lists are stored as packed binary segments (see PackedAdjacency)
+    private boolean packedAdjacency = false;
+
+    // compresses stored tweet bodies against trained dictionaries when set (see TweetCompressor)
+    private TweetCompressor tweetCompressor = null;
+
+    // stores the tweet bodies in "tweets:<bucket>" hashes instead of "tweet:<id>" key-values (see TweetBuckets)
+    private boolean bucketedTweets = false;
+
+    // maximum length of the inline timelines ("itimeline:<id>"); 0 pushes tweet IDs to the "timeline:<id>" lists instead
+    private int inlineTimelineDepth = 0;
+
+    // HSCAN cursor of the tombstones hash, kept across sweepTombstones() calls
+    private String tombstoneCursor = ScanParams.SCAN_POINTER_START;
+
+    // sends the reads to the replicas, if any, or to the primary connection after a write
+    private final RedisReplicaSet.Router router = new RedisReplicaSet.Router();
+
 
     /**
      * Inserts a single Tweet object into the Redis database.
      * It serializes the Tweet object into a string using pipes to separate each Tweet field. The posting process adds
-     * the tweet ID to the timelines of the user's followers (pre-computes timelines).
+     * the tweet ID to the timelines of the user's followers (pre-computes timelines). The tweet ID is also added to the user's
+     * list of tweets, before the followers are read, so that follow() can find tweets that a concurrent fan-out misses. Authors below the fan-out threshold are
+     * fanned out inline with a single pipeline; larger follower lists are split into chunks pushed concurrently over pooled connections.
+     * The tweet ID is added to the hashtag index (see HashtagIndex) in the inline pipeline, or in a pipeline of its own.
      *
      * @param t Tweet object to be inserted
      */
     @Override
     public void postTweet(Tweet t) {
-        // generating tweet timestamp
-        Date tweetTimestamp = new Date(System.currentTimeMillis());
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        try {
+            TweetPostEvent event = TweetPostEvent.begin("redis", 1);
+            event.userID = t.getUserID();
+            // generating tweet timestamp
+            Date tweetTimestamp = new Date(System.currentTimeMillis());
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
-        // serializing Tweet object as a string
-        String tweet = t.getUserID() + "|" + sdf.format(tweetTimestamp) + "|" + t.getTweetText();
+            // serializing Tweet object as a string
+            String tweet = t.getUserID() + "|" + sdf.format(tweetTimestamp) + "|" + t.getTweetText();
 
-        // increment currTweetID and store it as nextTweetID
-        // Note: currTweetID is incremented first, in case the key does not already exist
-        jedis.incr("currTweetID");
-        String nextTweetID =  jedis.get("currTweetID");
-        jedis.set("tweet:" + nextTweetID, tweet);
+            // increment currTweetID and store it as nextTweetID
+            // Note: currTweetID is incremented first, in case the key does not already exist
+            jedis.incr("currTweetID");
+            String nextTweetID =  jedis.get("currTweetID");
+            if (bucketedTweets) TweetBuckets.write(jedis, Long.parseLong(nextTweetID), tweet, tweetCompressor);
+            else if (tweetCompressor == null) jedis.set("tweet:" + nextTweetID, tweet);
+            else jedis.set(TweetCompressor.bytes("tweet:" + nextTweetID), tweetCompressor.compress(tweet));
+            jedis.lpush("usertweet:" + t.getUserID(), nextTweetID);
 
-        // for every user that follows the tweet's user, add this tweet to their timeline
-        List<Integer> followers = getFollowers(t.getUserID());
-        for (Integer followerID : followers) {
-            jedis.lpush("timeline:" + followerID, nextTweetID);
+            // for every user that follows the tweet's user, add this tweet to their timeline
+            int[] followers = getFollowerIDs(jedis, t.getUserID());
+            long fanoutStart = event.isEnabled() ? System.nanoTime() : 0;
+            Map<String, Map<String, Double>> hashtags = HashtagIndex.entries(Collections.singletonList(t), Long.parseLong(nextTweetID));
+            if (followers.length < fanoutThreshold) {
+                // inline path: a single pipeline on the main connection, which also adds the tweet to the hashtag index
+                Pipeline p = jedis.pipelined();
+                HashtagIndex.index(p, hashtags);
+                String entry = timelineEntry(nextTweetID, tweet);
+                for (int followerID : followers) {
+                    p.lpush(timelineKey(followerID), entry);
+                    if (inlineTimelineDepth > 0) p.ltrim(timelineKey(followerID), 0, inlineTimelineDepth - 1);
+                }
+                p.sync();
+            } else {
+                if (!hashtags.isEmpty()) {
+                    Pipeline p = jedis.pipelined();
+                    HashtagIndex.index(p, hashtags);
+                    p.sync();
+                }
+                fanoutInParallel(nextTweetID, timelineEntry(nextTweetID, tweet), followers);
+            }
+            if (event.isEnabled()) {
+                event.followerCount = followers.length;
+                event.fanoutDuration = System.nanoTime() - fanoutStart;
+            }
+            event.commit();
+        } finally {
+            router.markWrite();
+        }
+    }
+
+    /**
+     * Adds a tweet ID to the timelines of a large list of followers. The followers are split into chunks, and each chunk is
+     * pushed as one MULTI/EXEC block over its own pooled connection, with up to fanoutParallelism chunks in flight at once.
+     * A chunk that fails (e.g. on a dropped connection) is retried; its EXEC may still have been applied with only the
+     * reply lost, so a retry removes the entry from each timeline (LREM) before pushing it again, and no timeline ends up
+     * with the tweet twice. A retried entry moves to the head of the timelines it was already in.
+     * @param tweetID tweet ID to add
+     * @param entry timeline entry of the tweet (its ID, or its inline entry)
+     * @param followers follower IDs of the tweet's user
+     */
+    private void fanoutInParallel(String tweetID, String entry, int[] followers) {
+        List<Future<?>> chunks = new ArrayList<>();
+        for (int start = 0; start < followers.length; start += fanoutChunkSize) {
+            int from = start;
+            int to = Math.min(start + fanoutChunkSize, followers.length);
+            chunks.add(fanoutExecutor.submit(() -> pushChunk(tweetID, entry, followers, from, to)));
+        }
+
+        // wait for every chunk; a chunk that still fails after its retries is reported to the caller
+        for (Future<?> chunk : chunks) {
+            try {
+                chunk.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted during fan-out of tweet " + tweetID, e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("fan-out of tweet " + tweetID + " failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    private void pushChunk(String tweetID, String entry, int[] followers, int from, int to) {
+        for (int attempt = 0; ; attempt++) {
+            try (Jedis connection = pool.getResource()) {
+                Transaction transaction = connection.multi();
+                for (int i = from; i < to; i++) {
+                    // only retries pay for the LREM, which scans the whole timeline
+                    if (attempt > 0) transaction.lrem(timelineKey(followers[i]), 0, entry);
+                    transaction.lpush(timelineKey(followers[i]), entry);
+                    if (inlineTimelineDepth > 0) transaction.ltrim(timelineKey(followers[i]), 0, inlineTimelineDepth - 1);
+                }
+                transaction.exec();
+                return;
+            } catch (JedisException e) {
+                if (attempt >= fanoutRetries) {
+                    System.out.println("ERROR: fan-out chunk of tweet " + tweetID + " failed after " + (attempt + 1) + " attempts");
+                    System.out.println(e.getMessage());
+                    e.printStackTrace();
+                    throw e;
+                }
+                try {
+                    Thread.sleep(10L << attempt); // back off before retrying
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
         }
     }
 
     /**
      * Inserts multiple Tweet objects (in a list) into the Redis database. The implementation of this method applies the same logic as
-     * the postTweet() method.
+     * the postTweet() method, but in three round trips for the whole list instead of per tweet: the tweet IDs are reserved with
+     * a single INCRBY, the tweets, the users' lists of tweets, the hashtag index and the reads of the authors' followers share
+     * one pipeline, and the fan-out of every tweet below the fan-out threshold shares another (in tweet ID order).
      * @param tweets list of Tweet objects
      */
     @Override
     public void postTweets(List<Tweet> tweets) {
-        for (Tweet tweet : tweets) {
-            postTweet(tweet);
+        try {
+            if (tweets.isEmpty()) return;
+            TweetPostEvent event = TweetPostEvent.begin("redis", tweets.size());
+            String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(System.currentTimeMillis()));
+            long firstTweetID = jedis.incrBy("currTweetID", tweets.size()) - tweets.size() + 1;
+
+            Pipeline p = jedis.pipelined();
+            String[] entries = new String[tweets.size()];
+            for (int i = 0; i < tweets.size(); i++) {
+                Tweet t = tweets.get(i);
+                String tweetID = Long.toString(firstTweetID + i);
+                String tweet = t.getUserID() + "|" + timestamp + "|" + t.getTweetText();
+                if (bucketedTweets) TweetBuckets.write(p, firstTweetID + i, tweet, tweetCompressor);
+                else if (tweetCompressor == null) p.set("tweet:" + tweetID, tweet);
+                else p.set(TweetCompressor.bytes("tweet:" + tweetID), tweetCompressor.compress(tweet));
+                p.lpush("usertweet:" + t.getUserID(), tweetID);
+                entries[i] = timelineEntry(tweetID, tweet);
+            }
+            HashtagIndex.index(p, HashtagIndex.entries(tweets, firstTweetID));
+            // as in postTweet(), the followers are read after the users' lists of tweets are updated
+            Map<Integer, Response<List<String>>> followers = new HashMap<>();
+            Map<Integer, Response<List<byte[]>>> packedFollowers = new HashMap<>();
+            for (Tweet t : tweets) {
+                if (followers.containsKey(t.getUserID()) || packedFollowers.containsKey(t.getUserID())) continue;
+                if (packedAdjacency) {
+                    packedFollowers.put(t.getUserID(), p.lrange(TweetCompressor.bytes(PackedAdjacency.FOLLOWERS_PREFIX + t.getUserID()), 0, -1));
+                } else {
+                    followers.put(t.getUserID(), p.lrange("followers:" + t.getUserID(), 0, -1));
+                }
+            }
+            p.sync();
+
+            long fanoutStart = event.isEnabled() ? System.nanoTime() : 0;
+            p = jedis.pipelined();
+            for (int i = 0; i < tweets.size(); i++) {
+                int userID = tweets.get(i).getUserID();
+                int[] followerIDs = packedAdjacency ? PackedAdjacency.decode(packedFollowers.get(userID).get())
+                        : IntList.parse(followers.get(userID).get());
+                event.followerCount += followerIDs.length;
+                String tweetID = Long.toString(firstTweetID + i);
+                if (followerIDs.length < fanoutThreshold) {
+                    for (int followerID : followerIDs) {
+                        p.lpush(timelineKey(followerID), entries[i]);
+                        if (inlineTimelineDepth > 0) p.ltrim(timelineKey(followerID), 0, inlineTimelineDepth - 1);
+                    }
+                } else {
+                    // the pushes of earlier tweets are sent first, so that every timeline stays in tweet ID order
+                    p.sync();
+                    fanoutInParallel(tweetID, entries[i], followerIDs);
+                    p = jedis.pipelined();
+                }
+            }
+            p.sync();
+            if (event.isEnabled()) event.fanoutDuration = System.nanoTime() - fanoutStart;
+            event.commit();
+        } finally {
+            router.markWrite();
         }
     }
 
@@ -66,21 +270,54 @@ public class TwitterDatabaseRedis implements TwitterDatabaseAPI {
      * from users that the given user follows.
      * In this implementation, a timeline key-value for each user was generated when tweets were posted, so this method simply
      * retrieves the first 10 tweet IDs from the pre-computed timeline of the given user. Then, with the tweet IDs, the tweet
-     * information can be retrieved from the tweet key-values.
+     * information can be retrieved from the tweet key-values. Deleted tweets (whose key-values are gone) are skipped, and
+     * the next tweet IDs of the timeline are read in their place. With inline timelines, the 10 encoded tweets are read
+     * with a single LRANGE instead.
      * @param userID user ID of the user
      * @return list of Tweet objects representing the user home timeline
      */
     @Override
     public List<Tweet> getTimeline(Integer userID) {
-        List<Tweet> tweets = new ArrayList<>();
+        return read(connection -> getTimeline(connection, userID));
+    }
 
-        // retrieve 10 most recently inserted tweets from timeline key-value store
-        List<String> timeline = jedis.lrange("timeline:" + userID, 0, 9);
+    private List<Tweet> getTimeline(Jedis connection, int userID) {
+        TimelineReadEvent event = TimelineReadEvent.begin("redis", 1);
+        event.userID = userID;
+        if (inlineTimelineDepth > 0) {
+            List<String> entries = connection.lrange(timelineKey(userID), 0, 9);
+            event.roundTrips = 1;
+            event.tweetIDs = entries.size();
+            List<Tweet> tweets = decodeEntries(entries, new HashMap<>(), event);
+            event.commit();
+            return tweets;
+        }
+        List<Tweet> tweets = new ArrayList<>();
+        int start = 0;
+        while (tweets.size() < 10) {
+            // retrieve the next tweet IDs of the timeline, as many as tweets are still missing
+            int wanted = 10 - tweets.size();
+            List<String> timeline = connection.lrange("timeline:" + userID, start, start + wanted - 1);
+            event.roundTrips += 1 + timeline.size();
+            event.tweetIDs += timeline.size();
+            readTimelineTweets(connection, timeline, tweets, event);
+            start += timeline.size();
+            if (timeline.size() < wanted) break;
+        }
+        event.commit();
+        return tweets;
+    }
 
+    /**
+     * Reads the tweets of a slice of a timeline, one GET per tweet, and adds the ones that have not been deleted.
+     */
+    private void readTimelineTweets(Jedis connection, List<String> timeline, List<Tweet> tweets, TimelineReadEvent event) {
         // extract tweet data of each tweet ID from the timeline
         for (String tweetID : timeline) {
             // retrieve tweet data
-            String tweetString = jedis.get("tweet:" + tweetID);
+            String tweetString = readTweet(connection, "tweet:" + tweetID);
+            if (tweetString == null) continue; // deleted tweet
+            long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
             // parse tweet data by splitting by delimiter "|"
             // note: split() limits to 3 splits to avoid splitting on potential tweet text (if it contains "|")
             String[] tweetSplit = tweetString.split("\\|", 3);
@@ -100,75 +337,451 @@ public class TwitterDatabaseRedis implements TwitterDatabaseAPI {
             Tweet tweet = new Tweet(Integer.parseInt(tweetID), tweetUserID, tweetTimestamp, tweetText);
             // add tweet to timeline
             tweets.add(tweet);
+            if (event.isEnabled()) event.decodeDuration += System.nanoTime() - decodeStart;
         }
+    }
+
+
+    /**
+     * Retrieves the home timelines of several users at once. The first 10 tweet IDs of every user's pre-computed timeline
+     * are read in one pipeline; the union of those tweet IDs is then fetched with a single MGET, and each distinct tweet is
+     * decoded once no matter how many of the timelines contain it. Timelines that came up short because of deleted tweets
+     * are topped up with their next tweet IDs in further rounds of the same two round trips.
+     * @param userIDs user IDs of the users
+     * @return map of user ID to the list of Tweet objects representing that user's home timeline
+     */
+    @Override
+    public Map<Integer, List<Tweet>> getTimelines(int[] userIDs) {
+        return read(connection -> getTimelines(connection, userIDs));
+    }
+
+    private Map<Integer, List<Tweet>> getTimelines(Jedis connection, int[] userIDs) {
+        TimelineReadEvent event = TimelineReadEvent.begin("redis", userIDs.length);
+        if (inlineTimelineDepth > 0) {
+            // one pipelined LRANGE per timeline; tweets shared by several timelines are decoded once
+            Pipeline p = connection.pipelined();
+            List<Response<List<String>>> slices = new ArrayList<>(userIDs.length);
+            for (int userID : userIDs) {
+                slices.add(p.lrange(timelineKey(userID), 0, 9));
+            }
+            p.sync();
+            event.roundTrips = 1;
+            Map<String, Tweet> decoded = new HashMap<>();
+            Map<Integer, List<Tweet>> result = new HashMap<>();
+            for (int i = 0; i < userIDs.length; i++) {
+                event.tweetIDs += slices.get(i).get().size();
+                result.put(userIDs[i], decodeEntries(slices.get(i).get(), decoded, event));
+            }
+            event.commit();
+            return result;
+        }
+        List<List<Tweet>> timelines = new ArrayList<>(userIDs.length);
+        IntList pending = new IntList(userIDs.length); // indexes of the timelines still being read
+        for (int i = 0; i < userIDs.length; i++) {
+            timelines.add(new ArrayList<>());
+            pending.add(i);
+        }
+        int[] offsets = new int[userIDs.length];
+        Map<String, Tweet> decoded = new HashMap<>();
+        Set<String> fetched = new HashSet<>();
+        while (pending.size() > 0) {
+            // one pipelined pass for the next slice of every pending timeline
+            Pipeline p = connection.pipelined();
+            List<Response<List<String>>> slices = new ArrayList<>(pending.size());
+            for (int k = 0; k < pending.size(); k++) {
+                int i = pending.get(k);
+                slices.add(p.lrange("timeline:" + userIDs[i], offsets[i], offsets[i] + 9 - timelines.get(i).size()));
+            }
+            p.sync();
+            event.roundTrips++;
+
+            // one MGET for the deduplicated union of tweet IDs not fetched yet
+            Set<String> tweetIDs = new LinkedHashSet<>();
+            for (Response<List<String>> slice : slices) {
+                for (String tweetID : slice.get()) {
+                    if (fetched.add(tweetID)) tweetIDs.add(tweetID);
+                }
+            }
+            if (!tweetIDs.isEmpty()) {
+                decoded.putAll(fetchTweets(connection, tweetIDs, event));
+                event.roundTrips++;
+                event.tweetIDs += tweetIDs.size();
+            }
+
+            IntList shortTimelines = new IntList();
+            for (int k = 0; k < pending.size(); k++) {
+                int i = pending.get(k);
+                List<String> slice = slices.get(k).get();
+                int wanted = 10 - timelines.get(i).size();
+                for (String tweetID : slice) {
+                    Tweet tweet = decoded.get(tweetID);
+                    if (tweet != null) timelines.get(i).add(tweet);
+                }
+                offsets[i] += slice.size();
+                // a full slice with deleted tweets in it: the timeline may hold more tweets
+                if (slice.size() == wanted && timelines.get(i).size() < 10) shortTimelines.add(i);
+            }
+            pending = shortTimelines;
+        }
+
+        Map<Integer, List<Tweet>> result = new HashMap<>();
+        for (int i = 0; i < userIDs.length; i++) {
+            result.put(userIDs[i], timelines.get(i));
+        }
+        event.commit();
+        return result;
+    }
+
+    /**
+     * Retrieves a page of the tweets carrying a hashtag, most recent first. The tweet IDs are read from the hashtag's sorted
+     * set with a single ZRANGE BYSCORE REV below the cursor, and the tweets with a single MGET. Deleted tweets are skipped,
+     * and the next tweet IDs of the set are read in their place.
+     * @param tag hashtag, with or without the '#'
+     * @param cursor only tweets with a lower tweet ID are returned; 0 starts from the most recent tweet
+     * @param limit maximum number of tweets
+     * @return list of Tweet objects, most recent first
+     */
+    @Override
+    public List<Tweet> getHashtagTimeline(String tag, int cursor, int limit) {
+        return read(connection -> getHashtagTimeline(connection, tag, cursor, limit));
+    }
+
+    private List<Tweet> getHashtagTimeline(Jedis connection, String tag, int cursor, int limit) {
+        TimelineReadEvent event = TimelineReadEvent.begin("redis", 1);
+        event.hashtag = HashtagIndex.normalize(tag);
+        List<Tweet> tweets = new ArrayList<>();
+        while (tweets.size() < limit) {
+            int wanted = limit - tweets.size();
+            List<String> tweetIDs = HashtagIndex.range(connection, event.hashtag, cursor, wanted);
+            event.roundTrips++;
+            if (tweetIDs.isEmpty()) break;
+            event.tweetIDs += tweetIDs.size();
+            Map<String, Tweet> decoded = fetchTweets(connection, tweetIDs, event);
+            event.roundTrips++;
+            for (String tweetID : tweetIDs) {
+                Tweet tweet = decoded.get(tweetID);
+                if (tweet != null) tweets.add(tweet);
+            }
+            cursor = Integer.parseInt(tweetIDs.get(tweetIDs.size() - 1));
+            if (tweetIDs.size() < wanted) break;
+        }
+        event.commit();
         return tweets;
     }
 
+    /**
+     * Decodes the entries of an inline timeline.
+     * @param entries timeline entries
+     * @param decoded tweets already decoded, by entry; the new ones are added
+     * @param event timeline read event the decode time is added to
+     * @return list of Tweet objects in timeline order
+     */
+    private List<Tweet> decodeEntries(List<String> entries, Map<String, Tweet> decoded, TimelineReadEvent event) {
+        long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
+        List<Tweet> tweets = new ArrayList<>(entries.size());
+        for (String entry : entries) {
+            tweets.add(decoded.computeIfAbsent(entry, TweetCodec::decodeEntry));
+        }
+        if (event.isEnabled()) event.decodeDuration += System.nanoTime() - decodeStart;
+        return tweets;
+    }
+
+    /**
+     * Builds the inline timeline entries of tweets from their stored bodies.
+     * @param tweetIDs tweet IDs
+     * @return entries of the tweets that have not been deleted, in the same order
+     */
+    private List<String> inlineEntries(List<String> tweetIDs) {
+        List<String> entries = new ArrayList<>(tweetIDs.size());
+        if (tweetIDs.isEmpty()) return entries;
+        String[] keys = new String[tweetIDs.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "tweet:" + tweetIDs.get(i);
+        }
+        List<String> bodies = readTweets(jedis, keys);
+        for (int i = 0; i < keys.length; i++) {
+            if (bodies.get(i) != null) entries.add(TweetCodec.encodeEntry(tweetIDs.get(i), bodies.get(i)));
+        }
+        return entries;
+    }
+
+    /**
+     * Runs a read on a replica or on the primary connection (see RedisReplicaSet.Router).
+     * @param operation read, given the connection to run on
+     * @return result of the read
+     */
+    private <T> T read(Function<Jedis, T> operation) {
+        return router.read(operation, jedis);
+    }
+
+    private String timelineKey(int userID) {
+        return (inlineTimelineDepth > 0 ? "itimeline:" : "timeline:") + userID;
+    }
+
+    private String timelineEntry(String tweetID, String tweet) {
+        return inlineTimelineDepth > 0 ? TweetCodec.encodeEntry(tweetID, tweet) : tweetID;
+    }
 
     /**
-     * Get a list of all unique user IDs that follow at least one other user. This method simply retrieves the set of
+     * Fetches and decodes the given tweets with a single MGET.
+     * @param tweetIDs distinct tweet IDs
+     * @param event timeline read event the decode time is added to
+     * @return map of tweet ID to decoded Tweet (tweets that do not exist are left out)
+     */
+    private Map<String, Tweet> fetchTweets(Jedis connection, Collection<String> tweetIDs, TimelineReadEvent event) {
+        Map<String, Tweet> decoded = new HashMap<>();
+        if (tweetIDs.isEmpty()) return decoded;
+        String[] keys = new String[tweetIDs.size()];
+        int k = 0;
+        for (String tweetID : tweetIDs) {
+            keys[k++] = "tweet:" + tweetID;
+        }
+        List<String> bodies = readTweets(connection, keys);
+        long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
+        k = 0;
+        for (String tweetID : tweetIDs) {
+            Tweet tweet = TweetCodec.decode(Integer.parseInt(tweetID), bodies.get(k++));
+            if (tweet != null) decoded.put(tweetID, tweet);
+        }
+        if (event.isEnabled()) event.decodeDuration += System.nanoTime() - decodeStart;
+        return decoded;
+    }
+
+
+    /**
+     * Reads a serialized tweet, decompressing it if tweet compression is enabled.
+     * @param key tweet key
+     * @return serialized tweet, or null if the key does not exist
+     */
+    private String readTweet(Jedis connection, String key) {
+        if (bucketedTweets) return TweetBuckets.read(connection, key, tweetCompressor);
+        if (tweetCompressor == null) return connection.get(key);
+        return tweetCompressor.decompress(connection.get(TweetCompressor.bytes(key)));
+    }
+
+    /**
+     * Reads several serialized tweets with a single MGET, decompressing them if tweet compression is enabled.
+     * @param keys tweet keys
+     * @return serialized tweets (null where the key does not exist)
+     */
+    private List<String> readTweets(Jedis connection, String[] keys) {
+        if (bucketedTweets) return TweetBuckets.read(connection, keys, tweetCompressor);
+        if (tweetCompressor == null) return connection.mget(keys);
+        byte[][] rawKeys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            rawKeys[i] = TweetCompressor.bytes(keys[i]);
+        }
+        return tweetCompressor.decompress(connection.mget(rawKeys));
+    }
+
+
+    /**
+     * Get an array of all unique user IDs that follow at least one other user. This method simply retrieves the set of
      * users (constructed when populating the "following/follower" relationships in the Redis setup step).
-     * @return list of user IDs
+     * @return array of user IDs
      */
     @Override
-    public List<Integer> getUsers() {
-        Set<String> users = jedis.smembers("users");
+    public int[] getUserIDs() {
+        return read(connection -> IntList.parse(connection.smembers("users")));
+    }
 
-        // convert set of integer strings to list of integers
-        List<Integer> usersID = new ArrayList<>();
-        for (String user : users) {
-            usersID.add(Integer.parseInt(user));
+    /**
+     * Get an array of user IDs that follow the given user ID. This method simply retrieves the list of user IDs from the
+     * "followers" key-values (constructed when populating the "following/follower" relationships in the Redis setup step),
+     * or decodes the packed segments directly into the array in packed mode.
+     * @param userID given user ID
+     * @return array of user IDs that follow the given user ID
+     */
+    @Override
+    public int[] getFollowerIDs(int userID) {
+        return read(connection -> getFollowerIDs(connection, userID));
+    }
+
+    private int[] getFollowerIDs(Jedis connection, int userID) {
+        if (packedAdjacency) {
+            return PackedAdjacency.read(connection, PackedAdjacency.FOLLOWERS_PREFIX + userID);
         }
-        return usersID;
+        return IntList.parse(connection.lrange("followers:" + userID, 0, -1));
     }
 
     /**
-     * Get a list of user IDs that follow the given user ID. This method simply retrieves the list of user IDs from the
-     * "followers" key-values (constructed when populating the "following/follower" relationships in the Redis setup step).
+     * Get an array of user IDs that the given user follows. This method simply retrieves the list of user IDs from the
+     * "following" key-values (constructed when populating the "following/follower" relationships in the Redis setup step),
+     * or decodes the packed segments directly into the array in packed mode.
      * @param userID given user ID
-     * @return list of user IDs that follow the given user ID
+     * @return array of user IDs that the given user ID follows
      */
     @Override
-    public List<Integer> getFollowers(Integer userID) {
-        // retrieve followers of given user
-        List<String> followers = jedis.lrange("followers:" + userID, 0, -1);
+    public int[] getFolloweeIDs(int userID) {
+        return read(connection -> getFolloweeIDs(connection, userID));
+    }
 
-        // convert set of integer strings to list of integers
-        List<Integer> followersID = new ArrayList<>();
-        for (String follower : followers) {
-            followersID.add(Integer.parseInt(follower));
+    private int[] getFolloweeIDs(Jedis connection, int userID) {
+        if (packedAdjacency) {
+            return PackedAdjacency.read(connection, PackedAdjacency.FOLLOWING_PREFIX + userID);
         }
-        return followersID;
+        return IntList.parse(connection.lrange("following:" + userID, 0, -1));
     }
 
     /**
-     * Get a list of user IDs that the given user follows. This method simply retrieves the list of user IDs from the
-     * "following" key-values (constructed when populating the "following/follower" relationships in the Redis setup step).
-     * @param userID given user ID
-     * @return list of user IDs that the given user ID follows
+     * Makes a user follow another user. Both directions of the relationship are updated in one MULTI/EXEC transaction
+     * (removing any existing entry before pushing keeps the lists free of duplicates), or with PackedAdjacency.updateEdge()
+     * when packed adjacency is used. The followee's recent tweets are then merged into the follower's timeline (see
+     * TimelineRepair.backfill()) instead of rebuilding it. A post of the followee that read its followers before the update
+     * had already added its tweet ID to the followee's list of tweets, so the backfill finds it.
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to follow
      */
     @Override
-    public List<Integer> getFollowees(Integer userID) {
-        // retrieve followees of given user
-        List<String> followees = jedis.lrange("following:" + userID, 0, -1);
+    public void follow(int userID, int followeeID) {
+        try {
+            if (packedAdjacency) {
+                PackedAdjacency.updateEdge(jedis, userID, followeeID, true);
+                jedis.sadd("users", Integer.toString(userID));
+            } else {
+                Transaction transaction = jedis.multi();
+                transaction.lrem("following:" + userID, 0, Integer.toString(followeeID));
+                transaction.lpush("following:" + userID, Integer.toString(followeeID));
+                transaction.lrem("followers:" + followeeID, 0, Integer.toString(userID));
+                transaction.lpush("followers:" + followeeID, Integer.toString(userID));
+                transaction.sadd("users", Integer.toString(userID));
+                transaction.exec();
+            }
+            List<String> recentTweets = TimelineRepair.recentTweets(jedis, followeeID);
+            TimelineRepair.backfill(jedis, timelineKey(userID), inlineTimelineDepth > 0 ? inlineEntries(recentTweets) : recentTweets);
+        } finally {
+            router.markWrite();
+        }
+    }
+
+    /**
+     * Makes a user stop following another user. Both directions of the relationship are removed in one MULTI/EXEC
+     * transaction (or with PackedAdjacency.updateEdge()), and the followee's recent tweets are then removed from the
+     * follower's timeline (see TimelineRepair.filter()). A tweet whose fan-out is still in flight at that moment can
+     * arrive after the filter.
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to stop following
+     */
+    @Override
+    public void unfollow(int userID, int followeeID) {
+        try {
+            if (packedAdjacency) {
+                PackedAdjacency.updateEdge(jedis, userID, followeeID, false);
+            } else {
+                Transaction transaction = jedis.multi();
+                transaction.lrem("following:" + userID, 0, Integer.toString(followeeID));
+                transaction.lrem("followers:" + followeeID, 0, Integer.toString(userID));
+                transaction.exec();
+            }
+            List<String> recentTweets = TimelineRepair.recentTweets(jedis, followeeID);
+            TimelineRepair.filter(jedis, timelineKey(userID), inlineTimelineDepth > 0 ? inlineEntries(recentTweets) : recentTweets);
+        } finally {
+            router.markWrite();
+        }
+    }
+
+    /**
+     * Deletes a tweet lazily: a tombstone (tweet ID to author ID) is added to the "tombstones" hash and the tweet key-value
+     * is deleted, in one MULTI/EXEC transaction. The tweet ID is left in the followers' timelines, where reads skip it
+     * because its key-value is gone, until TombstoneSweeper purges it. Inline timelines are read without looking up the
+     * tweet key-values, so the copies of the tweet are removed from them at once, with pipelined LREMs.
+     * @param tweetID tweet ID of the tweet
+     */
+    @Override
+    public void deleteTweet(int tweetID) {
+        try {
+            String tweet = readTweet(jedis, "tweet:" + tweetID);
+            if (tweet == null) return;
+            String authorID = tweet.substring(0, tweet.indexOf('|'));
+            Transaction transaction = jedis.multi();
+            // the inline timelines hold copies of the tweet, so the sweeper needs the body to find them
+            transaction.hset(TombstoneSweeper.TOMBSTONES_KEY, Integer.toString(tweetID), inlineTimelineDepth > 0 ? tweet : authorID);
+            if (bucketedTweets) TweetBuckets.delete(transaction, tweetID);
+            else transaction.del("tweet:" + tweetID);
+            transaction.exec();
+            if (inlineTimelineDepth == 0) return;
+            String entry = TweetCodec.encodeEntry(Integer.toString(tweetID), tweet);
+            Pipeline p = jedis.pipelined();
+            int queued = 0;
+            for (int followerID : getFollowerIDs(jedis, Integer.parseInt(authorID))) {
+                p.lrem(timelineKey(followerID), 0, entry);
+                if (++queued % 1000 == 0) p.sync();
+            }
+            p.sync();
+        } finally {
+            router.markWrite();
+        }
+    }
 
-        // convert set of integer strings to list of integers
-        List<Integer> followeesID = new ArrayList<>();
-        for (String followee : followees) {
-            followeesID.add(Integer.parseInt(followee));
+    /**
+     * Purges the tweet IDs of up to limit tombstones from the timelines of the authors' followers and from the authors'
+     * lists of tweets, with pipelined LREMs, then removes the tombstones. The author's list of tweets is purged first, so a
+     * concurrent follow() can copy a deleted tweet ID into a new follower's timeline only before that; such a leftover is
+     * still skipped by the reads. A tombstone that holds the tweet body was written in inline mode: the sweeper then removes
+     * the encoded entry from the inline timelines, which deleteTweet() only removes eagerly if its pipeline succeeds.
+     * @param limit maximum number of tombstones purged
+     * @return number of tombstones purged
+     */
+    @Override
+    public int sweepTombstones(int limit) {
+        ScanResult<Map.Entry<String, String>> scan = jedis.hscan(TombstoneSweeper.TOMBSTONES_KEY, tombstoneCursor,
+                new ScanParams().count(limit));
+        tombstoneCursor = scan.getCursor();
+        int purged = 0;
+        for (Map.Entry<String, String> tombstone : scan.getResult()) {
+            if (purged == limit) break;
+            String tweetID = tombstone.getKey();
+            String tweet = tombstone.getValue();
+            int authorID = Integer.parseInt(TombstoneSweeper.authorID(tweet));
+            jedis.lrem("usertweet:" + authorID, 0, tweetID);
+            boolean inline = tweet.indexOf('|') >= 0;
+            String key = inline ? "itimeline:" : "timeline:";
+            String entry = inline ? TweetCodec.encodeEntry(tweetID, tweet) : tweetID;
+            Pipeline p = jedis.pipelined();
+            int queued = 0;
+            for (int followerID : getFollowerIDs(jedis, authorID)) {
+                p.lrem(key + followerID, 0, entry);
+                if (++queued % 1000 == 0) p.sync();
+            }
+            p.hdel(TombstoneSweeper.TOMBSTONES_KEY, tweetID);
+            p.sync();
+            purged++;
         }
-        return followeesID;
+        return purged;
+    }
+
+    @Override
+    public long getOpsPerSecond() {
+        return TombstoneSweeper.opsPerSecond(jedis);
+    }
+
+    @Override
+    public long getTombstoneCount() {
+        return jedis.hlen(TombstoneSweeper.TOMBSTONES_KEY);
     }
 
     /**
-     * Initializes Jedis instance (method parameters are irrelevant in regards to the Redis database connection).
-     * @param url database connector URL N/A
+     * Connects to the Redis server (the user and password parameters are irrelevant in regards to the Redis database
+     * connection).
+     * @param url "host:port" of the Redis server (the primary, if reads are spread over replicas), or null for localhost:6379
      * @param user database username N/A
      * @param password database password N/A
      */
     @Override
+    @SuppressWarnings("deprecation")
     public void authenticate(String url, String user, String password) {
-        this.jedis = new Jedis();
+        HostAndPort server = RedisReplicaSet.parseAddress(url);
+        this.jedis = new Jedis(server);
+
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(fanoutParallelism);
+        config.setMaxIdle(fanoutParallelism);
+        this.pool = new JedisPool(config, server.getHost(), server.getPort());
+        this.fanoutExecutor = Executors.newFixedThreadPool(fanoutParallelism, r -> {
+            Thread thread = new Thread(r, "redis-fanout-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
@@ -176,7 +789,106 @@ public class TwitterDatabaseRedis implements TwitterDatabaseAPI {
      */
     @Override
     public void closeConnection() {
-        this.jedis.quit();
+        this.fanoutExecutor.shutdown();
+        this.pool.close();
+        this.jedis.close();
+    }
+
+    /**
+     * Sets the minimum number of followers for which a tweet is fanned out in parallel chunks; tweets of authors with fewer
+     * followers are pushed inline with a single pipeline.
+     * @param fanoutThreshold follower count threshold (Integer.MAX_VALUE always fans out inline, 0 always in parallel)
+     */
+    public void setFanoutThreshold(int fanoutThreshold) {
+        this.fanoutThreshold = fanoutThreshold;
+    }
+
+    /**
+     * Sets the number of follower timelines pushed by each chunk of a parallel fan-out.
+     * @param fanoutChunkSize chunk size
+     */
+    public void setFanoutChunkSize(int fanoutChunkSize) {
+        if (fanoutChunkSize < 1) throw new IllegalArgumentException("chunk size must be positive");
+        this.fanoutChunkSize = fanoutChunkSize;
+    }
+
+    /**
+     * Sets the number of chunks pushed concurrently (and the number of pooled connections). Must be called before authenticate().
+     * @param fanoutParallelism number of concurrent chunks
+     */
+    public void setFanoutParallelism(int fanoutParallelism) {
+        if (fanoutParallelism < 1) throw new IllegalArgumentException("parallelism must be positive");
+        this.fanoutParallelism = fanoutParallelism;
+    }
+
+    /**
+     * Sets whether follower/following lists are read from the packed binary segments written by
+     * "TwitterRedisSetup &lt;follows.csv&gt; packed" instead of the lists of decimal strings.
+     * @param packedAdjacency true to use packed adjacency
+     */
+    public void setPackedAdjacency(boolean packedAdjacency) {
+        this.packedAdjacency = packedAdjacency;
+    }
+
+    /**
+     * Sets whether tweet bodies are compressed with the dictionaries stored in the database (see CompressionBenchmark for
+     * training and storing a dictionary). Must be called after authenticate(); readers must enable compression to read a
+     * database that contains compressed tweets.
+     * @param tweetCompression true to compress new tweets and decompress stored ones
+     */
+    public void setTweetCompression(boolean tweetCompression) {
+        this.tweetCompressor = tweetCompression ? TweetCompressor.load(jedis) : null;
+    }
+
+    /**
+     * Sets whether the tweet bodies are stored in the bucketed layout of TweetBuckets, as fields of "tweets:&lt;bucket&gt;"
+     * hashes, instead of one "tweet:&lt;id&gt;" key-value per tweet. The layout is transparent to the callers of this
+     * class, but every client of a database must use the same layout (see TweetBucketMigrator). Enabling the layout raises
+     * the server's listpack value limit with TweetBuckets.configure(); that setting is not persisted, so it is applied
+     * again by every client that enables the layout (or can be set in redis.conf). Must be called after authenticate().
+     * @param bucketedTweets true to use the bucketed layout
+     */
+    public void setBucketedTweets(boolean bucketedTweets) {
+        if (bucketedTweets) TweetBuckets.configure(jedis);
+        this.bucketedTweets = bucketedTweets;
+    }
+
+    /**
+     * Sets whether the push strategy stores the encoded tweets directly in the timelines ("itimeline:&lt;id&gt;") instead of
+     * their tweet IDs ("timeline:&lt;id&gt;"). An inline timeline is read with a single LRANGE and no lookup of the tweet
+     * key-values, and is trimmed to depth entries on every push, which bounds its memory to depth encoded tweets. Every
+     * writer and reader of a database must use the same mode; InlineTimelineBenchmark compares the two.
+     * @param depth maximum number of tweets in an inline timeline (at least 10), or 0 to push tweet IDs (the default)
+     */
+    public void setInlineTimelines(int depth) {
+        if (depth != 0 && depth < 10) throw new IllegalArgumentException("inline timeline depth must be 0 or at least 10");
+        this.inlineTimelineDepth = depth;
+    }
+
+    /**
+     * Sets the replicas the reads are spread over (see RedisReplicaSet.Router.setReplicas()).
+     * @param replicas replica set, or null to read from the primary
+     */
+    public void setReplicas(RedisReplicaSet replicas) {
+        router.setReplicas(replicas);
+    }
+
+    /**
+     * Sets how long the reads of this instance go to the primary after each of its writes (postTweet(), postTweets(),
+     * follow(), unfollow() and deleteTweet()); see RedisReplicaSet.Router.setReadYourWrites().
+     * @param windowMillis milliseconds after a write during which reads go to the primary, or 0 to always read from the
+     *                     replicas (the default)
+     */
+    public void setReadYourWrites(long windowMillis) {
+        router.setReadYourWrites(windowMillis);
+    }
+
+    /**
+     * Sets the number of times a failed chunk is retried before the fan-out is reported as failed.
+     * @param fanoutRetries number of retries
+     */
+    public void setFanoutRetries(int fanoutRetries) {
+        this.fanoutRetries = fanoutRetries;
     }
 
 
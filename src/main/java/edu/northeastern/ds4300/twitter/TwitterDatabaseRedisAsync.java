@@ -0,0 +1,107 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class represents an asynchronous API that connects to a Redis database and provides functionality to insert Tweet
+ * objects or retrieve a given user's home timeline, using the pre-computed timeline strategy of TwitterDatabaseRedis.
+ * All requests share one connection through a RedisPipelineDispatcher, and the dependent steps of a request (e.g. the
+ * timeline tweet IDs followed by the tweet bodies) are chained as futures instead of blocking a thread.
+ */
+public class TwitterDatabaseRedisAsync implements TwitterDatabaseAsyncAPI {
+
+    private RedisPipelineDispatcher dispatcher;
+    private ExecutorService completionExecutor;
+
+
+    /**
+     * Inserts a single Tweet object into the Redis database asynchronously. The first round trip reserves the tweet ID; the
+     * second stores the tweet, adds its ID to the author's list of tweets and reads the author's followers (in that order,
+     * so that follow() can find tweets that a concurrent fan-out misses); the third pushes the ID to every follower's timeline.
+     * @param t Tweet object to be inserted
+     * @return future that completes when the tweet has been stored and fanned out
+     */
+    @Override
+    public CompletableFuture<Void> postTweetAsync(Tweet t) {
+        String tweet = TweetCodec.encode(t, new Date(System.currentTimeMillis()));
+
+        return dispatcher.submit(p -> p.incr("currTweetID")::get).thenCompose(id -> dispatcher.<Object[]>submit(p -> {
+            String tweetID = id.toString();
+            p.set("tweet:" + tweetID, tweet);
+            p.lpush("usertweet:" + t.getUserID(), tweetID);
+            Response<List<String>> followers = p.lrange("followers:" + t.getUserID(), 0, -1);
+            return () -> new Object[]{tweetID, followers.get()};
+        })).thenCompose(reply -> dispatcher.submit(p -> {
+            String tweetID = (String) reply[0];
+            @SuppressWarnings("unchecked")
+            List<String> followers = (List<String>) reply[1];
+            for (String followerID : followers) {
+                p.lpush("timeline:" + followerID, tweetID);
+            }
+            return () -> null;
+        }));
+    }
+
+    /**
+     * Retrieves the home timeline of a given user asynchronously. The first round trip reads the 10 most recent tweet IDs
+     * from the pre-computed timeline; the second fetches the tweet bodies with a single MGET.
+     * @param userID user ID of the user
+     * @return future of the list of Tweet objects representing the user home timeline
+     */
+    @Override
+    public CompletableFuture<List<Tweet>> getTimelineAsync(Integer userID) {
+        return dispatcher.submit(p -> p.lrange("timeline:" + userID, 0, 9)::get)
+                .thenCompose(timeline -> {
+                    if (timeline.isEmpty()) {
+                        return CompletableFuture.completedFuture(Collections.<Tweet>emptyList());
+                    }
+                    String[] keys = new String[timeline.size()];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = "tweet:" + timeline.get(i);
+                    }
+                    return dispatcher.submit(p -> p.mget(keys)::get).thenApply(bodies -> {
+                        List<Tweet> tweets = new ArrayList<>(bodies.size());
+                        for (int i = 0; i < bodies.size(); i++) {
+                            Tweet tweet = TweetCodec.decode(Integer.parseInt(timeline.get(i)), bodies.get(i));
+                            if (tweet != null) tweets.add(tweet);
+                        }
+                        return tweets;
+                    });
+                });
+    }
+
+    /**
+     * Starts the dispatcher connected to the local Redis database (method parameters are irrelevant in regards to the
+     * Redis database connection).
+     * @param url database connector URL N/A
+     * @param user database username N/A
+     * @param password database password N/A
+     */
+    @Override
+    public void authenticate(String url, String user, String password) {
+        this.completionExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "redis-async-completion");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new RedisPipelineDispatcher("localhost", 6379, 1000, completionExecutor);
+    }
+
+    /**
+     * Closes the Redis connection after the submitted requests, and the steps they chain (e.g. the fan-out of a post whose
+     * tweet ID is already reserved), have been sent.
+     */
+    @Override
+    public void closeConnection() {
+        dispatcher.close();
+        completionExecutor.shutdown();
+    }
+}
@@ -1,59 +1,130 @@
 package edu.northeastern.ds4300.twitter;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.resps.ScanResult;
 
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Set;
+import java.util.function.Function;
 
 /**
  * This class represents an API that connects to a Redis database and provides functionality to insert Tweet objects or
  * retrieve a given user's home timeline. The implementations of the API methods in this class are based on the optional strategy,
  * which involves non-precomputed timelines.
+ *
+ * <p> With setReplicas(), the timelines computed on the fly and the hashtag, user and follower reads go to the replicas of
+ * a RedisReplicaSet. The writes, and the materialized timelines (which are written on every read), stay on the primary
+ * connection; setReadYourWrites() also sends the reads that follow a write of the same instance to the primary. </p>
  */
-public class TwitterDatabaseRedisOptional implements TwitterDatabaseAPI {
+public class TwitterDatabaseRedisOptional implements TwitterDatabaseAPI, TombstoneSweeper.Sweepable {
 
     private Jedis jedis;
 
+    // whether follower/following lists are stored as packed binary segments (see PackedAdjacency)
+    private boolean packedAdjacency = false;
+
+    // compresses stored tweet bodies against trained dictionaries when set (see TweetCompressor)
+    private TweetCompressor tweetCompressor = null;
+
+    // stores the tweet bodies in "tweets:<bucket>" hashes instead of "tweet:<id>" key-values (see TweetBuckets)
+    private boolean bucketedTweets = false;
+
+    // HSCAN cursor of the tombstones hash, kept across sweepTombstones() calls
+    private String tombstoneCursor = ScanParams.SCAN_POINTER_START;
+
+    // seconds a materialized timeline is kept after it was built (0, the default, recomputes every timeline from scratch)
+    private int materializedTimelineTTL = 0;
+
+    // sends the reads to the replicas, if any, or to the primary connection after a write
+    private final RedisReplicaSet.Router router = new RedisReplicaSet.Router();
 
     /**
      * Inserts a single Tweet object into the Redis database.
      * It serializes the Tweet object into a string using pipes to separate each Tweet field. The posting process creates
-     * a tweet key-value and also adds the tweet ID to the user's list of tweets.
+     * a tweet key-value and also adds the tweet ID to the user's list of tweets. The user's latest tweet ID is recorded
+     * so that materialized timelines can tell whether the user has tweeted since they were refreshed, and the tweet ID is
+     * added to the hashtag index in the same pipeline.
      *
      * @param t Tweet object to be inserted
      */
     @Override
     public void postTweet(Tweet t) {
-        // generating tweet timestamp
-        Date tweetTimestamp = new Date(System.currentTimeMillis());
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        try {
+            // timelines are built on read, so the event has no fan-out
+            TweetPostEvent event = TweetPostEvent.begin("redis-optional", 1);
+            event.userID = t.getUserID();
+            // generating tweet timestamp
+            Date tweetTimestamp = new Date(System.currentTimeMillis());
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
-        // serializing Tweet object as a string
-        String tweet = t.getUserID() + "|" + sdf.format(tweetTimestamp) + "|" + t.getTweetText();
+            // serializing Tweet object as a string
+            String tweet = t.getUserID() + "|" + sdf.format(tweetTimestamp) + "|" + t.getTweetText();
 
-        // increment currTweetID and store it as nextTweetID
-        // Note: currTweetID is incremented first, in case the key does not already exist
-        jedis.incr("currTweetID");
-        String nextTweetID =  jedis.get("currTweetID");
-        jedis.set("tweet:" + nextTweetID, tweet);
+            // increment currTweetID and store it as nextTweetID
+            // Note: currTweetID is incremented first, in case the key does not already exist
+            jedis.incr("currTweetID");
+            String nextTweetID =  jedis.get("currTweetID");
+            if (bucketedTweets) TweetBuckets.write(jedis, Long.parseLong(nextTweetID), tweet, tweetCompressor);
+            else if (tweetCompressor == null) jedis.set("tweet:" + nextTweetID, tweet);
+            else jedis.set(TweetCompressor.bytes("tweet:" + nextTweetID), tweetCompressor.compress(tweet));
 
-        // add tweet ID to the user's list of tweets
-        jedis.lpush("usertweet:" + t.getUserID(), nextTweetID);
+            // add tweet ID to the user's list of tweets and to the hashtag index, in one pipeline
+            Pipeline p = jedis.pipelined();
+            p.lpush("usertweet:" + t.getUserID(), nextTweetID);
+            p.set("lasttweet:" + t.getUserID(), nextTweetID);
+            HashtagIndex.index(p, HashtagIndex.entries(Collections.singletonList(t), Long.parseLong(nextTweetID)));
+            p.sync();
+            event.commit();
+        } finally {
+            router.markWrite();
+        }
     }
 
     /**
      * Inserts multiple Tweet objects (in a list) into the Redis database. The implementation of this method applies the same logic as
-     * the postTweet() method.
+     * the postTweet() method, but in two round trips for the whole list instead of per tweet: the tweet IDs are reserved with
+     * a single INCRBY, and the tweets, the users' lists of tweets and the hashtag index are written in one pipeline.
      * @param tweets list of Tweet objects
      */
     @Override
     public void postTweets(List<Tweet> tweets) {
-        for (Tweet tweet : tweets) {
-            postTweet(tweet);
+        try {
+            if (tweets.isEmpty()) return;
+            TweetPostEvent event = TweetPostEvent.begin("redis-optional", tweets.size());
+            String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(System.currentTimeMillis()));
+            long firstTweetID = jedis.incrBy("currTweetID", tweets.size()) - tweets.size() + 1;
+
+            Pipeline p = jedis.pipelined();
+            for (int i = 0; i < tweets.size(); i++) {
+                Tweet t = tweets.get(i);
+                String tweetID = Long.toString(firstTweetID + i);
+                String tweet = t.getUserID() + "|" + timestamp + "|" + t.getTweetText();
+                if (bucketedTweets) TweetBuckets.write(p, firstTweetID + i, tweet, tweetCompressor);
+                else if (tweetCompressor == null) p.set("tweet:" + tweetID, tweet);
+                else p.set(TweetCompressor.bytes("tweet:" + tweetID), tweetCompressor.compress(tweet));
+                p.lpush("usertweet:" + t.getUserID(), tweetID);
+                p.set("lasttweet:" + t.getUserID(), tweetID);
+            }
+            HashtagIndex.index(p, HashtagIndex.entries(tweets, firstTweetID));
+            p.sync();
+            event.commit();
+        } finally {
+            router.markWrite();
         }
     }
 
@@ -63,46 +134,71 @@ public class TwitterDatabaseRedisOptional implements TwitterDatabaseAPI {
      * In this implementation, the timeline for the given user is generated on the fly. First, we retrieve the followees of the
      * given user. For each followee, retrieve their 10 latest tweets. These tweets are concatenated, creating a list of tweets
      * of 10 tweets for each followee. To create the timeline, sort the list of tweets in order of most recent to least recent, and
-     * retrieve the first 10 most recent tweets.
+     * retrieve the first 10 most recent tweets. Deleted tweets (whose key-values are gone) are skipped, and the next tweets of
+     * their followee are read in their place.
+     * If materialized timelines are enabled, the timeline is instead refreshed incrementally (see getMaterializedTimeline()).
      * @param userID user ID of the user
      * @return list of Tweet objects representing the user home timeline
      */
     @Override
     public List<Tweet> getTimeline(Integer userID) {
-        // retrieve followees of given user
-        List<Integer> followees = getFollowees(userID);
+        TimelineReadEvent event = TimelineReadEvent.begin("redis-optional", 1);
+        event.userID = userID;
+        List<Tweet> tweets = materializedTimelineTTL > 0 ? getMaterializedTimeline(userID, event)
+                : read(connection -> computeTimeline(connection, userID, event));
+        event.commit();
+        return tweets;
+    }
 
-        // retrieve 10 most recent tweets from each followee
-        List<String> tweetIDList = new ArrayList<>();
-        for (Integer followeeID : followees) {
-            List<String> tweets = jedis.lrange("usertweet:" + followeeID, 0, 9);
-            tweetIDList.addAll(tweets);
-        }
+    /**
+     * Computes the home timeline of a given user on the fly from the 10 latest tweets of every followee that have not been
+     * deleted.
+     */
+    private List<Tweet> computeTimeline(Jedis connection, int userID, TimelineReadEvent event) {
+        // retrieve followees of given user
+        int[] followees = getFolloweeIDs(connection, userID);
+        event.roundTrips++;
 
-        // process each tweet, create Tweet objects, and construct list of Tweets
+        // retrieve and process the 10 most recent tweets of each followee, create Tweet objects, and construct list of Tweets
         List<Tweet> tweets = new ArrayList<>();
-        for (String tweetID : tweetIDList) {
-            // retrieve tweet data
-            String tweetString = jedis.get("tweet:" + tweetID);
-            // parse tweet data by splitting by delimiter "|"
-            // note: split() limits to 3 splits to avoid splitting on potential tweet text (if it contains "|")
-            String[] tweetSplit = tweetString.split("\\|", 3);
-
-            int tweetUserID = Integer.parseInt(tweetSplit[0]);
-            Date tweetTimestamp = null;
-            try {
-                tweetTimestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(tweetSplit[1]);
-            } catch (ParseException e) {
-                System.out.println("ERROR: could not parse the tweet timestamp: " + tweetSplit[1]);
-                System.out.println(e.getMessage());
-                e.printStackTrace();
-            }
-            String tweetText = tweetSplit[2];
+        for (int followeeID : followees) {
+            int found = 0;
+            int start = 0;
+            while (found < 10) {
+                int wanted = 10 - found;
+                List<String> tweetIDList = connection.lrange("usertweet:" + followeeID, start, start + wanted - 1);
+                event.roundTrips += 1 + tweetIDList.size();
+                event.tweetIDs += tweetIDList.size();
+                for (String tweetID : tweetIDList) {
+                    // retrieve tweet data
+                    String tweetString = readTweet(connection, "tweet:" + tweetID);
+                    if (tweetString == null) continue; // deleted tweet
+                    long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
+                    // parse tweet data by splitting by delimiter "|"
+                    // note: split() limits to 3 splits to avoid splitting on potential tweet text (if it contains "|")
+                    String[] tweetSplit = tweetString.split("\\|", 3);
 
-            // constructing new Tweet object
-            Tweet tweet = new Tweet(Integer.parseInt(tweetID), tweetUserID, tweetTimestamp, tweetText);
-            // add tweet to list of tweets
-            tweets.add(tweet);
+                    int tweetUserID = Integer.parseInt(tweetSplit[0]);
+                    Date tweetTimestamp = null;
+                    try {
+                        tweetTimestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(tweetSplit[1]);
+                    } catch (ParseException e) {
+                        System.out.println("ERROR: could not parse the tweet timestamp: " + tweetSplit[1]);
+                        System.out.println(e.getMessage());
+                        e.printStackTrace();
+                    }
+                    String tweetText = tweetSplit[2];
+
+                    // constructing new Tweet object
+                    Tweet tweet = new Tweet(Integer.parseInt(tweetID), tweetUserID, tweetTimestamp, tweetText);
+                    // add tweet to list of tweets
+                    tweets.add(tweet);
+                    found++;
+                    if (event.isEnabled()) event.decodeDuration += System.nanoTime() - decodeStart;
+                }
+                start += tweetIDList.size();
+                if (tweetIDList.size() < wanted) break;
+            }
         }
 
         // sort Tweet list from most recent to least recent
@@ -113,69 +209,524 @@ public class TwitterDatabaseRedisOptional implements TwitterDatabaseAPI {
     }
 
     /**
-     * Get a list of all unique user IDs that follow at least one other user. This method simply retrieves the set of
-     * users (constructed when populating the "following/follower" relationships in the Redis setup step).
-     * @return list of user IDs
+     * Retrieves the home timeline of a given user from its materialized timeline. The tweet IDs of the timeline are kept
+     * in "mtimeline:&lt;id&gt;" (newest first) together with a watermark, "mwatermark:&lt;id&gt;", the newest tweet ID the
+     * timeline has taken into account. On a read only the followees whose latest tweet ("lasttweet:&lt;id&gt;") is newer than
+     * the watermark are read, their newer tweets are merged in, and the watermark moves forward. Both keys expire
+     * materializedTimelineTTL seconds after the timeline was built from scratch, however often it is read in between, and
+     * the next read recomputes it from every followee. This bounds how long a post can be missed: tweet IDs are reserved
+     * before the tweets are published, so a post that published its tweet after a newer one moved the watermark past it
+     * is only found by the next rebuild.
+     * Both keys are watched while the timeline is refreshed, and the refresh is dropped if another reader (or a follow)
+     * changed them in the meantime; a read that fails unwatches them before the error is passed on.
+     * A read that finds nothing new takes four round trips after the WATCH: the materialized keys and the followees in one
+     * pipeline, one MGET of the followees' latest tweet IDs (the part that grows with the number of followees), one read of
+     * the tweet bodies and the UNWATCH. New tweets add one pipeline reading the changed followees' tweet IDs.
+     * Tweet IDs are assigned in increasing order, so they also order tweets by recency. Deleted tweets are dropped from the
+     * materialized timeline when they are found; if the remaining candidates cannot fill it, the timeline is computed on
+     * the fly instead and materialized again on the next read.
+     * @param userID user ID of the user
+     * @param event begun timeline read event
+     * @return list of Tweet objects representing the user home timeline
+     */
+    private List<Tweet> getMaterializedTimeline(int userID, TimelineReadEvent event) {
+        String timelineKey = "mtimeline:" + userID;
+        String watermarkKey = "mwatermark:" + userID;
+
+        jedis.watch(timelineKey, watermarkKey);
+        try {
+            return refreshMaterializedTimeline(userID, timelineKey, watermarkKey, event);
+        } catch (RuntimeException e) {
+            // leave no watched keys behind for the next transaction of this connection
+            try {
+                jedis.unwatch();
+            } catch (JedisException unwatchError) {
+                e.addSuppressed(unwatchError);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads and refreshes a materialized timeline whose keys are watched (see getMaterializedTimeline()).
+     */
+    private List<Tweet> refreshMaterializedTimeline(int userID, String timelineKey, String watermarkKey,
+                                                    TimelineReadEvent event) {
+        Pipeline p = jedis.pipelined();
+        Response<List<String>> materialized = p.lrange(timelineKey, 0, -1);
+        Response<String> watermarkValue = p.get(watermarkKey);
+        Response<Long> remainingMillis = p.pttl(watermarkKey);
+        Response<List<byte[]>> packedFollowees = packedAdjacency
+                ? PackedAdjacency.read(p, PackedAdjacency.FOLLOWING_PREFIX + userID) : null;
+        Response<List<String>> followeeList = packedAdjacency ? null : p.lrange("following:" + userID, 0, -1);
+        p.sync();
+        int[] followees = packedAdjacency ? PackedAdjacency.decode(packedFollowees.get()) : IntList.parse(followeeList.get());
+        event.roundTrips++;
+        // -1: nothing materialized, every followee has to be read
+        long watermark = watermarkValue.get() == null ? -1 : Long.parseLong(watermarkValue.get());
+
+        // followees that may have tweeted since the watermark (the latest tweet of users that have not tweeted since
+        // this key was introduced is unknown)
+        List<Integer> changed = new ArrayList<>();
+        List<Integer> unknown = new ArrayList<>();
+        if (watermark < 0) {
+            for (int followeeID : followees) {
+                changed.add(followeeID);
+            }
+        } else if (followees.length > 0) {
+            String[] keys = new String[followees.length];
+            for (int i = 0; i < followees.length; i++) {
+                keys[i] = "lasttweet:" + followees[i];
+            }
+            List<String> lastTweets = jedis.mget(keys);
+            event.roundTrips++;
+            for (int i = 0; i < followees.length; i++) {
+                String lastTweet = lastTweets.get(i);
+                if (lastTweet == null) unknown.add(followees[i]);
+                if (lastTweet == null || Long.parseLong(lastTweet) > watermark) changed.add(followees[i]);
+            }
+        }
+
+        // the latest 10 tweet IDs of every changed followee
+        Map<Integer, Response<List<String>>> userTweets = new HashMap<>();
+        if (!changed.isEmpty()) {
+            p = jedis.pipelined();
+            for (Integer followeeID : changed) {
+                userTweets.put(followeeID, p.lrange("usertweet:" + followeeID, 0, 9));
+            }
+            p.sync();
+            event.roundTrips++;
+        }
+
+        List<Long> fresh = new ArrayList<>();
+        long newWatermark = Math.max(watermark, 0);
+        boolean truncated = materialized.get().size() >= 10; // whether older tweets than the candidates may exist
+        for (Response<List<String>> tweets : userTweets.values()) {
+            if (tweets.get().size() == 10) truncated = true;
+            for (String tweetID : tweets.get()) {
+                long id = Long.parseLong(tweetID);
+                if (id > watermark) fresh.add(id);
+                newWatermark = Math.max(newWatermark, id);
+            }
+        }
+
+        // every fresh tweet is newer than every materialized one; the timeline is made of the first 10 candidates whose
+        // tweets have not been deleted
+        fresh.sort(Collections.reverseOrder());
+        List<String> candidates = new ArrayList<>();
+        for (Long id : fresh) {
+            candidates.add(Long.toString(id));
+        }
+        candidates.addAll(materialized.get());
+        List<Tweet> tweets = new ArrayList<>();
+        List<String> tweetIDs = new ArrayList<>();
+        boolean deleted = false;
+        int next = 0;
+        while (tweets.size() < 10 && next < candidates.size()) {
+            List<String> batch = candidates.subList(next, Math.min(candidates.size(), next + 10 - tweets.size()));
+            next += batch.size();
+            String[] keys = new String[batch.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = "tweet:" + batch.get(i);
+            }
+            List<String> bodies = readTweets(jedis, keys);
+            event.roundTrips++;
+            long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
+            for (int i = 0; i < keys.length; i++) {
+                Tweet tweet = TweetCodec.decode(Integer.parseInt(batch.get(i)), bodies.get(i));
+                if (tweet == null) {
+                    deleted = true;
+                    continue;
+                }
+                tweets.add(tweet);
+                tweetIDs.add(batch.get(i));
+            }
+            if (event.isEnabled()) event.decodeDuration += System.nanoTime() - decodeStart;
+        }
+        event.tweetIDs = next;
+
+        if (deleted && tweets.size() < 10 && truncated) {
+            // deleted tweets left the candidates short; compute this read on the fly and materialize on the next one
+            jedis.unwatch();
+            jedis.del(timelineKey, watermarkKey);
+            return computeTimeline(jedis, userID, event);
+        }
+
+        // a rebuilt timeline lives materializedTimelineTTL seconds; a refreshed one keeps the expiry of its last rebuild
+        long ttlMillis = watermark < 0 || remainingMillis.get() <= 0 ? materializedTimelineTTL * 1000L : remainingMillis.get();
+        boolean rewrite = watermark < 0 || !fresh.isEmpty() || deleted;
+        if (!rewrite && unknown.isEmpty()) {
+            // nothing to write back
+            jedis.unwatch();
+            event.roundTrips++;
+            tweets.sort(new TweetComparator());
+            return tweets;
+        }
+        Transaction t = jedis.multi();
+        if (rewrite) {
+            t.del(timelineKey);
+            if (!tweetIDs.isEmpty()) t.rpush(timelineKey, tweetIDs.toArray(new String[0]));
+            t.set(watermarkKey, Long.toString(newWatermark));
+            t.pexpire(timelineKey, ttlMillis);
+            t.pexpire(watermarkKey, ttlMillis);
+        }
+        // record the latest tweet of followees that did not have one yet (a concurrent post already set a newer one)
+        for (Integer followeeID : unknown) {
+            List<String> followeeTweets = userTweets.get(followeeID).get();
+            t.set("lasttweet:" + followeeID, followeeTweets.isEmpty() ? "0" : followeeTweets.get(0), SetParams.setParams().nx());
+        }
+        // a null reply means a watched key changed: the refresh is dropped, and the timeline read is still returned
+        t.exec();
+        event.roundTrips++;
+
+        tweets.sort(new TweetComparator());
+        return tweets;
+    }
+
+    /**
+     * Retrieves the home timelines of several users at once in three round trips: one pipeline reads the followees of every
+     * user, one pipeline reads the 10 latest tweet IDs of every distinct followee, and one MGET fetches the union of those
+     * tweets. Each distinct tweet is decoded once; every user's timeline is then the 10 most recent tweets of its followees.
+     * Followees whose latest tweets include deleted ones are read further, in more rounds of the last two round trips.
+     * @param userIDs user IDs of the users
+     * @return map of user ID to the list of Tweet objects representing that user's home timeline
      */
     @Override
-    public List<Integer> getUsers() {
-        Set<String> users = jedis.smembers("users");
+    public Map<Integer, List<Tweet>> getTimelines(int[] userIDs) {
+        return read(connection -> getTimelines(connection, userIDs));
+    }
+
+    private Map<Integer, List<Tweet>> getTimelines(Jedis connection, int[] userIDs) {
+        TimelineReadEvent event = TimelineReadEvent.begin("redis-optional", userIDs.length);
+        // round trip 1: followees of every user
+        Pipeline p = connection.pipelined();
+        List<Response<List<byte[]>>> packedFollowees = new ArrayList<>();
+        List<Response<List<String>>> followees = new ArrayList<>();
+        for (int userID : userIDs) {
+            if (packedAdjacency) {
+                packedFollowees.add(p.lrange((PackedAdjacency.FOLLOWING_PREFIX + userID).getBytes(StandardCharsets.UTF_8), 0, -1));
+            } else {
+                followees.add(p.lrange("following:" + userID, 0, -1));
+            }
+        }
+        p.sync();
+        event.roundTrips++;
+        int[][] followeeIDs = new int[userIDs.length][];
+        Set<Integer> distinctFollowees = new LinkedHashSet<>();
+        for (int i = 0; i < userIDs.length; i++) {
+            followeeIDs[i] = packedAdjacency ? PackedAdjacency.decode(packedFollowees.get(i).get()) : IntList.parse(followees.get(i).get());
+            for (int followeeID : followeeIDs[i]) {
+                distinctFollowees.add(followeeID);
+            }
+        }
+
+        Map<Integer, List<Tweet>> userTweets = new HashMap<>();
+        Map<Integer, Integer> offsets = new HashMap<>();
+        for (Integer followeeID : distinctFollowees) {
+            userTweets.put(followeeID, new ArrayList<>());
+            offsets.put(followeeID, 0);
+        }
+        List<Integer> pending = new ArrayList<>(distinctFollowees);
+        while (!pending.isEmpty()) {
+            // round trip 2: the next tweet IDs of every pending followee
+            p = connection.pipelined();
+            List<Response<List<String>>> slices = new ArrayList<>(pending.size());
+            for (Integer followeeID : pending) {
+                int offset = offsets.get(followeeID);
+                slices.add(p.lrange("usertweet:" + followeeID, offset, offset + 9 - userTweets.get(followeeID).size()));
+            }
+            p.sync();
+            event.roundTrips++;
+
+            // round trip 3: one MGET for the union of tweet IDs (a tweet has a single author, so they are distinct)
+            List<String> tweetIDs = new ArrayList<>();
+            for (Response<List<String>> slice : slices) {
+                tweetIDs.addAll(slice.get());
+            }
+            Map<String, Tweet> decoded = new HashMap<>();
+            if (!tweetIDs.isEmpty()) {
+                String[] keys = new String[tweetIDs.size()];
+                for (int k = 0; k < keys.length; k++) {
+                    keys[k] = "tweet:" + tweetIDs.get(k);
+                }
+                List<String> bodies = readTweets(connection, keys);
+                event.roundTrips++;
+                event.tweetIDs += keys.length;
+                long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
+                for (int k = 0; k < keys.length; k++) {
+                    Tweet tweet = TweetCodec.decode(Integer.parseInt(tweetIDs.get(k)), bodies.get(k));
+                    if (tweet != null) decoded.put(tweetIDs.get(k), tweet);
+                }
+                if (event.isEnabled()) event.decodeDuration += System.nanoTime() - decodeStart;
+            }
+
+            // followees whose full slice held deleted tweets may have more tweets to read
+            List<Integer> shortFollowees = new ArrayList<>();
+            for (int k = 0; k < pending.size(); k++) {
+                Integer followeeID = pending.get(k);
+                List<String> slice = slices.get(k).get();
+                List<Tweet> tweets = userTweets.get(followeeID);
+                int wanted = 10 - tweets.size();
+                for (String tweetID : slice) {
+                    Tweet tweet = decoded.get(tweetID);
+                    if (tweet != null) tweets.add(tweet);
+                }
+                offsets.put(followeeID, offsets.get(followeeID) + slice.size());
+                if (slice.size() == wanted && tweets.size() < 10) shortFollowees.add(followeeID);
+            }
+            pending = shortFollowees;
+        }
+
+        // merge the followees' tweets of every user and keep the 10 most recent
+        Map<Integer, List<Tweet>> result = new HashMap<>();
+        TweetComparator comparator = new TweetComparator();
+        for (int i = 0; i < userIDs.length; i++) {
+            List<Tweet> tweets = new ArrayList<>();
+            for (int followeeID : followeeIDs[i]) {
+                tweets.addAll(userTweets.get(followeeID));
+            }
+            tweets.sort(comparator);
+            result.put(userIDs[i], new ArrayList<>(tweets.subList(0, Math.min(10, tweets.size()))));
+        }
+        event.commit();
+        return result;
+    }
+
+    /**
+     * Retrieves a page of the tweets carrying a hashtag, most recent first. The tweet IDs are read from the hashtag's sorted
+     * set with a single ZRANGE BYSCORE REV below the cursor, and the tweets with a single MGET. Deleted tweets are skipped,
+     * and the next tweet IDs of the set are read in their place.
+     * @param tag hashtag, with or without the '#'
+     * @param cursor only tweets with a lower tweet ID are returned; 0 starts from the most recent tweet
+     * @param limit maximum number of tweets
+     * @return list of Tweet objects, most recent first
+     */
+    @Override
+    public List<Tweet> getHashtagTimeline(String tag, int cursor, int limit) {
+        return read(connection -> getHashtagTimeline(connection, tag, cursor, limit));
+    }
 
-        // convert set of integer strings to list of integers
-        List<Integer> usersID = new ArrayList<>();
-        for (String user : users) {
-            usersID.add(Integer.parseInt(user));
+    private List<Tweet> getHashtagTimeline(Jedis connection, String tag, int cursor, int limit) {
+        TimelineReadEvent event = TimelineReadEvent.begin("redis-optional", 1);
+        event.hashtag = HashtagIndex.normalize(tag);
+        List<Tweet> tweets = new ArrayList<>();
+        while (tweets.size() < limit) {
+            int wanted = limit - tweets.size();
+            List<String> tweetIDs = HashtagIndex.range(connection, event.hashtag, cursor, wanted);
+            event.roundTrips++;
+            if (tweetIDs.isEmpty()) break;
+            event.tweetIDs += tweetIDs.size();
+            String[] keys = new String[tweetIDs.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = "tweet:" + tweetIDs.get(i);
+            }
+            List<String> bodies = readTweets(connection, keys);
+            event.roundTrips++;
+            long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
+            for (int i = 0; i < keys.length; i++) {
+                Tweet tweet = TweetCodec.decode(Integer.parseInt(tweetIDs.get(i)), bodies.get(i));
+                if (tweet != null) tweets.add(tweet);
+            }
+            if (event.isEnabled()) event.decodeDuration += System.nanoTime() - decodeStart;
+            cursor = Integer.parseInt(tweetIDs.get(tweetIDs.size() - 1));
+            if (tweetIDs.size() < wanted) break;
         }
-        return usersID;
+        event.commit();
+        return tweets;
     }
 
     /**
-     * Get a list of user IDs that follow the given user ID. This method simply retrieves the list of user IDs from the
-     * "followers" key-values (constructed when populating the "following/follower" relationships in the Redis setup step).
+     * Reads a serialized tweet, decompressing it if tweet compression is enabled.
+     * @param key tweet key
+     * @return serialized tweet, or null if the key does not exist
+     */
+    private String readTweet(Jedis connection, String key) {
+        if (bucketedTweets) return TweetBuckets.read(connection, key, tweetCompressor);
+        if (tweetCompressor == null) return connection.get(key);
+        return tweetCompressor.decompress(connection.get(TweetCompressor.bytes(key)));
+    }
+
+    /**
+     * Reads several serialized tweets with a single MGET, decompressing them if tweet compression is enabled.
+     * @param keys tweet keys
+     * @return serialized tweets (null where the key does not exist)
+     */
+    private List<String> readTweets(Jedis connection, String[] keys) {
+        if (bucketedTweets) return TweetBuckets.read(connection, keys, tweetCompressor);
+        if (tweetCompressor == null) return connection.mget(keys);
+        byte[][] rawKeys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            rawKeys[i] = TweetCompressor.bytes(keys[i]);
+        }
+        return tweetCompressor.decompress(connection.mget(rawKeys));
+    }
+
+    /**
+     * Runs a read on a replica or on the primary connection (see RedisReplicaSet.Router).
+     * @param operation read, given the connection to run on
+     * @return result of the read
+     */
+    private <T> T read(Function<Jedis, T> operation) {
+        return router.read(operation, jedis);
+    }
+
+
+    /**
+     * Get an array of all unique user IDs that follow at least one other user. This method simply retrieves the set of
+     * users (constructed when populating the "following/follower" relationships in the Redis setup step).
+     * @return array of user IDs
+     */
+    @Override
+    public int[] getUserIDs() {
+        return read(connection -> IntList.parse(connection.smembers("users")));
+    }
+
+    /**
+     * Get an array of user IDs that follow the given user ID. This method simply retrieves the list of user IDs from the
+     * "followers" key-values (constructed when populating the "following/follower" relationships in the Redis setup step),
+     * or decodes the packed segments directly into the array in packed mode.
      * @param userID given user ID
-     * @return list of user IDs that follow the given user ID
+     * @return array of user IDs that follow the given user ID
      */
     @Override
-    public List<Integer> getFollowers(Integer userID) {
-        // retrieve followers of given user
-        List<String> followers = jedis.lrange("followers:" + userID, 0, -1);
+    public int[] getFollowerIDs(int userID) {
+        return read(connection -> getFollowerIDs(connection, userID));
+    }
 
-        // convert set of integer strings to list of integers
-        List<Integer> followersID = new ArrayList<>();
-        for (String follower : followers) {
-            followersID.add(Integer.parseInt(follower));
+    private int[] getFollowerIDs(Jedis connection, int userID) {
+        if (packedAdjacency) {
+            return PackedAdjacency.read(connection, PackedAdjacency.FOLLOWERS_PREFIX + userID);
         }
-        return followersID;
+        return IntList.parse(connection.lrange("followers:" + userID, 0, -1));
     }
 
     /**
-     * Get a list of user IDs that the given user follows. This method simply retrieves the list of user IDs from the
-     * "following" key-values (constructed when populating the "following/follower" relationships in the Redis setup step).
+     * Get an array of user IDs that the given user follows. This method simply retrieves the list of user IDs from the
+     * "following" key-values (constructed when populating the "following/follower" relationships in the Redis setup step),
+     * or decodes the packed segments directly into the array in packed mode.
      * @param userID given user ID
-     * @return list of user IDs that the given user ID follows
+     * @return array of user IDs that the given user ID follows
      */
     @Override
-    public List<Integer> getFollowees(Integer userID) {
-        // retrieve followees of given user
-        List<String> followees = jedis.lrange("following:" + userID, 0, -1);
+    public int[] getFolloweeIDs(int userID) {
+        return read(connection -> getFolloweeIDs(connection, userID));
+    }
+
+    private int[] getFolloweeIDs(Jedis connection, int userID) {
+        if (packedAdjacency) {
+            return PackedAdjacency.read(connection, PackedAdjacency.FOLLOWING_PREFIX + userID);
+        }
+        return IntList.parse(connection.lrange("following:" + userID, 0, -1));
+    }
+
+    /**
+     * Makes a user follow another user. Both directions of the relationship are updated in one MULTI/EXEC transaction
+     * (removing any existing entry before pushing keeps the lists free of duplicates), or with PackedAdjacency.updateEdge()
+     * when packed adjacency is used. Timelines are generated on the fly, so only the follower's materialized timeline
+     * is dropped (the followee's older tweets are behind its watermark).
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to follow
+     */
+    @Override
+    public void follow(int userID, int followeeID) {
+        updateFollows(userID, followeeID, true);
+    }
+
+    /**
+     * Makes a user stop following another user. Both directions of the relationship are removed in one MULTI/EXEC
+     * transaction (or with PackedAdjacency.updateEdge()), and the follower's materialized timeline is dropped.
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to stop following
+     */
+    @Override
+    public void unfollow(int userID, int followeeID) {
+        updateFollows(userID, followeeID, false);
+    }
+
+    private void updateFollows(int userID, int followeeID, boolean follow) {
+        try {
+            if (packedAdjacency) PackedAdjacency.updateEdge(jedis, userID, followeeID, follow);
+            Transaction transaction = jedis.multi();
+            if (!packedAdjacency) {
+                transaction.lrem("following:" + userID, 0, Integer.toString(followeeID));
+                transaction.lrem("followers:" + followeeID, 0, Integer.toString(userID));
+                if (follow) {
+                    transaction.lpush("following:" + userID, Integer.toString(followeeID));
+                    transaction.lpush("followers:" + followeeID, Integer.toString(userID));
+                }
+            }
+            if (follow) transaction.sadd("users", Integer.toString(userID));
+            transaction.del("mtimeline:" + userID, "mwatermark:" + userID);
+            transaction.exec();
+        } finally {
+            router.markWrite();
+        }
+    }
 
-        // convert set of integer strings to list of integers
-        List<Integer> followeesID = new ArrayList<>();
-        for (String followee : followees) {
-            followeesID.add(Integer.parseInt(followee));
+    /**
+     * Deletes a tweet lazily: a tombstone (tweet ID to author ID) is added to the "tombstones" hash and the tweet key-value
+     * is deleted, in one MULTI/EXEC transaction. The tweet ID is left in the author's list of tweets, where reads skip it
+     * because its key-value is gone, until TombstoneSweeper purges it.
+     * @param tweetID tweet ID of the tweet
+     */
+    @Override
+    public void deleteTweet(int tweetID) {
+        try {
+            String tweet = readTweet(jedis, "tweet:" + tweetID);
+            if (tweet == null) return;
+            Transaction transaction = jedis.multi();
+            transaction.hset(TombstoneSweeper.TOMBSTONES_KEY, Integer.toString(tweetID), tweet.substring(0, tweet.indexOf('|')));
+            if (bucketedTweets) TweetBuckets.delete(transaction, tweetID);
+            else transaction.del("tweet:" + tweetID);
+            transaction.exec();
+        } finally {
+            router.markWrite();
         }
-        return followeesID;
     }
 
     /**
-     * Initializes Jedis instance (method parameters are irrelevant in regards to the Redis database connection).
-     * @param url database connector URL N/A
+     * Purges the tweet IDs of up to limit tombstones from the authors' lists of tweets, then removes the tombstones, in one
+     * pipeline. Materialized timelines are not swept: they drop deleted tweets when they are read, and expire soon anyway.
+     * @param limit maximum number of tombstones purged
+     * @return number of tombstones purged
+     */
+    @Override
+    public int sweepTombstones(int limit) {
+        ScanResult<Map.Entry<String, String>> scan = jedis.hscan(TombstoneSweeper.TOMBSTONES_KEY, tombstoneCursor,
+                new ScanParams().count(limit));
+        tombstoneCursor = scan.getCursor();
+        Pipeline p = jedis.pipelined();
+        int purged = 0;
+        for (Map.Entry<String, String> tombstone : scan.getResult()) {
+            if (purged == limit) break;
+            p.lrem("usertweet:" + TombstoneSweeper.authorID(tombstone.getValue()), 0, tombstone.getKey());
+            p.hdel(TombstoneSweeper.TOMBSTONES_KEY, tombstone.getKey());
+            purged++;
+        }
+        p.sync();
+        return purged;
+    }
+
+    @Override
+    public long getOpsPerSecond() {
+        return TombstoneSweeper.opsPerSecond(jedis);
+    }
+
+    @Override
+    public long getTombstoneCount() {
+        return jedis.hlen(TombstoneSweeper.TOMBSTONES_KEY);
+    }
+
+    /**
+     * Connects to the Redis server (the user and password parameters are irrelevant in regards to the Redis database
+     * connection).
+     * @param url "host:port" of the Redis server (the primary, if reads are spread over replicas), or null for localhost:6379
      * @param user database username N/A
      * @param password database password N/A
      */
     @Override
     public void authenticate(String url, String user, String password) {
-        this.jedis = new Jedis();
+        this.jedis = new Jedis(RedisReplicaSet.parseAddress(url));
     }
 
     /**
@@ -183,6 +734,67 @@ public class TwitterDatabaseRedisOptional implements TwitterDatabaseAPI {
      */
     @Override
     public void closeConnection() {
-        jedis.quit();
+        jedis.close();
+    }
+
+    /**
+     * Sets whether follower/following lists are read from the packed binary segments written by
+     * "TwitterRedisSetup &lt;follows.csv&gt; packed" instead of the lists of decimal strings.
+     * @param packedAdjacency true to use packed adjacency
+     */
+    public void setPackedAdjacency(boolean packedAdjacency) {
+        this.packedAdjacency = packedAdjacency;
+    }
+
+    /**
+     * Sets whether tweet bodies are compressed with the dictionaries stored in the database (see CompressionBenchmark for
+     * training and storing a dictionary). Must be called after authenticate(); readers must enable compression to read a
+     * database that contains compressed tweets.
+     * @param tweetCompression true to compress new tweets and decompress stored ones
+     */
+    public void setTweetCompression(boolean tweetCompression) {
+        this.tweetCompressor = tweetCompression ? TweetCompressor.load(jedis) : null;
+    }
+
+    /**
+     * Sets whether the tweet bodies are stored in the bucketed layout of TweetBuckets, as fields of "tweets:&lt;bucket&gt;"
+     * hashes, instead of one "tweet:&lt;id&gt;" key-value per tweet. The layout is transparent to the callers of this
+     * class, but every client of a database must use the same layout (see TweetBucketMigrator). Enabling the layout raises
+     * the server's listpack value limit with TweetBuckets.configure(); that setting is not persisted, so it is applied
+     * again by every client that enables the layout (or can be set in redis.conf). Must be called after authenticate().
+     * @param bucketedTweets true to use the bucketed layout
+     */
+    public void setBucketedTweets(boolean bucketedTweets) {
+        if (bucketedTweets) TweetBuckets.configure(jedis);
+        this.bucketedTweets = bucketedTweets;
+    }
+
+    /**
+     * Sets the replicas the reads are spread over (see RedisReplicaSet.Router.setReplicas()).
+     * @param replicas replica set, or null to read from the primary
+     */
+    public void setReplicas(RedisReplicaSet replicas) {
+        router.setReplicas(replicas);
+    }
+
+    /**
+     * Sets how long the reads of this instance go to the primary after each of its writes (postTweet(), postTweets(),
+     * follow(), unfollow() and deleteTweet()); see RedisReplicaSet.Router.setReadYourWrites().
+     * @param windowMillis milliseconds after a write during which reads go to the primary, or 0 to always read from the
+     *                     replicas (the default)
+     */
+    public void setReadYourWrites(long windowMillis) {
+        router.setReadYourWrites(windowMillis);
+    }
+
+    /**
+     * Enables materialized timelines (see getMaterializedTimeline()), which are kept for the given time after they are built
+     * from scratch. Readers that come back within this time only read the followees that tweeted in between, and may miss
+     * a post for up to this time. Materialized timelines are written on every read, so they are read from the primary
+     * even when replicas are set.
+     * @param materializedTimelineTTL time to live in seconds (0, the default, recomputes every timeline from scratch)
+     */
+    public void setMaterializedTimelineTTL(int materializedTimelineTTL) {
+        this.materializedTimelineTTL = materializedTimelineTTL;
     }
 }
@@ -0,0 +1,723 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+
+/**
+ * This class represents an API that connects to several Redis servers (shards) and provides functionality to insert
+ * Tweet objects or retrieve a given user's home timeline. It uses the same pre-computed timeline strategy as
+ * TwitterDatabaseRedis, but the "tweet", "timeline", "usertweet", "following" and "followers" key-values are spread over the shards
+ * with a consistent hash ring. Writes and multi-key reads are grouped by shard, pipelined, and sent to every shard in parallel.
+ */
+// JedisPool is deprecated in Jedis 8 in favour of RedisClient, which cannot lend out the Jedis connections that the
+// per-shard pipelines and the code shared with TwitterDatabaseRedis take
+@SuppressWarnings("deprecation")
+public class TwitterDatabaseRedisSharded implements TwitterDatabaseAPI, TombstoneSweeper.Sweepable {
+
+    public static final String DEFAULT_NODES = "localhost:6379";
+
+    // both are replaced, never modified, once published: addShard() publishes the pools (a superset of the nodes of either
+    // ring) before the ring, so that any thread that sees a ring also sees a pool for each of its nodes
+    private volatile ConsistentHashRing ring;
+    private volatile Map<String, JedisPool> pools;
+    private ExecutorService executor;
+    // HSCAN cursor of the tombstones hash, kept across sweepTombstones() calls
+    private String tombstoneCursor = ScanParams.SCAN_POINTER_START;
+
+
+    /**
+     * Inserts a single Tweet object into the sharded Redis database. The posting process adds the tweet ID to the
+     * timelines of the user's followers (pre-computes timelines); the timeline writes are grouped by shard and every
+     * shard receives a single pipeline.
+     *
+     * @param t Tweet object to be inserted
+     */
+    @Override
+    public void postTweet(Tweet t) {
+        List<Tweet> tweets = new ArrayList<>();
+        tweets.add(t);
+        postTweets(tweets);
+    }
+
+    /**
+     * Inserts multiple Tweet objects (in a list) into the sharded Redis database. A block of tweet IDs is reserved with a
+     * single INCRBY, the tweet IDs are added to the authors' lists of tweets, the followers of every author are read with
+     * one pipeline per shard, and then the tweet, timeline and hashtag index writes of the whole list are grouped by shard
+     * and pipelined to each shard in parallel. The lists of tweets are written before the followers are read so that follow() can find
+     * tweets that a concurrent fan-out misses.
+     * @param tweets list of Tweet objects
+     */
+    @Override
+    public void postTweets(List<Tweet> tweets) {
+        if (tweets.isEmpty()) return;
+        TweetPostEvent event = TweetPostEvent.begin("redis-sharded", tweets.size());
+        if (tweets.size() == 1) event.userID = tweets.get(0).getUserID();
+
+        // reserve a block of tweet IDs; the last reserved ID is the value returned by INCRBY
+        long lastTweetID;
+        try (Jedis jedis = shard("currTweetID")) {
+            lastTweetID = jedis.incrBy("currTweetID", tweets.size());
+        }
+        long firstTweetID = lastTweetID - tweets.size() + 1;
+
+        // add the tweet IDs to the authors' lists of tweets (grouped by shard)
+        Map<String, Map<String, List<String>>> userTweets = new HashMap<>();
+        for (int i = 0; i < tweets.size(); i++) {
+            String userTweetKey = "usertweet:" + tweets.get(i).getUserID();
+            userTweets.computeIfAbsent(ring.getNode(userTweetKey), node -> new LinkedHashMap<>())
+                    .computeIfAbsent(userTweetKey, key -> new ArrayList<>())
+                    .add(Long.toString(firstTweetID + i));
+        }
+        onEachShard(userTweets, (node, lists) -> {
+            try (Jedis jedis = pools.get(node).getResource()) {
+                Pipeline p = jedis.pipelined();
+                for (Map.Entry<String, List<String>> list : lists.entrySet()) {
+                    p.lpush(list.getKey(), list.getValue().toArray(new String[0]));
+                }
+                p.sync();
+            }
+            return null;
+        });
+
+        // read the followers of every author (grouped by the shard of each "followers" key)
+        Map<Integer, int[]> followers = readFollowers(tweets);
+
+        // group the tweet and timeline writes by shard
+        long fanoutStart = event.isEnabled() ? System.nanoTime() : 0;
+        Date tweetTimestamp = new Date(System.currentTimeMillis());
+        Map<String, ShardWrites> writes = new HashMap<>();
+        for (int i = 0; i < tweets.size(); i++) {
+            Tweet t = tweets.get(i);
+            String tweetID = Long.toString(firstTweetID + i);
+            String tweetKey = "tweet:" + tweetID;
+            writes.computeIfAbsent(ring.getNode(tweetKey), node -> new ShardWrites())
+                    .bodies.put(tweetKey, TweetCodec.encode(t, tweetTimestamp));
+
+            event.followerCount += followers.get(t.getUserID()).length;
+            for (int followerID : followers.get(t.getUserID())) {
+                String timelineKey = "timeline:" + followerID;
+                writes.computeIfAbsent(ring.getNode(timelineKey), node -> new ShardWrites())
+                        .timelines.computeIfAbsent(timelineKey, key -> new ArrayList<>())
+                        .add(tweetID);
+            }
+        }
+        for (Map.Entry<String, Map<String, Double>> hashtag : HashtagIndex.entries(tweets, firstTweetID).entrySet()) {
+            writes.computeIfAbsent(ring.getNode(hashtag.getKey()), node -> new ShardWrites())
+                    .hashtags.put(hashtag.getKey(), hashtag.getValue());
+        }
+
+        // one pipeline per shard, all shards in parallel
+        onEachShard(writes, (node, shardWrites) -> {
+            try (Jedis jedis = pools.get(node).getResource()) {
+                Pipeline p = jedis.pipelined();
+                for (Map.Entry<String, String> body : shardWrites.bodies.entrySet()) {
+                    p.set(body.getKey(), body.getValue());
+                }
+                for (Map.Entry<String, List<String>> timeline : shardWrites.timelines.entrySet()) {
+                    // tweet IDs were added in posting order, so pushing them in order leaves the newest at the head
+                    p.lpush(timeline.getKey(), timeline.getValue().toArray(new String[0]));
+                }
+                HashtagIndex.index(p, shardWrites.hashtags);
+                p.sync();
+            }
+            return null;
+        });
+        if (event.isEnabled()) event.fanoutDuration = System.nanoTime() - fanoutStart;
+        event.commit();
+    }
+
+    /**
+     * Retrieves the home timeline of a given user. The user's home timeline consists of the 10 most recent tweets
+     * from users that the given user follows.
+     * The first 10 tweet IDs are read from the pre-computed timeline of the user; the tweet keys are then grouped by shard
+     * and fetched with one MGET per shard, with all shards queried concurrently. Deleted tweets (whose key-values are gone)
+     * are skipped, and the next tweet IDs of the timeline are read in their place.
+     * @param userID user ID of the user
+     * @return list of Tweet objects representing the user home timeline
+     */
+    @Override
+    public List<Tweet> getTimeline(Integer userID) {
+        TimelineReadEvent event = TimelineReadEvent.begin("redis-sharded", 1);
+        event.userID = userID;
+        List<Tweet> tweets = new ArrayList<>();
+        int start = 0;
+        while (tweets.size() < 10) {
+            int wanted = 10 - tweets.size();
+            List<String> timeline;
+            try (Jedis jedis = shard("timeline:" + userID)) {
+                timeline = jedis.lrange("timeline:" + userID, start, start + wanted - 1);
+            }
+            event.roundTrips++;
+            event.tweetIDs += timeline.size();
+
+            // reassemble the timeline in its original order
+            Map<String, Tweet> decoded = fetchTweets(timeline, event);
+            for (String tweetID : timeline) {
+                Tweet tweet = decoded.get(tweetID);
+                if (tweet != null) tweets.add(tweet);
+            }
+            start += timeline.size();
+            if (timeline.size() < wanted) break;
+        }
+        event.commit();
+        return tweets;
+    }
+
+    /**
+     * Retrieves the home timelines of several users at once. The timeline keys are grouped by shard and read with one
+     * pipeline per shard; the union of tweet IDs is then grouped by shard and fetched with one MGET per shard. All shards
+     * are queried concurrently, and each distinct tweet is decoded once. Timelines that came up short because of deleted
+     * tweets are topped up with their next tweet IDs in further rounds.
+     * @param userIDs user IDs of the users
+     * @return map of user ID to the list of Tweet objects representing that user's home timeline
+     */
+    @Override
+    public Map<Integer, List<Tweet>> getTimelines(int[] userIDs) {
+        TimelineReadEvent event = TimelineReadEvent.begin("redis-sharded", userIDs.length);
+        Map<Integer, List<Tweet>> result = new HashMap<>();
+        Map<Integer, Integer> offsets = new HashMap<>();
+        for (int userID : userIDs) {
+            result.put(userID, new ArrayList<>());
+            offsets.put(userID, 0);
+        }
+        Map<String, Tweet> decoded = new HashMap<>();
+        Set<String> seen = new HashSet<>();
+        Set<Integer> pending = new HashSet<>(result.keySet());
+        while (!pending.isEmpty()) {
+            Map<String, List<Integer>> usersByShard = new HashMap<>();
+            for (Integer userID : pending) {
+                usersByShard.computeIfAbsent(ring.getNode("timeline:" + userID), node -> new ArrayList<>()).add(userID);
+            }
+
+            // one pipeline per shard for the next slice of the timeline lists
+            Map<String, Map<Integer, List<String>>> timelinesByShard = onEachShard(usersByShard, (node, users) -> {
+                Map<Integer, Response<List<String>>> responses = new HashMap<>();
+                try (Jedis jedis = pools.get(node).getResource()) {
+                    Pipeline p = jedis.pipelined();
+                    for (Integer userID : users) {
+                        int offset = offsets.get(userID);
+                        responses.put(userID, p.lrange("timeline:" + userID, offset, offset + 9 - result.get(userID).size()));
+                    }
+                    p.sync();
+                }
+                Map<Integer, List<String>> timelines = new HashMap<>();
+                for (Map.Entry<Integer, Response<List<String>>> response : responses.entrySet()) {
+                    timelines.put(response.getKey(), response.getValue().get());
+                }
+                return timelines;
+            });
+            event.roundTrips += usersByShard.size();
+            Map<Integer, List<String>> timelines = new HashMap<>();
+            for (Map<Integer, List<String>> shardTimelines : timelinesByShard.values()) {
+                timelines.putAll(shardTimelines);
+            }
+
+            // one MGET per shard for the deduplicated union of tweet IDs not fetched yet
+            List<String> tweetIDs = new ArrayList<>();
+            for (List<String> timeline : timelines.values()) {
+                for (String tweetID : timeline) {
+                    if (seen.add(tweetID)) tweetIDs.add(tweetID);
+                }
+            }
+            event.tweetIDs += tweetIDs.size();
+            decoded.putAll(fetchTweets(tweetIDs, event));
+
+            Set<Integer> shortTimelines = new HashSet<>();
+            for (Map.Entry<Integer, List<String>> timeline : timelines.entrySet()) {
+                List<Tweet> tweets = result.get(timeline.getKey());
+                int wanted = 10 - tweets.size();
+                for (String tweetID : timeline.getValue()) {
+                    Tweet tweet = decoded.get(tweetID);
+                    if (tweet != null) tweets.add(tweet);
+                }
+                offsets.put(timeline.getKey(), offsets.get(timeline.getKey()) + timeline.getValue().size());
+                if (timeline.getValue().size() == wanted && tweets.size() < 10) shortTimelines.add(timeline.getKey());
+            }
+            pending = shortTimelines;
+        }
+        event.commit();
+        return result;
+    }
+
+    /**
+     * Retrieves a page of the tweets carrying a hashtag, most recent first. The tweet IDs are read from the hashtag's sorted
+     * set (on the shard of its key) with a single ZRANGE BYSCORE REV below the cursor, and the tweets with one MGET per shard.
+     * Deleted tweets are skipped, and the next tweet IDs of the set are read in their place.
+     * @param tag hashtag, with or without the '#'
+     * @param cursor only tweets with a lower tweet ID are returned; 0 starts from the most recent tweet
+     * @param limit maximum number of tweets
+     * @return list of Tweet objects, most recent first
+     */
+    @Override
+    public List<Tweet> getHashtagTimeline(String tag, int cursor, int limit) {
+        TimelineReadEvent event = TimelineReadEvent.begin("redis-sharded", 1);
+        event.hashtag = HashtagIndex.normalize(tag);
+        List<Tweet> tweets = new ArrayList<>();
+        while (tweets.size() < limit) {
+            int wanted = limit - tweets.size();
+            List<String> tweetIDs;
+            try (Jedis jedis = shard(HashtagIndex.KEY_PREFIX + event.hashtag)) {
+                tweetIDs = HashtagIndex.range(jedis, event.hashtag, cursor, wanted);
+            }
+            event.roundTrips++;
+            if (tweetIDs.isEmpty()) break;
+            event.tweetIDs += tweetIDs.size();
+            Map<String, Tweet> decoded = fetchTweets(tweetIDs, event);
+            for (String tweetID : tweetIDs) {
+                Tweet tweet = decoded.get(tweetID);
+                if (tweet != null) tweets.add(tweet);
+            }
+            cursor = Integer.parseInt(tweetIDs.get(tweetIDs.size() - 1));
+            if (tweetIDs.size() < wanted) break;
+        }
+        event.commit();
+        return tweets;
+    }
+
+    /**
+     * Fetches and decodes tweets with one MGET per shard, all shards queried concurrently.
+     * @param tweetIDs distinct tweet IDs
+     * @param event timeline read event the round trips and decode time are added to
+     * @return map of tweet ID to decoded Tweet (deleted tweets are left out)
+     */
+    private Map<String, Tweet> fetchTweets(List<String> tweetIDs, TimelineReadEvent event) {
+        Map<String, List<String>> keysByShard = new HashMap<>();
+        for (String tweetID : tweetIDs) {
+            String tweetKey = "tweet:" + tweetID;
+            keysByShard.computeIfAbsent(ring.getNode(tweetKey), node -> new ArrayList<>()).add(tweetKey);
+        }
+        Map<String, List<String>> bodiesByShard = onEachShard(keysByShard, (node, keys) -> {
+            try (Jedis jedis = pools.get(node).getResource()) {
+                return jedis.mget(keys.toArray(new String[0]));
+            }
+        });
+        event.roundTrips += keysByShard.size();
+
+        long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
+        Map<String, Tweet> decoded = new HashMap<>();
+        for (Map.Entry<String, List<String>> shardKeys : keysByShard.entrySet()) {
+            List<String> bodies = bodiesByShard.get(shardKeys.getKey());
+            for (int i = 0; i < bodies.size(); i++) {
+                String tweetID = shardKeys.getValue().get(i).substring("tweet:".length());
+                Tweet tweet = TweetCodec.decode(Integer.parseInt(tweetID), bodies.get(i));
+                if (tweet != null) decoded.put(tweetID, tweet);
+            }
+        }
+        if (event.isEnabled()) event.decodeDuration += System.nanoTime() - decodeStart;
+        return decoded;
+    }
+
+    /**
+     * Get an array of all unique user IDs that follow at least one other user. The "users" set lives on a single shard.
+     * @return array of user IDs
+     */
+    @Override
+    public int[] getUserIDs() {
+        try (Jedis jedis = shard("users")) {
+            return IntList.parse(jedis.smembers("users"));
+        }
+    }
+
+    /**
+     * Get an array of user IDs that follow the given user ID from the "followers" key-value on its shard.
+     * @param userID given user ID
+     * @return array of user IDs that follow the given user ID
+     */
+    @Override
+    public int[] getFollowerIDs(int userID) {
+        return readIDs("followers:" + userID);
+    }
+
+    /**
+     * Get an array of user IDs that the given user follows from the "following" key-value on its shard.
+     * @param userID given user ID
+     * @return array of user IDs that the given user ID follows
+     */
+    @Override
+    public int[] getFolloweeIDs(int userID) {
+        return readIDs("following:" + userID);
+    }
+
+    /**
+     * Makes a user follow another user. Each direction of the relationship is updated in a MULTI/EXEC transaction on the
+     * shard that owns it (one transaction if both lists are on the same shard); removing any existing entry before pushing
+     * keeps the lists free of duplicates. The followee's recent tweets are then merged into the follower's timeline (see
+     * TimelineRepair.backfill()) instead of rebuilding it.
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to follow
+     */
+    @Override
+    public void follow(int userID, int followeeID) {
+        updateFollows(userID, followeeID, true);
+        try (Jedis jedis = shard("users")) {
+            jedis.sadd("users", Integer.toString(userID));
+        }
+        List<String> recentTweets;
+        try (Jedis jedis = shard("usertweet:" + followeeID)) {
+            recentTweets = TimelineRepair.recentTweets(jedis, followeeID);
+        }
+        try (Jedis jedis = shard("timeline:" + userID)) {
+            TimelineRepair.backfill(jedis, "timeline:" + userID, recentTweets);
+        }
+    }
+
+    /**
+     * Makes a user stop following another user. Each direction of the relationship is removed in a MULTI/EXEC transaction
+     * on the shard that owns it, and the followee's recent tweets are then removed from the follower's timeline (see
+     * TimelineRepair.filter()).
+     * @param userID user ID of the follower
+     * @param followeeID user ID of the user to stop following
+     */
+    @Override
+    public void unfollow(int userID, int followeeID) {
+        updateFollows(userID, followeeID, false);
+        List<String> recentTweets;
+        try (Jedis jedis = shard("usertweet:" + followeeID)) {
+            recentTweets = TimelineRepair.recentTweets(jedis, followeeID);
+        }
+        try (Jedis jedis = shard("timeline:" + userID)) {
+            TimelineRepair.filter(jedis, "timeline:" + userID, recentTweets);
+        }
+    }
+
+    /**
+     * Adds or removes both directions of a follow relationship, with one transaction per owning shard.
+     */
+    private void updateFollows(int userID, int followeeID, boolean follow) {
+        Map<String, Map<String, String>> updatesByShard = new LinkedHashMap<>();
+        updatesByShard.computeIfAbsent(ring.getNode("following:" + userID), node -> new LinkedHashMap<>())
+                .put("following:" + userID, Integer.toString(followeeID));
+        updatesByShard.computeIfAbsent(ring.getNode("followers:" + followeeID), node -> new LinkedHashMap<>())
+                .put("followers:" + followeeID, Integer.toString(userID));
+        for (Map.Entry<String, Map<String, String>> updates : updatesByShard.entrySet()) {
+            try (Jedis jedis = pools.get(updates.getKey()).getResource()) {
+                Transaction t = jedis.multi();
+                for (Map.Entry<String, String> update : updates.getValue().entrySet()) {
+                    t.lrem(update.getKey(), 0, update.getValue());
+                    if (follow) t.lpush(update.getKey(), update.getValue());
+                }
+                t.exec();
+            }
+        }
+    }
+
+    /**
+     * Deletes a tweet lazily: a tombstone (tweet ID to author ID) is added to the "tombstones" hash, then the tweet
+     * key-value is deleted from its shard. The tweet ID is left in the followers' timelines, where reads skip it because
+     * its key-value is gone, until TombstoneSweeper purges it.
+     * @param tweetID tweet ID of the tweet
+     */
+    @Override
+    public void deleteTweet(int tweetID) {
+        String tweetKey = "tweet:" + tweetID;
+        String tweet;
+        try (Jedis jedis = shard(tweetKey)) {
+            tweet = jedis.get(tweetKey);
+        }
+        if (tweet == null) return;
+        // the tombstone is written first, so that no deleted tweet is ever left without one
+        try (Jedis jedis = shard(TombstoneSweeper.TOMBSTONES_KEY)) {
+            jedis.hset(TombstoneSweeper.TOMBSTONES_KEY, Integer.toString(tweetID), tweet.substring(0, tweet.indexOf('|')));
+        }
+        try (Jedis jedis = shard(tweetKey)) {
+            jedis.del(tweetKey);
+        }
+    }
+
+    /**
+     * Purges the tweet IDs of up to limit tombstones from the authors' lists of tweets and from the timelines of their
+     * followers, with the LREMs grouped by shard and pipelined to every shard in parallel, then removes the tombstones.
+     * @param limit maximum number of tombstones purged
+     * @return number of tombstones purged
+     */
+    @Override
+    public int sweepTombstones(int limit) {
+        List<Map.Entry<String, String>> tombstones;
+        try (Jedis jedis = shard(TombstoneSweeper.TOMBSTONES_KEY)) {
+            ScanResult<Map.Entry<String, String>> scan = jedis.hscan(TombstoneSweeper.TOMBSTONES_KEY, tombstoneCursor,
+                    new ScanParams().count(limit));
+            tombstoneCursor = scan.getCursor();
+            tombstones = scan.getResult();
+        }
+        if (tombstones.size() > limit) tombstones = tombstones.subList(0, limit);
+
+        // the authors' lists of tweets are purged first, so that follow() stops copying the deleted tweets
+        Map<String, Map<String, List<String>>> removals = new HashMap<>();
+        for (Map.Entry<String, String> tombstone : tombstones) {
+            String authorID = TombstoneSweeper.authorID(tombstone.getValue());
+            String userTweetKey = "usertweet:" + authorID;
+            try (Jedis jedis = shard(userTweetKey)) {
+                jedis.lrem(userTweetKey, 0, tombstone.getKey());
+            }
+            for (int followerID : readIDs("followers:" + authorID)) {
+                String timelineKey = "timeline:" + followerID;
+                removals.computeIfAbsent(ring.getNode(timelineKey), node -> new HashMap<>())
+                        .computeIfAbsent(timelineKey, key -> new ArrayList<>())
+                        .add(tombstone.getKey());
+            }
+        }
+        onEachShard(removals, (node, timelines) -> {
+            try (Jedis jedis = pools.get(node).getResource()) {
+                Pipeline p = jedis.pipelined();
+                for (Map.Entry<String, List<String>> timeline : timelines.entrySet()) {
+                    for (String tweetID : timeline.getValue()) {
+                        p.lrem(timeline.getKey(), 0, tweetID);
+                    }
+                }
+                p.sync();
+            }
+            return null;
+        });
+        if (!tombstones.isEmpty()) {
+            String[] tweetIDs = new String[tombstones.size()];
+            for (int i = 0; i < tweetIDs.length; i++) {
+                tweetIDs[i] = tombstones.get(i).getKey();
+            }
+            try (Jedis jedis = shard(TombstoneSweeper.TOMBSTONES_KEY)) {
+                jedis.hdel(TombstoneSweeper.TOMBSTONES_KEY, tweetIDs);
+            }
+        }
+        return tombstones.size();
+    }
+
+    /**
+     * Gets the load of the busiest shard.
+     * @return operations per second served by the busiest shard
+     */
+    @Override
+    public long getOpsPerSecond() {
+        long busiest = 0;
+        for (JedisPool pool : pools.values()) {
+            try (Jedis jedis = pool.getResource()) {
+                busiest = Math.max(busiest, TombstoneSweeper.opsPerSecond(jedis));
+            }
+        }
+        return busiest;
+    }
+
+    @Override
+    public long getTombstoneCount() {
+        try (Jedis jedis = shard(TombstoneSweeper.TOMBSTONES_KEY)) {
+            return jedis.hlen(TombstoneSweeper.TOMBSTONES_KEY);
+        }
+    }
+
+    /**
+     * Connects to the Redis shards. The url is a comma-separated list of "host:port" Redis servers
+     * (e.g. "localhost:6379,localhost:6380,localhost:6381"); a null url connects to a single local Redis server.
+     * @param url comma-separated list of Redis servers
+     * @param user database username N/A
+     * @param password database password N/A
+     */
+    @Override
+    public void authenticate(String url, String user, String password) {
+        ConsistentHashRing newRing = new ConsistentHashRing();
+        Map<String, JedisPool> newPools = new HashMap<>();
+        for (String node : parseNodes(url == null ? DEFAULT_NODES : url)) {
+            newRing.addNode(node);
+            newPools.put(node, createPool(node));
+        }
+        this.pools = Collections.unmodifiableMap(newPools);
+        this.ring = newRing;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "redis-shard-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Closes the connections to every shard.
+     */
+    @Override
+    public void closeConnection() {
+        executor.shutdown();
+        for (JedisPool pool : pools.values()) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Adds a new shard and rebalances the database. Only the keys whose owner changes on the new hash ring (about 1/N of
+     * all keys for N shards) are migrated to the new shard; every other key stays where it is.
+     * Note: posts or reads running concurrently with a rebalance may miss keys that are in flight. The new ring and pools
+     * are published as new objects, so concurrent operations always see a consistent ring and a pool for each of its nodes.
+     * @param node "host:port" of the new Redis server
+     * @return number of keys moved to the new shard
+     */
+    public synchronized long addShard(String node) {
+        if (pools.containsKey(node)) return 0;
+        ConsistentHashRing ring = this.ring;
+        ConsistentHashRing newRing = ring.copy();
+        newRing.addNode(node);
+        Map<String, JedisPool> newPools = new HashMap<>(pools);
+        newPools.put(node, createPool(node));
+        this.pools = Collections.unmodifiableMap(newPools);
+
+        String[] hostPort = node.split(":");
+        long moved = 0;
+        for (String oldNode : ring.getNodes()) {
+            try (Jedis jedis = pools.get(oldNode).getResource()) {
+                String cursor = ScanParams.SCAN_POINTER_START;
+                ScanParams params = new ScanParams().count(1000);
+                do {
+                    ScanResult<String> scan = jedis.scan(cursor, params);
+                    for (String key : scan.getResult()) {
+                        if (newRing.getNode(key).equals(node)) {
+                            jedis.migrate(hostPort[0], Integer.parseInt(hostPort[1]), key, 0, 5000);
+                            moved++;
+                        }
+                    }
+                    cursor = scan.getCursor();
+                } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+            }
+        }
+        this.ring = newRing;
+        return moved;
+    }
+
+    /**
+     * Parses a comma-separated list of "host:port" Redis servers.
+     * @param nodes comma-separated list of Redis servers
+     * @return list of "host:port" strings
+     */
+    public static List<String> parseNodes(String nodes) {
+        List<String> parsed = new ArrayList<>();
+        for (String node : nodes.split(",")) {
+            node = node.trim();
+            if (node.isEmpty()) continue;
+            parsed.add(node.contains(":") ? node : node + ":6379");
+        }
+        return parsed;
+    }
+
+    /**
+     * Builds the hash ring for the given Redis servers. Every client of the same servers builds an identical ring.
+     * @param nodes list of "host:port" strings
+     * @return hash ring
+     */
+    public static ConsistentHashRing buildRing(List<String> nodes) {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        for (String node : nodes) {
+            ring.addNode(node);
+        }
+        return ring;
+    }
+
+    private static JedisPool createPool(String node) {
+        String[] hostPort = node.split(":");
+        return new JedisPool(new JedisPoolConfig(), hostPort[0], Integer.parseInt(hostPort[1]));
+    }
+
+    /**
+     * Borrows a connection to the shard that owns the given key.
+     * @param key key
+     * @return connection to the owning shard (must be closed to return it to the pool)
+     */
+    private Jedis shard(String key) {
+        return pools.get(ring.getNode(key)).getResource();
+    }
+
+    /**
+     * Reads the "followers" lists of the authors of the given tweets, with one pipeline per shard.
+     * @param tweets tweets being posted
+     * @return map of author ID to follower IDs
+     */
+    private Map<Integer, int[]> readFollowers(List<Tweet> tweets) {
+        Map<String, List<Integer>> authorsByShard = new HashMap<>();
+        for (Tweet t : tweets) {
+            List<Integer> authors = authorsByShard.computeIfAbsent(ring.getNode("followers:" + t.getUserID()), node -> new ArrayList<>());
+            if (!authors.contains(t.getUserID())) authors.add(t.getUserID());
+        }
+
+        Map<String, Map<Integer, int[]>> followersByShard = onEachShard(authorsByShard, (node, authors) -> {
+            Map<Integer, int[]> followers = new HashMap<>();
+            try (Jedis jedis = pools.get(node).getResource()) {
+                Pipeline p = jedis.pipelined();
+                List<Response<List<String>>> responses = new ArrayList<>();
+                for (Integer author : authors) {
+                    responses.add(p.lrange("followers:" + author, 0, -1));
+                }
+                p.sync();
+                for (int i = 0; i < authors.size(); i++) {
+                    followers.put(authors.get(i), IntList.parse(responses.get(i).get()));
+                }
+            }
+            return followers;
+        });
+
+        Map<Integer, int[]> followers = new HashMap<>();
+        for (Map<Integer, int[]> shardFollowers : followersByShard.values()) {
+            followers.putAll(shardFollowers);
+        }
+        return followers;
+    }
+
+    private int[] readIDs(String key) {
+        try (Jedis jedis = shard(key)) {
+            return IntList.parse(jedis.lrange(key, 0, -1));
+        }
+    }
+
+    /**
+     * Runs a task for every shard in the given map concurrently and waits for all of them to finish.
+     * @param work map of shard to the work for that shard
+     * @param task task to run for each shard
+     * @return map of shard to the task result
+     */
+    private <T, R> Map<String, R> onEachShard(Map<String, T> work, BiFunction<String, T, R> task) {
+        Map<String, R> results = new HashMap<>();
+        if (work.size() == 1) {
+            // no need to hand a single shard to another thread
+            Map.Entry<String, T> only = work.entrySet().iterator().next();
+            results.put(only.getKey(), task.apply(only.getKey(), only.getValue()));
+            return results;
+        }
+
+        Map<String, Future<R>> futures = new HashMap<>();
+        for (Map.Entry<String, T> entry : work.entrySet()) {
+            futures.put(entry.getKey(), executor.submit(() -> task.apply(entry.getKey(), entry.getValue())));
+        }
+        for (Map.Entry<String, Future<R>> future : futures.entrySet()) {
+            try {
+                results.put(future.getKey(), future.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for shard " + future.getKey(), e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("shard " + future.getKey() + " failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * The tweet bodies and timeline pushes destined for one shard.
+     */
+    private static class ShardWrites {
+        private final Map<String, String> bodies = new LinkedHashMap<>();
+        private final Map<String, List<String>> timelines = new HashMap<>();
+        private final Map<String, Map<String, Double>> hashtags = new HashMap<>();
+    }
+}
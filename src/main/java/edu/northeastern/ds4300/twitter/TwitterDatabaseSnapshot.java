@@ -0,0 +1,186 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents a read-only API over a memory-mapped binary snapshot (see TwitterSnapshot), used to serve the
+ * retrieval workloads right after startup without loading the social graph and the tweets into a database first.
+ *
+ * <p> The snapshot format has no hashtag index: the first getHashtagTimeline() call derives it by scanning every tweet, so
+ * that the other reads keep starting without that scan. </p>
+ */
+public class TwitterDatabaseSnapshot implements TwitterDatabaseAPI {
+
+    private TwitterSnapshot snapshot;
+    private Map<String, IntList> hashtags; // positions of the tagged tweets in ascending order, by tag; built on first use
+
+    /**
+     * Not supported: a snapshot is read-only.
+     */
+    @Override
+    public void postTweet(Tweet t) {
+        throw new UnsupportedOperationException("a snapshot is read-only");
+    }
+
+    /**
+     * Not supported: a snapshot is read-only.
+     */
+    @Override
+    public void postTweets(List<Tweet> tweets) {
+        throw new UnsupportedOperationException("a snapshot is read-only");
+    }
+
+    /**
+     * Retrieves the home timeline of a given user. The user's home timeline consists of the 10 most recent tweets
+     * from users that the given user follows.
+     * <p>In this implementation, the followees' tweet lists of the snapshot (each already sorted newest first) are merged
+     * until 10 tweets are found.</p>
+     * @param userID user ID of the user
+     * @return list of Tweet objects representing the user home timeline
+     */
+    @Override
+    public List<Tweet> getTimeline(Integer userID) {
+        // the snapshot is read in place, so the whole call is decoding and there are no round trips
+        TimelineReadEvent event = TimelineReadEvent.begin("snapshot", 1);
+        event.userID = userID;
+        List<Tweet> tweets = snapshot.getTimeline(userID, 10);
+        event.tweetIDs = tweets.size();
+        event.commit();
+        return tweets;
+    }
+
+    @Override
+    public Map<Integer, List<Tweet>> getTimelines(int[] userIDs) {
+        TimelineReadEvent event = TimelineReadEvent.begin("snapshot", userIDs.length);
+        Map<Integer, List<Tweet>> result = new HashMap<>();
+        for (int userID : userIDs) {
+            List<Tweet> tweets = snapshot.getTimeline(userID, 10);
+            event.tweetIDs += tweets.size();
+            result.put(userID, tweets);
+        }
+        event.commit();
+        return result;
+    }
+
+    @Override
+    public int[] getUserIDs() {
+        return snapshot.getUserIDs();
+    }
+
+    @Override
+    public int[] getFollowerIDs(int userID) {
+        return snapshot.getFollowerIDs(userID);
+    }
+
+    @Override
+    public int[] getFolloweeIDs(int userID) {
+        return snapshot.getFolloweeIDs(userID);
+    }
+
+    /**
+     * Not supported: a snapshot is read-only.
+     */
+    @Override
+    public void follow(int userID, int followeeID) {
+        throw new UnsupportedOperationException("a snapshot is read-only");
+    }
+
+    /**
+     * Not supported: a snapshot is read-only.
+     */
+    @Override
+    public void unfollow(int userID, int followeeID) {
+        throw new UnsupportedOperationException("a snapshot is read-only");
+    }
+
+    /**
+     * Not supported: a snapshot is read-only.
+     */
+    @Override
+    public void deleteTweet(int tweetID) {
+        throw new UnsupportedOperationException("a snapshot is read-only");
+    }
+
+    /**
+     * Retrieves a page of the tweets carrying a hashtag, most recent first. The positions of each hashtag's tweets are kept
+     * in memory in ascending order, so the page is read backwards from the cursor (found by binary search). The index is
+     * built with HashtagIndex.extract() on the first call, and is not capped.
+     * @param tag hashtag, with or without the '#'
+     * @param cursor only tweets with a lower tweet ID are returned; 0 starts from the most recent tweet
+     * @param limit maximum number of tweets
+     * @return list of Tweet objects, most recent first
+     */
+    @Override
+    public List<Tweet> getHashtagTimeline(String tag, int cursor, int limit) {
+        TimelineReadEvent event = TimelineReadEvent.begin("snapshot", 1);
+        event.hashtag = HashtagIndex.normalize(tag);
+        IntList tagged = hashtagIndex().get(event.hashtag);
+        List<Tweet> tweets = new ArrayList<>();
+        int end = tagged == null ? 0 : tagged.size();
+        if (cursor > 0) {
+            // first index whose tweet ID is not below the cursor
+            int low = 0;
+            while (low < end) {
+                int middle = (low + end) >>> 1;
+                if (snapshot.getTweetAt(tagged.get(middle)).getTweetID() < cursor) low = middle + 1;
+                else end = middle;
+            }
+        }
+        for (int i = end - 1; i >= 0 && tweets.size() < limit; i--) {
+            tweets.add(snapshot.getTweetAt(tagged.get(i)));
+        }
+        event.tweetIDs = tweets.size();
+        event.commit();
+        return tweets;
+    }
+
+    /**
+     * Gets the hashtag index, building it from the tweets of the snapshot on first use.
+     */
+    private synchronized Map<String, IntList> hashtagIndex() {
+        if (hashtags == null) {
+            Map<String, IntList> index = new HashMap<>();
+            for (int position = 0; position < snapshot.getTweetCount(); position++) {
+                for (String tag : HashtagIndex.extract(snapshot.getTweetAt(position).getTweetText())) {
+                    index.computeIfAbsent(tag, k -> new IntList()).add(position);
+                }
+            }
+            hashtags = index;
+        }
+        return hashtags;
+    }
+
+    /**
+     * Opens the snapshot file.
+     * @param url path of the snapshot file
+     * @param user unused
+     * @param password unused
+     */
+    @Override
+    public void authenticate(String url, String user, String password) {
+        try {
+            snapshot = new TwitterSnapshot(new File(url), false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not open snapshot " + url, e);
+        }
+    }
+
+    /**
+     * Close the snapshot file when application finishes
+     */
+    @Override
+    public void closeConnection() {
+        try {
+            snapshot.close();
+        } catch (IOException e) {
+            System.out.println("ERROR: could not close the snapshot file");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class puts trending-hashtag detection on the post path of another TwitterDatabaseAPI implementation: every tweet
+ * that is posted successfully is counted by a TrendingHashtags detector, and getTrending() answers from the detector's
+ * in-memory ranking. The other methods are forwarded unchanged.
+ *
+ * <p> The detector is meant to be shared by all the instances of a JVM (e.g. one per posting thread), so it is neither
+ * started nor closed here. </p>
+ */
+public class TwitterDatabaseTrending implements TwitterDatabaseAPI {
+
+    private final TwitterDatabaseAPI api;
+    private final TrendingHashtags trending;
+
+    /**
+     * @param api wrapped implementation
+     * @param trending detector counting the posted tweets
+     */
+    public TwitterDatabaseTrending(TwitterDatabaseAPI api, TrendingHashtags trending) {
+        this.api = api;
+        this.trending = trending;
+    }
+
+    /**
+     * Gets the trending hashtags as of the detector's last refresh.
+     * @param k number of hashtags
+     * @return up to k hashtags with their estimated counts, highest first
+     */
+    public List<TrendingHashtags.Trend> getTrending(int k) {
+        return trending.getTrending(k);
+    }
+
+    @Override
+    public void postTweet(Tweet t) {
+        api.postTweet(t);
+        trending.observe(t.getTweetText());
+    }
+
+    @Override
+    public void postTweets(List<Tweet> tweets) {
+        api.postTweets(tweets);
+        long now = System.currentTimeMillis();
+        for (Tweet t : tweets) {
+            trending.observe(t.getTweetText(), now);
+        }
+    }
+
+    @Override
+    public List<Tweet> getTimeline(Integer userID) {
+        return api.getTimeline(userID);
+    }
+
+    @Override
+    public Map<Integer, List<Tweet>> getTimelines(int[] userIDs) {
+        return api.getTimelines(userIDs);
+    }
+
+    @Override
+    public int[] getUserIDs() {
+        return api.getUserIDs();
+    }
+
+    @Override
+    public int[] getFollowerIDs(int userID) {
+        return api.getFollowerIDs(userID);
+    }
+
+    @Override
+    public int[] getFolloweeIDs(int userID) {
+        return api.getFolloweeIDs(userID);
+    }
+
+    @Override
+    public void follow(int userID, int followeeID) {
+        api.follow(userID, followeeID);
+    }
+
+    @Override
+    public void unfollow(int userID, int followeeID) {
+        api.unfollow(userID, followeeID);
+    }
+
+    @Override
+    public void deleteTweet(int tweetID) {
+        api.deleteTweet(tweetID);
+    }
+
+    @Override
+    public List<Tweet> getHashtagTimeline(String tag, int cursor, int limit) {
+        return api.getHashtagTimeline(tag, cursor, limit);
+    }
+
+    @Override
+    public void authenticate(String url, String user, String password) {
+        api.authenticate(url, user, password);
+    }
+
+    @Override
+    public void closeConnection() {
+        api.closeConnection();
+    }
+
+    /**
+     * Gets the wrapped implementation.
+     * @return wrapped implementation
+     */
+    public TwitterDatabaseAPI getImplementation() {
+        return api;
+    }
+}
@@ -4,6 +4,7 @@ package edu.northeastern.ds4300.twitter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
@@ -28,6 +29,7 @@ public class TwitterMySQL {
      * <p> Examples of possible commands: </p>
      * <p> - "user password post res/tweet.csv" : insert tweets from the file "res/tweet.csv" </p>
      * <p> - "user password retrieve 1000" : retrieve 1000 user home timelines from the database </p>
+     * <p> - "user password workload 100000 dist=zipf skew=1.1 reads=0.9" : run a skewed mixed workload (options described in WorkloadRunner.run()) </p>
      * @param args the arguments required for the main() function
      *             <p> args[0] : database username </p>
      *             <p> args[1] : database password </p>
@@ -65,8 +67,11 @@ public class TwitterMySQL {
                     int iterations = Integer.parseInt(args[3]);
                     retrieveTimelines(iterations);
                 }
+            } else if (args[2].equals("workload")) {
+                // mixed read/write workload; see WorkloadRunner.run() for the options
+                WorkloadRunner.run(api, Arrays.copyOfRange(args, 3, args.length));
             } else {
-                System.out.println("Error: third argument must be either 'post' or 'retrieve'");
+                System.out.println("Error: third argument must be either 'post', 'retrieve' or 'workload'");
             }
         }
         else {
@@ -92,6 +97,7 @@ public class TwitterMySQL {
             if (sc.hasNextLine()) sc.nextLine(); // ignores the columns headers
             List<Tweet> tweetBatch = new ArrayList<>(); // batch size = 5
             pre_timestamp = System.currentTimeMillis();
+            BulkLoadBatchEvent batch = BulkLoadBatchEvent.begin("TwitterMySQL", "tweets");
 
             // reading and processing CSV file
             while (sc.hasNextLine()) {
@@ -108,6 +114,7 @@ public class TwitterMySQL {
                     api.postTweets(tweetBatch);
                     api_calls++;
                     rows_inserted += 5;
+                    batch = batch.record(5);
                     tweetBatch = new ArrayList<>(); // create new list after tweets are posted
 
                     // display runtime at every 50,000 inserted rows
@@ -124,7 +131,9 @@ public class TwitterMySQL {
                 api.postTweets(tweetBatch);
                 api_calls++;
                 rows_inserted += tweetBatch.size();
+                batch = batch.record(tweetBatch.size());
             }
+            batch.finish();
         } catch (FileNotFoundException e) {
             System.out.println("Could not find provided csv file.");
             System.out.println(e.getMessage());
@@ -155,8 +164,8 @@ public class TwitterMySQL {
         Random rd = new Random();
 
         // API call to retrieve a list of all unique user IDs to randomly select from
-        List<Integer> users = api.getUsers();
-        int len = users.size();
+        int[] users = api.getUserIDs();
+        int len = users.length;
         // cannot retrieve timelines if there is no user-following data
         if (len == 0) {
             System.out.println("Error: insufficient user-following data");
@@ -165,7 +174,7 @@ public class TwitterMySQL {
         int counter = 0; // tracking number of timelines retrieved / API calls
         long pre_timestamp = System.currentTimeMillis();
         while (counter < iterations) {
-            int random_user = users.get(rd.nextInt(len)); // randomly select a user ID from the list of user IDs
+            int random_user = users[rd.nextInt(len)]; // randomly select a user ID from the list of user IDs
             api.getTimeline(random_user); // API call to retrieve home timeline of selected user
             counter++;
 
@@ -2,6 +2,7 @@ package edu.northeastern.ds4300.twitter;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
@@ -21,19 +22,26 @@ public class TwitterRedisOptional {
      * Based on the given arguments, this method will either post tweets into a database from a given tweets CSV file
      * or retrieve a given number of user home timelines. The runtime results of the corresponding commands will be displayed.
      *
-     * This method requires a total of 2 arguments.
+     * This method requires a total of 2 arguments, plus optional further arguments.
      * - The 1st argument should be either "post" (to insert tweets) or "retrieve" (get home timelines).
      * - The 2nd argument depends on the 1st argument. If "post" was the 1st argument, the 2nd argument should be the tweet CSV filename. If
      *      "retrieve" was the 1st argument, then the 2nd argument should be the number of home timelines to retrieve.
+     * - The optional argument "packed" reads follower/following lists from packed binary segments (requires
+     *      "TwitterRedisSetup <follows.csv> packed").
+     * - The optional argument "compressed" compresses tweet bodies with the dictionaries stored by CompressionBenchmark.
+     * - The optional argument "bucketed" stores tweet bodies in "tweets:<bucket>" hashes (see TweetBucketMigrator).
      *
      *
      * Examples of possible commands:
      * - "post res/tweet.csv" : insert tweets from the file "res/tweet.csv"
      * - "retrieve 1000" : retrieve 1000 user home timelines from the database
+     * - "workload 100000 dist=zipf skew=1.1 reads=0.9" : run a skewed mixed workload (options described in WorkloadRunner.run())
      * @param args the arguments required for the main() function
      *             args[0] : either "post" (posting tweets) or "retrieve" (retrieving timelines)
      *             args[1] : if args[0] == "post" then args[1] should be the tweets CSV filename
      *                        otherwise args[1] should be the number of iterations/timelines to retrieve
+     *             args[2..] : (optional) "packed" to use packed adjacency, "compressed" to compress tweet bodies,
+     *                        "bucketed" to use the bucketed tweet layout
      *
      */
     public static void main(String[] args) {
@@ -46,6 +54,11 @@ public class TwitterRedisOptional {
 
         // connect to Redis database
         api.authenticate(null, null, null);
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("packed")) ((TwitterDatabaseRedisOptional) api).setPackedAdjacency(true);
+            if (args[i].equals("compressed")) ((TwitterDatabaseRedisOptional) api).setTweetCompression(true);
+            if (args[i].equals("bucketed")) ((TwitterDatabaseRedisOptional) api).setBucketedTweets(true);
+        }
 
         // checking arguments for "post" and "retrieve" commands
         if (args[0].equals("post")) {
@@ -63,8 +76,12 @@ public class TwitterRedisOptional {
                 retrieveTimelines(iterations);
             }
         }
+        else if (args[0].equals("workload")) {
+            // mixed read/write workload; see WorkloadRunner.run() for the options
+            WorkloadRunner.run(api, Arrays.copyOfRange(args, 1, args.length));
+        }
         else {
-            System.out.println("Error: 1st argument must be either 'post' or 'retrieve'");
+            System.out.println("Error: 1st argument must be either 'post', 'retrieve' or 'workload'");
         }
 
         // close connection when finished
@@ -85,6 +102,7 @@ public class TwitterRedisOptional {
             Scanner sc = new Scanner(tweetCSV);
             if (sc.hasNextLine()) sc.nextLine(); // ignores the columns headers
             pre_timestamp = System.currentTimeMillis();
+            BulkLoadBatchEvent batch = BulkLoadBatchEvent.begin("TwitterRedisOptional", "tweets");
 
             // reading and processing CSV file
             while (sc.hasNextLine()) {
@@ -96,12 +114,14 @@ public class TwitterRedisOptional {
                 Tweet toPost = new Tweet(userID, tweetText); // creating Tweet object
                 api.postTweet(toPost);
                 rows_inserted++;
+                batch = batch.record();
                 // display runtime at every 50,000 inserted rows
                 if (rows_inserted % 50000 == 0) {
                     double sec = (System.currentTimeMillis() - pre_timestamp) / 1000.0;
                     System.out.println(rows_inserted + " rows inserted at " + sec + " seconds: " + rows_inserted / sec + " tweets per second");
                 }
             }
+            batch.finish();
             sc.close();
         } catch (FileNotFoundException e) {
             System.out.println("Could not find provided csv file.");
@@ -130,8 +150,8 @@ public class TwitterRedisOptional {
         Random rd = new Random();
 
         // API call to retrieve a list of all unique user IDs to randomly select from
-        List<Integer> users = api.getUsers();
-        int len = users.size();
+        int[] users = api.getUserIDs();
+        int len = users.length;
         // cannot retrieve timelines if there is no user-following data
         if (len == 0) {
             System.out.println("Error: insufficient user-following data");
@@ -140,7 +160,7 @@ public class TwitterRedisOptional {
         int counter = 0; // tracking number of timelines retrieved / API calls
         long pre_timestamp = System.currentTimeMillis();
         while (counter < iterations) {
-            int random_user = users.get(rd.nextInt(len)); // randomly select a user ID from the list of user IDs
+            int random_user = users[rd.nextInt(len)]; // randomly select a user ID from the list of user IDs
             api.getTimeline(random_user); // API call to retrieve home timeline of selected user
             counter++;
 
@@ -1,9 +1,12 @@
 package edu.northeastern.ds4300.twitter;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
@@ -20,15 +23,21 @@ public class TwitterRedisSetup {
      * "following/follower" relationships between users. A set of user IDs is also recorded, which is used for random user selection when
      * retrieving timelines.
      *
+     * If the optional 2nd argument is "packed", the relationships are stored as packed binary segments
+     * ("packedfollowing/packedfollowers" keys, see PackedAdjacency) instead of lists of decimal strings.
+     *
      * @param args the arguments required for the main() method
      *             args[0]: the CSV filename for the "follows" table
+     *             args[1]: (optional) "packed" to store the relationships as packed binary segments
      */
     public static void main(String[] args) {
 
         // check if arguments is empty
         if (args.length == 0) {
             System.out.println("ERROR: must provide follows csv filename");
+            return;
         }
+        boolean packed = args.length > 1 && args[1].equals("packed");
 
         // initializing Jedis
         Jedis jedis = new Jedis();
@@ -43,6 +52,12 @@ public class TwitterRedisSetup {
 
         String followsFilename = args[0];
         File follows = new File(followsFilename);
+
+        // in packed mode, the relationships are grouped in memory and written once per user
+        Map<Integer, IntList> following = new HashMap<>();
+        Map<Integer, IntList> followers = new HashMap<>();
+        // one flight recorder event per batch of relationships read
+        BulkLoadBatchEvent batch = BulkLoadBatchEvent.begin("TwitterRedisSetup", "follows");
         try {
             Scanner sc = new Scanner(follows);
             if (sc.hasNextLine()) sc.nextLine(); // ignores the columns headers
@@ -53,6 +68,14 @@ public class TwitterRedisSetup {
                 String[] follow = line.split(",");
                 String userID = follow[0];
                 String followID = follow[1];
+                batch = batch.record();
+
+                if (packed) {
+                    following.computeIfAbsent(Integer.parseInt(userID), id -> new IntList(4)).add(Integer.parseInt(followID));
+                    followers.computeIfAbsent(Integer.parseInt(followID), id -> new IntList(4)).add(Integer.parseInt(userID));
+                    jedis.sadd("users", userID);
+                    continue;
+                }
 
                 // "following" key represents the user, the values represent users that the key user follows
                 jedis.lpush("following:" + userID, followID);
@@ -68,11 +91,40 @@ public class TwitterRedisSetup {
             System.out.println(e.getMessage());
             e.printStackTrace();
         }
+        batch.finish();
+
+        if (packed) {
+            writePacked(jedis, PackedAdjacency.FOLLOWING_PREFIX, following, "packed following");
+            writePacked(jedis, PackedAdjacency.FOLLOWERS_PREFIX, followers, "packed followers");
+        }
 
         System.out.println("Successfully loaded csv file");
 
         // close the connection when finished
-        jedis.quit();
+        jedis.close();
+    }
+
+    /**
+     * Writes the grouped relationships as packed binary segments, pipelining the writes. Every pipeline is recorded as
+     * one bulk load batch.
+     * @param jedis Redis connection
+     * @param prefix key prefix of the packed lists
+     * @param lists map of user ID to list of related user IDs
+     * @param kind kind of the recorded batches
+     */
+    private static void writePacked(Jedis jedis, String prefix, Map<Integer, IntList> lists, String kind) {
+        BulkLoadBatchEvent batch = BulkLoadBatchEvent.begin("TwitterRedisSetup", kind);
+        Pipeline p = jedis.pipelined();
+        int written = 0;
+        for (Map.Entry<Integer, IntList> entry : lists.entrySet()) {
+            PackedAdjacency.write(p, prefix + entry.getKey(), entry.getValue().toArray());
+            if (++written % 1000 == 0) {
+                p.sync();
+                batch = batch.recordAll(1000);
+            }
+        }
+        p.sync();
+        batch.record(written % 1000).finish();
     }
 
 }
@@ -0,0 +1,37 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class exercises the TwitterDatabaseAPI (sharded Redis implementation of Strategy 2). It runs the TwitterRedis
+ * driver with the sharded implementation.
+ */
+public class TwitterRedisSharded {
+
+    /**
+     * Note:
+     * - the TwitterRedisShardedSetup.main() method should be called first to setup the Redis shards (populate 'following/follower'
+     *   relationships between users).
+     *
+     * Examples of possible commands:
+     * - "post res/tweet.csv" : insert tweets from the file "res/tweet.csv"
+     * - "retrieve 1000 localhost:6379,localhost:6380" : retrieve 1000 user home timelines from two Redis shards
+     * - "addshard localhost:6381 localhost:6379,localhost:6380" : add a third shard and move the keys it now owns
+     * @param args the arguments required for the main() function
+     *             args[0] : either "post" (posting tweets), "retrieve" (retrieving timelines) or "addshard" (rebalancing)
+     *             args[1] : if args[0] == "post" then args[1] should be the tweets CSV filename
+     *                        otherwise args[1] should be the number of iterations/timelines to retrieve
+     *             args[2] : (optional) comma-separated list of Redis shards (defaults to localhost:6379)
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            TwitterRedis.main(args);
+            return;
+        }
+        List<String> driverArgs = new ArrayList<>(Arrays.asList(args).subList(0, Math.min(2, args.length)));
+        driverArgs.add("shards=" + (args.length > 2 ? args[2] : TwitterDatabaseRedisSharded.DEFAULT_NODES));
+        TwitterRedis.main(driverArgs.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,98 @@
+package edu.northeastern.ds4300.twitter;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * This class is used to setup the sharded Redis Twitter database by populating every shard with the "follows/following"
+ * relationships between users that hash to it.
+ */
+public class TwitterRedisShardedSetup {
+
+    /**
+     * Note: This method should be called before posting tweets or retrieving timelines with TwitterRedisSharded.
+     *
+     * This method takes in 2 arguments: the CSV filename of the "follows" table and the comma-separated list of Redis servers
+     * (e.g. "localhost:6379,localhost:6380"). It clears every shard, initializes the current Tweet ID counter, and then
+     * processes the given CSV file, pipelining each "following/follower" key-value to the shard that owns it.
+     *
+     * @param args the arguments required for the main() method
+     *             args[0]: the CSV filename for the "follows" table
+     *             args[1]: comma-separated list of "host:port" Redis servers (defaults to localhost:6379)
+     */
+    public static void main(String[] args) {
+
+        // check if arguments is empty
+        if (args.length == 0) {
+            System.out.println("ERROR: must provide follows csv filename");
+            return;
+        }
+
+        List<String> nodes = TwitterDatabaseRedisSharded.parseNodes(args.length > 1 ? args[1] : TwitterDatabaseRedisSharded.DEFAULT_NODES);
+        ConsistentHashRing ring = TwitterDatabaseRedisSharded.buildRing(nodes);
+
+        // connect to every shard, clear it, and open a pipeline to it
+        Map<String, Jedis> shards = new HashMap<>();
+        Map<String, Pipeline> pipelines = new HashMap<>();
+        for (String node : nodes) {
+            String[] hostPort = node.split(":");
+            Jedis jedis = new Jedis(hostPort[0], Integer.parseInt(hostPort[1]));
+            jedis.flushAll();
+            shards.put(node, jedis);
+            pipelines.put(node, jedis.pipelined());
+        }
+
+        // initialize the currTweetID to 0 in preparation for posting tweets
+        shards.get(ring.getNode("currTweetID")).set("currTweetID", "0");
+
+        String followsFilename = args[0];
+        File follows = new File(followsFilename);
+        int rows = 0;
+        // one flight recorder event per flush of the pipelines
+        BulkLoadBatchEvent batch = BulkLoadBatchEvent.begin("TwitterRedisShardedSetup", "follows");
+        try {
+            Scanner sc = new Scanner(follows);
+            if (sc.hasNextLine()) sc.nextLine(); // ignores the columns headers
+
+            // reading and processing CSV file
+            while (sc.hasNextLine()) {
+                String line = sc.nextLine();
+                String[] follow = line.split(",");
+                String userID = follow[0];
+                String followID = follow[1];
+
+                pipelines.get(ring.getNode("following:" + userID)).lpush("following:" + userID, followID);
+                pipelines.get(ring.getNode("followers:" + followID)).lpush("followers:" + followID, userID);
+                pipelines.get(ring.getNode("users")).sadd("users", userID);
+
+                // flush the pipelines periodically so they do not grow without bound
+                if (++rows % 10000 == 0) {
+                    for (Pipeline p : pipelines.values()) p.sync();
+                    batch = batch.recordAll(10000);
+                }
+            }
+            sc.close();
+        } catch (FileNotFoundException e) {
+            System.out.println("ERROR: Could not find file: " + followsFilename);
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+        }
+        for (Pipeline p : pipelines.values()) p.sync();
+        batch.record(rows % 10000).finish();
+
+        System.out.println("Successfully loaded csv file into " + nodes.size() + " shards");
+
+        // close the connections when finished
+        for (Jedis jedis : shards.values()) {
+            jedis.close();
+        }
+    }
+
+}
@@ -0,0 +1,305 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+
+/**
+ * This class reads a binary snapshot of the social graph and the tweets (written by SnapshotWriter) by memory-mapping the
+ * file, so the data is served straight from the page cache without being deserialized first.
+ *
+ * File layout (little-endian, every section aligned to 8 bytes):
+ * <p> - header: magic "TWSNAP\0\0", format version, user/edge/tweet counts, creation time, a table of (offset, length,
+ *       CRC32) for every section, and the CRC32 of the header itself </p>
+ * <p> - USERS: sorted user IDs (int); a user's index in this array is used by the offset arrays </p>
+ * <p> - FOLLOWING_OFFSETS / FOLLOWING: CSR adjacency; the followees of users[i] are FOLLOWING[offsets[i]..offsets[i+1]) (long offsets, int IDs) </p>
+ * <p> - FOLLOWERS_OFFSETS / FOLLOWERS: the same for followers </p>
+ * <p> - TWEET_IDS / TWEET_OFFSETS: sorted tweet IDs (int) and the offset (long) of each tweet's record in TWEET_DATA </p>
+ * <p> - AUTHORED_OFFSETS / AUTHORED: CSR list of each user's tweets as positions in TWEET_IDS, newest first (int) </p>
+ * <p> - TWEET_DATA: tweet records (timestamp long in epoch milliseconds, user ID int, text length int, UTF-8 text, padded to 8 bytes) </p>
+ */
+public class TwitterSnapshot implements AutoCloseable {
+
+    public static final long MAGIC = 0x000050414E535754L; // "TWSNAP\0\0" read as a little-endian long
+    public static final int VERSION = 1;
+
+    public static final int USERS = 0;
+    public static final int FOLLOWING_OFFSETS = 1;
+    public static final int FOLLOWING = 2;
+    public static final int FOLLOWERS_OFFSETS = 3;
+    public static final int FOLLOWERS = 4;
+    public static final int TWEET_IDS = 5;
+    public static final int TWEET_OFFSETS = 6;
+    public static final int AUTHORED_OFFSETS = 7;
+    public static final int AUTHORED = 8;
+    public static final int TWEET_DATA = 9;
+    public static final int SECTION_COUNT = 10;
+
+    // magic, version, section count, user count, edge count, tweet count, creation time, section table, header CRC
+    public static final int HEADER_SIZE = 8 + 4 + 4 + 4 + 8 + 4 + 8 + SECTION_COUNT * 24 + 4;
+
+    private final RandomAccessFile file;
+    private final int userCount;
+    private final long edgeCount;
+    private final int tweetCount;
+    private final long createdMillis;
+    private final Section[] sections = new Section[SECTION_COUNT];
+
+    /**
+     * Opens and memory-maps a snapshot file. The header is always validated; the section checksums are only validated on
+     * request, since that reads the whole file.
+     * @param snapshot snapshot file
+     * @param verify true to validate the CRC32 of every section
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public TwitterSnapshot(File snapshot, boolean verify) throws IOException {
+        this.file = new RandomAccessFile(snapshot, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < HEADER_SIZE - 4; i++) {
+                crc.update(header.get(i));
+            }
+            if (header.getLong(0) != MAGIC) throw new IOException("not a snapshot file: " + snapshot);
+            if (header.getInt(8) != VERSION) throw new IOException("unsupported snapshot version " + header.getInt(8));
+            if (header.getInt(HEADER_SIZE - 4) != (int) crc.getValue()) throw new IOException("corrupt snapshot header: " + snapshot);
+            if (header.getInt(12) != SECTION_COUNT) throw new IOException("unexpected number of snapshot sections");
+
+            header.position(16);
+            this.userCount = header.getInt();
+            this.edgeCount = header.getLong();
+            this.tweetCount = header.getInt();
+            this.createdMillis = header.getLong();
+            for (int s = 0; s < SECTION_COUNT; s++) {
+                long offset = header.getLong();
+                long length = header.getLong();
+                long checksum = header.getLong();
+                if (offset + length > channel.size()) throw new IOException("truncated snapshot: " + snapshot);
+                sections[s] = new Section(channel, offset, length);
+                if (verify && sections[s].checksum() != checksum) throw new IOException("corrupt snapshot section " + s + ": " + snapshot);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public int getUserCount() {
+        return userCount;
+    }
+
+    public long getEdgeCount() {
+        return edgeCount;
+    }
+
+    public int getTweetCount() {
+        return tweetCount;
+    }
+
+    public long getCreatedMillis() {
+        return createdMillis;
+    }
+
+    /**
+     * Get an array of every user ID in the snapshot (users that follow, are followed or have tweeted), in ascending order.
+     * @return array of user IDs
+     */
+    public int[] getUserIDs() {
+        int[] users = new int[userCount];
+        for (int i = 0; i < userCount; i++) {
+            users[i] = sections[USERS].getInt(i);
+        }
+        return users;
+    }
+
+    /**
+     * Get an array of user IDs that the given user follows.
+     * @param userID given user ID
+     * @return array of followee IDs in ascending order (empty for unknown users)
+     */
+    public int[] getFolloweeIDs(int userID) {
+        return adjacency(userID, FOLLOWING_OFFSETS, FOLLOWING);
+    }
+
+    /**
+     * Get an array of user IDs that follow the given user.
+     * @param userID given user ID
+     * @return array of follower IDs in ascending order (empty for unknown users)
+     */
+    public int[] getFollowerIDs(int userID) {
+        return adjacency(userID, FOLLOWERS_OFFSETS, FOLLOWERS);
+    }
+
+    /**
+     * Gets a tweet by its ID.
+     * @param tweetID tweet ID
+     * @return Tweet object, or null if the tweet is not in the snapshot
+     */
+    public Tweet getTweet(int tweetID) {
+        int position = search(sections[TWEET_IDS], tweetCount, tweetID);
+        return position < 0 ? null : tweetAt(position);
+    }
+
+    /**
+     * Gets a tweet by its position in the snapshot, e.g. to scan every tweet.
+     * @param position position from 0 to getTweetCount() - 1; positions are in ascending tweet ID order
+     * @return Tweet object
+     */
+    public Tweet getTweetAt(int position) {
+        if (position < 0 || position >= tweetCount) throw new IndexOutOfBoundsException("no tweet at " + position);
+        return tweetAt(position);
+    }
+
+    /**
+     * Computes the home timeline of a user: the given number of most recent tweets of the user's followees, merged from
+     * the followees' newest-first tweet lists.
+     * @param userID user ID
+     * @param n maximum number of tweets
+     * @return list of Tweet objects, most recent first
+     */
+    public List<Tweet> getTimeline(int userID, int n) {
+        Section authoredOffsets = sections[AUTHORED_OFFSETS];
+        Section authored = sections[AUTHORED];
+
+        // heap entries are {position in AUTHORED, end of that followee's list}; tweet positions grow with tweet IDs
+        PriorityQueue<long[]> heap = new PriorityQueue<>((a, b) -> Integer.compare(authored.getInt(b[0]), authored.getInt(a[0])));
+        for (int followeeID : getFolloweeIDs(userID)) {
+            int index = search(sections[USERS], userCount, followeeID);
+            if (index < 0) continue;
+            long start = authoredOffsets.getLong(index);
+            long end = authoredOffsets.getLong(index + 1);
+            if (start < end) heap.add(new long[]{start, end});
+        }
+
+        List<Tweet> tweets = new ArrayList<>(n);
+        while (!heap.isEmpty() && tweets.size() < n) {
+            long[] top = heap.poll();
+            tweets.add(tweetAt(authored.getInt(top[0])));
+            if (++top[0] < top[1]) heap.add(top);
+        }
+        return tweets;
+    }
+
+    /**
+     * Closes the snapshot file. The mappings stay valid until their buffers are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private int[] adjacency(int userID, int offsetsSection, int idsSection) {
+        int index = search(sections[USERS], userCount, userID);
+        if (index < 0) return new int[0];
+        long start = sections[offsetsSection].getLong(index);
+        long end = sections[offsetsSection].getLong(index + 1);
+        int[] ids = new int[(int) (end - start)];
+        Section section = sections[idsSection];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = section.getInt(start + i);
+        }
+        return ids;
+    }
+
+    private Tweet tweetAt(int position) {
+        int tweetID = sections[TWEET_IDS].getInt(position);
+        long offset = sections[TWEET_OFFSETS].getLong(position);
+        Section data = sections[TWEET_DATA];
+        long timestamp = data.getLongAt(offset);
+        int tweetUserID = data.getIntAt(offset + 8);
+        byte[] text = new byte[data.getIntAt(offset + 12)];
+        data.get(offset + 16, text);
+        return new Tweet(tweetID, tweetUserID, new Date(timestamp), new String(text, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Binary search of an int section.
+     * @return index of the value, or -1 if it is not found
+     */
+    private static int search(Section section, int count, int value) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int current = section.getInt(middle);
+            if (current < value) low = middle + 1;
+            else if (current > value) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * One memory-mapped section. A MappedByteBuffer is limited to 2 GB, so large sections are mapped in 1 GB chunks;
+     * ints and longs never straddle a chunk since sections are 8-byte aligned.
+     */
+    private static class Section {
+        private static final int CHUNK_BITS = 30;
+        private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+        private final MappedByteBuffer[] chunks;
+        private final long length;
+
+        Section(FileChannel channel, long offset, long length) throws IOException {
+            this.length = length;
+            this.chunks = new MappedByteBuffer[(int) ((length + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+            for (int c = 0; c < chunks.length; c++) {
+                long start = (long) c << CHUNK_BITS;
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start, Math.min(CHUNK_SIZE, length - start));
+                chunks[c].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        int getInt(long index) {
+            return getIntAt(index << 2);
+        }
+
+        long getLong(long index) {
+            return getLongAt(index << 3);
+        }
+
+        int getIntAt(long position) {
+            return chunks[(int) (position >>> CHUNK_BITS)].getInt((int) (position & (CHUNK_SIZE - 1)));
+        }
+
+        long getLongAt(long position) {
+            return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & (CHUNK_SIZE - 1)));
+        }
+
+        void get(long position, byte[] out) {
+            int copied = 0;
+            while (copied < out.length) {
+                ByteBuffer chunk = chunks[(int) ((position + copied) >>> CHUNK_BITS)].duplicate();
+                chunk.position((int) ((position + copied) & (CHUNK_SIZE - 1)));
+                int n = Math.min(out.length - copied, chunk.remaining());
+                chunk.get(out, copied, n);
+                copied += n;
+            }
+        }
+
+        long checksum() {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[1 << 16];
+            for (MappedByteBuffer chunk : chunks) {
+                ByteBuffer view = chunk.duplicate();
+                view.position(0);
+                while (view.hasRemaining()) {
+                    int n = Math.min(buffer.length, view.remaining());
+                    view.get(buffer, 0, n);
+                    crc.update(buffer, 0, n);
+                }
+            }
+            return crc.getValue();
+        }
+    }
+}
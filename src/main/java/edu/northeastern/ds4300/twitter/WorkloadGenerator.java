@@ -0,0 +1,149 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * This class generates a mixed read/write benchmark workload. Users are selected uniformly, from a Zipf distribution with a
+ * tunable skew, or from a hotspot distribution (a small fraction of users receives most of the operations); each operation is
+ * a timeline read or a tweet post according to the read ratio, and is preceded by a think time drawn from a configurable
+ * distribution. The generator is seeded, so the same settings always produce the same sequence of operations.
+ */
+public class WorkloadGenerator implements Iterator<WorkloadOperation> {
+
+    public enum Distribution { UNIFORM, ZIPF, HOTSPOT }
+
+    public enum ThinkTime { NONE, CONSTANT, EXPONENTIAL, UNIFORM }
+
+    private final int[] users;
+    private final Random random;
+    private long remaining;
+
+    private Distribution distribution = Distribution.UNIFORM;
+    private ZipfSampler zipf;
+    private double hotUserFraction = 0.01;
+    private double hotOperationFraction = 0.9;
+    private double readRatio = 1.0;
+    private ThinkTime thinkTime = ThinkTime.NONE;
+    private double thinkTimeMillis = 0;
+    private List<String> tweetTexts = new ArrayList<>();
+
+    /**
+     * Creates a generator over the given users. The users are shuffled with the seed, so that the most popular ranks of the
+     * skewed distributions are not tied to the order of the user IDs.
+     * @param users user IDs to select from
+     * @param operations number of operations to generate
+     * @param seed random seed
+     */
+    public WorkloadGenerator(int[] users, long operations, long seed) {
+        if (users.length == 0) throw new IllegalArgumentException("no users to select from");
+        this.users = users.clone();
+        this.random = new Random(seed);
+        this.remaining = operations;
+
+        // Fisher-Yates shuffle with the seeded generator
+        for (int i = this.users.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = this.users[i];
+            this.users[i] = this.users[j];
+            this.users[j] = tmp;
+        }
+    }
+
+    /**
+     * Selects users from a Zipf distribution over the users' popularity ranks.
+     * @param skew Zipf exponent (0 is uniform; around 1 is typical of social workloads)
+     */
+    public void setZipf(double skew) {
+        this.distribution = Distribution.ZIPF;
+        this.zipf = new ZipfSampler(users.length, skew);
+    }
+
+    /**
+     * Selects users from a hotspot distribution.
+     * @param hotUserFraction fraction of the users that are hot (e.g. 0.01)
+     * @param hotOperationFraction fraction of the operations that go to the hot users (e.g. 0.9)
+     */
+    public void setHotspot(double hotUserFraction, double hotOperationFraction) {
+        this.distribution = Distribution.HOTSPOT;
+        this.hotUserFraction = hotUserFraction;
+        this.hotOperationFraction = hotOperationFraction;
+    }
+
+    /**
+     * Sets the fraction of operations that are timeline reads; the rest are tweet posts.
+     * @param readRatio read ratio between 0 and 1
+     */
+    public void setReadRatio(double readRatio) {
+        this.readRatio = readRatio;
+    }
+
+    /**
+     * Sets the think time distribution.
+     * @param thinkTime distribution type
+     * @param thinkTimeMillis mean think time in milliseconds
+     */
+    public void setThinkTime(ThinkTime thinkTime, double thinkTimeMillis) {
+        this.thinkTime = thinkTime;
+        this.thinkTimeMillis = thinkTimeMillis;
+    }
+
+    /**
+     * Sets the texts that posted tweets are drawn from (otherwise synthetic texts are generated).
+     * @param tweetTexts tweet texts
+     */
+    public void setTweetTexts(List<String> tweetTexts) {
+        this.tweetTexts = tweetTexts;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return remaining > 0;
+    }
+
+    @Override
+    public WorkloadOperation next() {
+        if (remaining <= 0) throw new NoSuchElementException();
+        remaining--;
+
+        int userID = users[nextUserIndex()];
+        long think = nextThinkTimeMicros();
+        if (random.nextDouble() < readRatio) {
+            return new WorkloadOperation(WorkloadOperation.Type.READ, userID, think, null);
+        }
+        String text = tweetTexts.isEmpty() ? "workload tweet " + random.nextInt(1000000) : tweetTexts.get(random.nextInt(tweetTexts.size()));
+        return new WorkloadOperation(WorkloadOperation.Type.WRITE, userID, think, text);
+    }
+
+    private int nextUserIndex() {
+        switch (distribution) {
+            case ZIPF:
+                return (int) (zipf.sample(random) - 1);
+            case HOTSPOT:
+                int hotUsers = Math.max(1, (int) (users.length * hotUserFraction));
+                if (random.nextDouble() < hotOperationFraction || hotUsers == users.length) {
+                    return random.nextInt(hotUsers);
+                }
+                return hotUsers + random.nextInt(users.length - hotUsers);
+            default:
+                return random.nextInt(users.length);
+        }
+    }
+
+    private long nextThinkTimeMicros() {
+        double mean = thinkTimeMillis * 1000.0;
+        switch (thinkTime) {
+            case CONSTANT:
+                return (long) mean;
+            case EXPONENTIAL:
+                return (long) (-mean * Math.log(1.0 - random.nextDouble()));
+            case UNIFORM:
+                return (long) (random.nextDouble() * 2.0 * mean);
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package edu.northeastern.ds4300.twitter;
+
+/**
+ * This class represents one operation of a benchmark workload: a timeline read or a tweet post by a user, preceded by a
+ * think time. Operations can be written to and read from a trace file (one operation per line) for deterministic replay.
+ */
+public class WorkloadOperation {
+
+    public enum Type { READ, WRITE }
+
+    private final Type type;
+    private final int userID;
+    private final long thinkTimeMicros;
+    private final String tweetText;
+
+    public WorkloadOperation(Type type, int userID, long thinkTimeMicros, String tweetText) {
+        this.type = type;
+        this.userID = userID;
+        this.thinkTimeMicros = thinkTimeMicros;
+        this.tweetText = tweetText;
+    }
+
+    /**
+     * Gets the operation type (timeline read or tweet post).
+     * @return operation type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the user ID whose timeline is read, or who posts the tweet.
+     * @return user ID
+     */
+    public int getUserID() {
+        return userID;
+    }
+
+    /**
+     * Gets the time to wait before issuing the operation.
+     * @return think time in microseconds
+     */
+    public long getThinkTimeMicros() {
+        return thinkTimeMicros;
+    }
+
+    /**
+     * Gets the text of the posted tweet (null for reads).
+     * @return tweet text
+     */
+    public String getTweetText() {
+        return tweetText;
+    }
+
+    /**
+     * Serializes the operation as a trace line: "R,userID,thinkMicros" or "W,userID,thinkMicros,text".
+     * @return trace line
+     */
+    public String toTraceLine() {
+        if (type == Type.READ) {
+            return "R," + userID + "," + thinkTimeMicros;
+        }
+        return "W," + userID + "," + thinkTimeMicros + "," + tweetText;
+    }
+
+    /**
+     * Parses a trace line written by toTraceLine().
+     * @param line trace line
+     * @return operation
+     */
+    public static WorkloadOperation fromTraceLine(String line) {
+        String[] fields = line.split(",", 4);
+        Type type = fields[0].equals("W") ? Type.WRITE : Type.READ;
+        String text = type == Type.WRITE ? (fields.length > 3 ? fields[3] : "") : null;
+        return new WorkloadOperation(type, Integer.parseInt(fields[1]), Long.parseLong(fields[2]), text);
+    }
+}
@@ -0,0 +1,216 @@
+package edu.northeastern.ds4300.twitter;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class runs a mixed read/write workload (generated by WorkloadGenerator or replayed from a trace file) against a
+ * TwitterDatabaseAPI and displays the throughput and latency percentiles of the reads and writes.
+ */
+public class WorkloadRunner {
+
+    /**
+     * Runs a workload described by command arguments. The first argument is the number of operations (ignored when
+     * replaying a trace); the remaining arguments are key=value options:
+     * <p> dist=uniform|zipf|hotspot : user selection (default uniform) </p>
+     * <p> skew=0.99 : Zipf exponent (dist=zipf) </p>
+     * <p> hot=0.01:0.9 : fraction of hot users and fraction of operations they receive (dist=hotspot) </p>
+     * <p> reads=0.9 : fraction of operations that are timeline reads (default 1.0) </p>
+     * <p> think=none|const:MS|exp:MS|uniform:MS : think time before each operation (default none) </p>
+     * <p> seed=42 : random seed (default 42) </p>
+     * <p> tweets=res/tweets_sample.csv : CSV file to draw the posted tweet texts from </p>
+     * <p> record=trace.txt : record the operations to a trace file </p>
+     * <p> replay=trace.txt : replay the operations of a trace file instead of generating them </p>
+     *
+     * Example: "100000 dist=zipf skew=1.1 reads=0.95 think=exp:2 record=trace.txt"
+     * @param api connected TwitterDatabaseAPI
+     * @param args workload arguments
+     */
+    public static void run(TwitterDatabaseAPI api, String[] args) {
+        long operations = args.length > 0 && !args[0].contains("=") ? Long.parseLong(args[0]) : 0;
+        Map<String, String> options = parseOptions(args);
+
+        Iterator<WorkloadOperation> workload;
+        try {
+            workload = createWorkload(api, operations, options);
+        } catch (FileNotFoundException e) {
+            System.out.println("Could not find provided file.");
+            System.out.println(e.getMessage());
+            e.printStackTrace();
+            return;
+        } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            return;
+        }
+
+        PrintWriter trace = null;
+        String record = options.get("record");
+        try {
+            if (record != null) trace = new PrintWriter(record);
+        } catch (FileNotFoundException e) {
+            System.out.println("Could not create trace file: " + record);
+            System.out.println(e.getMessage());
+            return;
+        }
+        Result result = execute(api, workload, trace, true);
+        if (trace != null) trace.close();
+
+        // displaying final results
+        int counter = result.reads.count() + result.writes.count();
+        System.out.println(counter + " operations in " + result.seconds + " seconds: " + counter / result.seconds + " operations per second");
+        print("reads", result.reads, result.seconds);
+        print("writes", result.writes, result.seconds);
+    }
+
+    /**
+     * Parses the key=value workload options of the command arguments (arguments without "=" are ignored).
+     * @param args command arguments
+     * @return map of option name to value
+     */
+    public static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Creates the operations of a workload from its options: a trace replay if "replay" is set, otherwise a generator over the
+     * users returned by the API. Options that are not workload options are ignored.
+     * @param api connected TwitterDatabaseAPI
+     * @param operations number of operations to generate
+     * @param options workload options (see run())
+     * @return operations to run
+     */
+    public static Iterator<WorkloadOperation> createWorkload(TwitterDatabaseAPI api, long operations, Map<String, String> options)
+            throws FileNotFoundException {
+        if (options.containsKey("replay")) {
+            return readTrace(new File(options.get("replay"))).iterator();
+        }
+        int[] users = api.getUserIDs();
+        if (users.length == 0) {
+            throw new IllegalArgumentException("insufficient user-following data");
+        }
+
+        WorkloadGenerator generator = new WorkloadGenerator(users, operations, Long.parseLong(options.getOrDefault("seed", "42")));
+        String dist = options.getOrDefault("dist", "uniform");
+        if (dist.equals("zipf")) {
+            generator.setZipf(Double.parseDouble(options.getOrDefault("skew", "0.99")));
+        } else if (dist.equals("hotspot")) {
+            String[] hot = options.getOrDefault("hot", "0.01:0.9").split(":");
+            generator.setHotspot(Double.parseDouble(hot[0]), Double.parseDouble(hot[1]));
+        } else if (!dist.equals("uniform")) {
+            throw new IllegalArgumentException("unknown user distribution: " + dist);
+        }
+        generator.setReadRatio(Double.parseDouble(options.getOrDefault("reads", "1.0")));
+        String[] think = options.getOrDefault("think", "none").split(":");
+        generator.setThinkTime(parseThinkTime(think[0]), think.length > 1 ? Double.parseDouble(think[1]) : 0);
+        if (options.containsKey("tweets")) {
+            generator.setTweetTexts(readTweetTexts(new File(options.get("tweets"))));
+        }
+        return generator;
+    }
+
+    /**
+     * Runs the operations against the API, optionally recording them to a trace.
+     * @param api connected TwitterDatabaseAPI
+     * @param workload operations to run
+     * @param trace trace writer, or null to not record
+     * @param progress whether to display the runtime at every 10,000 operations
+     * @return read and write latencies and the total runtime
+     */
+    public static Result execute(TwitterDatabaseAPI api, Iterator<WorkloadOperation> workload, PrintWriter trace, boolean progress) {
+        Result result = new Result();
+        int counter = 0;
+        long pre_timestamp = System.nanoTime();
+        while (workload.hasNext()) {
+            WorkloadOperation op = workload.next();
+            if (trace != null) trace.println(op.toTraceLine());
+            if (op.getThinkTimeMicros() > 0) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(op.getThinkTimeMicros()));
+            }
+
+            long start = System.nanoTime();
+            if (op.getType() == WorkloadOperation.Type.READ) {
+                api.getTimeline(op.getUserID());
+                result.reads.add(System.nanoTime() - start);
+            } else {
+                api.postTweet(new Tweet(op.getUserID(), op.getTweetText()));
+                result.writes.add(System.nanoTime() - start);
+            }
+            counter++;
+
+            // at every 10,000 operations, display the runtime
+            if (progress && counter % 10000 == 0) {
+                double sec = (System.nanoTime() - pre_timestamp) / 1e9;
+                System.out.println(counter + " operations at " + sec + " seconds: " + counter / sec + " operations per second");
+            }
+        }
+        result.seconds = (System.nanoTime() - pre_timestamp) / 1e9;
+        return result;
+    }
+
+    /**
+     * Reads the operations of a trace file written with record=...
+     * @param traceFile trace file
+     * @return list of operations
+     */
+    public static List<WorkloadOperation> readTrace(File traceFile) throws FileNotFoundException {
+        List<WorkloadOperation> ops = new ArrayList<>();
+        Scanner sc = new Scanner(traceFile);
+        while (sc.hasNextLine()) {
+            String line = sc.nextLine();
+            if (!line.isEmpty()) ops.add(WorkloadOperation.fromTraceLine(line));
+        }
+        sc.close();
+        return ops;
+    }
+
+    private static List<String> readTweetTexts(File tweetCSV) throws FileNotFoundException {
+        List<String> texts = new ArrayList<>();
+        Scanner sc = new Scanner(tweetCSV);
+        if (sc.hasNextLine()) sc.nextLine(); // ignores the columns headers
+        while (sc.hasNextLine()) {
+            String[] tweet = sc.nextLine().split(",");
+            if (tweet.length > 1) texts.add(tweet[1]);
+        }
+        sc.close();
+        return texts;
+    }
+
+    private static WorkloadGenerator.ThinkTime parseThinkTime(String name) {
+        switch (name) {
+            case "const": return WorkloadGenerator.ThinkTime.CONSTANT;
+            case "exp": return WorkloadGenerator.ThinkTime.EXPONENTIAL;
+            case "uniform": return WorkloadGenerator.ThinkTime.UNIFORM;
+            default: return WorkloadGenerator.ThinkTime.NONE;
+        }
+    }
+
+    private static void print(String name, LatencyRecorder latencies, double runtime) {
+        if (latencies.count() == 0) return;
+        System.out.printf("%s: %d (%.1f per second), mean %.3f ms, p50 %.3f ms, p95 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                name, latencies.count(), latencies.count() / runtime, latencies.meanMillis(), latencies.percentileMillis(0.50),
+                latencies.percentileMillis(0.95), latencies.percentileMillis(0.99), latencies.maxMillis());
+    }
+
+    /**
+     * The latencies of the reads and writes of a workload run and its total runtime.
+     */
+    public static class Result {
+        public final LatencyRecorder reads = new LatencyRecorder();
+        public final LatencyRecorder writes = new LatencyRecorder();
+        public double seconds;
+    }
+}
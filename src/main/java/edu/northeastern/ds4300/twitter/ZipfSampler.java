@@ -0,0 +1,113 @@
+/*
+ * Derived from RejectionInversionZipfSampler of Apache Commons Math 3
+ * (org.apache.commons.math3.distribution.ZipfDistribution), Copyright 2001-2016 The Apache Software Foundation.
+ * This product includes software developed at The Apache Software Foundation (http://www.apache.org/).
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.northeastern.ds4300.twitter;
+
+import java.util.Random;
+
+/**
+ * This class samples ranks 1..n from a Zipf distribution, where rank k is drawn with probability proportional to 1/k^s.
+ * It uses rejection-inversion sampling (Hormann and Derflinger), which needs O(1) memory and time per sample, so it can
+ * sample over hundreds of millions of ranks. An exponent of 0 gives a uniform distribution; larger exponents are more skewed.
+ *
+ * <p> The sampling code is adapted from the RejectionInversionZipfSampler of Apache Commons Math 3, under the Apache
+ * License 2.0 (see the notice at the top of this file), changed to sample long ranks. </p>
+ */
+public class ZipfSampler {
+
+    private final long n;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralNumberOfElements;
+    private final double s;
+
+    /**
+     * @param n number of ranks
+     * @param exponent Zipf exponent (skew), at least 0
+     */
+    public ZipfSampler(long n, double exponent) {
+        if (n < 1) throw new IllegalArgumentException("number of elements must be positive");
+        if (exponent < 0) throw new IllegalArgumentException("exponent must not be negative");
+        this.n = n;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1.0;
+        this.hIntegralNumberOfElements = hIntegral(n + 0.5);
+        this.s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2.0));
+    }
+
+    /**
+     * Draws a rank.
+     * @param random random number generator
+     * @return rank between 1 (most popular) and n
+     */
+    public long sample(Random random) {
+        while (true) {
+            double u = hIntegralNumberOfElements + random.nextDouble() * (hIntegralX1 - hIntegralNumberOfElements);
+            double x = hIntegralInverse(u);
+            long k = (long) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > n) {
+                k = n;
+            }
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    private double hIntegral(double x) {
+        double logX = Math.log(x);
+        return helper2((1.0 - exponent) * logX) * logX;
+    }
+
+    private double h(double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegralInverse(double x) {
+        double t = x * (1.0 - exponent);
+        if (t < -1.0) {
+            // limit from numerical error
+            t = -1.0;
+        }
+        return Math.exp(helper1(t) * x);
+    }
+
+    /**
+     * @return log(1 + x) / x, accurate near 0
+     */
+    private static double helper1(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.log1p(x) / x;
+        }
+        return 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+
+    /**
+     * @return (exp(x) - 1) / x, accurate near 0
+     */
+    private static double helper2(double x) {
+        if (Math.abs(x) > 1e-8) {
+            return Math.expm1(x) / x;
+        }
+        return 1.0 + x * 0.5 * (1.0 + x * (1.0 / 3.0) * (1.0 + 0.25 * x));
+    }
+}
@@ -0,0 +1,47 @@
+package edu.northeastern.ds4300.twitter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class BenchmarkRunnerTest {
+
+    private static Map<String, Object> trial(Object... metrics) {
+        Map<String, Object> trial = new LinkedHashMap<>();
+        for (int i = 0; i < metrics.length; i += 2) {
+            trial.put((String) metrics[i], metrics[i + 1]);
+        }
+        return trial;
+    }
+
+    @Test
+    public void mediansAndThroughputDeviation() {
+        List<Map<String, Object>> trials = new ArrayList<>();
+        trials.add(trial("throughput", 10.0, "p50_ms", 3.0));
+        trials.add(trial("throughput", 30.0, "p50_ms", 1.0));
+        trials.add(trial("throughput", 20.0, "p50_ms", 2.0));
+        Map<String, Object> summary = BenchmarkRunner.summarize(trials);
+        assertEquals(20.0, (Double) summary.get("throughput"), 1e-9);
+        assertEquals(Math.sqrt(200.0 / 3), (Double) summary.get("throughput_stddev"), 1e-9);
+        assertEquals(2.0, (Double) summary.get("p50_ms"), 1e-9);
+        assertFalse(summary.containsKey("p50_ms_stddev"));
+    }
+
+    @Test
+    public void metricsMissingFromSomeTrials() {
+        List<Map<String, Object>> trials = new ArrayList<>();
+        trials.add(trial("throughput", 10.0));
+        trials.add(trial("throughput", 20.0, "delete_p50_ms", 4.0));
+        trials.add(trial("throughput", 30.0, "delete_p50_ms", 6.0));
+        Map<String, Object> summary = BenchmarkRunner.summarize(trials);
+        // the first trial never deleted: the median is over the two trials that did, not (0, 4, 6)
+        assertEquals(5.0, (Double) summary.get("delete_p50_ms"), 1e-9);
+        assertEquals(20.0, (Double) summary.get("throughput"), 1e-9);
+    }
+}
@@ -0,0 +1,72 @@
+package edu.northeastern.ds4300.twitter;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 30000;
+
+    @Test
+    public void keysAreSpreadEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        for (int i = 0; i < 3; i++) {
+            ring.addNode("node" + i + ":6379");
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        for (int k = 0; k < KEYS; k++) {
+            counts.merge(ring.getNode("timeline:" + k), 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            // 160 virtual points per node keep every node within about 20% of its share
+            assertTrue("uneven share: " + counts, Math.abs(count - KEYS / 3) < KEYS / 3 / 5);
+        }
+    }
+
+    @Test
+    public void addingANodeOnlyMovesKeysToIt() {
+        ConsistentHashRing before = new ConsistentHashRing();
+        before.addNode("a");
+        before.addNode("b");
+        before.addNode("c");
+        ConsistentHashRing after = before.copy();
+        after.addNode("d");
+
+        int moved = 0;
+        for (int k = 0; k < KEYS; k++) {
+            String key = "tweet:" + k;
+            String owner = after.getNode(key);
+            if (!owner.equals(before.getNode(key))) {
+                assertEquals("d", owner);
+                moved++;
+            }
+        }
+        // about a quarter of the keys move to the new node
+        assertTrue("moved " + moved, moved > KEYS / 6 && moved < KEYS / 3);
+    }
+
+    @Test
+    public void removingANodeRestoresThePreviousOwners() {
+        ConsistentHashRing ring = new ConsistentHashRing();
+        ring.addNode("a");
+        ring.addNode("b");
+        ConsistentHashRing copy = ring.copy();
+        ring.addNode("c");
+        ring.removeNode("c");
+        for (int k = 0; k < 1000; k++) {
+            assertEquals(copy.getNode("k" + k), ring.getNode("k" + k));
+        }
+        assertEquals(copy.getNodes(), ring.getNodes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void emptyRing() {
+        new ConsistentHashRing().getNode("key");
+    }
+}
@@ -0,0 +1,73 @@
+package edu.northeastern.ds4300.twitter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PackedAdjacencyTest {
+
+    @Test
+    public void segmentRoundTrip() {
+        int[] ids = {1, 2, 3, 127, 128, 16383, 16384, 1000000, Integer.MAX_VALUE - 1, Integer.MAX_VALUE};
+        byte[] segment = PackedAdjacency.encodeSegment(ids, 0, ids.length);
+        assertEquals(ids.length, PackedAdjacency.count(segment));
+        int[] out = new int[ids.length];
+        assertEquals(ids.length, PackedAdjacency.decodeSegment(segment, out, 0));
+        assertArrayEquals(ids, out);
+    }
+
+    @Test
+    public void negativeFirstID() {
+        int[] ids = {Integer.MIN_VALUE, -5, -1, 0, 7};
+        int[] out = new int[ids.length];
+        PackedAdjacency.decodeSegment(PackedAdjacency.encodeSegment(ids, 0, ids.length), out, 0);
+        assertArrayEquals(ids, out);
+    }
+
+    @Test
+    public void emptySegment() {
+        byte[] segment = PackedAdjacency.encodeSegment(new int[]{4, 5}, 1, 1);
+        assertEquals(0, PackedAdjacency.count(segment));
+        assertEquals(3, PackedAdjacency.decodeSegment(segment, new int[0], 3));
+    }
+
+    @Test
+    public void subrangeAtOffset() {
+        int[] ids = {10, 20, 30, 40};
+        int[] out = new int[5];
+        assertEquals(3, PackedAdjacency.decodeSegment(PackedAdjacency.encodeSegment(ids, 1, 3), out, 1));
+        assertArrayEquals(new int[]{0, 20, 30, 0, 0}, out);
+    }
+
+    @Test
+    public void decodeAcrossSegmentBoundaries() {
+        int[] ids = new int[PackedAdjacency.SEGMENT_CAPACITY * 2 + 1];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i * 3;
+        }
+        List<byte[]> segments = new ArrayList<>();
+        for (int from = 0; from < ids.length; from += PackedAdjacency.SEGMENT_CAPACITY) {
+            segments.add(PackedAdjacency.encodeSegment(ids, from, Math.min(ids.length, from + PackedAdjacency.SEGMENT_CAPACITY)));
+        }
+        assertEquals(3, segments.size());
+        assertArrayEquals(ids, PackedAdjacency.decode(segments));
+        assertArrayEquals(new int[0], PackedAdjacency.decode(Arrays.<byte[]>asList()));
+    }
+
+    @Test
+    public void boundsOfASegment() {
+        int[] ids = {-3, 5, 9, 42};
+        ByteBuffer bounds = ByteBuffer.wrap(PackedAdjacency.encodeBounds(ids, 1, 3));
+        assertEquals(8, bounds.remaining());
+        assertEquals(5, bounds.getInt(0));
+        assertEquals(9, bounds.getInt(4));
+        assertEquals("packedfollowingbounds:42", PackedAdjacency.boundsKey(PackedAdjacency.FOLLOWING_PREFIX + 42));
+        assertEquals("packedfollowersbounds:7", PackedAdjacency.boundsKey(PackedAdjacency.FOLLOWERS_PREFIX + 7));
+    }
+}
@@ -0,0 +1,54 @@
+package edu.northeastern.ds4300.twitter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class SimpleJsonTest {
+
+    @Test
+    public void roundTrip() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", "getTimeline");
+        result.put("threads", 8.0);
+        result.put("mean", 123.25);
+        result.put("ok", true);
+        result.put("error", null);
+        result.put("latencies", Arrays.asList(1.0, 2.5, -3.0));
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("empty", Arrays.asList());
+        result.put("nested", nested);
+
+        Object parsed = SimpleJson.parse(SimpleJson.write(result));
+        assertEquals(result, parsed);
+        assertEquals(SimpleJson.write(result), SimpleJson.write(parsed));
+    }
+
+    @Test
+    public void escapes() {
+        String s = "quote \" backslash \\ slash / newline \n tab \t control \u0001 unicode \u00e9\u2615";
+        assertEquals(s, SimpleJson.parse(SimpleJson.write(s)));
+        assertEquals("A\u00e9\n/", SimpleJson.parse("\"\\u0041\\u00e9\\n\\/\""));
+    }
+
+    @Test
+    public void parsesCompactJson() {
+        Object parsed = SimpleJson.parse("{\"a\":[1,2e3,{\"b\":false}],\"c\":\"d\"}");
+        Map<?, ?> map = (Map<?, ?>) parsed;
+        List<?> a = (List<?>) map.get("a");
+        assertEquals(1.0, a.get(0));
+        assertEquals(2000.0, a.get(1));
+        assertEquals(false, ((Map<?, ?>) a.get(2)).get("b"));
+        assertEquals("d", map.get("c"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTrailingCharacters() {
+        SimpleJson.parse("{} x");
+    }
+}
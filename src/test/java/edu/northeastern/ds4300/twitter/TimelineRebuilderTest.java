@@ -0,0 +1,37 @@
+package edu.northeastern.ds4300.twitter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class TimelineRebuilderTest {
+
+    @Test
+    public void mergesNewestFirst() {
+        int[] merged = TimelineRebuilder.mergeTopN(Arrays.asList(
+                new int[]{9, 5, 1}, new int[]{8, 7, 2}, new int[]{6}), 10);
+        assertArrayEquals(new int[]{9, 8, 7, 6, 5, 2, 1}, merged);
+    }
+
+    @Test
+    public void keepsTopN() {
+        int[] merged = TimelineRebuilder.mergeTopN(Arrays.asList(new int[]{9, 5, 1}, new int[]{8, 7, 2}), 3);
+        assertArrayEquals(new int[]{9, 8, 7}, merged);
+    }
+
+    @Test
+    public void removesDuplicates() {
+        int[] merged = TimelineRebuilder.mergeTopN(Arrays.asList(new int[]{9, 5}, new int[]{9, 5, 3}), 10);
+        assertArrayEquals(new int[]{9, 5, 3}, merged);
+    }
+
+    @Test
+    public void emptyLists() {
+        assertArrayEquals(new int[0], TimelineRebuilder.mergeTopN(Collections.<int[]>emptyList(), 10));
+        assertArrayEquals(new int[0], TimelineRebuilder.mergeTopN(Arrays.asList(new int[0], new int[0]), 10));
+        assertArrayEquals(new int[0], TimelineRebuilder.mergeTopN(Arrays.asList(new int[]{1}), 0));
+    }
+}
@@ -0,0 +1,32 @@
+package edu.northeastern.ds4300.twitter;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class TrendingHashtagsTest {
+
+    private static int murmur3(String s, int seed) {
+        return TrendingHashtags.murmur3(s.getBytes(StandardCharsets.UTF_8), seed);
+    }
+
+    @Test
+    public void matchesMurmur3ReferenceValues() {
+        assertEquals(0, murmur3("", 0));
+        assertEquals(0x514E28B7, murmur3("", 1));
+        assertEquals(0x248BFA47, murmur3("hello", 0));
+        assertEquals(0x5A97808A, murmur3("aaaa", 0x9747B28C));
+        assertEquals(0x283E0130, murmur3("aaa", 0x9747B28C));
+        assertEquals(0x7FA09EA6, murmur3("a", 0x9747B28C));
+    }
+
+    @Test
+    public void separatesStringsWithEqualHashCodes() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotEquals(murmur3("Aa", 0x9E3779B9), murmur3("BB", 0x9E3779B9));
+        assertNotEquals(murmur3("Aa", 0x7F4A7C15), murmur3("BB", 0x7F4A7C15));
+    }
+}
@@ -0,0 +1,66 @@
+package edu.northeastern.ds4300.twitter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TweetCompressorTest {
+
+    private static final String TWEET = "1,42,1650000000000,just setting up my twitter and checking out the new timeline features";
+
+    private static List<String> samples() {
+        List<String> samples = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            samples.add(i + ",7,1650000000000,just setting up my twitter and checking out the new timeline #" + (i % 10));
+        }
+        return samples;
+    }
+
+    @Test
+    public void roundTripWithDictionary() {
+        Map<Integer, byte[]> dictionaries = new HashMap<>();
+        dictionaries.put(1, TweetCompressor.train(samples(), 4096));
+        TweetCompressor compressor = new TweetCompressor(dictionaries);
+        byte[] value = compressor.compress(TWEET);
+        assertTrue(value.length < TweetCompressor.bytes(TWEET).length);
+        assertEquals(TWEET, compressor.decompress(value));
+    }
+
+    @Test
+    public void olderDictionariesStillDecode() {
+        Map<Integer, byte[]> dictionaries = new HashMap<>();
+        dictionaries.put(1, TweetCompressor.train(samples(), 4096));
+        byte[] value = new TweetCompressor(dictionaries).compress(TWEET);
+        dictionaries.put(2, TweetCompressor.train(Collections.singletonList("unrelated words unrelated words"), 4096));
+        assertEquals(TWEET, new TweetCompressor(dictionaries).decompress(value));
+    }
+
+    @Test
+    public void plainValues() {
+        TweetCompressor plain = new TweetCompressor(Collections.emptyMap());
+        assertEquals(TWEET, plain.decompress(plain.compress(TWEET)));
+        String unicode = "2,3,1650000000000,caf\u00e9 \u2615 \ud83d\ude00";
+        assertEquals(unicode, plain.decompress(plain.compress(unicode)));
+        assertNull(plain.decompress((byte[]) null));
+    }
+
+    @Test
+    public void shortTweetsAreStoredPlain() {
+        Map<Integer, byte[]> dictionaries = new HashMap<>();
+        dictionaries.put(1, TweetCompressor.train(samples(), 4096));
+        TweetCompressor compressor = new TweetCompressor(dictionaries);
+        String tweet = "1,2,3,hi";
+        byte[] value = compressor.compress(tweet);
+        assertTrue(Arrays.equals(TweetCompressor.bytes(tweet), value));
+        assertEquals(tweet, compressor.decompress(value));
+    }
+}
@@ -0,0 +1,73 @@
+package edu.northeastern.ds4300.twitter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TweetLogTest {
+
+    private static final int SEGMENT_SIZE = 64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> replay(File directory) throws Exception {
+        List<String> records = new ArrayList<>();
+        try (TweetLog log = new TweetLog(directory, SEGMENT_SIZE, (location, type, payload) -> {
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            records.add(new String(bytes, StandardCharsets.UTF_8));
+        })) {
+            return records;
+        }
+    }
+
+    private static void append(File directory, String... payloads) throws Exception {
+        try (TweetLog log = new TweetLog(directory, SEGMENT_SIZE, (location, type, payload) -> { })) {
+            for (String payload : payloads) {
+                log.append(TweetLog.TWEET, payload.getBytes(StandardCharsets.UTF_8));
+            }
+            log.force();
+        }
+    }
+
+    @Test
+    public void replaysAcrossSegments() throws Exception {
+        File directory = folder.newFolder();
+        append(directory, "first record", "second record", "third record");
+        assertEquals(3, replay(directory).size());
+        assertEquals("third record", replay(directory).get(2));
+    }
+
+    @Test
+    public void headerlessLastSegmentIsCreatedAgain() throws Exception {
+        File directory = folder.newFolder();
+        append(directory, "first record");
+        // a crash in Segment.create() after the file was sized, before its header was written
+        try (RandomAccessFile raf = new RandomAccessFile(new File(directory, "segment-000001.log"), "rw")) {
+            raf.setLength(SEGMENT_SIZE);
+        }
+        assertEquals(1, replay(directory).size());
+
+        append(directory, "second record");
+        List<String> records = replay(directory);
+        assertEquals(2, records.size());
+        assertEquals("second record", records.get(1));
+    }
+
+    @Test
+    public void emptyLastSegmentFileIsCreatedAgain() throws Exception {
+        File directory = folder.newFolder();
+        append(directory, "first record");
+        new File(directory, "segment-000001.log").createNewFile();
+        assertEquals(1, replay(directory).size());
+    }
+}
@@ -0,0 +1,94 @@
+package edu.northeastern.ds4300.twitter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TwitterSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File writeSnapshot() throws Exception {
+        File file = folder.newFile("test.snapshot");
+        try (SnapshotWriter writer = new SnapshotWriter(folder.getRoot())) {
+            writer.addFollow(1, 2);
+            writer.addFollow(1, 3);
+            writer.addFollow(1, 2); // duplicate
+            writer.addFollow(2, 3);
+            writer.addTweet(10, 2, 1000L, "first from 2");
+            writer.addTweet(11, 3, 2000L, "caf\u00e9 from 3");
+            writer.addTweet(12, 2, 3000L, "second from 2");
+            writer.addTweet(13, 1, 4000L, "from 1");
+            writer.write(file);
+        }
+        return file;
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        try (TwitterSnapshot snapshot = new TwitterSnapshot(writeSnapshot(), true)) {
+            assertEquals(3, snapshot.getUserCount());
+            assertEquals(3, snapshot.getEdgeCount());
+            assertEquals(4, snapshot.getTweetCount());
+            assertArrayEquals(new int[]{1, 2, 3}, snapshot.getUserIDs());
+            assertArrayEquals(new int[]{2, 3}, snapshot.getFolloweeIDs(1));
+            assertArrayEquals(new int[]{1, 2}, snapshot.getFollowerIDs(3));
+            assertArrayEquals(new int[0], snapshot.getFolloweeIDs(99));
+
+            Tweet tweet = snapshot.getTweet(11);
+            assertEquals(11, tweet.getTweetID());
+            assertEquals(3, tweet.getUserID());
+            assertEquals(2000L, tweet.getTweetTimestamp().getTime());
+            assertEquals("caf\u00e9 from 3", tweet.getTweetText());
+            assertNull(snapshot.getTweet(99));
+        }
+    }
+
+    @Test
+    public void timelineIsNewestFirst() throws Exception {
+        try (TwitterSnapshot snapshot = new TwitterSnapshot(writeSnapshot(), false)) {
+            List<Tweet> timeline = snapshot.getTimeline(1, 10);
+            assertEquals(3, timeline.size());
+            assertEquals(12, timeline.get(0).getTweetID());
+            assertEquals(11, timeline.get(1).getTweetID());
+            assertEquals(10, timeline.get(2).getTweetID());
+            assertEquals(2, snapshot.getTimeline(1, 2).size());
+        }
+    }
+
+    @Test
+    public void hashtagPagesAreNewestFirst() throws Exception {
+        File file = folder.newFile("tagged.snapshot");
+        try (SnapshotWriter writer = new SnapshotWriter(folder.getRoot())) {
+            writer.addFollow(1, 2);
+            writer.addTweet(20, 2, 1000L, "#NEU first");
+            writer.addTweet(21, 2, 2000L, "untagged");
+            writer.addTweet(22, 1, 3000L, "#neu and #ds4300");
+            writer.addTweet(23, 2, 4000L, "third #Neu");
+            writer.write(file);
+        }
+        TwitterDatabaseSnapshot api = new TwitterDatabaseSnapshot();
+        api.authenticate(file.getPath(), null, null);
+        try {
+            List<Tweet> page = api.getHashtagTimeline("#neu", 0, 2);
+            assertEquals(2, page.size());
+            assertEquals(23, page.get(0).getTweetID());
+            assertEquals(22, page.get(1).getTweetID());
+            page = api.getHashtagTimeline("neu", 22, 2);
+            assertEquals(1, page.size());
+            assertEquals(20, page.get(0).getTweetID());
+            assertEquals(1, api.getHashtagTimeline("DS4300", 0, 10).size());
+            assertEquals(0, api.getHashtagTimeline("none", 0, 10).size());
+        } finally {
+            api.closeConnection();
+        }
+    }
+}
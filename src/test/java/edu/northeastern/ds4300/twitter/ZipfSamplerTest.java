@@ -0,0 +1,64 @@
+package edu.northeastern.ds4300.twitter;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ZipfSamplerTest {
+
+    private static final int SAMPLES = 200000;
+
+    private static long[] histogram(long n, double exponent) {
+        ZipfSampler sampler = new ZipfSampler(n, exponent);
+        Random random = new Random(42);
+        long[] counts = new long[(int) n + 1];
+        for (int i = 0; i < SAMPLES; i++) {
+            long k = sampler.sample(random);
+            assertTrue("rank out of range: " + k, k >= 1 && k <= n);
+            counts[(int) k]++;
+        }
+        return counts;
+    }
+
+    @Test
+    public void matchesZipfProbabilities() {
+        int n = 50;
+        double exponent = 1.1;
+        long[] counts = histogram(n, exponent);
+        double norm = 0;
+        for (int k = 1; k <= n; k++) {
+            norm += Math.pow(k, -exponent);
+        }
+        for (int k = 1; k <= 10; k++) {
+            double expected = SAMPLES * Math.pow(k, -exponent) / norm;
+            assertEquals("rank " + k, expected, counts[k], 5 * Math.sqrt(expected));
+        }
+    }
+
+    @Test
+    public void exponentZeroIsUniform() {
+        int n = 20;
+        long[] counts = histogram(n, 0);
+        double expected = SAMPLES / (double) n;
+        for (int k = 1; k <= n; k++) {
+            assertEquals("rank " + k, expected, counts[k], 5 * Math.sqrt(expected));
+        }
+    }
+
+    @Test
+    public void singleRank() {
+        ZipfSampler sampler = new ZipfSampler(1, 2.0);
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1, sampler.sample(random));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeExponent() {
+        new ZipfSampler(10, -1);
+    }
+}